@@ -0,0 +1,444 @@
+/*
+ * Buffered UTF-8 writer for comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A Writer that encodes characters as UTF-8 into a large reusable buffer
+ * and writes the buffer to a stream or channel only when it is full or
+ * flushed.  Numbers can be written directly with {@link #writeInt(int)},
+ * {@link #writeLong(long)} and {@link #writeDouble(double)} without
+ * converting them to Strings.
+ * <p>
+ * A {@link CSVPrinter} or {@link ExcelCSVPrinter} that prints to a
+ * CSVBufferedWriter writes quoted values straight into its buffer.
+ * Auto flushing should be turned off, otherwise the buffer will be flushed
+ * after every value.
+ * <p>
+ * Unpaired surrogate characters are written as '?'.  This class is not
+ * thread safe.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public final class CSVBufferedWriter extends Writer {
+
+	/**
+	 * Size of the buffer if none is given.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Powers of ten that can be represented exactly as doubles.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+	};
+
+	/**
+	 * Largest integer below which every integer is exactly representable
+	 * as a double.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final double MAX_EXACT = 9007199254740992.0;
+
+	private final OutputStream out;
+	private final WritableByteChannel channel;
+	private final byte[] buf;
+	private int count = 0;
+
+	/**
+	 * First half of a surrogate pair whose second half has not yet been
+	 * written, or zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private char highSurrogate = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * Create a writer for the given stream with the default buffer size.
+	 *
+	 * @param out stream to which to write.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVBufferedWriter(OutputStream out){
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a writer for the given stream.
+	 *
+	 * @param out stream to which to write.
+	 * @param bufferSize number of bytes to buffer between writes to the stream.
+	 * @throws IllegalArgumentException if the buffer size is less than 32 bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVBufferedWriter(OutputStream out, int bufferSize){
+		this(out, null, bufferSize);
+	}
+
+	/**
+	 * Create a writer for the given channel with the default buffer size.
+	 *
+	 * @param channel channel to which to write.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVBufferedWriter(WritableByteChannel channel){
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a writer for the given channel.
+	 *
+	 * @param channel channel to which to write.
+	 * @param bufferSize number of bytes to buffer between writes to the channel.
+	 * @throws IllegalArgumentException if the buffer size is less than 32 bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVBufferedWriter(WritableByteChannel channel, int bufferSize){
+		this(null, channel, bufferSize);
+	}
+
+	private CSVBufferedWriter(OutputStream out, WritableByteChannel channel, int bufferSize){
+		// Room for the longest number must always be available after a flush.
+		if (bufferSize < 32) throw new IllegalArgumentException("Buffer too small: " + bufferSize);
+		this.out = out;
+		this.channel = channel;
+		this.buf = new byte[bufferSize];
+	}
+
+	/**
+	 * Write a single character.
+	 *
+	 * @param c character to write.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(int c) throws IOException {
+		if (c < 0x80 && highSurrogate == 0){
+			if (count == buf.length) flushBuffer();
+			buf[count++] = (byte)c;
+		} else {
+			encode((char)c);
+		}
+	}
+
+	/**
+	 * Write part of an array of characters.
+	 *
+	 * @param cbuf characters to write.
+	 * @param off index of the first character to write.
+	 * @param len number of characters to write.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		int i = off;
+		while (i < end){
+			if (highSurrogate == 0){
+				// Copy a run of ASCII without checking for room on each character.
+				int run = Math.min(end - i, buf.length - count);
+				int stop = i + run;
+				int n = count;
+				byte[] b = buf;
+				char c;
+				while (i < stop && (c = cbuf[i]) < 0x80){
+					b[n++] = (byte)c;
+					i++;
+				}
+				count = n;
+				if (i == end) return;
+				if (count == buf.length){
+					flushBuffer();
+					continue;
+				}
+			}
+			encode(cbuf[i++]);
+		}
+	}
+
+	/**
+	 * Write part of a String.
+	 *
+	 * @param s String to write.
+	 * @param off index of the first character to write.
+	 * @param len number of characters to write.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(String s, int off, int len) throws IOException {
+		int end = off + len;
+		int i = off;
+		while (i < end){
+			if (highSurrogate == 0){
+				int run = Math.min(end - i, buf.length - count);
+				int stop = i + run;
+				int n = count;
+				byte[] b = buf;
+				char c;
+				while (i < stop && (c = s.charAt(i)) < 0x80){
+					b[n++] = (byte)c;
+					i++;
+				}
+				count = n;
+				if (i == end) return;
+				if (count == buf.length){
+					flushBuffer();
+					continue;
+				}
+			}
+			encode(s.charAt(i++));
+		}
+	}
+
+	/**
+	 * Encode a character that may not be ASCII.
+	 *
+	 * @param c character to encode.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void encode(char c) throws IOException {
+		if (count > buf.length - 4) flushBuffer();
+		if (highSurrogate != 0){
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)){
+				int codePoint = Character.toCodePoint(high, c);
+				buf[count++] = (byte)(0xf0 | (codePoint >> 18));
+				buf[count++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+				buf[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+				buf[count++] = (byte)(0x80 | (codePoint & 0x3f));
+				return;
+			}
+			buf[count++] = '?';
+		}
+		if (c < 0x80){
+			buf[count++] = (byte)c;
+		} else if (c < 0x800){
+			buf[count++] = (byte)(0xc0 | (c >> 6));
+			buf[count++] = (byte)(0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c)){
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)){
+			buf[count++] = '?';
+		} else {
+			buf[count++] = (byte)(0xe0 | (c >> 12));
+			buf[count++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+			buf[count++] = (byte)(0x80 | (c & 0x3f));
+		}
+	}
+
+	/**
+	 * Write an int in the same format as Integer.toString().
+	 *
+	 * @param value number to write.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeInt(int value) throws IOException {
+		writeLong(value);
+	}
+
+	/**
+	 * Write a long in the same format as Long.toString().
+	 *
+	 * @param value number to write.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeLong(long value) throws IOException {
+		dropSurrogate();
+		if (buf.length - count < 20) flushBuffer();
+		if (value < 0){
+			if (value == Long.MIN_VALUE){
+				write("-9223372036854775808");
+				return;
+			}
+			buf[count++] = '-';
+			value = -value;
+		}
+		writeDigits(value, digitCount(value));
+	}
+
+	/**
+	 * Write a double so that it reads back as the same double.  Numbers
+	 * from 0.001 up to 10,000,000 that have a short decimal form are
+	 * written as plain decimals, as Double.toString() would write them, with
+	 * the fewest digits that read back exactly and without creating a String.
+	 * Other numbers are written with Double.toString().
+	 *
+	 * @param value number to write.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeDouble(double value) throws IOException {
+		double abs = Math.abs(value);
+		if (abs >= 1e-3 && abs < 1e7){
+			for (int scale = 0; scale < POWERS_OF_TEN.length; scale++){
+				double scaled = Math.rint(abs * POWERS_OF_TEN[scale]);
+				if (scaled > MAX_EXACT) break;
+				// Both numbers are exact, so the division is correctly rounded and
+				// the decimal reads back as the same double when it is equal.
+				if (scaled / POWERS_OF_TEN[scale] == abs){
+					writeDecimal(value < 0, (long)scaled, scale);
+					return;
+				}
+			}
+		} else if (abs == 0){
+			write(Double.doubleToRawLongBits(value) < 0 ? "-0.0" : "0.0");
+			return;
+		}
+		write(Double.toString(value));
+	}
+
+	/**
+	 * Write digits with a decimal point placed before the given number of
+	 * fraction digits.  A whole number is written with ".0".
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeDecimal(boolean negative, long digits, int scale) throws IOException {
+		dropSurrogate();
+		if (buf.length - count < 24) flushBuffer();
+		if (negative) buf[count++] = '-';
+		long unit = (long)POWERS_OF_TEN[scale];
+		long whole = digits / unit;
+		writeDigits(whole, digitCount(whole));
+		buf[count++] = '.';
+		if (scale == 0){
+			buf[count++] = '0';
+		} else {
+			writeDigits(digits % unit, scale);
+		}
+	}
+
+	/**
+	 * Write a '?' for a high surrogate that was not followed by a low surrogate.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void dropSurrogate() throws IOException {
+		if (highSurrogate != 0){
+			highSurrogate = 0;
+			write('?');
+		}
+	}
+
+	private static int digitCount(long value){
+		int n = 1;
+		for (long limit = 10; n < 19 && value >= limit; limit *= 10) n++;
+		return n;
+	}
+
+	/**
+	 * Write a non-negative number using exactly the given number of
+	 * digits, with leading zeros if needed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeDigits(long value, int digits){
+		int end = count + digits;
+		for (int i = end - 1; i >= count; i--){
+			buf[i] = (byte)('0' + (value % 10));
+			value /= 10;
+		}
+		count = end;
+	}
+
+	/**
+	 * Write the buffer to the stream or channel.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void flushBuffer() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		if (count == 0) return;
+		if (out != null){
+			out.write(buf, 0, count);
+		} else {
+			ByteBuffer b = ByteBuffer.wrap(buf, 0, count);
+			while (b.hasRemaining()){
+				channel.write(b);
+			}
+		}
+		count = 0;
+	}
+
+	/**
+	 * Write any buffered bytes and flush the stream.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void flush() throws IOException {
+		flushBuffer();
+		if (out != null) out.flush();
+	}
+
+	/**
+	 * Write any buffered bytes and close the stream or channel.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close() throws IOException {
+		if (closed) return;
+		try {
+			dropSurrogate();
+			flush();
+		} finally {
+			closed = true;
+			if (out != null){
+				out.close();
+			} else {
+				channel.close();
+			}
+		}
+	}
+}
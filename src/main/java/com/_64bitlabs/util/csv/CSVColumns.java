@@ -0,0 +1,315 @@
+/*
+ * Read numeric columns from comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.IOException;
+
+/**
+ * Read numeric CSV data into columns.  Each line of the file is a row and
+ * the values in it are appended to one list per column.
+ * <p>
+ * With a {@link CSVParser}, {@link ExcelCSVParser} or {@link MappedCSVParser}
+ * the numbers are parsed directly from the parser's buffer and no Strings are
+ * created.  Any other CSVParse is read with getLine().
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public final class CSVColumns {
+
+	/**
+	 * Powers of ten that can be represented exactly as doubles.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+	};
+
+	private CSVColumns(){
+	}
+
+	/**
+	 * Read the rest of the file into int columns.
+	 *
+	 * @param parse source of the values.
+	 * @param columns list for each column, or null for columns that should be skipped.
+	 * @return number of lines read.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws NumberFormatException if a value is not an int or a line is too short.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int readInts(CSVParse parse, final TIntArrayList... columns) throws IOException {
+		return read(parse, new ColumnHandler(columns.length){
+			@Override void add(int column, char[] buffer, int offset, int length){
+				if (columns[column] != null) columns[column].add(parseInt(buffer, offset, length));
+			}
+		});
+	}
+
+	/**
+	 * Read the rest of the file into long columns.
+	 *
+	 * @param parse source of the values.
+	 * @param columns list for each column, or null for columns that should be skipped.
+	 * @return number of lines read.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws NumberFormatException if a value is not a long or a line is too short.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int readLongs(CSVParse parse, final TLongArrayList... columns) throws IOException {
+		return read(parse, new ColumnHandler(columns.length){
+			@Override void add(int column, char[] buffer, int offset, int length){
+				if (columns[column] != null) columns[column].add(parseLong(buffer, offset, length));
+			}
+		});
+	}
+
+	/**
+	 * Read the rest of the file into double columns.
+	 *
+	 * @param parse source of the values.
+	 * @param columns list for each column, or null for columns that should be skipped.
+	 * @return number of lines read.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws NumberFormatException if a value is not a number or a line is too short.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int readDoubles(CSVParse parse, final TDoubleArrayList... columns) throws IOException {
+		return read(parse, new ColumnHandler(columns.length){
+			@Override void add(int column, char[] buffer, int offset, int length){
+				if (columns[column] != null) columns[column].add(parseDouble(buffer, offset, length));
+			}
+		});
+	}
+
+	private static int read(CSVParse parse, ColumnHandler handler) throws IOException {
+		int rows = 0;
+		while (true){
+			handler.count = 0;
+			if (!getLine(parse, handler)) return rows;
+			if (handler.count < handler.width){
+				throw new NumberFormatException("Line " + parse.getLastLineNumber() + " has " + handler.count + " values, expected " + handler.width);
+			}
+			rows++;
+		}
+	}
+
+	/**
+	 * Appends the first width values of each line to columns.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static abstract class ColumnHandler implements CSVFieldHandler {
+		private final int width;
+		private int count;
+
+		private ColumnHandler(int width){
+			this.width = width;
+		}
+
+		public void field(char[] buffer, int offset, int length, int fieldIndex, boolean endOfRecord){
+			count = fieldIndex + 1;
+			if (fieldIndex < width) add(fieldIndex, buffer, offset, length);
+		}
+
+		abstract void add(int column, char[] buffer, int offset, int length);
+	}
+
+	/**
+	 * Stores the values of a line into whichever array has been set.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final class ArrayHandler implements CSVFieldHandler {
+		private int[] ints;
+		private long[] longs;
+		private double[] doubles;
+		private int count;
+
+		void set(int[] target){
+			ints = target;
+			longs = null;
+			doubles = null;
+			count = 0;
+		}
+
+		void set(long[] target){
+			ints = null;
+			longs = target;
+			doubles = null;
+			count = 0;
+		}
+
+		void set(double[] target){
+			ints = null;
+			longs = null;
+			doubles = target;
+			count = 0;
+		}
+
+		/**
+		 * Number of values in the line, including any that did not fit in the array.
+		 */
+		int getCount(){
+			return count;
+		}
+
+		public void field(char[] buffer, int offset, int length, int fieldIndex, boolean endOfRecord){
+			count = fieldIndex + 1;
+			if (ints != null){
+				if (fieldIndex < ints.length) ints[fieldIndex] = parseInt(buffer, offset, length);
+			} else if (longs != null){
+				if (fieldIndex < longs.length) longs[fieldIndex] = parseLong(buffer, offset, length);
+			} else {
+				if (fieldIndex < doubles.length) doubles[fieldIndex] = parseDouble(buffer, offset, length);
+			}
+		}
+	}
+
+	/**
+	 * Pass the fields of the next line to the handler.  Parsers that can
+	 * hand over fields without creating Strings are asked to do so.
+	 *
+	 * @param parse source of the values.
+	 * @param handler call back for each value.
+	 * @return false if there are no more lines.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static boolean getLine(CSVParse parse, CSVFieldHandler handler) throws IOException {
+		if (parse instanceof CSVParser) return ((CSVParser)parse).getLine(handler);
+		if (parse instanceof ExcelCSVParser) return ((ExcelCSVParser)parse).getLine(handler);
+		if (parse instanceof MappedCSVParser) return ((MappedCSVParser)parse).getLine(handler);
+		String[] line = parse.getLine();
+		if (line == null) return false;
+		for (int i = 0; i < line.length; i++){
+			handler.field(line[i].toCharArray(), 0, line[i].length(), i, i == line.length - 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Parse an int in the same format as Integer.parseInt().
+	 *
+	 * @param buffer characters of the number.
+	 * @param offset index in the buffer of the first character.
+	 * @param length number of characters.
+	 * @return the number.
+	 * @throws NumberFormatException if the characters are not an int.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static int parseInt(char[] buffer, int offset, int length){
+		long l = parseLong(buffer, offset, length);
+		if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE) throw numberFormat(buffer, offset, length);
+		return (int)l;
+	}
+
+	/**
+	 * Parse a long in the same format as Long.parseLong().
+	 *
+	 * @param buffer characters of the number.
+	 * @param offset index in the buffer of the first character.
+	 * @param length number of characters.
+	 * @return the number.
+	 * @throws NumberFormatException if the characters are not a long.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static long parseLong(char[] buffer, int offset, int length){
+		int i = offset;
+		int end = offset + length;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')){
+			negative = buffer[i] == '-';
+			i++;
+		}
+		if (i == end) throw numberFormat(buffer, offset, length);
+		// Accumulate negatively so that Long.MIN_VALUE can be represented.
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long result = 0;
+		for (; i < end; i++){
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) throw numberFormat(buffer, offset, length);
+			if (result < limit / 10) throw numberFormat(buffer, offset, length);
+			result *= 10;
+			if (result < limit + digit) throw numberFormat(buffer, offset, length);
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parse a double in the same format as Double.parseDouble().  Plain
+	 * decimals with up to fifteen digits are parsed without creating a String.
+	 *
+	 * @param buffer characters of the number.
+	 * @param offset index in the buffer of the first character.
+	 * @param length number of characters.
+	 * @return the number.
+	 * @throws NumberFormatException if the characters are not a number.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static double parseDouble(char[] buffer, int offset, int length){
+		int i = offset;
+		int end = offset + length;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')){
+			negative = buffer[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < end; i++){
+			char c = buffer[i];
+			if (c >= '0' && c <= '9'){
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (fractionDigits >= 0) fractionDigits++;
+			} else if (c == '.' && fractionDigits < 0){
+				fractionDigits = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == end && digits > 0 && digits <= 15){
+			// Both the mantissa and the power of ten are exact, so the
+			// single division is correctly rounded.
+			double d = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+			return negative ? -d : d;
+		}
+		return Double.parseDouble(new String(buffer, offset, length));
+	}
+
+	private static NumberFormatException numberFormat(char[] buffer, int offset, int length){
+		return new NumberFormatException("For input string: \"" + new String(buffer, offset, length) + "\"");
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Settings that describe a comma separated value format.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The format of a CSV file: which parser reads it, its delimiter, quote and
+ * comment characters, and whether its first line holds column labels.
+ * Dialects are usually found by {@link CSVSniffer}.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public final class CSVDialect {
+
+	private final boolean excel;
+	private final char delimiter;
+	private final char quote;
+	private final String commentStart;
+	private final boolean header;
+
+	/**
+	 * Create a dialect.
+	 *
+	 * @param excel true if values are quoted as in {@link ExcelCSVParser}, false for {@link CSVParser}.
+	 * @param delimiter character between values.
+	 * @param quote character around quoted values.
+	 * @param commentStart characters that start comment lines, may be empty.
+	 * @param header true if the first line holds column labels.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVDialect(boolean excel, char delimiter, char quote, String commentStart, boolean header){
+		this.excel = excel;
+		this.delimiter = delimiter;
+		this.quote = quote;
+		this.commentStart = commentStart == null ? "" : commentStart;
+		this.header = header;
+	}
+
+	/**
+	 * Whether values are quoted as in {@link ExcelCSVParser}, with quotes inside
+	 * values doubled, rather than escaped with backslashes as in {@link CSVParser}.
+	 *
+	 * @return true for the Excel format.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean isExcel(){
+		return excel;
+	}
+
+	/**
+	 * Get the character between values.
+	 *
+	 * @return the delimiter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public char getDelimiter(){
+		return delimiter;
+	}
+
+	/**
+	 * Get the character around quoted values.
+	 *
+	 * @return the quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public char getQuote(){
+		return quote;
+	}
+
+	/**
+	 * Get the characters that start comment lines.
+	 *
+	 * @return comment characters, or the empty string if there are no comments.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String getCommentStart(){
+		return commentStart;
+	}
+
+	/**
+	 * Whether the first line holds column labels.
+	 *
+	 * @return true if there is a header line.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean hasHeader(){
+		return header;
+	}
+
+	/**
+	 * Create a parser for this dialect.  If the file has a header, the
+	 * parser is a {@link LabeledCSVParser}.
+	 *
+	 * @param in stream from which to read.
+	 * @return a parser positioned at the start of the stream.
+	 * @throws BadDelimiterException if the delimiter cannot be used by the parser.
+	 * @throws BadQuoteException if the quote cannot be used by the parser.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVParse createParser(Reader in) throws BadDelimiterException, BadQuoteException, IOException {
+		CSVParse parse = excel ? new ExcelCSVParser(in) : new CSVParser(in);
+		parse.changeQuote(quote);
+		parse.changeDelimiter(delimiter);
+		if (excel){
+			((ExcelCSVParser)parse).setCommentStart(commentStart);
+		} else {
+			((CSVParser)parse).setCommentStart(commentStart);
+		}
+		if (header) parse = new LabeledCSVParser(parse);
+		return parse;
+	}
+
+	@Override public String toString(){
+		return (excel ? "Excel" : "CSV") + " delimiter=" + delimiter + " quote=" + quote + " comments=" + commentStart + " header=" + header;
+	}
+}
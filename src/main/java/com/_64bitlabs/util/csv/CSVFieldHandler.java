@@ -0,0 +1,49 @@
+/*
+ * Call back for fields read from comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+/**
+ * Call back for when a field is read from a CSV file.
+ * <p>
+ * The characters of the field are passed as a range of the lexer's own
+ * buffer so that no String or array has to be created for each field.  The
+ * buffer is reused as soon as the call back returns; the characters must be
+ * copied if they are needed afterwards.
+ *
+ * @see CSVParser#getLine(CSVFieldHandler)
+ * @see ExcelCSVParser#getLine(CSVFieldHandler)
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public interface CSVFieldHandler {
+
+	/**
+	 * Called when a field is read.
+	 *
+	 * @param buffer characters of the field, with quotes removed and escape sequences replaced.
+	 * @param offset index in the buffer of the first character of the field.
+	 * @param length number of characters in the field.
+	 * @param fieldIndex index of the field in its record, starting at zero.
+	 * @param endOfRecord whether this is the last field in its record.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void field(char[] buffer, int offset, int length, int fieldIndex, boolean endOfRecord);
+}
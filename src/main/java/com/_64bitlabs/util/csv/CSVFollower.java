@@ -0,0 +1,331 @@
+/*
+ * Read records as they are appended to comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follow a CSV file that other processes append to, reading each record
+ * once as soon as it is complete.
+ * <p>
+ * The follower remembers the position just past the last complete record it
+ * returned.  Each {@link #poll(CSVRecordHandler)} parses only the bytes added
+ * since then with a {@link MappedCSVParser}.  A record is complete once the
+ * line break after it has been written; a record at the end of the file
+ * without one, including one that ends part way through a quoted value, is
+ * left for a later poll, when it is parsed again from its start.  Line
+ * numbers are counted across polls.
+ * <p>
+ * {@link #await(CSVRecordHandler, long, TimeUnit)} waits for the file to
+ * change using a WatchService on its directory, and also checks the file
+ * every {@link #POLL_INTERVAL} milliseconds in case the file system does not
+ * report changes.  If the file becomes shorter than the position reached,
+ * it is assumed to have been truncated and is read again from the start.
+ * <p>
+ * An example of how CSVFollower might be used:
+ * <pre>
+ * CSVFollower follower = new CSVFollower(new File("events.csv"));
+ * while (running){
+ *     follower.await(new CSVRecordHandler(){
+ *         public void record(String[] values, int lineNumber){
+ *             System.out.println("" + lineNumber + " " + values[0]);
+ *         }
+ *     }, 1, TimeUnit.MINUTES);
+ * }
+ * follower.close();
+ * </pre>
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CSVFollower implements Closeable {
+
+	/**
+	 * Longest time in milliseconds that await() waits before checking the
+	 * file, whether or not a change has been reported.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final long POLL_INTERVAL = 1000;
+
+	private Path path;
+	private RandomAccessFile file;
+	private FileChannel channel;
+
+	/**
+	 * Parser over the channel, used to create parsers for new data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private MappedCSVParser base;
+
+	/**
+	 * Created the first time await() has to wait.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private WatchService watcher;
+
+	/**
+	 * Position just past the last complete record returned.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long position = 0;
+
+	/**
+	 * Line number of position.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int line = 1;
+
+	/**
+	 * Create a follower that starts at the beginning of the file.
+	 *
+	 * @param f file to follow.
+	 * @throws IOException if the file cannot be opened.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVFollower(File f) throws IOException {
+		path = f.toPath();
+		file = new RandomAccessFile(f, "r");
+		channel = file.getChannel();
+		base = new MappedCSVParser(channel, 0, 0, MappedCSVParser.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Change the delimiter.
+	 *
+	 * @param newDelim delimiter to which to switch.
+	 * @throws BadDelimiterException if the character cannot be used as a delimiter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeDelimiter(char newDelim) throws BadDelimiterException {
+		base.changeDelimiter(newDelim);
+	}
+
+	/**
+	 * Change the character used for quoting.
+	 *
+	 * @param newQuote character to use for quoting.
+	 * @throws BadQuoteException if the character cannot be used as a quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeQuote(char newQuote) throws BadQuoteException {
+		base.changeQuote(newQuote);
+	}
+
+	/**
+	 * Set the characters that indicate a comment at the beginning of the line.
+	 *
+	 * @param commentDelims list of characters a comment line may start with.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setCommentStart(String commentDelims){
+		base.setCommentStart(commentDelims);
+	}
+
+	/**
+	 * Change the character set used to decode values.
+	 *
+	 * @param charset character set that encodes ASCII characters as single bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setCharset(Charset charset){
+		base.setCharset(charset);
+	}
+
+	/**
+	 * Start following from a position that was saved from {@link #getPosition()}
+	 * and {@link #getLineNumber()}, for example after a restart.
+	 *
+	 * @param position position just past a complete record, or zero.
+	 * @param line line number of that position.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void seek(long position, int line){
+		this.position = position;
+		this.line = line;
+	}
+
+	/**
+	 * Get the position just past the last complete record returned.
+	 *
+	 * @return position in the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getPosition(){
+		return position;
+	}
+
+	/**
+	 * Get the line number of {@link #getPosition()}.
+	 *
+	 * @return line number.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLineNumber(){
+		return line;
+	}
+
+	/**
+	 * Pass each record completed since the last poll to the handler.
+	 * Does not wait.
+	 *
+	 * @param handler call back for each record.
+	 * @return number of records passed.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int poll(CSVRecordHandler handler) throws IOException {
+		return read(handler, false);
+	}
+
+	/**
+	 * Get the records completed since the last poll.  Does not wait.
+	 *
+	 * @return the new records, possibly none.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[][] poll() throws IOException {
+		final ArrayList<String[]> v = new ArrayList<String[]>();
+		poll(new CSVRecordHandler(){
+			public void record(String[] values, int lineNumber){
+				v.add(values);
+			}
+		});
+		String[][] result = new String[v.size()][];
+		return v.toArray(result);
+	}
+
+	/**
+	 * Pass the remaining records to the handler, including a last record
+	 * that has no line break after it.  Use this once the file is known to
+	 * be finished.
+	 *
+	 * @param handler call back for each record.
+	 * @return number of records passed.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int drain(CSVRecordHandler handler) throws IOException {
+		return read(handler, true);
+	}
+
+	/**
+	 * Pass each record completed since the last poll to the handler,
+	 * waiting for the file to change if there are none yet.
+	 *
+	 * @param handler call back for each record.
+	 * @param timeout longest time to wait.
+	 * @param unit unit of the timeout.
+	 * @return number of records passed, zero if the time ran out.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int await(CSVRecordHandler handler, long timeout, TimeUnit unit) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (true){
+			int count = poll(handler);
+			if (count > 0) return count;
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) return 0;
+			if (watcher == null){
+				watcher = path.getFileSystem().newWatchService();
+				Path dir = path.toAbsolutePath().getParent();
+				dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+				// Changes made before the watch was registered would be missed.
+				continue;
+			}
+			WatchKey key = watcher.poll(Math.min(remaining, POLL_INTERVAL), TimeUnit.MILLISECONDS);
+			if (key != null){
+				key.pollEvents();
+				key.reset();
+			}
+		}
+	}
+
+	/**
+	 * Parse from the saved position to the current end of the file.
+	 *
+	 * @param handler call back for each record.
+	 * @param all true to include a last record with no line break after it.
+	 * @return number of records passed.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int read(CSVRecordHandler handler, boolean all) throws IOException {
+		long size = channel.size();
+		if (size < position){
+			// Truncated, so start again.
+			position = 0;
+			line = 1;
+		}
+		if (size == position) return 0;
+		MappedCSVParser parser = base.range(position, size);
+		parser.setPhysicalLine(line);
+		int count = 0;
+		String[] record;
+		while ((record = parser.getLine()) != null){
+			// Without a line break after it, the last record may not be finished.
+			if (!all && parser.getPosition() >= size) break;
+			position = parser.getPosition();
+			line = parser.getPhysicalLine();
+			count++;
+			handler.record(record, parser.getLastLineNumber());
+		}
+		return count;
+	}
+
+	/**
+	 * Close the file and stop watching it.
+	 *
+	 * @throws IOException if an error occurs while closing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void close() throws IOException {
+		if (watcher != null) watcher.close();
+		base.close();
+	}
+}
@@ -21,6 +21,7 @@ import com._64bitlabs.util.exception.BadQuoteException;
 
 import java.io.*;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Read files in comma separated value format.
@@ -118,6 +119,28 @@ public class CSVParser implements CSVParse {
 	 */
 	private int lastLine = -1;
 
+	/**
+	 * Characters of the token cache, used when passing it to a CSVFieldHandler.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private char[] tokenChars = new char[64];
+
+	/**
+	 * Characters of the value read by nextChars().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private char[] numberBuffer;
+	private int numberOffset;
+
+	/**
+	 * Parses the values given to getLine(int[]) and friends.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final CSVColumns.ArrayHandler numbers = new CSVColumns.ArrayHandler();
+
 	/**
 	 * Create a parser to parse comma separated values from
 	 * an InputStream.
@@ -346,6 +369,196 @@ public class CSVParser implements CSVParse {
 		return v.toArray(result);
 	}
 
+	/**
+	 * Pass all the values from a line to the given handler without creating
+	 * a String for each value.  The handler is given the characters of each
+	 * value directly from the lexer's buffer.
+	 * <p>
+	 * If the line has already been partially read, only the values that have
+	 * not already been read will be passed, and field indexes start at zero with
+	 * the first of those values.
+	 *
+	 * @param handler call back for each value.
+	 * @return false if there were no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean getLine(CSVFieldHandler handler) throws IOException {
+		int fieldIndex = 0;
+		if (tokenCache != null){
+			// A value from this line was already read by getLine().
+			String token = tokenCache;
+			tokenCache = null;
+			lastLine = lineCache;
+			if (tokenChars.length < token.length()){
+				tokenChars = new char[token.length()];
+			}
+			token.getChars(0, token.length(), tokenChars, 0);
+			boolean endOfRecord = lexer.atEndOfRecord();
+			handler.field(tokenChars, 0, token.length(), fieldIndex++, endOfRecord);
+			if (endOfRecord) return true;
+		}
+		int line = lexer.getLine(handler, fieldIndex);
+		if (line == -1) return fieldIndex > 0;
+		lastLine = line;
+		return true;
+	}
+
+	/**
+	 * Read the next value from the file as an int, without creating a String
+	 * for it.  The line number from which this value was taken can be obtained
+	 * from getLastLineNumber().
+	 *
+	 * @return the next value.
+	 * @throws EOFException if there are no more values.
+	 * @throws NumberFormatException if the value is not an int.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int nextInt() throws IOException {
+		int length = nextChars();
+		return CSVColumns.parseInt(numberBuffer, numberOffset, length);
+	}
+
+	/**
+	 * Read the next value from the file as a long, without creating a String
+	 * for it.  The line number from which this value was taken can be obtained
+	 * from getLastLineNumber().
+	 *
+	 * @return the next value.
+	 * @throws EOFException if there are no more values.
+	 * @throws NumberFormatException if the value is not a long.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long nextLong() throws IOException {
+		int length = nextChars();
+		return CSVColumns.parseLong(numberBuffer, numberOffset, length);
+	}
+
+	/**
+	 * Read the next value from the file as a double, without creating a String
+	 * for it in the common case.  The line number from which this value was
+	 * taken can be obtained from getLastLineNumber().
+	 *
+	 * @return the next value.
+	 * @throws EOFException if there are no more values.
+	 * @throws NumberFormatException if the value is not a number.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double nextDouble() throws IOException {
+		int length = nextChars();
+		return CSVColumns.parseDouble(numberBuffer, numberOffset, length);
+	}
+
+	/**
+	 * Read the values from a line as ints into the given array.
+	 * <p>
+	 * If the line has already been partially read, only the values that
+	 * have not already been read will be included.  Values that do not fit
+	 * in the array are skipped.
+	 *
+	 * @param values array to fill with values from the start.
+	 * @return the number of values in the line, or -1 if there are no more values.
+	 * @throws NumberFormatException if a value is not an int.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLine(int[] values) throws IOException {
+		numbers.set(values);
+		return getLine(numbers) ? numbers.getCount() : -1;
+	}
+
+	/**
+	 * Read the values from a line as longs into the given array.
+	 * <p>
+	 * If the line has already been partially read, only the values that
+	 * have not already been read will be included.  Values that do not fit
+	 * in the array are skipped.
+	 *
+	 * @param values array to fill with values from the start.
+	 * @return the number of values in the line, or -1 if there are no more values.
+	 * @throws NumberFormatException if a value is not a long.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLine(long[] values) throws IOException {
+		numbers.set(values);
+		return getLine(numbers) ? numbers.getCount() : -1;
+	}
+
+	/**
+	 * Read the values from a line as doubles into the given array.
+	 * <p>
+	 * If the line has already been partially read, only the values that
+	 * have not already been read will be included.  Values that do not fit
+	 * in the array are skipped.
+	 *
+	 * @param values array to fill with values from the start.
+	 * @return the number of values in the line, or -1 if there are no more values.
+	 * @throws NumberFormatException if a value is not a number.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLine(double[] values) throws IOException {
+		numbers.set(values);
+		return getLine(numbers) ? numbers.getCount() : -1;
+	}
+
+	/**
+	 * Scan the next value and point numberBuffer and numberOffset at it.
+	 *
+	 * @return number of characters in the value.
+	 * @throws EOFException if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int nextChars() throws IOException {
+		if (tokenCache != null){
+			String token = tokenCache;
+			tokenCache = null;
+			lastLine = lineCache;
+			if (tokenChars.length < token.length()){
+				tokenChars = new char[token.length()];
+			}
+			token.getChars(0, token.length(), tokenChars, 0);
+			numberBuffer = tokenChars;
+			numberOffset = 0;
+			return token.length();
+		}
+		boolean found = lexer.nextToken();
+		lastLine = lexer.getLineNumber();
+		if (!found) throw new EOFException("No more values.");
+		numberBuffer = lexer.getTokenBuffer();
+		numberOffset = lexer.getTokenOffset();
+		return lexer.getTokenLength();
+	}
+
+	/**
+	 * Get a stream of the lines that have not yet been read.
+	 * <p>
+	 * The lines can only be parsed in order, so a parallel stream reads
+	 * them in batches on one thread and processes the batches on others.
+	 * Closing the stream closes this parser.  IOExceptions that occur while
+	 * the stream is being read are thrown as UncheckedIOExceptions.
+	 *
+	 * @return a stream of lines.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Stream<String[]> stream(){
+		return CSVSpliterator.stream(this);
+	}
+
 	/**
 	 * Get all the values from the file.
 	 * <p>
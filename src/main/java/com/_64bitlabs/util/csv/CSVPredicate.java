@@ -0,0 +1,113 @@
+/*
+ * Test applied to values read from comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+/**
+ * A test on a single value from a CSV file.  Predicates are given the
+ * characters of the value while it is still in the lexer's buffer so
+ * that records can be rejected before any Strings are created for them.
+ * <p>
+ * Common tests are available from {@link #equalTo(String)},
+ * {@link #startsWith(String)} and {@link #between(double, double)}.
+ * Other tests may be written by extending this class.
+ *
+ * @see LabeledCSVParser#addFilter(String, CSVPredicate)
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public abstract class CSVPredicate {
+
+	/**
+	 * Test a value.
+	 *
+	 * @param buffer characters of the value.
+	 * @param offset index in the buffer of the first character of the value.
+	 * @param length number of characters in the value.
+	 * @return true if the value passes the test.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public abstract boolean accept(char[] buffer, int offset, int length);
+
+	/**
+	 * Get a predicate that accepts only the given value.
+	 *
+	 * @param value the value to accept.
+	 * @return a predicate.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVPredicate equalTo(String value){
+		final char[] expected = value.toCharArray();
+		return new CSVPredicate(){
+			@Override public boolean accept(char[] buffer, int offset, int length){
+				return length == expected.length && regionMatches(buffer, offset, expected);
+			}
+		};
+	}
+
+	/**
+	 * Get a predicate that accepts values that start with the given prefix.
+	 *
+	 * @param prefix the prefix values must have.
+	 * @return a predicate.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVPredicate startsWith(String prefix){
+		final char[] expected = prefix.toCharArray();
+		return new CSVPredicate(){
+			@Override public boolean accept(char[] buffer, int offset, int length){
+				return length >= expected.length && regionMatches(buffer, offset, expected);
+			}
+		};
+	}
+
+	/**
+	 * Get a predicate that accepts numbers in the given range, inclusive.
+	 * Values that are not numbers are not accepted.
+	 *
+	 * @param min smallest number to accept.
+	 * @param max largest number to accept.
+	 * @return a predicate.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVPredicate between(final double min, final double max){
+		return new CSVPredicate(){
+			@Override public boolean accept(char[] buffer, int offset, int length){
+				double d;
+				try {
+					d = CSVColumns.parseDouble(buffer, offset, length);
+				} catch (NumberFormatException x){
+					return false;
+				}
+				return d >= min && d <= max;
+			}
+		};
+	}
+
+	private static boolean regionMatches(char[] buffer, int offset, char[] expected){
+		for (int i = 0; i < expected.length; i++){
+			if (buffer[offset + i] != expected[i]) return false;
+		}
+		return true;
+	}
+}
@@ -282,4 +282,40 @@ public interface CSVPrint {
 	 * @since 64bitlabsutils 1.02.26
 	 */
 	public void setAlwaysQuote(boolean alwaysQuote);
+
+	/**
+	 * Print an int as the next value on the line.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public default void writeInt(int value) throws IOException {
+		write(Integer.toString(value));
+	}
+
+	/**
+	 * Print a long as the next value on the line.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public default void writeLong(long value) throws IOException {
+		write(Long.toString(value));
+	}
+
+	/**
+	 * Print a double as the next value on the line.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public default void writeDouble(double value) throws IOException {
+		write(Double.toString(value));
+	}
 }
@@ -97,6 +97,14 @@ public class CSVPrinter implements CSVPrint {
 	 */
 	protected Writer out;
 
+	/**
+	 * The writer, if it is a CSVBufferedWriter, so that values can be
+	 * escaped straight into its buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private CSVBufferedWriter buffer;
+
 	/**
 	 * True iff we just began a new line.
 	 *
@@ -279,6 +287,21 @@ public class CSVPrinter implements CSVPrint {
 		);
 	}
 
+	/**
+	 * Create a printer that will print values to the given buffered writer
+	 * with auto flushing disabled, so that values collect in the writer's
+	 * buffer until it is full or the printer is flushed or closed.
+	 * Values are escaped directly into the buffer, and numbers written with
+	 * writeInt(), writeLong() and writeDouble() are formatted there too.
+	 *
+	 * @param out buffered writer to which to print.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CSVPrinter(CSVBufferedWriter out){
+		this(out, ALWAYS_QUOTE_DEFAULT, false);
+	}
+
 	/**
 	 * Create a printer that will print values to the given
 	 * stream.	The comment character will be the number sign, the delimiter will
@@ -401,6 +424,7 @@ public class CSVPrinter implements CSVPrint {
 	 */
 	public CSVPrinter(Writer out, char commentStart, char quote, char delimiter, String lineEnding, boolean alwaysQuote, boolean autoFlush) throws BadDelimiterException, BadQuoteException, BadLineEndingException {
 		this.out = out;
+		if (out instanceof CSVBufferedWriter) buffer = (CSVBufferedWriter)out;
 		this.commentStart = commentStart;
 		changeQuote(quote);
 		changeDelimiter(delimiter);
@@ -728,6 +752,7 @@ public class CSVPrinter implements CSVPrint {
 					c = value.charAt(i);
 					if (c==quoteChar || c==delimiterChar || c=='\n' || c=='\r'){
 						quote = true;
+						break;
 					}
 				}
 				if (c==' ' || c=='\f' || c=='\t'){
@@ -740,12 +765,10 @@ public class CSVPrinter implements CSVPrint {
 				// an empty line has no tokens.
 				quote = true;
 			}
-			if (newLine){
-				newLine = false;
-			} else {
-				out.write(delimiterChar);
-			}
-			if (quote){
+			writeDelimiter();
+			if (quote && buffer != null){
+				writeEscapedAndQuoted(value);
+			} else if (quote){
 				out.write(escapeAndQuote(value));
 			} else {
 				out.write(value);
@@ -808,6 +831,139 @@ public class CSVPrinter implements CSVPrint {
 		return (sb.toString());
 	}
 
+	/**
+	 * Write the value enclosed in quotes, with the same escapes as
+	 * escapeAndQuote(), straight into the buffer.
+	 *
+	 * @param value needs to be escaped and quoted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeEscapedAndQuoted(String value) throws IOException {
+		buffer.write(quoteChar);
+		int start = 0;
+		for (int i=0; i<value.length(); i++){
+			char c = value.charAt(i);
+			char escape;
+			if (c == '\n'){
+				escape = 'n';
+			} else if (c == '\r'){
+				escape = 'r';
+			} else if (c == '\\' || c == quoteChar){
+				escape = c;
+			} else {
+				continue;
+			}
+			buffer.write(value, start, i - start);
+			buffer.write('\\');
+			buffer.write(escape);
+			start = i + 1;
+		}
+		buffer.write(value, start, value.length() - start);
+		buffer.write(quoteChar);
+	}
+
+	/**
+	 * Print an int as the next value on the line.  When printing to a
+	 * CSVBufferedWriter the number is written without creating a String.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeInt(int value) throws IOException {
+		writeLong(value);
+	}
+
+	/**
+	 * Print a long as the next value on the line.  When printing to a
+	 * CSVBufferedWriter the number is written without creating a String.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeLong(long value) throws IOException {
+		if (buffer == null || numberNeedsQuote(value < 0)){
+			write(Long.toString(value));
+			return;
+		}
+		try {
+			writeDelimiter();
+			buffer.writeLong(value);
+			if (autoFlush) flush();
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Print a double as the next value on the line.  When printing to a
+	 * CSVBufferedWriter, most numbers are written without creating a String.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeDouble(double value) throws IOException {
+		boolean negative = Double.doubleToRawLongBits(value) < 0 && !Double.isNaN(value);
+		if (buffer == null || numberNeedsQuote(negative)){
+			write(Double.toString(value));
+			return;
+		}
+		try {
+			writeDelimiter();
+			buffer.writeDouble(value);
+			if (autoFlush) flush();
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Whether a number would need quotes, because it is the first value on
+	 * the line and negative, or because it may contain the delimiter or quote.
+	 *
+	 * @param negative whether the number starts with a minus sign.
+	 * @return true if the number should be written as a quoted String.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean numberNeedsQuote(boolean negative){
+		return alwaysQuote || (newLine && negative) || isNumberChar(delimiterChar) || isNumberChar(quoteChar);
+	}
+
+	/**
+	 * Whether the character can appear in a number written by Long.toString()
+	 * or Double.toString().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static boolean isNumberChar(char c){
+		return (c >= '0' && c <= '9') || "-.EINaInfinity".indexOf(c) != -1;
+	}
+
+	/**
+	 * Write a delimiter unless this is the first value on the line.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeDelimiter() throws IOException {
+		if (newLine){
+			newLine = false;
+		} else {
+			out.write(delimiterChar);
+		}
+	}
+
 	/**
 	 * Flush any data written out to underlying streams.
 	 *
@@ -0,0 +1,40 @@
+/*
+ * Call back for records read from comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+/**
+ * Call back for when a record is read from a CSV file.
+ *
+ * @see ParallelCSVParser#forEachRecord(CSVRecordHandler)
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public interface CSVRecordHandler {
+
+	/**
+	 * Called when a record is read.
+	 *
+	 * @param values all the values from the record.
+	 * @param lineNumber line number on which the record started.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void record(String[] values, int lineNumber);
+}
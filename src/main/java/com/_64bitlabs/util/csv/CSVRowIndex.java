@@ -0,0 +1,451 @@
+/*
+ * Index of record positions in comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.*;
+
+/**
+ * The byte position and line number of every few records of a CSV file, so
+ * that a {@link RandomAccessCSVReader} can start parsing at any row without
+ * reading the rows before it.
+ * <p>
+ * The index is built in one pass with a {@link MappedCSVParser}, which finds
+ * record boundaries without decoding values.  Only every stride'th record is
+ * recorded; a reader skips at most stride - 1 records after jumping to the
+ * nearest recorded one.  Rows are numbered from zero and, as with the parsers,
+ * blank lines and comments are not rows.
+ * <p>
+ * The index can be saved next to the file it describes.  Positions and line
+ * numbers are stored as differences from the previous entry in a variable
+ * length encoding, which usually takes two or three bytes per entry.  The
+ * size and modification time of the file are saved with the index, and
+ * {@link #isCurrent(File)} reports whether they still match.
+ * <p>
+ * An example of how CSVRowIndex might be used:
+ * <pre>
+ * File data = new File("export.csv");
+ * CSVRowIndex index = CSVRowIndex.open(data, new File("export.csv.idx"));
+ * RandomAccessCSVReader reader = new RandomAccessCSVReader(data, index);
+ * String[] row = reader.getRow(1000000);
+ * reader.close();
+ * </pre>
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public final class CSVRowIndex {
+
+	/**
+	 * Default number of rows between index entries.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_STRIDE = 32;
+
+	/**
+	 * First bytes of a saved index.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int MAGIC = 0x43535649;
+
+	private static final int VERSION = 1;
+
+	private final long fileSize;
+	private final long fileModified;
+	private final char delimiter;
+	private final char quote;
+	private final String commentDelims;
+	private final int stride;
+	private final long rows;
+
+	/**
+	 * Position of every stride'th row, followed by the position of the end of the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Line number of every stride'th row, followed by the line number of the end of the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final int[] lines;
+
+	private CSVRowIndex(long fileSize, long fileModified, char delimiter, char quote, String commentDelims, int stride, long rows, long[] offsets, int[] lines){
+		this.fileSize = fileSize;
+		this.fileModified = fileModified;
+		this.delimiter = delimiter;
+		this.quote = quote;
+		this.commentDelims = commentDelims;
+		this.stride = stride;
+		this.rows = rows;
+		this.offsets = offsets;
+		this.lines = lines;
+	}
+
+	/**
+	 * Index a file that uses commas, double quotes and no comments.
+	 *
+	 * @param f file to index.
+	 * @return the index.
+	 * @throws IOException if an error occurs while reading, or the file changes while it is indexed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVRowIndex build(File f) throws IOException {
+		try {
+			return build(f, ',', '\"', "", DEFAULT_STRIDE);
+		} catch (BadDelimiterException | BadQuoteException x){
+			// The defaults are always accepted.
+			throw new IOException(x);
+		}
+	}
+
+	/**
+	 * Index a file.
+	 *
+	 * @param f file to index.
+	 * @param delimiter delimiter used by the file.
+	 * @param quote quote used by the file.
+	 * @param commentDelims characters that start comment lines in the file.
+	 * @param stride number of rows between index entries.
+	 * @return the index.
+	 * @throws BadDelimiterException if the character cannot be used as a delimiter.
+	 * @throws BadQuoteException if the character cannot be used as a quote.
+	 * @throws IOException if an error occurs while reading, or the file changes while it is indexed.
+	 * @throws IllegalArgumentException if the stride is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVRowIndex build(File f, char delimiter, char quote, String commentDelims, int stride) throws BadDelimiterException, BadQuoteException, IOException {
+		if (stride <= 0) throw new IllegalArgumentException("Bad stride: " + stride);
+		long size = f.length();
+		long modified = f.lastModified();
+		MappedCSVParser parser = new MappedCSVParser(f);
+		try {
+			configure(parser, delimiter, quote, commentDelims);
+			TLongArrayList offsets = new TLongArrayList();
+			TIntArrayList lines = new TIntArrayList();
+			long rows = 0;
+			while (parser.skipToRecord()){
+				if (rows % stride == 0){
+					offsets.add(parser.getPosition());
+					lines.add(parser.getPhysicalLine());
+				}
+				parser.skipRecord();
+				rows++;
+			}
+			offsets.add(parser.getPosition());
+			lines.add(parser.getPhysicalLine());
+			if (f.length() != size || f.lastModified() != modified){
+				throw new IOException(f + " changed while it was being indexed.");
+			}
+			return new CSVRowIndex(size, modified, delimiter, quote, commentDelims, stride, rows, offsets.toArray(), lines.toArray());
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Set the delimiter, quote and comment characters of a parser.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static void configure(MappedCSVParser parser, char delimiter, char quote, String commentDelims) throws BadDelimiterException, BadQuoteException {
+		if (quote == ','){
+			// Move the delimiter out of the way first.
+			parser.changeDelimiter(delimiter);
+			parser.changeQuote(quote);
+		} else {
+			parser.changeQuote(quote);
+			parser.changeDelimiter(delimiter);
+		}
+		parser.setCommentStart(commentDelims);
+	}
+
+	/**
+	 * Load the index of a file, or build it and save it if the saved index is
+	 * missing, unreadable, out of date or was built with different settings.
+	 *
+	 * @param f file to index.
+	 * @param indexFile where the index is saved.
+	 * @return an index that is current.
+	 * @throws IOException if an error occurs while reading the file or saving the index.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVRowIndex open(File f, File indexFile) throws IOException {
+		try {
+			return open(f, indexFile, ',', '\"', "", DEFAULT_STRIDE);
+		} catch (BadDelimiterException | BadQuoteException x){
+			// The defaults are always accepted.
+			throw new IOException(x);
+		}
+	}
+
+	/**
+	 * Load the index of a file, or build it and save it if the saved index is
+	 * missing, unreadable, out of date or was built with different settings.
+	 *
+	 * @param f file to index.
+	 * @param indexFile where the index is saved.
+	 * @param delimiter delimiter used by the file.
+	 * @param quote quote used by the file.
+	 * @param commentDelims characters that start comment lines in the file.
+	 * @param stride number of rows between index entries.
+	 * @return an index that is current.
+	 * @throws BadDelimiterException if the character cannot be used as a delimiter.
+	 * @throws BadQuoteException if the character cannot be used as a quote.
+	 * @throws IOException if an error occurs while reading the file or saving the index.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVRowIndex open(File f, File indexFile, char delimiter, char quote, String commentDelims, int stride) throws BadDelimiterException, BadQuoteException, IOException {
+		if (indexFile.exists()){
+			try {
+				CSVRowIndex index = read(indexFile);
+				if (index.isCurrent(f) && index.delimiter == delimiter && index.quote == quote
+						&& index.commentDelims.equals(commentDelims) && index.stride == stride){
+					return index;
+				}
+			} catch (IOException iox){
+				// Unreadable, so build it again.
+			}
+		}
+		CSVRowIndex index = build(f, delimiter, quote, commentDelims, stride);
+		index.write(indexFile);
+		return index;
+	}
+
+	/**
+	 * Whether the file still has the size and modification time it had when
+	 * it was indexed.
+	 *
+	 * @param f the indexed file.
+	 * @return true if the index can be used with the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean isCurrent(File f){
+		return f.isFile() && f.length() == fileSize && f.lastModified() == fileModified;
+	}
+
+	/**
+	 * Get the number of rows in the file.
+	 *
+	 * @return number of rows.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getRowCount(){
+		return rows;
+	}
+
+	/**
+	 * Get the number of rows between index entries.
+	 *
+	 * @return the stride.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getStride(){
+		return stride;
+	}
+
+	/**
+	 * Get the delimiter the file was indexed with.
+	 *
+	 * @return the delimiter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public char getDelimiter(){
+		return delimiter;
+	}
+
+	/**
+	 * Get the quote the file was indexed with.
+	 *
+	 * @return the quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public char getQuote(){
+		return quote;
+	}
+
+	/**
+	 * Get the comment characters the file was indexed with.
+	 *
+	 * @return the comment characters.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String getCommentStart(){
+		return commentDelims;
+	}
+
+	/**
+	 * Get the position of the index entry at or before a row.
+	 *
+	 * @param row row number, up to the number of rows.
+	 * @return position in the file of the entry's row, or of the end of the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	long getEntryPosition(long row){
+		return offsets[entry(row)];
+	}
+
+	/**
+	 * Get the line number of the index entry at or before a row.
+	 *
+	 * @param row row number, up to the number of rows.
+	 * @return line number of the entry's row, or of the end of the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	int getEntryLine(long row){
+		return lines[entry(row)];
+	}
+
+	/**
+	 * Get the row number of the index entry at or before a row.
+	 *
+	 * @param row row number, up to the number of rows.
+	 * @return row number of the entry.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	long getEntryRow(long row){
+		return row == rows ? rows : row - row % stride;
+	}
+
+	private int entry(long row){
+		if (row < 0 || row > rows) throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+		return row == rows ? offsets.length - 1 : (int)(row / stride);
+	}
+
+	/**
+	 * Save the index.
+	 *
+	 * @param indexFile where to save the index.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void write(File indexFile) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(fileModified);
+			out.writeChar(delimiter);
+			out.writeChar(quote);
+			out.writeUTF(commentDelims);
+			out.writeInt(stride);
+			out.writeLong(rows);
+			out.writeInt(offsets.length);
+			long lastOffset = 0;
+			int lastLine = 0;
+			for (int i = 0; i < offsets.length; i++){
+				writeVarLong(out, offsets[i] - lastOffset);
+				writeVarLong(out, lines[i] - lastLine);
+				lastOffset = offsets[i];
+				lastLine = lines[i];
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Load a saved index.
+	 *
+	 * @param indexFile where the index was saved.
+	 * @return the index.
+	 * @throws IOException if an error occurs while reading or the file is not a saved index.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVRowIndex read(File indexFile) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException(indexFile + " is not a CSV row index.");
+			long fileSize = in.readLong();
+			long fileModified = in.readLong();
+			char delimiter = in.readChar();
+			char quote = in.readChar();
+			String commentDelims = in.readUTF();
+			int stride = in.readInt();
+			long rows = in.readLong();
+			int count = in.readInt();
+			if (stride <= 0 || rows < 0 || count != (rows + stride - 1) / stride + 1){
+				throw new IOException(indexFile + " is corrupt.");
+			}
+			long[] offsets = new long[count];
+			int[] lines = new int[count];
+			long lastOffset = 0;
+			long lastLine = 0;
+			for (int i = 0; i < count; i++){
+				lastOffset += readVarLong(in);
+				lastLine += readVarLong(in);
+				offsets[i] = lastOffset;
+				lines[i] = (int)lastLine;
+			}
+			if (lastOffset > fileSize) throw new IOException(indexFile + " is corrupt.");
+			return new CSVRowIndex(fileSize, fileModified, delimiter, quote, commentDelims, stride, rows, offsets, lines);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Write a non-negative number seven bits at a time, low bits first, with
+	 * the high bit of each byte set if more bytes follow.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0){
+			out.writeByte((int)(value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	private static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7){
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7f) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Bad number in index.");
+	}
+}
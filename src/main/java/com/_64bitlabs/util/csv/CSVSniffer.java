@@ -0,0 +1,430 @@
+/*
+ * Guess the format of comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * Guess the {@link CSVDialect} of a file from a sample of its start.
+ * <p>
+ * The sample is scanned once.  For each candidate quote character the scan
+ * keeps track of whether it is inside a quoted value and counts, for each
+ * candidate delimiter, how many times the delimiter appears outside quotes
+ * in each record.  The delimiter that splits the most records into the same
+ * number of values wins, and the quote that then opens the most values is
+ * chosen.  Quotes inside quoted values that are doubled point to the Excel
+ * format; quotes escaped with a backslash point to {@link CSVParser}.  Records
+ * that start with a comment character are left out of the counts, and the
+ * character is taken to start comments only if some of those records do not
+ * have the winning number of delimiters; otherwise they are data that happen
+ * to start with that character.
+ * <p>
+ * To decide whether there is a header, the first few records are parsed.  A
+ * column votes for a header when its first value is not a number but the
+ * values below it are, or when the values below it all have the same length
+ * and the first does not.
+ * <p>
+ * An example of how CSVSniffer might be used:
+ * <pre>
+ * CSVParse parse = CSVSniffer.open(new FileReader("feed.txt"));
+ * String[] line;
+ * while ((line = parse.getLine()) != null){
+ *     System.out.println(line[0]);
+ * }
+ * parse.close();
+ * </pre>
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public final class CSVSniffer {
+
+	/**
+	 * Default number of characters sampled.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 1 << 18;
+
+	/**
+	 * Candidate delimiters, most likely first so that they win ties.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final char[] DELIMITERS = {',', ';', '\t', '|', ':'};
+
+	/**
+	 * Candidate quotes, most likely first.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final char[] QUOTES = {'"', '\''};
+
+	/**
+	 * Candidate comment characters.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final String COMMENTS = "#!%";
+
+	/**
+	 * Number of records parsed to look for a header.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int HEADER_RECORDS = 20;
+
+	private CSVSniffer(){
+	}
+
+	/**
+	 * Guess the dialect of a stream and return a parser for it that
+	 * starts at the beginning of the stream.  Only the sample is read
+	 * twice; it is buffered, so the stream need not support mark().
+	 *
+	 * @param in stream from which to read.
+	 * @return a parser for the dialect, a LabeledCSVParser if there is a header.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVParse open(Reader in) throws IOException {
+		return open(in, DEFAULT_SAMPLE_SIZE);
+	}
+
+	/**
+	 * Guess the dialect of a stream and return a parser for it that
+	 * starts at the beginning of the stream.
+	 *
+	 * @param in stream from which to read.
+	 * @param sampleSize number of characters to sample.
+	 * @return a parser for the dialect, a LabeledCSVParser if there is a header.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws IllegalArgumentException if the sample size is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVParse open(Reader in, int sampleSize) throws IOException {
+		if (sampleSize <= 0) throw new IllegalArgumentException("Bad sample size: " + sampleSize);
+		BufferedReader buffered = new BufferedReader(in, sampleSize);
+		buffered.mark(sampleSize);
+		char[] sample = new char[sampleSize];
+		int length = 0;
+		int n;
+		while (length < sampleSize && (n = buffered.read(sample, length, sampleSize - length)) != -1){
+			length += n;
+		}
+		buffered.reset();
+		CSVDialect dialect = sniff(sample, 0, length, length < sampleSize);
+		try {
+			return dialect.createParser(buffered);
+		} catch (BadDelimiterException | BadQuoteException x){
+			// Only characters that all parsers accept are guessed.
+			throw new IOException(x);
+		}
+	}
+
+	/**
+	 * Guess the dialect of a sample.
+	 *
+	 * @param sample characters from the start of a file.
+	 * @param offset index of the first character of the sample.
+	 * @param length number of characters in the sample.
+	 * @param complete true if the sample is the whole file, false if the last record may be cut off.
+	 * @return the most likely dialect.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static CSVDialect sniff(char[] sample, int offset, int length, boolean complete){
+		Scan[] scans = new Scan[QUOTES.length];
+		for (int q = 0; q < QUOTES.length; q++){
+			scans[q] = new Scan(QUOTES[q]);
+		}
+		int end = offset + length;
+		for (int i = offset; i < end; i++){
+			char c = sample[i];
+			char next = i + 1 < end ? sample[i + 1] : 0;
+			for (Scan scan : scans){
+				scan.accept(c, next);
+			}
+		}
+		if (complete){
+			for (Scan scan : scans){
+				scan.endRecord();
+			}
+		}
+
+		Scan best = scans[0];
+		int delimiter = 0;
+		double bestScore = -1;
+		for (Scan scan : scans){
+			for (int d = 0; d < DELIMITERS.length; d++){
+				double score = scan.score(d);
+				if (score > bestScore){
+					bestScore = score;
+					best = scan;
+					delimiter = d;
+				}
+			}
+		}
+		// The delimiter rarely depends on the quote, so pick the quote that opens the most values.
+		for (Scan scan : scans){
+			if (scan.opened > best.opened && scan.score(delimiter) >= bestScore) best = scan;
+		}
+		boolean excel = best.backslashed <= best.doubled;
+
+		StringBuilder comments = new StringBuilder();
+		for (int j = 0; j < COMMENTS.length(); j++){
+			char c = COMMENTS.charAt(j);
+			if (best.isComment(j, delimiter) && c != DELIMITERS[delimiter] && c != best.quote) comments.append(c);
+		}
+
+		CSVDialect dialect = new CSVDialect(excel, DELIMITERS[delimiter], best.quote, comments.toString(), false);
+		if (hasHeader(dialect, sample, offset, length, complete)){
+			dialect = new CSVDialect(excel, DELIMITERS[delimiter], best.quote, comments.toString(), true);
+		}
+		return dialect;
+	}
+
+	/**
+	 * Delimiter counts for every record of the sample, as seen with one quote character.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class Scan {
+		private final char quote;
+		private boolean inQuote = false;
+		private boolean atFieldStart = true;
+		private boolean atRecordStart = true;
+		/** Index of the comment character that started the current record, or -1. */
+		private int comment = -1;
+
+		/** Times the quote started a value. */
+		private int opened = 0;
+		/** Times the quote was doubled inside a quoted value. */
+		private int doubled = 0;
+		/** Times the quote was escaped with a backslash inside a quoted value. */
+		private int backslashed = 0;
+		/** Delimiter counts of the records that started with each comment character. */
+		private ArrayList<ArrayList<int[]>> commented = new ArrayList<ArrayList<int[]>>();
+
+		/** Count of each delimiter in the current record. */
+		private int[] counts = new int[DELIMITERS.length];
+		/** Counts of each delimiter in each finished record. */
+		private ArrayList<int[]> records = new ArrayList<int[]>();
+
+		/** Delimiter counts at or above this are too many to find a mode among. */
+		private static final int MAX_COUNT = 64;
+
+		/** Character to skip because it was part of an escape. */
+		private boolean skip = false;
+
+		Scan(char quote){
+			this.quote = quote;
+			for (int j = 0; j < COMMENTS.length(); j++){
+				commented.add(new ArrayList<int[]>());
+			}
+		}
+
+		void accept(char c, char next){
+			if (skip){
+				skip = false;
+				return;
+			}
+			if (comment != -1){
+				// Quotes are ignored so that a stray one in a real comment can't swallow the records after it.
+				if (c == '\n' || c == '\r'){
+					endRecord();
+				} else {
+					count(c);
+				}
+				return;
+			}
+			if (inQuote){
+				if (c == '\\' && next == quote){
+					backslashed++;
+					skip = true;
+				} else if (c == quote && next == quote){
+					doubled++;
+					skip = true;
+				} else if (c == quote){
+					inQuote = false;
+				}
+				return;
+			}
+			if (c == '\n' || c == '\r'){
+				if (!atRecordStart) endRecord();
+				return;
+			}
+			if (atRecordStart){
+				atRecordStart = false;
+				comment = COMMENTS.indexOf(c);
+				if (comment != -1) return;
+			}
+			if (c == quote && atFieldStart){
+				opened++;
+				inQuote = true;
+				atFieldStart = false;
+				return;
+			}
+			atFieldStart = count(c) || c == ' ';
+		}
+
+		/**
+		 * Count c if it is a candidate delimiter.
+		 *
+		 * @return true if c was counted.
+		 */
+		private boolean count(char c){
+			boolean delimiter = false;
+			for (int d = 0; d < DELIMITERS.length; d++){
+				if (c == DELIMITERS[d]){
+					counts[d]++;
+					delimiter = true;
+				}
+			}
+			return delimiter;
+		}
+
+		void endRecord(){
+			if (atRecordStart) return;
+			if (comment != -1){
+				commented.get(comment).add(counts);
+				comment = -1;
+			} else {
+				records.add(counts);
+			}
+			counts = new int[DELIMITERS.length];
+			atRecordStart = true;
+			atFieldStart = true;
+		}
+
+		/**
+		 * Score a delimiter by the fraction of records that have the most
+		 * common non-zero number of it, or zero if it never appears.
+		 */
+		double score(int d){
+			if (records.isEmpty()) return 0;
+			int mode = mode(d);
+			if (mode == 0) return 0;
+			int matching = 0;
+			int other = 0;
+			for (int[] record : records){
+				if (record[d] == mode){
+					matching++;
+				} else if (record[d] >= MAX_COUNT){
+					other++;
+				}
+			}
+			// Prefer delimiters that split records into more values when consistency ties.
+			return (double)matching / (records.size() + other) + mode * 1e-6;
+		}
+
+		/**
+		 * The most common non-zero number of a delimiter in a record, or zero
+		 * if it never appears.
+		 */
+		private int mode(int d){
+			int[] frequency = new int[MAX_COUNT];
+			int mode = 0;
+			for (int[] record : records){
+				int count = record[d];
+				if (count > 0 && count < MAX_COUNT && ++frequency[count] > frequency[mode]) mode = count;
+			}
+			return mode;
+		}
+
+		/**
+		 * Decide whether records that start with a comment character are
+		 * comments.  They are unless every one of them has the same number of
+		 * the delimiter as most records do, in which case they are data.  When
+		 * the delimiter never appears there is nothing to compare with, and any
+		 * such record is taken as a comment.
+		 */
+		boolean isComment(int j, int d){
+			int mode = mode(d);
+			for (int[] record : commented.get(j)){
+				if (mode == 0 || record[d] != mode) return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Decide whether the first record of the sample is a header.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static boolean hasHeader(CSVDialect dialect, char[] sample, int offset, int length, boolean complete){
+		ArrayList<String[]> records = new ArrayList<String[]>();
+		try {
+			CSVParse parse = dialect.createParser(new CharArrayReader(sample, offset, length));
+			String[] line;
+			while (records.size() <= HEADER_RECORDS && (line = parse.getLine()) != null){
+				records.add(line);
+			}
+		} catch (IOException | BadDelimiterException | BadQuoteException x){
+			return false;
+		}
+		// One record more than needed is read so that the last one, which may
+		// have been cut off by the end of the sample, can always be dropped.
+		if (!records.isEmpty() && (records.size() > HEADER_RECORDS || !complete)) records.remove(records.size() - 1);
+		if (records.size() < 2) return false;
+
+		String[] first = records.get(0);
+		int votes = 0;
+		for (int column = 0; column < first.length; column++){
+			boolean numeric = true;
+			int width = -1;
+			boolean sameWidth = true;
+			int values = 0;
+			for (int r = 1; r < records.size(); r++){
+				String[] record = records.get(r);
+				if (column >= record.length) continue;
+				values++;
+				String value = record[column];
+				if (!isNumber(value)) numeric = false;
+				if (width == -1) width = value.length();
+				else if (width != value.length()) sameWidth = false;
+			}
+			if (values == 0) continue;
+			if (numeric){
+				votes += isNumber(first[column]) ? -1 : 1;
+			} else if (sameWidth){
+				votes += first[column].length() != width ? 1 : -1;
+			}
+		}
+		return votes > 0;
+	}
+
+	private static boolean isNumber(String value){
+		value = value.trim();
+		if (value.length() == 0) return false;
+		try {
+			CSVColumns.parseDouble(value.toCharArray(), 0, value.length());
+			return true;
+		} catch (NumberFormatException x){
+			return false;
+		}
+	}
+}
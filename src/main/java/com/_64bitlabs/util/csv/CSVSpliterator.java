@@ -0,0 +1,145 @@
+/*
+ * Spliterator over records read from comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator over the lines returned by any CSVParse.  The parser
+ * can only be read in order, so splitting reads a batch of lines into
+ * an array which can then be processed by another thread.  Batches grow
+ * each time the spliterator is split, as they do for
+ * {@link Spliterators.AbstractSpliterator}.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+class CSVSpliterator implements Spliterator<String[]> {
+
+	/**
+	 * Lines added to the batch size at each split.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int BATCH_UNIT = 1 << 10;
+
+	/**
+	 * Largest batch of lines handed off by one split.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int MAX_BATCH = 1 << 25;
+
+	private final CSVParse parse;
+	private int batch = 0;
+
+	/**
+	 * Create a spliterator over the lines of a parser that have not yet been read.
+	 *
+	 * @param parse source of lines.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	CSVSpliterator(CSVParse parse){
+		this.parse = parse;
+	}
+
+	/**
+	 * Get a stream of the lines of a parser that have not yet been read.
+	 * Closing the stream closes the parser.
+	 *
+	 * @param parse source of lines.
+	 * @return a stream of lines.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static Stream<String[]> stream(CSVParse parse){
+		return StreamSupport.stream(new CSVSpliterator(parse), false).onClose(new Closer(parse));
+	}
+
+	public boolean tryAdvance(Consumer<? super String[]> action){
+		String[] line = getLine();
+		if (line == null) return false;
+		action.accept(line);
+		return true;
+	}
+
+	public void forEachRemaining(Consumer<? super String[]> action){
+		String[] line;
+		while ((line = getLine()) != null){
+			action.accept(line);
+		}
+	}
+
+	public Spliterator<String[]> trySplit(){
+		int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+		String[][] lines = new String[n][];
+		int count = 0;
+		String[] line;
+		while (count < n && (line = getLine()) != null){
+			lines[count++] = line;
+		}
+		if (count == 0) return null;
+		batch = count;
+		return Spliterators.spliterator(lines, 0, count, ORDERED | NONNULL);
+	}
+
+	public long estimateSize(){
+		return Long.MAX_VALUE;
+	}
+
+	public int characteristics(){
+		return ORDERED | NONNULL;
+	}
+
+	private String[] getLine(){
+		try {
+			return parse.getLine();
+		} catch (IOException iox){
+			throw new UncheckedIOException(iox);
+		}
+	}
+
+	/**
+	 * Closes a parser when the stream reading from it is closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static class Closer implements Runnable {
+		private final CSVParse parse;
+
+		Closer(CSVParse parse){
+			this.parse = parse;
+		}
+
+		public void run(){
+			try {
+				parse.close();
+			} catch (IOException iox){
+				throw new UncheckedIOException(iox);
+			}
+		}
+	}
+}
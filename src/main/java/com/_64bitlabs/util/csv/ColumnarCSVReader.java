@@ -0,0 +1,692 @@
+/*
+ * Read comma separated value data from a binary column file.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read a column file written by {@link ColumnarCSVWriter}.
+ * <p>
+ * Each block of the file is memory mapped the first time it is used, and
+ * values are read straight from the mapping: numbers are not parsed and
+ * dictionary columns can be compared by code without creating Strings.
+ * Columns are read a block at a time through {@link Column}, whose minimum
+ * and maximum allow whole blocks to be skipped.
+ * <p>
+ * An example of how ColumnarCSVReader might be used to total a column:
+ * <pre>
+ * ColumnarCSVReader reader = new ColumnarCSVReader(new File("feed.col"));
+ * int amount = reader.getLabelIndex("amount");
+ * long total = 0;
+ * for (int block = 0; block &lt; reader.getBlockCount(); block++){
+ *     ColumnarCSVReader.Column column = reader.getColumn(block, amount);
+ *     for (int i = 0; i &lt; column.size(); i++){
+ *         if (!column.isNull(i)) total += column.getLong(i);
+ *     }
+ * }
+ * reader.close();
+ * </pre>
+ * Columns may be read from several threads at once.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ColumnarCSVReader implements Closeable {
+
+	/**
+	 * Type of a column whose values in a block are all null.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int TYPE_NULL = 0;
+
+	/**
+	 * Type of a column stored as eight byte integers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int TYPE_LONG = 1;
+
+	/**
+	 * Type of a column stored as eight byte floating point numbers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int TYPE_DOUBLE = 2;
+
+	/**
+	 * Type of a column stored as codes into a sorted dictionary of strings.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int TYPE_DICTIONARY = 3;
+
+	/**
+	 * Type of a column stored as strings.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int TYPE_STRING = 4;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private String[] labels;
+	private int columnCount = 0;
+
+	/**
+	 * Position of the chunks of each block.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long[] blockPositions;
+	private int[] blockLengths;
+	private int[] blockRows;
+	private int[] blockColumns;
+
+	/**
+	 * Number of rows before each block, with the total row count at the end.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long[] blockFirstRows;
+
+	/**
+	 * Mapping of each block that has been used.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private MappedByteBuffer[] blocks;
+
+	/**
+	 * Offset of each chunk in each block that has been used.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int[][] chunkOffsets;
+
+	/**
+	 * Open a column file.
+	 *
+	 * @param f file written by ColumnarCSVWriter.
+	 * @throws IOException if the file cannot be read or is not a column file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ColumnarCSVReader(File f) throws IOException {
+		file = new RandomAccessFile(f, "r");
+		try {
+			channel = file.getChannel();
+			long size = channel.size();
+			ByteBuffer header = read(0, 12);
+			if (header.getInt() != ColumnarCSVWriter.MAGIC || header.getInt() != ColumnarCSVWriter.VERSION){
+				throw new IOException(f + " is not a column file.");
+			}
+			labels = new String[header.getInt()];
+			long position = 12;
+			for (int i = 0; i < labels.length; i++){
+				int length = read(position, 4).getInt();
+				labels[i] = new String(read(position + 4, length).array(), StandardCharsets.UTF_8);
+				position += 4 + length;
+			}
+			columnCount = labels.length;
+
+			TLongArrayList positions = new TLongArrayList();
+			TIntArrayList lengths = new TIntArrayList();
+			TIntArrayList rows = new TIntArrayList();
+			TIntArrayList columns = new TIntArrayList();
+			while (position < size){
+				ByteBuffer block = read(position, 12);
+				rows.add(block.getInt());
+				columns.add(block.getInt());
+				lengths.add(block.getInt());
+				positions.add(position + 12);
+				columnCount = Math.max(columnCount, columns.get(columns.size() - 1));
+				position += 12 + lengths.get(lengths.size() - 1);
+			}
+			if (position != size) throw new EOFException(f + " is truncated.");
+			blockPositions = positions.toArray();
+			blockLengths = lengths.toArray();
+			blockRows = rows.toArray();
+			blockColumns = columns.toArray();
+			blockFirstRows = new long[blockRows.length + 1];
+			for (int i = 0; i < blockRows.length; i++){
+				blockFirstRows[i + 1] = blockFirstRows[i] + blockRows[i];
+			}
+			blocks = new MappedByteBuffer[blockRows.length];
+			chunkOffsets = new int[blockRows.length][];
+		} catch (IOException x){
+			file.close();
+			throw x;
+		}
+	}
+
+	/**
+	 * Read bytes from the file into a new buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		if (length < 0) throw new IOException("Corrupt column file");
+		ByteBuffer b = ByteBuffer.allocate(length);
+		while (b.hasRemaining()){
+			if (channel.read(b, position + b.position()) < 0) throw new EOFException("Unexpected end of column file");
+		}
+		b.flip();
+		return b;
+	}
+
+	/**
+	 * Get the labels saved with the file.
+	 *
+	 * @return column names, empty if there are none.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[] getLabels(){
+		return labels.clone();
+	}
+
+	/**
+	 * Get the index of the column with a label.
+	 *
+	 * @param label name of the column.
+	 * @return index of the column, or -1 if there is no such label.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLabelIndex(String label){
+		for (int i = 0; i < labels.length; i++){
+			if (labels[i].equals(label)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the number of columns in the longest row, or the number of labels
+	 * if that is greater.
+	 *
+	 * @return number of columns.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getColumnCount(){
+		return columnCount;
+	}
+
+	/**
+	 * Get the number of rows.
+	 *
+	 * @return number of rows.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getRowCount(){
+		return blockFirstRows[blockRows.length];
+	}
+
+	/**
+	 * Get the number of blocks.
+	 *
+	 * @return number of blocks.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getBlockCount(){
+		return blockRows.length;
+	}
+
+	/**
+	 * Get the number of rows in a block.
+	 *
+	 * @param block index of the block.
+	 * @return number of rows.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getBlockRowCount(int block){
+		return blockRows[block];
+	}
+
+	/**
+	 * Get the index of the first row in a block.
+	 *
+	 * @param block index of the block.
+	 * @return index of the row, counting from zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getBlockFirstRow(int block){
+		return blockFirstRows[block];
+	}
+
+	/**
+	 * Get the values of one column in one block.
+	 *
+	 * @param block index of the block.
+	 * @param column index of the column.
+	 * @return the column, of type {@link #TYPE_NULL} if no row in the block
+	 *     is long enough to have the column.
+	 * @throws IOException if the block cannot be mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Column getColumn(int block, int column) throws IOException {
+		if (column < 0) throw new IndexOutOfBoundsException("column " + column);
+		if (column >= blockColumns[block]) return new Column(null, -1, blockRows[block]);
+		ByteBuffer b = map(block);
+		return new Column(b, chunkOffsets[block][column], blockRows[block]);
+	}
+
+	/**
+	 * Map a block and find its chunks, if that has not been done yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private synchronized ByteBuffer map(int block) throws IOException {
+		if (blocks[block] == null){
+			MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, blockPositions[block], blockLengths[block]);
+			int[] offsets = new int[blockColumns[block]];
+			int offset = 0;
+			for (int i = 0; i < offsets.length; i++){
+				if (offset + 6 > blockLengths[block]) throw new IOException("Corrupt column file");
+				offsets[i] = offset;
+				offset += 6 + b.getInt(offset + 2);
+			}
+			chunkOffsets[block] = offsets;
+			blocks[block] = b;
+		}
+		return blocks[block];
+	}
+
+	/**
+	 * Get a row as the values that were written.
+	 *
+	 * @param row index of the row, counting from zero.
+	 * @return the values in the row.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws IndexOutOfBoundsException if there is no such row.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[] getRow(long row) throws IOException {
+		if (row < 0 || row >= getRowCount()) throw new IndexOutOfBoundsException("row " + row);
+		int block = Arrays.binarySearch(blockFirstRows, row);
+		if (block < 0) block = -block - 2;
+		int i = (int)(row - blockFirstRows[block]);
+		String[] values = new String[blockColumns[block]];
+		int length = 0;
+		for (int column = 0; column < values.length; column++){
+			values[column] = getColumn(block, column).getString(i);
+			if (values[column] != null) length = column + 1;
+		}
+		return length == values.length ? values : Arrays.copyOf(values, length);
+	}
+
+	/**
+	 * Close the file.  Columns should not be used after the file is closed.
+	 *
+	 * @throws IOException if an error occurs while closing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * The values of one column in one block of a column file.
+	 *
+	 * @author Tolga Yilmaz info@64bitlabs.com
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final class Column {
+		private final ByteBuffer b;
+		private final int type;
+		private final int size;
+		private final int present;
+
+		/**
+		 * Offset of the null bitmap, or -1 if every row has a value.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private final int bitmap;
+
+		/**
+		 * Offset of the minimum and maximum.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private final int stats;
+
+		/**
+		 * Offset of the values, or for dictionary columns, of the codes.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private final int values;
+
+		/**
+		 * Offset of the table of string offsets, for dictionary and string columns.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private final int strings;
+		private final int stringCount;
+
+		Column(ByteBuffer b, int offset, int size){
+			this.b = b;
+			this.size = size;
+			if (b == null){
+				type = TYPE_NULL;
+				present = 0;
+				bitmap = stats = values = strings = -1;
+				stringCount = 0;
+				return;
+			}
+			type = b.get(offset);
+			int flags = b.get(offset + 1);
+			offset += 6;
+			present = b.getInt(offset);
+			offset += 4;
+			if ((flags & ColumnarCSVWriter.FLAG_NULLS) != 0){
+				bitmap = offset;
+				offset += (size + 7) >> 3;
+			} else {
+				bitmap = -1;
+			}
+			stats = offset;
+			switch (type){
+				case TYPE_LONG: case TYPE_DOUBLE: {
+					values = offset + 16;
+					strings = -1;
+					stringCount = 0;
+				} break;
+				case TYPE_DICTIONARY: {
+					offset = skipString(offset);
+					offset = skipString(offset);
+					stringCount = b.getInt(offset);
+					strings = offset + 4;
+					values = strings + 4 * (stringCount + 1) + b.getInt(strings + 4 * stringCount);
+				} break;
+				case TYPE_STRING: {
+					offset = skipString(offset);
+					offset = skipString(offset);
+					stringCount = size;
+					strings = offset;
+					values = -1;
+				} break;
+				default: {
+					values = strings = -1;
+					stringCount = 0;
+				}
+			}
+		}
+
+		private int skipString(int offset){
+			return offset + 4 + b.getInt(offset);
+		}
+
+		private String string(int offset, int length){
+			byte[] bytes = new byte[length];
+			ByteBuffer d = b.duplicate();
+			d.position(offset);
+			d.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Get the type in which this column is stored in this block.
+		 *
+		 * @return one of the TYPE_ constants.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int getType(){
+			return type;
+		}
+
+		/**
+		 * Get the number of rows in the block.
+		 *
+		 * @return number of rows, including those that are null.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int size(){
+			return size;
+		}
+
+		/**
+		 * Get the number of rows that have a value in this column.
+		 *
+		 * @return number of rows that are not null.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int getValueCount(){
+			return present;
+		}
+
+		/**
+		 * Whether a row was too short to have a value in this column.
+		 *
+		 * @param row index of the row in the block.
+		 * @return true if there is no value.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public boolean isNull(int row){
+			if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row);
+			if (present == size) return false;
+			if (present == 0) return true;
+			return (b.get(bitmap + (row >> 3)) & (1 << (row & 7))) == 0;
+		}
+
+		/**
+		 * Get a value of a {@link #TYPE_LONG} column.
+		 *
+		 * @param row index of the row in the block.
+		 * @return the value, or zero if it is null.
+		 * @throws IllegalStateException if the column is not stored as longs.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public long getLong(int row){
+			if (type != TYPE_LONG) throw new IllegalStateException("Not a long column");
+			if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row);
+			return b.getLong(values + 8 * row);
+		}
+
+		/**
+		 * Get a value of a {@link #TYPE_LONG} or {@link #TYPE_DOUBLE} column.
+		 *
+		 * @param row index of the row in the block.
+		 * @return the value, or zero if it is null.
+		 * @throws IllegalStateException if the column is not stored as numbers.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public double getDouble(int row){
+			if (type == TYPE_LONG) return getLong(row);
+			if (type != TYPE_DOUBLE) throw new IllegalStateException("Not a numeric column");
+			if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row);
+			return b.getDouble(values + 8 * row);
+		}
+
+		/**
+		 * Get the code of a value of a {@link #TYPE_DICTIONARY} column.
+		 * Codes are in the same order as the values they stand for.
+		 *
+		 * @param row index of the row in the block.
+		 * @return the code, or zero if the value is null.
+		 * @throws IllegalStateException if the column is not stored in a dictionary.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int getCode(int row){
+			if (type != TYPE_DICTIONARY) throw new IllegalStateException("Not a dictionary column");
+			if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row);
+			return b.getChar(values + 2 * row);
+		}
+
+		/**
+		 * Get the number of entries in the dictionary of a {@link #TYPE_DICTIONARY} column.
+		 *
+		 * @return number of distinct values.
+		 * @throws IllegalStateException if the column is not stored in a dictionary.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int getDictionarySize(){
+			if (type != TYPE_DICTIONARY) throw new IllegalStateException("Not a dictionary column");
+			return stringCount;
+		}
+
+		/**
+		 * Get an entry of the dictionary of a {@link #TYPE_DICTIONARY} column.
+		 *
+		 * @param code code of the value.
+		 * @return the value.
+		 * @throws IllegalStateException if the column is not stored in a dictionary.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public String getDictionaryValue(int code){
+			if (type != TYPE_DICTIONARY) throw new IllegalStateException("Not a dictionary column");
+			return stringAt(code);
+		}
+
+		private String stringAt(int index){
+			if (index < 0 || index >= stringCount) throw new IndexOutOfBoundsException("" + index);
+			int start = b.getInt(strings + 4 * index);
+			int end = b.getInt(strings + 4 * index + 4);
+			return string(strings + 4 * (stringCount + 1) + start, end - start);
+		}
+
+		/**
+		 * Get a value as it was written, whatever the type of the column.
+		 *
+		 * @param row index of the row in the block.
+		 * @return the value, or null if there is none.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public String getString(int row){
+			if (isNull(row)) return null;
+			switch (type){
+				case TYPE_LONG: return Long.toString(getLong(row));
+				case TYPE_DOUBLE: return Double.toString(getDouble(row));
+				case TYPE_DICTIONARY: return stringAt(getCode(row));
+				default: return stringAt(row);
+			}
+		}
+
+		/**
+		 * Get the smallest value of a {@link #TYPE_LONG} column.
+		 *
+		 * @return the smallest value that is not null.
+		 * @throws IllegalStateException if the column is not stored as longs.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public long getMinLong(){
+			if (type != TYPE_LONG) throw new IllegalStateException("Not a long column");
+			return b.getLong(stats);
+		}
+
+		/**
+		 * Get the largest value of a {@link #TYPE_LONG} column.
+		 *
+		 * @return the largest value that is not null.
+		 * @throws IllegalStateException if the column is not stored as longs.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public long getMaxLong(){
+			if (type != TYPE_LONG) throw new IllegalStateException("Not a long column");
+			return b.getLong(stats + 8);
+		}
+
+		/**
+		 * Get the smallest value of a {@link #TYPE_LONG} or {@link #TYPE_DOUBLE} column.
+		 *
+		 * @return the smallest value that is not null.
+		 * @throws IllegalStateException if the column is not stored as numbers.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public double getMinDouble(){
+			if (type == TYPE_LONG) return getMinLong();
+			if (type != TYPE_DOUBLE) throw new IllegalStateException("Not a numeric column");
+			return b.getDouble(stats);
+		}
+
+		/**
+		 * Get the largest value of a {@link #TYPE_LONG} or {@link #TYPE_DOUBLE} column.
+		 *
+		 * @return the largest value that is not null.
+		 * @throws IllegalStateException if the column is not stored as numbers.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public double getMaxDouble(){
+			if (type == TYPE_LONG) return getMaxLong();
+			if (type != TYPE_DOUBLE) throw new IllegalStateException("Not a numeric column");
+			return b.getDouble(stats + 8);
+		}
+
+		/**
+		 * Get the smallest value of a {@link #TYPE_DICTIONARY} or {@link #TYPE_STRING}
+		 * column, in the order of String.compareTo().
+		 *
+		 * @return the smallest value that is not null.
+		 * @throws IllegalStateException if the column is not stored as strings.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public String getMinString(){
+			if (type != TYPE_DICTIONARY && type != TYPE_STRING) throw new IllegalStateException("Not a string column");
+			return string(stats + 4, b.getInt(stats));
+		}
+
+		/**
+		 * Get the largest value of a {@link #TYPE_DICTIONARY} or {@link #TYPE_STRING}
+		 * column, in the order of String.compareTo().
+		 *
+		 * @return the largest value that is not null.
+		 * @throws IllegalStateException if the column is not stored as strings.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public String getMaxString(){
+			if (type != TYPE_DICTIONARY && type != TYPE_STRING) throw new IllegalStateException("Not a string column");
+			int offset = skipString(stats);
+			return string(offset + 4, b.getInt(offset));
+		}
+	}
+}
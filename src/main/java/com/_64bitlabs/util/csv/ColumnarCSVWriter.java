@@ -0,0 +1,464 @@
+/*
+ * Write comma separated value data to a binary column file.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Write rows to a column file that a {@link ColumnarCSVReader} can read
+ * without parsing.
+ * <p>
+ * Rows are collected into blocks of up to {@link #DEFAULT_BLOCK_ROWS} rows.
+ * Within a block each column is stored on its own, as the most compact of
+ * these types that holds every value in it exactly:
+ * <ul>
+ * <li>{@link ColumnarCSVReader#TYPE_LONG}: whole numbers written the way Long.toString() writes them.
+ * <li>{@link ColumnarCSVReader#TYPE_DOUBLE}: numbers written the way Double.toString() writes them.
+ * <li>{@link ColumnarCSVReader#TYPE_DICTIONARY}: strings that repeat, stored once each in a
+ * sorted dictionary and referred to by a two byte code.
+ * <li>{@link ColumnarCSVReader#TYPE_STRING}: any other strings.
+ * </ul>
+ * The smallest and largest value of each column in each block is stored
+ * with it so that readers can skip blocks that cannot match.  Rows may have
+ * different lengths; values past the end of a row are stored as nulls.
+ * <p>
+ * All numbers in the file are big-endian.  The file starts with a header:
+ * <pre>
+ * int magic, int version, int label count, labels
+ * </pre>
+ * followed by the blocks:
+ * <pre>
+ * int rows, int columns, int length of the chunks, chunks
+ * </pre>
+ * with one chunk per column:
+ * <pre>
+ * byte type, byte flags, int length of the rest, int non-null count,
+ * [null bitmap], [min, max], values
+ * </pre>
+ * Strings are stored as an int byte length followed by UTF-8.  The bitmap
+ * has a bit set for each row that has a value, and is only present when
+ * some do not.  String and dictionary values are stored as an int offset
+ * for each entry, and one more for the end, followed by the UTF-8 bytes.
+ * <p>
+ * An example of how ColumnarCSVWriter might be used to convert a file:
+ * <pre>
+ * LabeledCSVParser in = new LabeledCSVParser(new CSVParser(new FileReader("feed.csv")));
+ * ColumnarCSVWriter.convert(in, new File("feed.col"));
+ * in.close();
+ * </pre>
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ColumnarCSVWriter implements Closeable {
+
+	/**
+	 * Default largest number of rows in a block.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_BLOCK_ROWS = 1 << 16;
+
+	/**
+	 * Number of characters after which a block is ended early, to keep
+	 * blocks of long values small enough to map.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final long MAX_BLOCK_CHARS = 1 << 26;
+
+	/**
+	 * Largest number of entries in a dictionary, so that codes fit in two bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	/**
+	 * First bytes of a column file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final int MAGIC = 0x43535643;
+
+	static final int VERSION = 1;
+
+	/**
+	 * Chunk flag set when the chunk has a null bitmap.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final int FLAG_NULLS = 1;
+
+	private DataOutputStream out;
+	private int blockRows;
+	private ArrayList<String[]> rows = new ArrayList<String[]>();
+	private long blockChars = 0;
+	private long rowCount = 0;
+	private boolean closed = false;
+
+	/**
+	 * Create a writer for a file.
+	 *
+	 * @param f file to write.
+	 * @param labels names of the columns, or null.
+	 * @throws IOException if the file cannot be written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ColumnarCSVWriter(File f, String[] labels) throws IOException {
+		this(new FileOutputStream(f), labels, DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Create a writer.
+	 *
+	 * @param out stream to which to write the column file.
+	 * @param labels names of the columns, or null.
+	 * @param blockRows largest number of rows in a block.
+	 * @throws IOException if an error occurs while writing.
+	 * @throws IllegalArgumentException if blockRows is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ColumnarCSVWriter(OutputStream out, String[] labels, int blockRows) throws IOException {
+		if (blockRows <= 0) throw new IllegalArgumentException("Bad block size: " + blockRows);
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		this.blockRows = blockRows;
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(VERSION);
+		if (labels == null){
+			this.out.writeInt(0);
+		} else {
+			this.out.writeInt(labels.length);
+			for (String label: labels){
+				writeString(this.out, label);
+			}
+		}
+	}
+
+	/**
+	 * Read the rest of the input and write it to a column file.  If the
+	 * input is a {@link LabeledCSVParser}, its labels are saved as well.
+	 * The input is not closed.
+	 *
+	 * @param in source of the rows.
+	 * @param f file to write.
+	 * @return number of rows written.
+	 * @throws IOException if an error occurs while reading or writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static long convert(CSVParse in, File f) throws IOException {
+		return convert(in, new FileOutputStream(f), DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Read the rest of the input and write it as a column file to a stream,
+	 * which is closed afterwards.  If the input is a {@link LabeledCSVParser},
+	 * its labels are saved as well.  The input is not closed.
+	 *
+	 * @param in source of the rows.
+	 * @param out stream to which to write the column file.
+	 * @param blockRows largest number of rows in a block.
+	 * @return number of rows written.
+	 * @throws IOException if an error occurs while reading or writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static long convert(CSVParse in, OutputStream out, int blockRows) throws IOException {
+		String[] labels = null;
+		if (in instanceof LabeledCSVParser) labels = ((LabeledCSVParser)in).getLabels();
+		ColumnarCSVWriter writer = new ColumnarCSVWriter(out, labels, blockRows);
+		try {
+			String[] line;
+			while ((line = in.getLine()) != null){
+				writer.writeln(line);
+			}
+		} finally {
+			writer.close();
+		}
+		return writer.getRowCount();
+	}
+
+	/**
+	 * Add a row.
+	 *
+	 * @param values values in the row.
+	 * @throws IOException if an error occurs while writing a finished block.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeln(String[] values) throws IOException {
+		if (closed) throw new IOException("Writer closed");
+		values = values.clone();
+		for (String value: values){
+			if (value == null) throw new NullPointerException("null value in row " + rowCount);
+			blockChars += value.length();
+		}
+		rows.add(values);
+		rowCount++;
+		if (rows.size() == blockRows || blockChars >= MAX_BLOCK_CHARS) writeBlock();
+	}
+
+	/**
+	 * Get the number of rows added.
+	 *
+	 * @return number of rows.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getRowCount(){
+		return rowCount;
+	}
+
+	/**
+	 * Write any rows that have not been written and close the stream.
+	 *
+	 * @throws IOException if an error occurs while writing or closing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void close() throws IOException {
+		if (closed) return;
+		try {
+			if (!rows.isEmpty()) writeBlock();
+		} finally {
+			closed = true;
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the collected rows as a block.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeBlock() throws IOException {
+		int columns = 0;
+		for (String[] row: rows){
+			columns = Math.max(columns, row.length);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream chunks = new DataOutputStream(bytes);
+		for (int column = 0; column < columns; column++){
+			writeChunk(chunks, column);
+		}
+		out.writeInt(rows.size());
+		out.writeInt(columns);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+		rows.clear();
+		blockChars = 0;
+	}
+
+	/**
+	 * Choose a type for one column of the collected rows and write it.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeChunk(DataOutputStream d, int column) throws IOException {
+		int n = rows.size();
+		String[] values = new String[n];
+		int present = 0;
+		boolean isLong = true;
+		boolean isDouble = true;
+		long minLong = Long.MAX_VALUE;
+		long maxLong = Long.MIN_VALUE;
+		double minDouble = Double.POSITIVE_INFINITY;
+		double maxDouble = Double.NEGATIVE_INFINITY;
+		String min = null;
+		String max = null;
+		HashMap<String,Integer> dictionary = new HashMap<String,Integer>();
+		for (int i = 0; i < n; i++){
+			String[] row = rows.get(i);
+			if (column >= row.length) continue;
+			String s = row[column];
+			values[i] = s;
+			present++;
+			if (isLong){
+				if (isCanonicalLong(s)){
+					long v = Long.parseLong(s);
+					minLong = Math.min(minLong, v);
+					maxLong = Math.max(maxLong, v);
+				} else {
+					isLong = false;
+				}
+			}
+			if (isDouble){
+				if (isCanonicalDouble(s)){
+					double v = Double.parseDouble(s);
+					minDouble = Math.min(minDouble, v);
+					maxDouble = Math.max(maxDouble, v);
+				} else {
+					isDouble = false;
+				}
+			}
+			if (min == null || s.compareTo(min) < 0) min = s;
+			if (max == null || s.compareTo(max) > 0) max = s;
+			if (dictionary != null && !dictionary.containsKey(s)){
+				if (dictionary.size() == MAX_DICTIONARY_SIZE){
+					dictionary = null;
+				} else {
+					dictionary.put(s, 0);
+				}
+			}
+		}
+
+		int type;
+		if (present == 0){
+			type = ColumnarCSVReader.TYPE_NULL;
+		} else if (isLong){
+			type = ColumnarCSVReader.TYPE_LONG;
+		} else if (isDouble){
+			type = ColumnarCSVReader.TYPE_DOUBLE;
+		} else if (dictionary != null && dictionary.size() * 2 <= present){
+			type = ColumnarCSVReader.TYPE_DICTIONARY;
+		} else {
+			type = ColumnarCSVReader.TYPE_STRING;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream chunk = new DataOutputStream(bytes);
+		chunk.writeInt(present);
+		if (present > 0 && present < n){
+			byte[] bitmap = new byte[(n + 7) >> 3];
+			for (int i = 0; i < n; i++){
+				if (values[i] != null) bitmap[i >> 3] |= 1 << (i & 7);
+			}
+			chunk.write(bitmap);
+		}
+		switch (type){
+			case ColumnarCSVReader.TYPE_LONG: {
+				chunk.writeLong(minLong);
+				chunk.writeLong(maxLong);
+				for (int i = 0; i < n; i++){
+					chunk.writeLong(values[i] == null ? 0 : Long.parseLong(values[i]));
+				}
+			} break;
+			case ColumnarCSVReader.TYPE_DOUBLE: {
+				chunk.writeDouble(minDouble);
+				chunk.writeDouble(maxDouble);
+				for (int i = 0; i < n; i++){
+					chunk.writeDouble(values[i] == null ? 0 : Double.parseDouble(values[i]));
+				}
+			} break;
+			case ColumnarCSVReader.TYPE_DICTIONARY: {
+				writeString(chunk, min);
+				writeString(chunk, max);
+				// Sorted, so that codes compare in the same order as their values.
+				String[] entries = dictionary.keySet().toArray(new String[dictionary.size()]);
+				Arrays.sort(entries);
+				for (int i = 0; i < entries.length; i++){
+					dictionary.put(entries[i], i);
+				}
+				chunk.writeInt(entries.length);
+				writeStrings(chunk, entries);
+				for (int i = 0; i < n; i++){
+					chunk.writeChar(values[i] == null ? 0 : dictionary.get(values[i]));
+				}
+			} break;
+			case ColumnarCSVReader.TYPE_STRING: {
+				writeString(chunk, min);
+				writeString(chunk, max);
+				writeStrings(chunk, values);
+			} break;
+		}
+		d.writeByte(type);
+		d.writeByte(present > 0 && present < n ? FLAG_NULLS : 0);
+		d.writeInt(bytes.size());
+		bytes.writeTo(d);
+	}
+
+	/**
+	 * Write a string as its length and UTF-8.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static void writeString(DataOutputStream d, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		d.writeInt(b.length);
+		d.write(b);
+	}
+
+	/**
+	 * Write strings as a table of offsets followed by their UTF-8.
+	 * Null strings are written as empty.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static void writeStrings(DataOutputStream d, String[] strings) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		d.writeInt(0);
+		for (String s: strings){
+			if (s != null) bytes.write(s.getBytes(StandardCharsets.UTF_8));
+			d.writeInt(bytes.size());
+		}
+		bytes.writeTo(d);
+	}
+
+	/**
+	 * Whether a string is a long written as Long.toString() would write it,
+	 * so that it can be stored as a number and read back unchanged.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static boolean isCanonicalLong(String s){
+		int length = s.length();
+		int start = (length > 0 && s.charAt(0) == '-') ? 1 : 0;
+		if (length == start || length - start > 19) return false;
+		char first = s.charAt(start);
+		if (first == '0') return length == 1;
+		for (int i = start; i < length; i++){
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') return false;
+		}
+		if (length - start < 19) return true;
+		try {
+			Long.parseLong(s);
+			return true;
+		} catch (NumberFormatException x){
+			return false;
+		}
+	}
+
+	/**
+	 * Whether a string is a finite double written as Double.toString() would
+	 * write it, so that it can be stored as a number and read back unchanged.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static boolean isCanonicalDouble(String s){
+		int length = s.length();
+		if (length == 0) return false;
+		for (int i = 0; i < length; i++){
+			char c = s.charAt(i);
+			if ((c < '0' || c > '9') && c != '.' && c != '-' && c != 'E') return false;
+		}
+		try {
+			return Double.toString(Double.parseDouble(s)).equals(s);
+		} catch (NumberFormatException x){
+			return false;
+		}
+	}
+}
@@ -460,22 +460,31 @@ class ExcelCSVLexer {
 		quote = newQuote;
 	}
 
-	private String unescape(String s){
-		if (s.indexOf('\"', 1) == s.length()-1){
-			return s.substring(1, s.length()-1);
-		}
-		StringBuffer sb = new StringBuffer(s.length());
-		for (int i=1; i<s.length()-1; i++){
-			char c = s.charAt(i);
-			char c1 = s.charAt(i+1);
-			if (c == '\"' && c1 == '\"'){
+	/**
+	 * Remove the quotes from the quoted token that was just matched and collapse
+	 * its doubled quotes.  The token is rewritten in place in the buffer; the
+	 * lexer never looks at text it has already matched again.
+	 *
+	 * @return TOKEN
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int unescapeToken(){
+		char[] b = zzBuffer;
+		int start = zzStartRead + 1;
+		int end = zzMarkedPos - 1;
+		int w = start;
+		for (int i=start; i<end; i++){
+			char c = b[i];
+			if (c == '\"' && b[i+1] == '\"'){
 				i++;
-				sb.append("\"");
-			} else {
-				sb.append(c);
 			}
+			b[w++] = c;
 		}
-		return sb.toString();
+		tokenBuffer = b;
+		tokenOffset = start;
+		tokenLength = w - start;
+		return TOKEN;
 	}
 
 	private String commentDelims = "";
@@ -517,6 +526,218 @@ class ExcelCSVLexer {
 		return lines;
 	}
 
+	/** lexToken() found a token, available as a slice of tokenBuffer. */
+	private static final int TOKEN = 1;
+	/** lexToken() reached the end of the input. */
+	private static final int END_OF_INPUT = 0;
+	/** lexToken() passed a delimiter while resolving the end of a field. */
+	private static final int END_OF_FIELD = 2;
+	/** lexToken() passed a line break while resolving the end of a field. */
+	private static final int END_OF_RECORD = 3;
+
+	/**
+	 * Buffer holding the characters of the last token found.  Normally
+	 * the lexer's own buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private char[] tokenBuffer;
+	private int tokenOffset;
+	private int tokenLength;
+
+	/**
+	 * When set, the held token is copied out of the lexer's buffer before
+	 * the buffer is refilled, so that it survives further scanning.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean holdToken = false;
+	private char[] heldBuffer;
+	private int heldOffset;
+	private int heldLength;
+	private char[] holdBuffer = new char[64];
+
+	/**
+	 * Set when the token in tokenBuffer was found while resolving the end of
+	 * the previous token and should be returned by the next call to lexToken().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean lookahead = false;
+
+	/**
+	 * When set, lexToken() returns as soon as the field being scanned is
+	 * known to be followed by another field or to end its record.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean resolving = false;
+
+	/**
+	 * Make the text that was just matched the current token.
+	 *
+	 * @return TOKEN
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int matchedToken(){
+		tokenBuffer = zzBuffer;
+		tokenOffset = zzStartRead;
+		tokenLength = zzMarkedPos - zzStartRead;
+		return TOKEN;
+	}
+
+	/**
+	 * Make an empty field the current token.
+	 *
+	 * @return TOKEN
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int emptyToken(){
+		tokenBuffer = zzBuffer;
+		tokenOffset = zzStartRead;
+		tokenLength = 0;
+		return TOKEN;
+	}
+
+	/**
+	 * Copy the held token out of the lexer's buffer if it is about
+	 * to be overwritten.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void saveHeldToken(){
+		if (holdToken && heldBuffer == zzBuffer){
+			if (holdBuffer.length < heldLength){
+				holdBuffer = new char[Math.max(heldLength, holdBuffer.length * 2)];
+			}
+			System.arraycopy(zzBuffer, heldOffset, holdBuffer, 0, heldLength);
+			heldBuffer = holdBuffer;
+			heldOffset = 0;
+		}
+	}
+
+	/**
+	 * Determine whether the token that was just returned is the last one
+	 * in its record.  If necessary the input is scanned up to the next
+	 * delimiter or line break, but no further.
+	 *
+	 * @return true if the last token ended its record.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	boolean atEndOfRecord() throws IOException {
+		if (zzLexicalState == BEFORE) return false;
+		// A line break has been passed, so the next token starts a new line.
+		if (zzLexicalState != AFTER && addLine > 0) return true;
+		int line = lines;
+		int result;
+		resolving = true;
+		try {
+			result = lexToken();
+		} finally {
+			resolving = false;
+		}
+		if (result == TOKEN){
+			// Malformed quoting can produce another token without a delimiter.
+			lookahead = true;
+			return lines != line;
+		}
+		return result != END_OF_FIELD;
+	}
+
+	/**
+	 * Pass the values of the next line to the given handler without creating
+	 * a String for any of them.  The handler is given the characters of each value
+	 * directly from the buffer of this lexer.
+	 * <p>
+	 * If the line has already been partially read, only the values that have not
+	 * already been read are passed, and field indexes start at zero with the first
+	 * of those values.
+	 *
+	 * @param handler call back for each value.
+	 * @return false if there were no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean getLine(CSVFieldHandler handler) throws IOException {
+		return getLine(handler, 0) != -1;
+	}
+
+	/**
+	 * Pass the values of the next line to the given handler.
+	 *
+	 * @param handler call back for each value.
+	 * @param fieldIndex index to give the first value passed.
+	 * @return the line number of the values or -1 if there were no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	int getLine(CSVFieldHandler handler, int fieldIndex) throws IOException {
+		int line = -1;
+		while (lexToken() == TOKEN){
+			line = lines;
+			heldBuffer = tokenBuffer;
+			heldOffset = tokenOffset;
+			heldLength = tokenLength;
+			boolean endOfRecord;
+			holdToken = true;
+			try {
+				endOfRecord = atEndOfRecord();
+			} finally {
+				holdToken = false;
+			}
+			handler.field(heldBuffer, heldOffset, heldLength, fieldIndex++, endOfRecord);
+			if (endOfRecord) break;
+		}
+		return line;
+	}
+
+	/**
+	 * Scan the next token without creating a String for it.  The characters
+	 * of the token are available from getTokenBuffer(), getTokenOffset() and
+	 * getTokenLength() until the lexer is next used.
+	 *
+	 * @return false if there are no more tokens.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	boolean nextToken() throws IOException {
+		return lexToken() == TOKEN;
+	}
+
+	/**
+	 * @return buffer holding the token found by nextToken().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	char[] getTokenBuffer(){
+		return tokenBuffer;
+	}
+
+	/**
+	 * @return index in the token buffer of the first character of the token.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	int getTokenOffset(){
+		return tokenOffset;
+	}
+
+	/**
+	 * @return number of characters in the token.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	int getTokenLength(){
+		return tokenLength;
+	}
+
 
   /**
    * Creates a new scanner
@@ -566,6 +787,9 @@ class ExcelCSVLexer {
    */
   private boolean zzRefill() throws IOException {
 
+    /* keep a token that is still needed out of harm's way */
+    saveHeldToken();
+
     /* first: make room (if you can) */
     if (zzStartRead > 0) {
       System.arraycopy(zzBuffer, zzStartRead,
@@ -736,6 +960,22 @@ class ExcelCSVLexer {
    * @exception   java.io.IOException  if any I/O-Error occurs
    */
   public String getNextToken() throws IOException {
+    if (lexToken() == END_OF_INPUT) return null;
+    return new String(tokenBuffer, tokenOffset, tokenLength);
+  }
+
+  /**
+   * Resumes scanning until the next token is matched or the end of
+   * input is encountered.  The token is left in tokenBuffer.
+   *
+   * @return      TOKEN, END_OF_INPUT, or when resolving, END_OF_FIELD or END_OF_RECORD
+   * @exception   java.io.IOException  if any I/O-Error occurs
+   */
+  private int lexToken() throws IOException {
+    if (lookahead) {
+      lookahead = false;
+      return TOKEN;
+    }
     int zzInput;
     int zzAction;
 
@@ -808,10 +1048,9 @@ class ExcelCSVLexer {
         case 2: 
           { lines+=addLine;
 	addLine = 0;
-	String text = yytext();
-	if (commentDelims.indexOf(text.charAt(0)) == -1){
+	if (commentDelims.indexOf(zzBuffer[zzStartRead]) == -1){
 		yybegin(AFTER);
-		return(text);
+		return matchedToken();
 	} else {
 		yybegin(COMMENT);
 	}
@@ -819,58 +1058,60 @@ class ExcelCSVLexer {
         case 13: break;
         case 8: 
           { yybegin(BEFORE);
-	return("");
+	return emptyToken();
           }
         case 14: break;
         case 3: 
           { addLine++;
 	yybegin(YYINITIAL);
+	if (resolving) return END_OF_RECORD;
           }
         case 15: break;
         case 4: 
           { lines+=addLine;
 	addLine = 0;
 	yybegin(BEFORE);
-	return("");
+	return emptyToken();
           }
         case 16: break;
         case 11: 
           { lines+=addLine;
 	addLine = 0;
 	yybegin(AFTER);
-	return(unescape(yytext()));
+	return unescapeToken();
           }
         case 17: break;
         case 6: 
           { yybegin(AFTER);
-	return(yytext());
+	return matchedToken();
           }
         case 18: break;
         case 7: 
           { yybegin(YYINITIAL);
 	addLine++;
-	return("");
+	return emptyToken();
           }
         case 19: break;
         case 5: 
           { lines+=addLine;
 	addLine = 0;
 	yybegin(YYINITIAL);
-	return(yytext());
+	return matchedToken();
           }
         case 20: break;
         case 10: 
           { yybegin(BEFORE);
+	if (resolving) return END_OF_FIELD;
           }
         case 21: break;
         case 12: 
           { yybegin(AFTER);
-	return(unescape(yytext()));
+	return unescapeToken();
           }
         case 22: break;
         case 9: 
           { yybegin(YYINITIAL);
-	return(yytext());
+	return matchedToken();
           }
         case 23: break;
         case 1: 
@@ -884,11 +1125,11 @@ class ExcelCSVLexer {
             case BEFORE: {
               yybegin(YYINITIAL);
 	addLine++;
-	return("");
+	return emptyToken();
             }
             case 20: break;
             default:
-            return null;
+            return END_OF_INPUT;
             }
           }
           else {
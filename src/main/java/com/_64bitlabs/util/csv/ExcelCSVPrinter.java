@@ -98,6 +98,14 @@ public class ExcelCSVPrinter implements CSVPrint {
 	 */
 	protected Writer out;
 
+	/**
+	 * The writer, if it is a CSVBufferedWriter, so that values can be
+	 * escaped straight into its buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private CSVBufferedWriter buffer;
+
 	/**
 	 * True iff we just began a new line.
 	 *
@@ -160,6 +168,21 @@ public class ExcelCSVPrinter implements CSVPrint {
 		);
 	}
 
+	/**
+	 * Create a printer that will print values to the given buffered writer
+	 * with auto flushing disabled, so that values collect in the writer's
+	 * buffer until it is full or the printer is flushed or closed.
+	 * Values are escaped directly into the buffer, and numbers written with
+	 * writeInt(), writeLong() and writeDouble() are formatted there too.
+	 *
+	 * @param out buffered writer to which to print.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ExcelCSVPrinter(CSVBufferedWriter out){
+		this(out, ALWAYS_QUOTE_DEFAULT, false);
+	}
+
 	/**
 	 * Create a printer that will print values to the given
 	 * stream.	  The delimiter will be the comma, the line ending
@@ -275,6 +298,7 @@ public class ExcelCSVPrinter implements CSVPrint {
 	 */
 	public ExcelCSVPrinter(Writer out, char quote, char delimiter, String lineEnding, boolean alwaysQuote, boolean autoFlush) throws BadDelimiterException, BadQuoteException, BadLineEndingException {
 		this.out = out;
+		if (out instanceof CSVBufferedWriter) buffer = (CSVBufferedWriter)out;
 		changeQuote(quote);
 		changeDelimiter(delimiter);
 		setAlwaysQuote(alwaysQuote);
@@ -618,6 +642,7 @@ public class ExcelCSVPrinter implements CSVPrint {
 					char c = value.charAt(i);
 					if (c==quoteChar || c==delimiterChar || c=='\n' || c=='\r'){
 						quote = true;
+						break;
 					}
 				}
 			} else if (newLine) {
@@ -627,12 +652,10 @@ public class ExcelCSVPrinter implements CSVPrint {
 				// an empty line has no tokens.
 				quote = true;
 			}
-			if (newLine){
-				newLine = false;
-			} else {
-				out.write(delimiterChar);
-			}
-			if (quote){
+			writeDelimiter();
+			if (quote && buffer != null){
+				writeEscapedAndQuoted(value);
+			} else if (quote){
 				out.write(escapeAndQuote(value));
 			} else {
 				out.write(value);
@@ -658,6 +681,127 @@ public class ExcelCSVPrinter implements CSVPrint {
 		return (new StringBuffer(2 + s.length())).append(quoteChar).append(s).append(quoteChar).toString();
 	}
 
+	/**
+	 * Write the value enclosed in quotes, with quotes inside it doubled,
+	 * straight into the buffer.
+	 *
+	 * @param value needs to be escaped and quoted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeEscapedAndQuoted(String value) throws IOException {
+		buffer.write(quoteChar);
+		int start = 0;
+		for (int i=0; i<value.length(); i++){
+			if (value.charAt(i) == quoteChar){
+				// Write up to and including the quote, leaving it to be written again.
+				buffer.write(value, start, i + 1 - start);
+				start = i;
+			}
+		}
+		buffer.write(value, start, value.length() - start);
+		buffer.write(quoteChar);
+	}
+
+	/**
+	 * Print an int as the next value on the line.  When printing to a
+	 * CSVBufferedWriter the number is written without creating a String.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeInt(int value) throws IOException {
+		writeLong(value);
+	}
+
+	/**
+	 * Print a long as the next value on the line.  When printing to a
+	 * CSVBufferedWriter the number is written without creating a String.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeLong(long value) throws IOException {
+		if (buffer == null || numberNeedsQuote()){
+			write(Long.toString(value));
+			return;
+		}
+		try {
+			writeDelimiter();
+			buffer.writeLong(value);
+			if (autoFlush) flush();
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Print a double as the next value on the line.  When printing to a
+	 * CSVBufferedWriter, most numbers are written without creating a String.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void writeDouble(double value) throws IOException {
+		if (buffer == null || numberNeedsQuote()){
+			write(Double.toString(value));
+			return;
+		}
+		try {
+			writeDelimiter();
+			buffer.writeDouble(value);
+			if (autoFlush) flush();
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Whether a number would need quotes, because all values are quoted or
+	 * because it may contain the delimiter or quote.
+	 *
+	 * @return true if the number should be written as a quoted String.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean numberNeedsQuote(){
+		return alwaysQuote || isNumberChar(delimiterChar) || isNumberChar(quoteChar);
+	}
+
+	/**
+	 * Whether the character can appear in a number written by Long.toString()
+	 * or Double.toString().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static boolean isNumberChar(char c){
+		return (c >= '0' && c <= '9') || "-.EINaInfinity".indexOf(c) != -1;
+	}
+
+	/**
+	 * Write a delimiter unless this is the first value on the line.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeDelimiter() throws IOException {
+		if (newLine){
+			newLine = false;
+		} else {
+			out.write(delimiterChar);
+		}
+	}
+
 	/**
 	 * Flush any data written out to underlying streams.
 	 *
@@ -26,6 +26,7 @@ import gnu.trove.map.hash.THashMap;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Decorate a CSVParse object to provide an index of field names.  Many (most?)
@@ -36,6 +37,12 @@ import java.util.*;
  * used while parsing CSV data.  This class can also be used to conveniently
  * ignore field labels if they happen to be present in a CSV file and are not
  * desired.
+ * <p>
+ * When only a few columns of a wide file are needed, {@link #setProjection(String[])}
+ * limits {@link #getLine()} to those columns and {@link #addFilter(String, CSVPredicate)}
+ * skips records that do not match.  When reading from a {@link CSVParser},
+ * {@link ExcelCSVParser} or {@link MappedCSVParser}, Strings are only created
+ * for the projected columns of records that pass the filters.
  *
  * @author Campbell, Allen T. <allenc28@yahoo.com>
  * @author Tolga Yilmaz info@64bitlabs.com
@@ -81,6 +88,126 @@ public class LabeledCSVParser implements CSVParse {
 	 */
 	private int nextValueLine = -2;
 
+	/**
+	 * Labels of the columns requested with setProjection(String[]), or null.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private String[] projectedLabels;
+
+	/**
+	 * Columns returned by getLine(), or null to return all columns.
+	 * Columns not found in the labels are -1.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int[] projection;
+
+	/**
+	 * Filters added with addFilter(), in the order they were added.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ArrayList<Filter> filters = new ArrayList<Filter>();
+
+	/**
+	 * Set when the projection or filters change and the
+	 * lookup tables below have to be rebuilt.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean dirty = false;
+
+	/**
+	 * Column to which each filter applies, -1 for unknown labels.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int[] filterColumns = new int[0];
+	private CSVPredicate[] filterPredicates = new CSVPredicate[0];
+
+	/**
+	 * Whether each column must be copied out of the record.
+	 * Indexed by column.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean[] wanted = new boolean[0];
+
+	/**
+	 * Whether any filter applies to each column.
+	 * Indexed by column.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean[] filtered = new boolean[0];
+
+	/**
+	 * Characters of the wanted columns of the current record.  Strings are
+	 * made from these only once the record has passed all the filters.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private char[] chars = new char[256];
+	private int charCount;
+	private int[] starts = new int[0];
+	private int[] lengths = new int[0];
+
+	/**
+	 * State of the record being read by the field handler.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int fieldCount;
+	private int passedFilters;
+	private boolean rejected;
+
+	/**
+	 * Copies wanted columns and applies filters as fields are read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final CSVFieldHandler handler = new CSVFieldHandler(){
+		public void field(char[] buffer, int offset, int length, int fieldIndex, boolean endOfRecord){
+			fieldCount = fieldIndex + 1;
+			if (rejected) return;
+			if (fieldIndex >= wanted.length){
+				if (projection != null) return;
+				grow(fieldIndex + 1);
+			}
+			if (filtered[fieldIndex]){
+				for (int i = 0; i < filterColumns.length; i++){
+					if (filterColumns[i] != fieldIndex) continue;
+					if (!filterPredicates[i].accept(buffer, offset, length)){
+						rejected = true;
+						return;
+					}
+					passedFilters++;
+				}
+			}
+			if (wanted[fieldIndex]){
+				if (charCount + length > chars.length){
+					chars = Arrays.copyOf(chars, Math.max(charCount + length, chars.length * 2));
+				}
+				System.arraycopy(buffer, offset, chars, charCount, length);
+				starts[fieldIndex] = charCount;
+				lengths[fieldIndex] = length;
+				charCount += length;
+			}
+		}
+	};
+
+	/**
+	 * A predicate and the column to which it applies.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class Filter {
+		private String label;
+		private int column;
+		private CSVPredicate predicate;
+	}
+
 	/**
 	 * Construct a LabeledCSVParser on a CSVParse implementation.
 	 *
@@ -123,6 +250,22 @@ public class LabeledCSVParser implements CSVParse {
 		parse.changeQuote(newQuote);
 	}
 
+	/**
+	 * Get a stream of the lines that have not yet been read.
+	 * <p>
+	 * The lines can only be parsed in order, so a parallel stream reads
+	 * them in batches on one thread and processes the batches on others.
+	 * Closing the stream closes this parser.  IOExceptions that occur while
+	 * the stream is being read are thrown as UncheckedIOExceptions.
+	 *
+	 * @return a stream of lines.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Stream<String[]> stream(){
+		return CSVSpliterator.stream(this);
+	}
+
 	/**
 	 * Get all the values from the file.
 	 * <p>
@@ -144,6 +287,16 @@ public class LabeledCSVParser implements CSVParse {
 	 */
 	public String[][] getAllValues() throws IOException {
 		if (labels == null) setLabels();
+		if (projection != null || !filters.isEmpty() || dirty){
+			ArrayList<String[]> v = new ArrayList<String[]>();
+			String[] line;
+			while ((line = getLine()) != null){
+				v.add(line);
+			}
+			if (v.size() == 0) return null;
+			lastLine = v.get(v.size() - 1);
+			return v.toArray(new String[v.size()][]);
+		}
 		String[][] allValues = parse.getAllValues();
 		if (allValues == null){
 			lastLine = null;
@@ -204,6 +357,10 @@ public class LabeledCSVParser implements CSVParse {
 	 * are incompatible with {@link #getValueByLabel(String)} because the former
 	 * methods cause the offset of field values to shift and corrupt the internal
 	 * buffer maintained by {@link #getLine}.
+	 * <p>
+	 * If a projection has been set, the returned array has one element for
+	 * each projected column, null where the line is too short to have that
+	 * column.  Lines that do not pass the filters are skipped.
 	 *
 	 * @return all the values from the line or null if there are no more values.
 	 * @throws IOException if an error occurs while reading.
@@ -212,10 +369,214 @@ public class LabeledCSVParser implements CSVParse {
 	 */
 	public String[] getLine() throws IOException {
 		if (labels == null) setLabels();
-		lastLine = parse.getLine();
+		if (dirty) prepare();
+		if (projection == null && filters.isEmpty()){
+			lastLine = parse.getLine();
+		} else {
+			lastLine = getSelectedLine();
+		}
 		return lastLine;
 	}
 
+	/**
+	 * Read lines until one passes the filters and return its projected columns.
+	 *
+	 * @return the projected values or null if there are no more lines.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private String[] getSelectedLine() throws IOException {
+		while (true){
+			charCount = 0;
+			fieldCount = 0;
+			passedFilters = 0;
+			rejected = false;
+			if (!CSVColumns.getLine(parse, handler)) return null;
+			if (!rejected && passedFilters == filterColumns.length){
+				break;
+			}
+		}
+		if (projection == null){
+			String[] line = new String[fieldCount];
+			for (int i = 0; i < fieldCount; i++){
+				line[i] = new String(chars, starts[i], lengths[i]);
+			}
+			return line;
+		}
+		String[] line = new String[projection.length];
+		for (int i = 0; i < projection.length; i++){
+			int column = projection[i];
+			if (column >= 0 && column < fieldCount){
+				line[i] = new String(chars, starts[column], lengths[column]);
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * Make the lookup tables used while reading from the projection and
+	 * filters.  The labels must have already been read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void prepare(){
+		if (projectedLabels != null){
+			projection = new int[projectedLabels.length];
+			for (int i = 0; i < projectedLabels.length; i++){
+				projection[i] = columnOf(projectedLabels[i]);
+			}
+		}
+		filterColumns = new int[filters.size()];
+		filterPredicates = new CSVPredicate[filters.size()];
+		for (int i = 0; i < filterColumns.length; i++){
+			Filter filter = filters.get(i);
+			filterColumns[i] = filter.label != null ? columnOf(filter.label) : filter.column;
+			filterPredicates[i] = filter.predicate;
+		}
+		wanted = new boolean[0];
+		filtered = new boolean[0];
+		int width = 0;
+		if (projection != null){
+			for (int column : projection) width = Math.max(width, column + 1);
+		}
+		for (int column : filterColumns) width = Math.max(width, column + 1);
+		grow(width);
+		dirty = false;
+	}
+
+	/**
+	 * Make room in the lookup tables for the given number of columns.
+	 *
+	 * @param width number of columns.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void grow(int width){
+		int oldWidth = wanted.length;
+		if (width <= oldWidth) return;
+		width = Math.max(width, oldWidth * 2);
+		wanted = Arrays.copyOf(wanted, width);
+		filtered = Arrays.copyOf(filtered, width);
+		starts = Arrays.copyOf(starts, width);
+		lengths = Arrays.copyOf(lengths, width);
+		for (int i = oldWidth; i < width; i++){
+			wanted[i] = (projection == null);
+		}
+		if (oldWidth == 0){
+			if (projection != null){
+				for (int column : projection){
+					if (column >= 0) wanted[column] = true;
+				}
+			}
+			for (int column : filterColumns){
+				if (column >= 0) filtered[column] = true;
+			}
+		}
+	}
+
+	/**
+	 * Get the column in the file that has the given label.
+	 *
+	 * @param label The field name.
+	 * @return the column or -1 if there is no such label.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int columnOf(String label){
+		if (labelMap == null) return -1;
+		Integer column = labelMap.get(label);
+		return column == null ? -1 : column.intValue();
+	}
+
+	/**
+	 * Only return the columns with the given labels from {@link #getLine()},
+	 * in the order given.  Other columns are skipped without creating Strings
+	 * for them.
+	 * <p>
+	 * Labels that are not in the file produce null values.
+	 *
+	 * @param labels labels of the columns to return, or null to return all columns.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setProjection(String... labels){
+		projectedLabels = labels == null ? null : labels.clone();
+		projection = null;
+		dirty = true;
+	}
+
+	/**
+	 * Only return the given columns from {@link #getLine()}, in the order given.
+	 * Other columns are skipped without creating Strings for them.
+	 * The first column is 0.
+	 *
+	 * @param columns indexes of the columns to return, or null to return all columns.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setProjection(int... columns){
+		projectedLabels = null;
+		if (columns != null){
+			for (int column : columns){
+				if (column < 0) throw new IllegalArgumentException("Negative column: " + column);
+			}
+		}
+		projection = columns == null ? null : columns.clone();
+		dirty = true;
+	}
+
+	/**
+	 * Skip lines from {@link #getLine()} unless the value in the labeled column
+	 * passes the predicate.  Lines that are skipped do not have any Strings
+	 * created for them.  Lines without the column, and all lines if the label
+	 * is not in the file, are skipped.
+	 * <p>
+	 * When more than one filter is added, lines must pass all of them.
+	 *
+	 * @param label label of the column to test.
+	 * @param predicate test that values must pass.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void addFilter(String label, CSVPredicate predicate){
+		Filter filter = new Filter();
+		filter.label = label;
+		filter.predicate = predicate;
+		filters.add(filter);
+		dirty = true;
+	}
+
+	/**
+	 * Skip lines from {@link #getLine()} unless the value in the given column
+	 * passes the predicate.  The first column is 0.
+	 *
+	 * @param column index of the column to test.
+	 * @param predicate test that values must pass.
+	 *
+	 * @see #addFilter(String, CSVPredicate)
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void addFilter(int column, CSVPredicate predicate){
+		if (column < 0) throw new IllegalArgumentException("Negative column: " + column);
+		Filter filter = new Filter();
+		filter.column = column;
+		filter.predicate = predicate;
+		filters.add(filter);
+		dirty = true;
+	}
+
+	/**
+	 * Remove all the filters added with addFilter().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void clearFilters(){
+		filters.clear();
+		dirty = true;
+	}
+
 	/**
 	 * Read the next value from the file.  The line number from
 	 * which this value was taken can be obtained from getLastLineNumber().
@@ -294,6 +655,9 @@ public class LabeledCSVParser implements CSVParse {
 	 * array of field values for a single record of data.  This method returns
 	 * the index of a member of that array based on the specified field name.
 	 * The first field has the index 0.
+	 * <p>
+	 * If a projection has been set, the index is into the projected values
+	 * and -1 is returned for labels that are not projected.
 	 *
 	 * @param label The field name.
 	 * @return The index of the field name, or -1 if the label does not exist.
@@ -303,9 +667,13 @@ public class LabeledCSVParser implements CSVParse {
 	 */
 	public int getLabelIdx(String label) throws IOException {
 		if (labels == null) setLabels();
-		if (labelMap == null) return -1;
-		if (!labelMap.containsKey(label)) return -1;
-		return (labelMap.get(label)).intValue();
+		if (dirty) prepare();
+		int column = columnOf(label);
+		if (column == -1 || projection == null) return column;
+		for (int i = 0; i < projection.length; i++){
+			if (projection[i] == column) return i;
+		}
+		return -1;
 	}
 
 	/**
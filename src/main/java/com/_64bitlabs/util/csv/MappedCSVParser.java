@@ -0,0 +1,1205 @@
+/*
+ * Read memory mapped files in comma separated value format.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read UTF-8 or ASCII files in comma separated value format directly from
+ * memory mapped bytes.
+ * <p>
+ * ExcelCSVParser and CSVParser decode every byte of their input into characters
+ * and create a String for every field.  This parser instead scans for delimiters,
+ * quotes and line endings directly in a memory mapped region of the file (or in any
+ * ByteBuffer) and only decodes a field when asked.  Fields are exposed as slices of
+ * the underlying buffer through {@link #next()}, {@link #getFieldBuffer()},
+ * {@link #getFieldOffset()} and {@link #getFieldLength()}.  The usual CSVParse methods
+ * are also available and decode fields on demand.
+ * <p>
+ * The format understood is the one read by ExcelCSVParser (RFC 4180):
+ * leading and trailing whitespace is significant, quotes inside quoted fields are
+ * escaped by doubling them, text after a closing quote but before the next delimiter
+ * is ignored, blank lines are ignored and lines may be ignored if they start with a
+ * comment character.  New line breaks inside quoted fields do not count towards
+ * line numbers.
+ * <p>
+ * Because scanning happens on bytes, the delimiter, quote and comment characters must
+ * be ASCII characters and the input must be encoded in an ASCII compatible encoding
+ * such as UTF-8 or ISO-8859-1.  Large files are mapped a window at a time; a single
+ * field may not be larger than the maximum size of a mapping (2GB).
+ * <p>
+ * An example of how MappedCSVParser might be used:
+ * <pre>
+ * MappedCSVParser shredder = new MappedCSVParser(new File("export.csv"));
+ * while (shredder.next()){
+ *     if (shredder.getFieldIndex() == 2){
+ *         System.out.println(shredder.getFieldValue());
+ *     }
+ * }
+ * shredder.close();
+ * </pre>
+ *
+ * @see ExcelCSVParser
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class MappedCSVParser implements CSVParse {
+
+	/**
+	 * Default number of bytes of a file that are mapped at any one time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+	/**
+	 * Channel from which windows are mapped, or null if parsing a
+	 * ByteBuffer that was handed to us.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private FileChannel channel;
+
+	/**
+	 * File opened by this parser, closed along with the parser.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private RandomAccessFile file;
+
+	/**
+	 * Position in the channel at which parsing stops.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long channelEnd;
+
+	/**
+	 * Whether closing this parser closes the file or channel.  Parsers
+	 * created for part of another parser's input leave it open.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean ownsInput = true;
+
+	/**
+	 * Position in the input of the start of buf, for parsers created
+	 * for part of another parser's buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long base = 0;
+
+	/**
+	 * Number of bytes to map at a time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int windowSize;
+
+	/**
+	 * Bytes currently being scanned.  Positions stored by this parser are
+	 * absolute indexes into this buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ByteBuffer buf;
+
+	/**
+	 * Position in the channel of index zero in buf.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long windowStart;
+
+	/**
+	 * First index in buf that is part of the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int start;
+
+	/**
+	 * Index in buf of the next byte to scan.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int pos;
+
+	/**
+	 * Index in buf past the last byte that may be scanned.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int limit;
+
+	/**
+	 * Whether the end of buf is the end of the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean lastWindow;
+
+	private byte delimiter = ',';
+	private byte quote = '\"';
+	private String commentDelims = "";
+
+	/**
+	 * Physical line number of the next byte to scan, not counting
+	 * line breaks inside quoted fields.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int physicalLine = 1;
+
+	/**
+	 * Line number on which the current record started.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int recordLine = -1;
+
+	/**
+	 * True when the last field ended with a delimiter so that
+	 * another field follows on the same record.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean afterDelimiter = false;
+
+	private boolean haveField = false;
+	private int fieldStart;
+	private int fieldLength;
+	private boolean fieldEscaped;
+	private boolean fieldEndsRecord;
+	private int fieldIndex = -1;
+
+	/**
+	 * The line number the last value came from, or -1 if
+	 * no values have been returned.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int lastLine = -1;
+
+	/**
+	 * Scratch space for decoding fields out of direct buffers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Scratch space for passing fields to a CSVFieldHandler.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private char[] chars = new char[256];
+
+	/**
+	 * Parses the values given to getLine(int[]) and friends.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final CSVColumns.ArrayHandler numbers = new CSVColumns.ArrayHandler();
+
+	private Charset charset = StandardCharsets.UTF_8;
+
+	/**
+	 * Create a parser that memory maps the given file.
+	 * The file is closed when the parser is closed.
+	 *
+	 * @param f file that contains comma separated values.
+	 * @throws IOException if the file cannot be opened or mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MappedCSVParser(File f) throws IOException {
+		this(f, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Create a parser that memory maps the given file a window at a time.
+	 * The file is closed when the parser is closed.
+	 *
+	 * @param f file that contains comma separated values.
+	 * @param windowSize maximum number of bytes to map at once.
+	 * @throws IOException if the file cannot be opened or mapped.
+	 * @throws IllegalArgumentException if the window size is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MappedCSVParser(File f, int windowSize) throws IOException {
+		file = new RandomAccessFile(f, "r");
+		try {
+			init(file.getChannel(), 0, file.length(), windowSize);
+		} catch (IOException iox){
+			file.close();
+			throw iox;
+		}
+	}
+
+	/**
+	 * Create a parser that memory maps the given file and uses
+	 * the given delimiter.
+	 *
+	 * @param f file that contains delimited values.
+	 * @param delimiter record separator
+	 * @throws IOException if the file cannot be opened or mapped.
+	 * @throws BadDelimiterException if the specified delimiter cannot be used
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MappedCSVParser(File f, char delimiter) throws IOException, BadDelimiterException {
+		this(f);
+		changeDelimiter(delimiter);
+	}
+
+	/**
+	 * Create a parser that maps the given channel from its current position
+	 * to its end.  The channel is closed when the parser is closed.
+	 *
+	 * @param channel channel that contains comma separated values.
+	 * @throws IOException if the channel cannot be mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MappedCSVParser(FileChannel channel) throws IOException {
+		init(channel, channel.position(), channel.size(), DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Create a parser that maps a range of the given channel.
+	 * The channel is closed when the parser is closed.
+	 *
+	 * @param channel channel that contains comma separated values.
+	 * @param from position in the channel at which parsing starts.
+	 * @param to position in the channel at which parsing ends.
+	 * @param windowSize maximum number of bytes to map at once.
+	 * @throws IOException if the channel cannot be mapped.
+	 * @throws IllegalArgumentException if the range or window size is not valid.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MappedCSVParser(FileChannel channel, long from, long to, int windowSize) throws IOException {
+		init(channel, from, to, windowSize);
+	}
+
+	/**
+	 * Create a parser that reads the remaining bytes of the given buffer.
+	 * The buffer's position and limit are not modified.
+	 *
+	 * @param in buffer that contains comma separated values.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MappedCSVParser(ByteBuffer in){
+		buf = in;
+		start = in.position();
+		pos = start;
+		limit = in.limit();
+		lastWindow = true;
+	}
+
+	private void init(FileChannel channel, long from, long to, int windowSize) throws IOException {
+		if (windowSize <= 0) throw new IllegalArgumentException("Bad window size: " + windowSize);
+		if (from < 0 || from > to) throw new IllegalArgumentException("Bad range: " + from + "-" + to);
+		this.channel = channel;
+		this.channelEnd = to;
+		this.windowSize = windowSize;
+		map(from);
+		start = 0;
+	}
+
+	/**
+	 * Map a new window starting at the given channel position.
+	 *
+	 * @param from position in the channel.
+	 * @throws IOException if the channel cannot be mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void map(long from) throws IOException {
+		long length = Math.min(windowSize, channelEnd - from);
+		windowStart = from;
+		buf = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+		pos = 0;
+		limit = (int)length;
+		lastWindow = (from + length == channelEnd);
+	}
+
+	/**
+	 * Slide the window forward so that it begins at the given index of the
+	 * current window.  If the window would not move forward, it is enlarged.
+	 *
+	 * @param from index in the current window at which the new window starts.
+	 * @return the offset to subtract from indexes into the old window.
+	 * @throws IOException if the channel cannot be mapped or a field is too large to map.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int slide(int from) throws IOException {
+		if (from == 0){
+			if (windowSize == Integer.MAX_VALUE) throw new IOException("Field at position " + windowStart + " is too large to map.");
+			windowSize = (int)Math.min(Integer.MAX_VALUE, 2L * windowSize);
+		}
+		int oldPos = pos;
+		map(windowStart + from);
+		pos = oldPos - from;
+		return from;
+	}
+
+	/**
+	 * Advance to the next field.  The field may then be inspected with
+	 * {@link #getFieldBuffer()}, {@link #getFieldOffset()}, {@link #getFieldLength()}
+	 * and {@link #getFieldValue()}.
+	 *
+	 * @return true if there was another field, false at the end of the input.
+	 * @throws IOException if an error occurs while mapping the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean next() throws IOException {
+		if (!afterDelimiter){
+			if (!startRecord()){
+				haveField = false;
+				return false;
+			}
+			fieldIndex = 0;
+		} else {
+			fieldIndex++;
+		}
+		while (!scanField()){
+			slide(pos);
+		}
+		haveField = true;
+		return true;
+	}
+
+	/**
+	 * Skip line breaks, blank lines and comments until the start of the
+	 * next record.
+	 *
+	 * @return false if the end of the input was reached.
+	 * @throws IOException if an error occurs while mapping the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean startRecord() throws IOException {
+		while (true){
+			if (pos >= limit){
+				if (lastWindow) return false;
+				slide(pos);
+				continue;
+			}
+			byte b = buf.get(pos);
+			if (b == '\n'){
+				pos++;
+				physicalLine++;
+			} else if (b == '\r'){
+				if (pos + 1 >= limit && !lastWindow){
+					slide(pos);
+					continue;
+				}
+				pos++;
+				if (pos < limit && buf.get(pos) == '\n') pos++;
+				physicalLine++;
+			} else {
+				recordLine = physicalLine;
+				if (b != quote && b != delimiter && commentDelims.indexOf((char)(b & 0xff)) != -1){
+					skipComment();
+					continue;
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Skip to the line break at the end of a comment.
+	 *
+	 * @throws IOException if an error occurs while mapping the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void skipComment() throws IOException {
+		while (true){
+			while (pos < limit){
+				byte b = buf.get(pos);
+				if (b == '\n' || b == '\r') return;
+				pos++;
+			}
+			if (lastWindow) return;
+			slide(pos);
+		}
+	}
+
+	/**
+	 * Scan the field beginning at pos.
+	 *
+	 * @return false if the field runs past the end of the current window
+	 *     and the window must be moved before trying again.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean scanField(){
+		int p = pos;
+		fieldEscaped = false;
+		if (p < limit && buf.get(p) == quote){
+			int q = p + 1;
+			while (true){
+				while (q < limit && buf.get(q) != quote) q++;
+				if (q + 1 >= limit && !lastWindow) return false;
+				if (q >= limit){
+					// Unterminated quote: the rest of the input is the value.
+					fieldStart = p;
+					fieldLength = limit - p;
+					fieldEscaped = false;
+					return endField(limit);
+				}
+				if (q + 1 < limit && buf.get(q + 1) == quote){
+					fieldEscaped = true;
+					q += 2;
+				} else {
+					break;
+				}
+			}
+			fieldStart = p + 1;
+			fieldLength = q - fieldStart;
+			// Ignore anything between the closing quote and the next delimiter.
+			int e = q + 1;
+			while (e < limit){
+				byte b = buf.get(e);
+				if (b == delimiter || b == '\n' || b == '\r') break;
+				e++;
+			}
+			if (e >= limit && !lastWindow) return false;
+			return endField(e);
+		}
+		int e = p;
+		while (e < limit){
+			byte b = buf.get(e);
+			if (b == delimiter || b == '\n' || b == '\r') break;
+			e++;
+		}
+		if (e >= limit && !lastWindow) return false;
+		fieldStart = p;
+		fieldLength = e - p;
+		return endField(e);
+	}
+
+	/**
+	 * Record how the current field was terminated.
+	 *
+	 * @param e index of the byte that ended the field.
+	 * @return true
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean endField(int e){
+		if (e < limit && buf.get(e) == delimiter){
+			afterDelimiter = true;
+			fieldEndsRecord = false;
+			pos = e + 1;
+		} else {
+			afterDelimiter = false;
+			fieldEndsRecord = true;
+			pos = e;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the buffer that holds the current field.  The returned buffer is
+	 * shared with the parser and is only valid until the next call to
+	 * {@link #next()}.  Its position and limit should not be modified.
+	 *
+	 * @return buffer holding the bytes of the current field.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ByteBuffer getFieldBuffer(){
+		checkField();
+		return buf;
+	}
+
+	/**
+	 * Get the index of the first byte of the current field in the
+	 * buffer returned by {@link #getFieldBuffer()}.  Surrounding quotes are
+	 * not included.
+	 *
+	 * @return index of the start of the current field.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getFieldOffset(){
+		checkField();
+		return fieldStart;
+	}
+
+	/**
+	 * Get the number of raw bytes in the current field.  If the field
+	 * contains escaped quotes ({@link #isFieldEscaped()}) each escaped
+	 * quote is counted as two bytes.
+	 *
+	 * @return length of the current field in bytes.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getFieldLength(){
+		checkField();
+		return fieldLength;
+	}
+
+	/**
+	 * Get the position in the file of the first byte of the current field.
+	 *
+	 * @return position of the start of the current field.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getFieldPosition(){
+		checkField();
+		return windowStart + fieldStart - start;
+	}
+
+	/**
+	 * Whether the raw bytes of the current field contain doubled quotes
+	 * that must be collapsed to obtain the value.
+	 *
+	 * @return true if the field contains escaped quotes.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean isFieldEscaped(){
+		checkField();
+		return fieldEscaped;
+	}
+
+	/**
+	 * Get the index of the current field in its record.  The first
+	 * field in a record has index zero.
+	 *
+	 * @return index of the current field.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getFieldIndex(){
+		checkField();
+		return fieldIndex;
+	}
+
+	/**
+	 * Whether the current field is the last field in its record.
+	 *
+	 * @return true if the current field ends a record.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean isEndOfRecord(){
+		checkField();
+		return fieldEndsRecord;
+	}
+
+	/**
+	 * Get the line number on which the current record started.
+	 *
+	 * @return line number or -1 if no fields have been read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getRecordLineNumber(){
+		return recordLine;
+	}
+
+	/**
+	 * Decode the current field into a String.
+	 *
+	 * @return value of the current field.
+	 * @throws IllegalStateException if there is no current field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String getFieldValue(){
+		checkField();
+		if (buf.hasArray() && !fieldEscaped){
+			return new String(buf.array(), buf.arrayOffset() + fieldStart, fieldLength, charset);
+		}
+		if (scratch.length < fieldLength){
+			scratch = new byte[Math.max(fieldLength, scratch.length * 2)];
+		}
+		int n = 0;
+		int end = fieldStart + fieldLength;
+		for (int i = fieldStart; i < end; i++){
+			byte b = buf.get(i);
+			scratch[n++] = b;
+			if (fieldEscaped && b == quote) i++;
+		}
+		return new String(scratch, 0, n, charset);
+	}
+
+	/**
+	 * Skip line breaks, blank lines and comments so that the parser is
+	 * positioned at the start of the next record.  Must only be called
+	 * between records.
+	 *
+	 * @return false if the end of the input was reached.
+	 * @throws IOException if an error occurs while mapping the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	boolean skipToRecord() throws IOException {
+		return startRecord();
+	}
+
+	/**
+	 * Scan past the rest of the current record, or the next record if
+	 * the parser is between records, without decoding any values.
+	 *
+	 * @return false if there were no more records.
+	 * @throws IOException if an error occurs while mapping the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	boolean skipRecord() throws IOException {
+		if (!next()) return false;
+		while (!fieldEndsRecord && next());
+		return true;
+	}
+
+	/**
+	 * Get the position in the input of the next byte to be scanned.
+	 *
+	 * @return position of the next byte.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	long getPosition(){
+		return base + windowStart + pos - start;
+	}
+
+	/**
+	 * Whether some but not all of the fields of a record have been read.
+	 *
+	 * @return true if the next field continues the current record.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	boolean isInRecord(){
+		return afterDelimiter;
+	}
+
+	/**
+	 * Get the position in the input at which parsing stops.
+	 *
+	 * @return position past the last byte of the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	long getEnd(){
+		if (channel != null) return channelEnd;
+		return base + limit - start;
+	}
+
+	/**
+	 * Create a parser for part of the same input as this one, with the
+	 * same delimiter, quote, comment characters and character set.
+	 * Closing the new parser does not close the input.
+	 *
+	 * @param from position in the input at which parsing starts.
+	 * @param to position in the input at which parsing ends.
+	 * @return a new parser.
+	 * @throws IOException if the input cannot be mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	MappedCSVParser range(long from, long to) throws IOException {
+		MappedCSVParser parser;
+		if (channel != null){
+			parser = new MappedCSVParser(channel, from, to, windowSize);
+		} else {
+			ByteBuffer b = buf.duplicate();
+			b.limit(start + (int)(to - base));
+			b.position(start + (int)(from - base));
+			parser = new MappedCSVParser(b);
+			parser.base = from;
+		}
+		parser.delimiter = delimiter;
+		parser.quote = quote;
+		parser.commentDelims = commentDelims;
+		parser.charset = charset;
+		parser.ownsInput = false;
+		return parser;
+	}
+
+	/**
+	 * Move to a position in the input at which a record starts.  The
+	 * current window is kept if it holds the position, so that jumping
+	 * around one part of a large file does not map it again each time.
+	 * The line number is not changed; set it with setPhysicalLine().
+	 *
+	 * @param position position in the input at which parsing continues.
+	 * @throws IOException if the input cannot be mapped.
+	 * @throws IllegalArgumentException if the position is outside the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	void seek(long position) throws IOException {
+		if (position < base || position > getEnd()) throw new IllegalArgumentException("Bad position: " + position);
+		long offset = position - base - windowStart + start;
+		if (offset >= start && (offset < limit || offset == limit && lastWindow)){
+			pos = (int)offset;
+		} else {
+			map(position - base);
+		}
+		afterDelimiter = false;
+		haveField = false;
+		fieldIndex = -1;
+		recordLine = -1;
+		lastLine = -1;
+	}
+
+	/**
+	 * Get a stream of the records that have not yet been read.  When the
+	 * stream is made parallel, the input is split at record boundaries so
+	 * that each part is parsed by a different thread.
+	 * <p>
+	 * Closing the stream closes this parser.  IOExceptions that occur while
+	 * the stream is being read are thrown as UncheckedIOExceptions.
+	 *
+	 * @return a stream of records.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Stream<String[]> stream(){
+		return StreamSupport.stream(new MappedCSVSpliterator(this), false).onClose(new CSVSpliterator.Closer(this));
+	}
+
+	/**
+	 * Get the line number of the next byte to be scanned.  Line breaks
+	 * inside quoted fields are not counted.
+	 *
+	 * @return current line number.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	int getPhysicalLine(){
+		return physicalLine;
+	}
+
+	/**
+	 * Set the line number of the next byte to be scanned, for a parser
+	 * that starts part way through a file.
+	 *
+	 * @param line line number of the start of the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	void setPhysicalLine(int line){
+		physicalLine = line;
+	}
+
+	private void checkField(){
+		if (!haveField) throw new IllegalStateException("No current field.");
+	}
+
+	/**
+	 * Change the character set used to decode fields.  The character set
+	 * must encode ASCII characters as single bytes, as UTF-8 does.
+	 *
+	 * @param charset character set used to decode fields.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setCharset(Charset charset){
+		this.charset = charset;
+	}
+
+	/**
+	 * Read the next value from the file.  The line number from
+	 * which this value was taken can be obtained from getLastLineNumber().
+	 *
+	 * @return the next value or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String nextValue() throws IOException {
+		if (!next()){
+			// Like the lexers, report the line of the last record started (or zero).
+			lastLine = Math.max(recordLine, 0);
+			return null;
+		}
+		lastLine = recordLine;
+		return getFieldValue();
+	}
+
+	/**
+	 * Get the line number that the last value came from.
+	 * <p>
+	 * New line breaks that occur in the middle of a value are not
+	 * counted in the line number count.
+	 *
+	 * @return line number or -1 if no values have been returned yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int lastLineNumber(){
+		return lastLine;
+	}
+
+	/**
+	 * Get all the values from a line.
+	 * <p>
+	 * If the line has already been partially read, only the
+	 * values that have not already been read will be included.
+	 *
+	 * @return all the values from the line or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[] getLine() throws IOException {
+		if (!next()) return null;
+		ArrayList<String> v = new ArrayList<String>();
+		v.add(getFieldValue());
+		while (!fieldEndsRecord && next()){
+			v.add(getFieldValue());
+		}
+		lastLine = recordLine;
+		String[] result = new String[v.size()];
+		return v.toArray(result);
+	}
+
+	/**
+	 * Read the values from a line and pass them to a handler one at a time
+	 * instead of returning them in an array.
+	 * <p>
+	 * If the line has already been partially read, only the
+	 * values that have not already been read will be passed.
+	 * <p>
+	 * Fields made up of ASCII characters are copied to the handler
+	 * without creating a String.
+	 *
+	 * @param handler call back for each value.
+	 * @return false if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean getLine(CSVFieldHandler handler) throws IOException {
+		if (!next()) return false;
+		int index = 0;
+		do {
+			int length = decodeField();
+			handler.field(chars, 0, length, index++, fieldEndsRecord);
+		} while (!fieldEndsRecord && next());
+		lastLine = recordLine;
+		return true;
+	}
+
+	/**
+	 * Read the next value from the file as an int, without creating a String
+	 * for it when it is ASCII.  The line number from which this value was
+	 * taken can be obtained from getLastLineNumber().
+	 *
+	 * @return the next value.
+	 * @throws EOFException if there are no more values.
+	 * @throws NumberFormatException if the value is not an int.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int nextInt() throws IOException {
+		int length = nextChars();
+		return CSVColumns.parseInt(chars, 0, length);
+	}
+
+	/**
+	 * Read the next value from the file as a long, without creating a String
+	 * for it when it is ASCII.  The line number from which this value was
+	 * taken can be obtained from getLastLineNumber().
+	 *
+	 * @return the next value.
+	 * @throws EOFException if there are no more values.
+	 * @throws NumberFormatException if the value is not a long.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long nextLong() throws IOException {
+		int length = nextChars();
+		return CSVColumns.parseLong(chars, 0, length);
+	}
+
+	/**
+	 * Read the next value from the file as a double, without creating a String
+	 * for it in the common case.  The line number from which this value was
+	 * taken can be obtained from getLastLineNumber().
+	 *
+	 * @return the next value.
+	 * @throws EOFException if there are no more values.
+	 * @throws NumberFormatException if the value is not a number.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double nextDouble() throws IOException {
+		int length = nextChars();
+		return CSVColumns.parseDouble(chars, 0, length);
+	}
+
+	/**
+	 * Read the values from a line as ints into the given array.
+	 * <p>
+	 * If the line has already been partially read, only the values that
+	 * have not already been read will be included.  Values that do not fit
+	 * in the array are skipped.
+	 *
+	 * @param values array to fill with values from the start.
+	 * @return the number of values in the line, or -1 if there are no more values.
+	 * @throws NumberFormatException if a value is not an int.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLine(int[] values) throws IOException {
+		numbers.set(values);
+		return getLine(numbers) ? numbers.getCount() : -1;
+	}
+
+	/**
+	 * Read the values from a line as longs into the given array.
+	 * <p>
+	 * If the line has already been partially read, only the values that
+	 * have not already been read will be included.  Values that do not fit
+	 * in the array are skipped.
+	 *
+	 * @param values array to fill with values from the start.
+	 * @return the number of values in the line, or -1 if there are no more values.
+	 * @throws NumberFormatException if a value is not a long.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLine(long[] values) throws IOException {
+		numbers.set(values);
+		return getLine(numbers) ? numbers.getCount() : -1;
+	}
+
+	/**
+	 * Read the values from a line as doubles into the given array.
+	 * <p>
+	 * If the line has already been partially read, only the values that
+	 * have not already been read will be included.  Values that do not fit
+	 * in the array are skipped.
+	 *
+	 * @param values array to fill with values from the start.
+	 * @return the number of values in the line, or -1 if there are no more values.
+	 * @throws NumberFormatException if a value is not a number.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLine(double[] values) throws IOException {
+		numbers.set(values);
+		return getLine(numbers) ? numbers.getCount() : -1;
+	}
+	/**
+	 * Read the next value into chars.
+	 *
+	 * @return number of characters in the value.
+	 * @throws EOFException if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int nextChars() throws IOException {
+		if (!next()){
+			lastLine = Math.max(recordLine, 0);
+			throw new EOFException("No more values.");
+		}
+		lastLine = recordLine;
+		return decodeField();
+	}
+
+	/**
+	 * Copy the current field into chars.
+	 *
+	 * @return number of characters in the field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int decodeField(){
+		if (chars.length < fieldLength){
+			chars = new char[Math.max(fieldLength, chars.length * 2)];
+		}
+		int n = 0;
+		int end = fieldStart + fieldLength;
+		for (int i = fieldStart; i < end; i++){
+			byte b = buf.get(i);
+			if (b < 0){
+				// Not ASCII; let the character set do the work.
+				String value = getFieldValue();
+				if (chars.length < value.length()) chars = new char[value.length()];
+				value.getChars(0, value.length(), chars, 0);
+				return value.length();
+			}
+			chars[n++] = (char)b;
+			if (fieldEscaped && b == quote) i++;
+		}
+		return n;
+	}
+
+	/**
+	 * Get the line number that the last value came from.
+	 *
+	 * @return line number or -1 if no values have been returned yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLastLineNumber(){
+		return lastLine;
+	}
+
+	/**
+	 * Get all the values from the file.
+	 * <p>
+	 * If the file has already been partially read, only the
+	 * values that have not already been read will be included.
+	 * <p>
+	 * Each line of the file that has at least one value will be
+	 * represented.  Comments and empty lines are ignored.
+	 * <p>
+	 * The resulting double array may be jagged.
+	 *
+	 * @return all the values from the file or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[][] getAllValues() throws IOException {
+		ArrayList<String[]> v = new ArrayList<String[]>();
+		String[] line;
+		while((line = getLine()) != null){
+			v.add(line);
+		}
+		if (v.size() == 0){
+			return null;
+		}
+		String[][] result = new String[v.size()][];
+		return v.toArray(result);
+	}
+
+	/**
+	 * Whether the character may be used as a delimiter or quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static boolean charIsSafe(char c){
+		return c < 0x80 && c != '\n' && c != '\r';
+	}
+
+	/**
+	 * Change this parser so that it uses a new delimiter.
+	 * <p>
+	 * The initial character is a comma, the delimiter cannot be changed
+	 * to a quote, a line break or a non-ASCII character.
+	 *
+	 * @param newDelim delimiter to which to switch.
+	 * @throws BadDelimiterException if the character cannot be used as a delimiter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeDelimiter(char newDelim) throws BadDelimiterException {
+		if (newDelim == delimiter) return; // no need to do anything.
+		if (!charIsSafe(newDelim) || newDelim == quote){
+			throw new BadDelimiterException(newDelim + " is not a safe delimiter.");
+		}
+		delimiter = (byte)newDelim;
+	}
+
+	/**
+	 * Change this parser so that it uses a new character for quoting.
+	 * <p>
+	 * The initial character is a double quote ("), the quote cannot be changed
+	 * to the delimiter, a line break or a non-ASCII character.
+	 *
+	 * @param newQuote character to use for quoting.
+	 * @throws BadQuoteException if the character cannot be used as a quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeQuote(char newQuote) throws BadQuoteException {
+		if (newQuote == quote) return; // no need to do anything.
+		if (!charIsSafe(newQuote) || newQuote == delimiter){
+			throw new BadQuoteException(newQuote + " is not a safe quote.");
+		}
+		quote = (byte)newQuote;
+	}
+
+	/**
+	 * Set the characters that indicate a comment at the beginning of the line.
+	 * For example if the string "#;!" were passed in, all of the following lines
+	 * would be comments:<br>
+	 * <pre> # Comment
+	 * ; Another Comment
+	 * ! Yet another comment</pre>
+	 * By default there are no comments in CSV files.  The delimiter and quote
+	 * may not be used to indicate comment lines.
+	 *
+	 * @param commentDelims list of characters a comment line may start with.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setCommentStart(String commentDelims){
+		this.commentDelims = commentDelims;
+	}
+
+	/**
+	 * Close the file or channel upon which this parser is based.
+	 *
+	 * @throws IOException if an error occurs while closing the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void close() throws IOException {
+		if (!ownsInput) return;
+		if (file != null) file.close();
+		else if (channel != null) channel.close();
+	}
+}
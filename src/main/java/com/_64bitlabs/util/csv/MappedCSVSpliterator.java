@@ -0,0 +1,182 @@
+/*
+ * Spliterator over records in memory mapped comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the records of a MappedCSVParser that splits the input
+ * itself rather than handing off batches of parsed records.
+ * <p>
+ * A record boundary cannot be found by looking for a line break near the
+ * middle of the input, because the line break may be inside a quoted value.
+ * Instead trySplit() scans the records in the first half of the remaining
+ * input with {@link MappedCSVParser#next()}, which finds field boundaries
+ * without decoding any values.  The scanned records are handed to a new
+ * spliterator with their own parser, which then knows exactly how many
+ * records it has.  The scan costs much less than parsing, so the halves
+ * can be parsed in parallel.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+class MappedCSVSpliterator implements Spliterator<String[]> {
+
+	/**
+	 * Inputs smaller than this are not split.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final long MIN_SPLIT = 1 << 16;
+
+	/**
+	 * Number of bytes sampled to estimate the size of records.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final long SAMPLE_SIZE = 1 << 16;
+
+	private final MappedCSVParser parser;
+	private final long end;
+
+	/**
+	 * Number of records remaining, or -1 if unknown.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long records;
+
+	/**
+	 * Average number of bytes per record, or zero if not yet known.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private double recordSize = 0;
+
+	/**
+	 * Create a spliterator over the records of a parser that have not yet been read.
+	 *
+	 * @param parser source of records.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	MappedCSVSpliterator(MappedCSVParser parser){
+		this(parser, -1);
+	}
+
+	private MappedCSVSpliterator(MappedCSVParser parser, long records){
+		this.parser = parser;
+		this.end = parser.getEnd();
+		this.records = records;
+	}
+
+	public boolean tryAdvance(Consumer<? super String[]> action){
+		String[] line = getLine();
+		if (line == null) return false;
+		if (records > 0) records--;
+		action.accept(line);
+		return true;
+	}
+
+	public void forEachRemaining(Consumer<? super String[]> action){
+		String[] line;
+		while ((line = getLine()) != null){
+			action.accept(line);
+		}
+		records = 0;
+	}
+
+	public Spliterator<String[]> trySplit(){
+		try {
+			if (parser.isInRecord()){
+				// A parser started part way through a record can't pick up where
+				// this one is, so hand off the rest of the record on its own.
+				String[] line = parser.getLine();
+				if (records > 0) records--;
+				return Spliterators.spliterator(new Object[]{line}, ORDERED | NONNULL);
+			}
+			long from = parser.getPosition();
+			if (end - from < MIN_SPLIT) return null;
+			long middle = from + (end - from) / 2;
+			long count = 0;
+			while (parser.getPosition() < middle && parser.skipRecord()){
+				count++;
+				if (!parser.skipToRecord()) break;
+			}
+			if (count == 0) return null;
+			long to = parser.getPosition();
+			recordSize = (double)(to - from) / count;
+			if (records >= 0) records -= count;
+			return new MappedCSVSpliterator(parser.range(from, to), count);
+		} catch (IOException iox){
+			throw new UncheckedIOException(iox);
+		}
+	}
+
+	/**
+	 * The exact number of records if this spliterator was made by trySplit(),
+	 * otherwise an estimate from the size of the records seen so far.
+	 */
+	public long estimateSize(){
+		if (records >= 0) return records;
+		long remaining = end - parser.getPosition();
+		if (remaining <= 0) return 0;
+		if (recordSize == 0) recordSize = sampleRecordSize();
+		return (long)Math.ceil(remaining / recordSize);
+	}
+
+	/**
+	 * Measure the average size of the records at the start of the remaining input.
+	 *
+	 * @return average number of bytes per record.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private double sampleRecordSize(){
+		try {
+			long from = parser.getPosition();
+			MappedCSVParser sample = parser.range(from, Math.min(end, from + SAMPLE_SIZE));
+			long count = 0;
+			while (sample.next()){
+				if (sample.isEndOfRecord()) count++;
+			}
+			// A record cut off by the end of the sample still counts.
+			return Math.max(1, (double)(sample.getPosition() - from) / Math.max(count, 1));
+		} catch (IOException iox){
+			throw new UncheckedIOException(iox);
+		}
+	}
+
+	public int characteristics(){
+		if (records >= 0) return ORDERED | NONNULL | SIZED | SUBSIZED;
+		return ORDERED | NONNULL;
+	}
+
+	private String[] getLine(){
+		try {
+			return parser.getLine();
+		} catch (IOException iox){
+			throw new UncheckedIOException(iox);
+		}
+	}
+}
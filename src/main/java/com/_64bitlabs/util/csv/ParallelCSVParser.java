@@ -0,0 +1,601 @@
+/*
+ * Read files in comma separated value format using multiple threads.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Read a file in comma separated value format by parsing pieces of it on
+ * several threads at once.
+ * <p>
+ * The file is split into chunks of roughly equal size.  Each chunk is parsed
+ * on a ForkJoinPool with a {@link MappedCSVParser}, starting at the first line
+ * break in the chunk, and stops at the first record that starts after the end of
+ * the chunk.  Because a line break may be inside a quoted value, the start of
+ * each chunk is only a guess; before the records of a chunk are used, the guess is
+ * checked against the place where the previous chunk really ended and the chunk is
+ * parsed again if the guess was wrong.  The values and line numbers returned are
+ * therefore exactly those that MappedCSVParser (and ExcelCSVParser) would return.
+ * <p>
+ * The CSVParse methods return records in the order in which they appear in the
+ * file while later chunks are parsed in the background.  The number of chunks
+ * parsed ahead is limited so that memory use stays bounded.  For maximum throughput,
+ * {@link #forEachRecord(CSVRecordHandler)} hands records to a call back from several
+ * threads at once, without ordering between chunks.
+ * <p>
+ * The delimiter, quote and comment characters must be set before the first value
+ * is read.
+ * <p>
+ * An example of how ParallelCSVParser might be used:
+ * <pre>
+ * ParallelCSVParser shredder = new ParallelCSVParser(new File("export.csv"));
+ * String[] line;
+ * while ((line = shredder.getLine()) != null){
+ *     System.out.println("" + shredder.lastLineNumber() + " " + line[0]);
+ * }
+ * shredder.close();
+ * </pre>
+ *
+ * @see MappedCSVParser
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ParallelCSVParser implements CSVParse {
+
+	/**
+	 * Default number of bytes in each chunk.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long size;
+	private int chunkSize;
+
+	/**
+	 * Pool on which chunks are parsed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Whether the pool was created by (and should be shut down with) this parser.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean ownPool;
+
+	/**
+	 * Maximum number of chunks that are parsed ahead of the reader.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int maxInFlight;
+
+	private char delimiter = ',';
+	private char quote = '\"';
+	private String commentDelims = "";
+
+	/**
+	 * Chunks that have been submitted to the pool, in file order.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ArrayDeque<ChunkTask> inFlight = new ArrayDeque<ChunkTask>();
+
+	/**
+	 * Nominal start of the next chunk to submit.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long nextChunkStart = 0;
+
+	/**
+	 * Position at which the previous chunk really ended, which is where
+	 * the next chunk must start, or -1 before the first chunk.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long expectedStart = -1;
+
+	/**
+	 * Line number of expectedStart.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int lineBase = 1;
+
+	private Chunk current;
+	private int recordIndex;
+	private int valueIndex;
+
+	/**
+	 * The line number the last value came from, or -1 if
+	 * no values have been returned.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int lastLine = -1;
+
+	/**
+	 * Create a parser for the given file that uses a new pool with one
+	 * thread per processor.
+	 *
+	 * @param f file that contains comma separated values.
+	 * @throws IOException if the file cannot be opened.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelCSVParser(File f) throws IOException {
+		this(f, null, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a parser for the given file.
+	 *
+	 * @param f file that contains comma separated values.
+	 * @param pool pool on which to parse chunks, or null to create a pool for this parser.
+	 * @param chunkSize number of bytes of the file to parse in each task.
+	 * @throws IOException if the file cannot be opened.
+	 * @throws IllegalArgumentException if the chunk size is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelCSVParser(File f, ForkJoinPool pool, int chunkSize) throws IOException {
+		if (chunkSize <= 0) throw new IllegalArgumentException("Bad chunk size: " + chunkSize);
+		this.chunkSize = chunkSize;
+		if (pool == null){
+			pool = new ForkJoinPool();
+			ownPool = true;
+		}
+		this.pool = pool;
+		maxInFlight = 2 * pool.getParallelism();
+		file = new RandomAccessFile(f, "r");
+		channel = file.getChannel();
+		size = channel.size();
+	}
+
+	/**
+	 * Parsed records of one chunk of the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class Chunk {
+		/** Nominal end of the chunk; the last record starts before here. */
+		long nominalEnd;
+		/** Position of the first record, where parsing started. */
+		long start;
+		/** Position of the first record that belongs to the next chunk. */
+		long end;
+		/** Line number of start, counting from the line on which parsing began. */
+		int firstLine;
+		/** Number of lines between start and end. */
+		int lines;
+		ArrayList<String[]> records = new ArrayList<String[]>();
+		/** Line number of each record, relative to start (first line is one). */
+		int[] lineNumbers;
+		IOException error;
+	}
+
+	/**
+	 * Parses one chunk on the pool.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private class ChunkTask extends RecursiveTask<Chunk> {
+		private static final long serialVersionUID = 1L;
+		private long from;
+		private long nominalEnd;
+		private boolean guess;
+		private char delimiter;
+		private char quote;
+		private String commentDelims;
+
+		ChunkTask(long from, long nominalEnd, boolean guess){
+			this.from = from;
+			this.nominalEnd = nominalEnd;
+			this.guess = guess;
+			this.delimiter = ParallelCSVParser.this.delimiter;
+			this.quote = ParallelCSVParser.this.quote;
+			this.commentDelims = ParallelCSVParser.this.commentDelims;
+		}
+
+		@Override protected Chunk compute(){
+			Chunk chunk = new Chunk();
+			chunk.nominalEnd = nominalEnd;
+			try {
+				parseChunk(chunk, guess ? nextLineStart(from) : from, this);
+			} catch (IOException iox){
+				chunk.error = iox;
+			}
+			return chunk;
+		}
+	}
+
+	/**
+	 * Parse the records starting before the nominal end of the chunk.
+	 *
+	 * @param chunk chunk to fill in.
+	 * @param from position at which to start parsing.
+	 * @param task settings for the parser.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void parseChunk(Chunk chunk, long from, ChunkTask task) throws IOException {
+		MappedCSVParser parser = new MappedCSVParser(channel, from, size, (int)Math.min(Integer.MAX_VALUE, 2L * chunkSize));
+		try {
+			parser.changeDelimiter(task.delimiter);
+			parser.changeQuote(task.quote);
+		} catch (BadDelimiterException | BadQuoteException x){
+			// Already checked when the characters were set on this parser.
+			throw new IOException(x);
+		}
+		parser.setCommentStart(task.commentDelims);
+		boolean more = parser.skipToRecord();
+		chunk.start = parser.getPosition();
+		int firstLine = parser.getPhysicalLine();
+		chunk.firstLine = firstLine;
+		int[] lineNumbers = new int[16];
+		while (more && parser.getPosition() < chunk.nominalEnd){
+			String[] line = parser.getLine();
+			int n = chunk.records.size();
+			if (n == lineNumbers.length) lineNumbers = Arrays.copyOf(lineNumbers, n * 2);
+			lineNumbers[n] = parser.getLastLineNumber() - firstLine + 1;
+			chunk.records.add(line);
+			more = parser.skipToRecord();
+		}
+		chunk.end = parser.getPosition();
+		chunk.lines = parser.getPhysicalLine() - firstLine;
+		chunk.lineNumbers = lineNumbers;
+	}
+
+	/**
+	 * Find the first position at or after the given one that follows
+	 * a line break.
+	 *
+	 * @param from position at which to start looking.
+	 * @return position of the start of a line, or the size of the file.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long nextLineStart(long from) throws IOException {
+		if (from == 0) return 0;
+		ByteBuffer b = ByteBuffer.allocate(8192);
+		long p = from - 1;
+		while (p < size){
+			b.clear();
+			int n = channel.read(b, p);
+			if (n <= 0) break;
+			for (int i = 0; i < n; i++){
+				byte c = b.get(i);
+				if (c == '\n') return p + i + 1;
+				if (c == '\r'){
+					// Don't start between the characters of a \r\n pair.
+					if (i + 1 < n) return p + i + (b.get(i + 1) == '\n' ? 2 : 1);
+					if (p + i + 1 >= size) return size;
+					ByteBuffer one = ByteBuffer.allocate(1);
+					channel.read(one, p + i + 1);
+					return p + i + (one.get(0) == '\n' ? 2 : 1);
+				}
+			}
+			p += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Submit chunks until the read ahead limit is reached.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void submitChunks(){
+		while (inFlight.size() < maxInFlight && nextChunkStart < size){
+			long end = Math.min(size, nextChunkStart + chunkSize);
+			ChunkTask task = new ChunkTask(nextChunkStart, end, nextChunkStart != 0);
+			pool.execute(task);
+			inFlight.add(task);
+			nextChunkStart = end;
+		}
+	}
+
+	/**
+	 * Get the next parsed chunk in file order, with line numbers made
+	 * absolute.  Chunks that started at the wrong place are parsed again.
+	 *
+	 * @return the next chunk or null at the end of the file.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private Chunk takeChunk() throws IOException {
+		submitChunks();
+		ChunkTask task = inFlight.poll();
+		if (task == null) return null;
+		Chunk chunk = task.join();
+		if (expectedStart == -1 && chunk.error == null){
+			// The first chunk starts at the top of the file, so its lines are already absolute.
+			expectedStart = chunk.start;
+			lineBase = chunk.firstLine;
+		}
+		if (chunk.error == null && chunk.start != expectedStart){
+			chunk = new Chunk();
+			chunk.nominalEnd = task.nominalEnd;
+			parseChunk(chunk, expectedStart, task);
+		}
+		if (chunk.error != null) throw chunk.error;
+		for (int i = 0; i < chunk.records.size(); i++){
+			chunk.lineNumbers[i] += lineBase - 1;
+		}
+		expectedStart = chunk.end;
+		lineBase += chunk.lines;
+		return chunk;
+	}
+
+	/**
+	 * Make sure that current refers to a chunk with an unread record.
+	 *
+	 * @return false if there are no more records.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean ensureRecord() throws IOException {
+		while (current == null || recordIndex >= current.records.size()){
+			current = takeChunk();
+			recordIndex = 0;
+			valueIndex = 0;
+			if (current == null) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next value from the file.  The line number from
+	 * which this value was taken can be obtained from getLastLineNumber().
+	 *
+	 * @return the next value or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String nextValue() throws IOException {
+		if (!ensureRecord()){
+			if (lastLine == -1) lastLine = 0;
+			return null;
+		}
+		String[] record = current.records.get(recordIndex);
+		lastLine = current.lineNumbers[recordIndex];
+		String value = record[valueIndex++];
+		if (valueIndex >= record.length){
+			recordIndex++;
+			valueIndex = 0;
+		}
+		return value;
+	}
+
+	/**
+	 * Get the line number that the last value came from.
+	 *
+	 * @return line number or -1 if no values have been returned yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int lastLineNumber(){
+		return lastLine;
+	}
+
+	/**
+	 * Get all the values from a line.
+	 * <p>
+	 * If the line has already been partially read, only the
+	 * values that have not already been read will be included.
+	 *
+	 * @return all the values from the line or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[] getLine() throws IOException {
+		if (!ensureRecord()) return null;
+		String[] record = current.records.get(recordIndex);
+		lastLine = current.lineNumbers[recordIndex];
+		if (valueIndex > 0){
+			record = Arrays.copyOfRange(record, valueIndex, record.length);
+		}
+		recordIndex++;
+		valueIndex = 0;
+		return record;
+	}
+
+	/**
+	 * Get the line number that the last value came from.
+	 * <p>
+	 * New line breaks that occur in the middle of a value are not
+	 * counted in the line number count.
+	 *
+	 * @return line number or -1 if no values have been returned yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLastLineNumber(){
+		return lastLine;
+	}
+
+	/**
+	 * Get all the values from the file.
+	 * <p>
+	 * If the file has already been partially read, only the
+	 * values that have not already been read will be included.
+	 * <p>
+	 * Each line of the file that has at least one value will be
+	 * represented.  Comments and empty lines are ignored.
+	 * <p>
+	 * The resulting double array may be jagged.
+	 *
+	 * @return all the values from the file or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[][] getAllValues() throws IOException {
+		ArrayList<String[]> v = new ArrayList<String[]>();
+		String[] line;
+		while((line = getLine()) != null){
+			v.add(line);
+		}
+		if (v.size() == 0){
+			return null;
+		}
+		String[][] result = new String[v.size()][];
+		return v.toArray(result);
+	}
+
+	/**
+	 * Pass every remaining record in the file to the given handler.
+	 * <p>
+	 * The records of each chunk are passed in order and with correct line
+	 * numbers, but the handler is called from several pool threads at once and
+	 * records from different chunks are not passed in file order.  The handler
+	 * must therefore be thread safe.  This method returns once every record has
+	 * been handled.
+	 * <p>
+	 * Any part of a record that was partially read with nextValue() is skipped.
+	 *
+	 * @param handler call back for each record.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void forEachRecord(final CSVRecordHandler handler) throws IOException {
+		if (current != null && valueIndex > 0) recordIndex++;
+		ArrayList<ForkJoinTask<?>> deliveries = new ArrayList<ForkJoinTask<?>>();
+		if (current != null && recordIndex < current.records.size()){
+			deliveries.add(pool.submit(new Delivery(current, recordIndex, handler)));
+		}
+		current = null;
+		Chunk chunk;
+		while ((chunk = takeChunk()) != null){
+			int n = chunk.records.size();
+			if (n > 0){
+				deliveries.add(pool.submit(new Delivery(chunk, 0, handler)));
+				lastLine = chunk.lineNumbers[n - 1];
+			}
+		}
+		for (ForkJoinTask<?> delivery : deliveries){
+			delivery.join();
+		}
+	}
+
+	/**
+	 * Passes the records of one chunk to a handler on the pool.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class Delivery implements Runnable {
+		private Chunk chunk;
+		private int from;
+		private CSVRecordHandler handler;
+
+		Delivery(Chunk chunk, int from, CSVRecordHandler handler){
+			this.chunk = chunk;
+			this.from = from;
+			this.handler = handler;
+		}
+
+		public void run(){
+			for (int i = from; i < chunk.records.size(); i++){
+				handler.record(chunk.records.get(i), chunk.lineNumbers[i]);
+			}
+		}
+	}
+
+	/**
+	 * Change this parser so that it uses a new delimiter.
+	 * <p>
+	 * The initial character is a comma, the delimiter cannot be changed
+	 * to a quote, a line break or a non-ASCII character.
+	 *
+	 * @param newDelim delimiter to which to switch.
+	 * @throws BadDelimiterException if the character cannot be used as a delimiter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeDelimiter(char newDelim) throws BadDelimiterException {
+		if (!MappedCSVParser.charIsSafe(newDelim) || newDelim == quote) throw new BadDelimiterException(newDelim + " is not a safe delimiter.");
+		delimiter = newDelim;
+	}
+
+	/**
+	 * Change this parser so that it uses a new character for quoting.
+	 * <p>
+	 * The initial character is a double quote ("), the quote cannot be changed
+	 * to the delimiter, a line break or a non-ASCII character.
+	 *
+	 * @param newQuote character to use for quoting.
+	 * @throws BadQuoteException if the character cannot be used as a quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeQuote(char newQuote) throws BadQuoteException {
+		if (!MappedCSVParser.charIsSafe(newQuote) || newQuote == delimiter) throw new BadQuoteException(newQuote + " is not a safe quote.");
+		quote = newQuote;
+	}
+
+	/**
+	 * Set the characters that indicate a comment at the beginning of the line.
+	 *
+	 * @param commentDelims list of characters a comment line may start with.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setCommentStart(String commentDelims){
+		this.commentDelims = commentDelims;
+	}
+
+	/**
+	 * Close the file and, if this parser created it, shut down the pool.
+	 *
+	 * @throws IOException if an error occurs while closing the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void close() throws IOException {
+		for (ChunkTask task : inFlight){
+			task.cancel(false);
+		}
+		inFlight.clear();
+		if (ownPool) pool.shutdown();
+		file.close();
+	}
+}
@@ -0,0 +1,823 @@
+/*
+ * Write files in comma separated value format using multiple threads.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadLineEndingException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Print values in comma separated value format, formatting them on several
+ * threads at once.
+ * <p>
+ * Values are collected into batches as they are printed.  Each full batch is
+ * formatted on a ForkJoinPool by a {@link CSVPrinter} or {@link ExcelCSVPrinter}
+ * writing to a {@link CSVBufferedWriter}, so quoting and escaping follow exactly
+ * the rules of those printers.  The formatted blocks are written to the output
+ * in the order in which their values were printed.  Batches may end in the
+ * middle of a line; the next batch carries on where the last one left off, so
+ * the output is byte for byte what a single printer would have written.
+ * <p>
+ * The number of batches being formatted is limited.  When the limit is
+ * reached, the thread that is printing waits for the oldest batch and writes
+ * it to the output, so memory use stays bounded and producers slow down to
+ * the speed of the output.
+ * <p>
+ * The methods of this class are synchronized, so several threads may print
+ * to it.  Lines printed with {@link #writeln(String[])} are never mixed with
+ * values from other threads.
+ * <p>
+ * An example of how ParallelCSVPrinter might be used:
+ * <pre>
+ * ParallelCSVPrinter printer = new ParallelCSVPrinter(new FileOutputStream("export.csv"), false);
+ * while (results.next()){
+ *     printer.writeln(new String[]{results.getString(1), results.getString(2)});
+ * }
+ * printer.close();
+ * </pre>
+ *
+ * @see ParallelCSVParser
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ParallelCSVPrinter implements CSVPrint {
+
+	/**
+	 * Default number of values in each batch.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1 << 14;
+
+	/**
+	 * Marks the end of a line in a batch.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final Object LINE_END = new Object();
+
+	private WritableByteChannel channel;
+	private boolean excel;
+	private int batchSize;
+
+	/**
+	 * Pool on which batches are formatted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Whether the pool was created by (and should be shut down with) this printer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean ownPool;
+
+	/**
+	 * Maximum number of batches that are formatted ahead of the output.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int maxInFlight;
+
+	private char commentStart = '#';
+	private char delimiter = ',';
+	private char quote = '\"';
+	private String lineEnding = null;
+	private boolean alwaysQuote = false;
+	private boolean autoFlush = false;
+	private boolean error = false;
+	private boolean closed = false;
+
+	/**
+	 * Values, line ends and comments that have not yet been submitted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ArrayList<Object> batch;
+
+	/**
+	 * Whether the current batch starts at the beginning of a line.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean batchStartsLine = true;
+
+	/**
+	 * Whether the next value printed starts a line.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean newLine = true;
+
+	/**
+	 * Batches that have been submitted to the pool, in output order.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ArrayDeque<FormatTask> inFlight = new ArrayDeque<FormatTask>();
+
+	/**
+	 * Create a printer in the format of {@link CSVPrinter} or
+	 * {@link ExcelCSVPrinter} that uses a new pool with one thread per processor.
+	 *
+	 * @param out stream to which to print.
+	 * @param excel true to print in the format of ExcelCSVPrinter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelCSVPrinter(OutputStream out, boolean excel){
+		this(Channels.newChannel(out), excel, null, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Create a printer in the format of {@link CSVPrinter} or
+	 * {@link ExcelCSVPrinter}.
+	 *
+	 * @param channel channel to which to print.
+	 * @param excel true to print in the format of ExcelCSVPrinter.
+	 * @param pool pool on which to format batches, or null to create a pool for this printer.
+	 * @param batchSize number of values to format in each task.
+	 * @throws IllegalArgumentException if the batch size is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelCSVPrinter(WritableByteChannel channel, boolean excel, ForkJoinPool pool, int batchSize){
+		if (batchSize <= 0) throw new IllegalArgumentException("Bad batch size: " + batchSize);
+		this.channel = channel;
+		this.excel = excel;
+		this.batchSize = batchSize;
+		if (pool == null){
+			pool = new ForkJoinPool();
+			ownPool = true;
+		}
+		this.pool = pool;
+		maxInFlight = 2 * pool.getParallelism();
+		batch = new ArrayList<Object>(batchSize + 1);
+	}
+
+	/**
+	 * A comment in a batch.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class Comment {
+		String text;
+
+		Comment(String text){
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Output that can be handed to the channel without copying.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class Block extends ByteArrayOutputStream {
+		Block(int size){
+			super(size);
+		}
+
+		ByteBuffer toBuffer(){
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Formats one batch on the pool.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private class FormatTask extends RecursiveTask<Block> {
+		private static final long serialVersionUID = 1L;
+		private ArrayList<Object> batch;
+		private boolean startsLine;
+		private char commentStart;
+		private char delimiter;
+		private char quote;
+		private String lineEnding;
+		private boolean alwaysQuote;
+		private IOException error;
+
+		FormatTask(ArrayList<Object> batch, boolean startsLine){
+			this.batch = batch;
+			this.startsLine = startsLine;
+			this.commentStart = ParallelCSVPrinter.this.commentStart;
+			this.delimiter = ParallelCSVPrinter.this.delimiter;
+			this.quote = ParallelCSVPrinter.this.quote;
+			this.lineEnding = ParallelCSVPrinter.this.lineEnding;
+			this.alwaysQuote = ParallelCSVPrinter.this.alwaysQuote;
+		}
+
+		@Override protected Block compute(){
+			Block block = new Block(batch.size() * 16);
+			try {
+				CSVBufferedWriter out = new CSVBufferedWriter(block, 1 << 13);
+				CSVPrint printer;
+				if (excel){
+					ExcelCSVPrinter p = new ExcelCSVPrinter(out, quote, delimiter, lineEnding, alwaysQuote, false);
+					p.newLine = startsLine;
+					printer = p;
+				} else {
+					CSVPrinter p = new CSVPrinter(out, commentStart, quote, delimiter, lineEnding, alwaysQuote, false);
+					p.newLine = startsLine;
+					printer = p;
+				}
+				for (Object o : batch){
+					if (o == LINE_END){
+						printer.writeln();
+					} else if (o instanceof String){
+						printer.write((String)o);
+					} else if (o instanceof Long){
+						printer.writeLong((Long)o);
+					} else if (o instanceof Double){
+						printer.writeDouble((Double)o);
+					} else {
+						printer.writelnComment(((Comment)o).text);
+					}
+				}
+				// Closing writes '?' for a high surrogate left unpaired at the
+				// end of the batch, as a single printer would on its next
+				// character.  Closing the Block itself does nothing.
+				printer.close();
+			} catch (IOException iox){
+				error = iox;
+			} catch (BadDelimiterException | BadQuoteException x){
+				// Already checked when the characters were set on this printer.
+				error = new IOException(x);
+			}
+			return block;
+		}
+	}
+
+	/**
+	 * Add a value, line end or comment to the current batch and submit the
+	 * batch if it is full.
+	 *
+	 * @param o what to add.
+	 * @throws IOException if an error occurs while writing earlier batches.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void add(Object o) throws IOException {
+		if (closed) throw new IOException("Printer closed");
+		batch.add(o);
+		newLine = o == LINE_END || o instanceof Comment;
+		if (batch.size() >= batchSize) submitBatch();
+	}
+
+	/**
+	 * Hand the current batch to the pool, first writing out the oldest
+	 * batch if the limit on batches in flight has been reached.
+	 *
+	 * @throws IOException if an error occurs while writing earlier batches.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void submitBatch() throws IOException {
+		if (batch.isEmpty()) return;
+		while (inFlight.size() >= maxInFlight){
+			writeBlock();
+		}
+		FormatTask task = new FormatTask(batch, batchStartsLine);
+		pool.execute(task);
+		inFlight.add(task);
+		batch = new ArrayList<Object>(batchSize + 1);
+		batchStartsLine = newLine;
+	}
+
+	/**
+	 * Wait for the oldest batch to be formatted and write it to the channel.
+	 *
+	 * @throws IOException if an error occurred while formatting or writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeBlock() throws IOException {
+		FormatTask task = inFlight.poll();
+		Block block = task.join();
+		if (task.error != null) throw task.error;
+		ByteBuffer b = block.toBuffer();
+		while (b.hasRemaining()){
+			channel.write(b);
+		}
+	}
+
+	/**
+	 * Mark a setting change.  Batches are formatted with the settings that
+	 * were in effect when they were submitted, so values printed before the
+	 * change are submitted first.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void settingChanged(){
+		try {
+			submitBatch();
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Change this printer so that it uses a new delimiter.
+	 *
+	 * @param newDelimiter The new delimiter character to use.
+	 * @throws BadDelimiterException if the character cannot be used as a delimiter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void changeDelimiter(char newDelimiter) throws BadDelimiterException {
+		if (delimiter == newDelimiter) return; // no need to do anything.
+		if (newDelimiter == '\n' || newDelimiter == '\r' || newDelimiter == quote){
+			throw new BadDelimiterException();
+		}
+		settingChanged();
+		delimiter = newDelimiter;
+	}
+
+	/**
+	 * Change this printer so that it uses a new character for quoting.
+	 *
+	 * @param newQuote The new character to use for quoting.
+	 * @throws BadQuoteException if the character cannot be used as a quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void changeQuote(char newQuote) throws BadQuoteException {
+		if (quote == newQuote) return; // no need to do anything.
+		if (newQuote == '\n' || newQuote == '\r' || newQuote == delimiter){
+			throw new BadQuoteException();
+		}
+		settingChanged();
+		quote = newQuote;
+	}
+
+	/**
+	 * Change the character used to start comments.  Comments are
+	 * printed as blank lines in the format of ExcelCSVPrinter.
+	 *
+	 * @param commentStart Character used to start comments.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void changeCommentStart(char commentStart){
+		settingChanged();
+		this.commentStart = commentStart;
+	}
+
+	/**
+	 * Change this printer so that it uses a new line ending.
+	 * <p>
+	 * A line ending must be one of "\n", "\r", or "\r\n".
+	 * <p>
+	 * The default line ending is the system line separator as specified by
+	 * <code>System.getProperty("line.separator")</code>, or "\n" if the system
+	 * line separator is not a legal line ending.
+	 *
+	 * @param lineEnding The new line ending, or null to use the default line ending.
+	 * @throws BadLineEndingException if the line ending is not one of the three legal line endings.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void setLineEnding(String lineEnding) throws BadLineEndingException {
+		if (lineEnding != null && !"\n".equals(lineEnding) && !"\r".equals(lineEnding) && !"\r\n".equals(lineEnding)){
+			throw new BadLineEndingException();
+		}
+		settingChanged();
+		this.lineEnding = lineEnding;
+	}
+
+	/**
+	 * Set whether values printers should always be quoted, or
+	 * whether the printer may, at its discretion, omit quotes
+	 * around the value.
+	 *
+	 * @param alwaysQuote true if quotes should be used even when not strictly needed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void setAlwaysQuote(boolean alwaysQuote){
+		settingChanged();
+		this.alwaysQuote = alwaysQuote;
+	}
+
+	/**
+	 * Set flushing behavior.  Auto flushing is off by default; when it is
+	 * on, every line is formatted and written before writeln() returns,
+	 * which leaves nothing to do in parallel.
+	 *
+	 * @param autoFlush should auto flushing be enabled.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void setAutoFlush(boolean autoFlush){
+		this.autoFlush = autoFlush;
+	}
+
+	/**
+	 * Flush the stream if it's not closed and check its error state.
+	 * Errors are cumulative; once the stream encounters an error,
+	 * this routine will return true on all successive calls.
+	 *
+	 * @return True if the print stream has encountered an error,
+	 *	either on the underlying output stream or during a format
+	 *	conversion.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized boolean checkError(){
+		try {
+			if (error) return true;
+			flush();
+			return error;
+		} catch (IOException iox){
+			error = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Print the string as the last value on the line.	The value
+	 * will be quoted if needed.
+	 * <p>
+	 * This method never throws an I/O exception. The client may inquire as to whether
+	 * any errors have occurred by invoking checkError().  If an I/O Exception is
+	 * desired, the client should use the corresponding writeln method.
+	 *
+	 * @param value value to be outputted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void println(String value){
+		try {
+			writeln(value);
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Print the string as the last value on the line.	The value
+	 * will be quoted if needed.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writeln(String value) throws IOException {
+		write(value);
+		writeln();
+	}
+
+	/**
+	 * Output a blank line.
+	 * <p>
+	 * This method never throws an I/O exception. The client may inquire as to whether
+	 * any errors have occurred by invoking checkError().  If an I/O Exception is
+	 * desired, the client should use the corresponding writeln method.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void println(){
+		try {
+			writeln();
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Output a blank line.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writeln() throws IOException {
+		try {
+			add(LINE_END);
+			if (autoFlush) flush();
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Print a single line of comma separated values.
+	 * The values will be quoted if needed.  Quotes and
+	 * newLine characters will be escaped.
+	 * <p>
+	 * This method never throws an I/O exception. The client may inquire as to whether
+	 * any errors have occurred by invoking checkError().  If an I/O Exception is
+	 * desired, the client should use the corresponding writeln method.
+	 *
+	 * @param values values to be outputted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void println(String[] values){
+		try {
+			writeln(values);
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Print a single line of comma separated values.
+	 * The values will be quoted if needed.  Quotes and
+	 * newLine characters will be escaped.
+	 *
+	 * @param values values to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writeln(String[] values) throws IOException {
+		write(values);
+		writeln();
+	}
+
+	/**
+	 * Print several lines of comma separated values.
+	 * The values will be quoted if needed.  Quotes and
+	 * newLine characters will be escaped.
+	 * <p>
+	 * This method never throws an I/O exception. The client may inquire as to whether
+	 * any errors have occurred by invoking checkError().  If an I/O Exception is
+	 * desired, the client should use the corresponding writeln method.
+	 *
+	 * @param values values to be outputted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void println(String[][] values){
+		try {
+			writeln(values);
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Print several lines of comma separated values.
+	 * The values will be quoted if needed.  Quotes and
+	 * newLine characters will be escaped.
+	 *
+	 * @param values values to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writeln(String[][] values) throws IOException {
+		for (int i=0; i<values.length; i++){
+			writeln(values[i]);
+		}
+		if (values.length == 0){
+			writeln();
+		}
+	}
+
+	/**
+	 * Put a comment among the comma separated values.
+	 * Comments will always begin on a new line and occupy a
+	 * least one full line. The character specified to star
+	 * comments and a space will be inserted at the beginning of
+	 * each new line in the comment.  In the format of
+	 * ExcelCSVPrinter, which has no comments, a blank line is printed.
+	 * <p>
+	 * This method never throws an I/O exception. The client may inquire as to whether
+	 * any errors have occurred by invoking checkError().  If an I/O Exception is
+	 * desired, the client should use the corresponding writelnComment method.
+	 *
+	 * @param comment the comment to output
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void printlnComment(String comment){
+		try {
+			writelnComment(comment);
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Put a comment among the comma separated values.
+	 * Comments will always begin on a new line and occupy a
+	 * least one full line. The character specified to star
+	 * comments and a space will be inserted at the beginning of
+	 * each new line in the comment.  In the format of
+	 * ExcelCSVPrinter, which has no comments, a blank line is printed.
+	 *
+	 * @param comment the comment to output
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writelnComment(String comment) throws IOException {
+		try {
+			add(new Comment(comment));
+			if (autoFlush) flush();
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Print the string as the next value on the line.	The value
+	 * will be quoted if needed.  If value is null, an empty value is printed.
+	 * <p>
+	 * This method never throws an I/O exception. The client may inquire as to whether
+	 * any errors have occurred by invoking checkError().  If an I/O Exception is
+	 * desired, the client should use the corresponding write method.
+	 *
+	 * @param value value to be outputted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void print(String value){
+		try {
+			write(value);
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Print the string as the next value on the line.	The value
+	 * will be quoted if needed.  If value is null, an empty value is printed.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void write(String value) throws IOException {
+		try {
+			add(value == null ? "" : value);
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Print a long as the next value on the line.  The number is
+	 * formatted on the pool along with the rest of its batch.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writeLong(long value) throws IOException {
+		try {
+			add(Long.valueOf(value));
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Print an int as the next value on the line.  The number is
+	 * formatted on the pool along with the rest of its batch.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writeInt(int value) throws IOException {
+		writeLong(value);
+	}
+
+	/**
+	 * Print a double as the next value on the line.  The number is
+	 * formatted on the pool along with the rest of its batch.
+	 *
+	 * @param value value to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void writeDouble(double value) throws IOException {
+		try {
+			add(Double.valueOf(value));
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Print multiple delimited values values.
+	 * The values will be quoted if needed.  Quotes and
+	 * and other characters that need it will be escaped.
+	 * <p>
+	 * This method never throws an I/O exception. The client may inquire as to whether
+	 * any errors have occurred by invoking checkError().  If an I/O Exception is
+	 * desired, the client should use the corresponding write method.
+	 *
+	 * @param values values to be outputted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void print(String[] values){
+		try {
+			write(values);
+		} catch (IOException iox){
+			error = true;
+		}
+	}
+
+	/**
+	 * Print multiple delimited values values.
+	 * The values will be quoted if needed.  Quotes and
+	 * and other characters that need it will be escaped.
+	 *
+	 * @param values values to be outputted.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void write(String[] values) throws IOException {
+		for (int i=0; i<values.length; i++){
+			write(values[i]);
+		}
+	}
+
+	/**
+	 * Format everything printed so far, write it to the channel and
+	 * wait for it to be written.
+	 *
+	 * @throws IOException if an error occurs while formatting or writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void flush() throws IOException {
+		try {
+			submitBatch();
+			while (!inFlight.isEmpty()){
+				writeBlock();
+			}
+		} catch (IOException iox){
+			error = true;
+			throw iox;
+		}
+	}
+
+	/**
+	 * Write everything printed so far, close the channel and, if this
+	 * printer created it, shut down the pool.
+	 *
+	 * @throws IOException if an error occurs while formatting, writing or closing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		try {
+			flush();
+		} finally {
+			closed = true;
+			for (FormatTask task : inFlight){
+				task.cancel(false);
+			}
+			inFlight.clear();
+			if (ownPool) pool.shutdown();
+			channel.close();
+		}
+	}
+}
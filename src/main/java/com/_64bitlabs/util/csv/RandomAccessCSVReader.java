@@ -0,0 +1,291 @@
+/*
+ * Read any row of comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+
+package com._64bitlabs.util.csv;
+
+import com._64bitlabs.util.exception.BadDelimiterException;
+import com._64bitlabs.util.exception.BadQuoteException;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * Read a CSV file starting at any row, using a {@link CSVRowIndex} to find
+ * where the row starts.  After {@link #seek(long)} the CSVParse methods
+ * carry on from the given row, with the same values and line numbers that a
+ * {@link MappedCSVParser} reading the whole file would return.
+ * <p>
+ * An example of how RandomAccessCSVReader might be used:
+ * <pre>
+ * File data = new File("export.csv");
+ * RandomAccessCSVReader reader = new RandomAccessCSVReader(data, CSVRowIndex.open(data, new File("export.csv.idx")));
+ * for (String[] row : reader.getRows(5000000, 10)){
+ *     System.out.println("" + reader.getLastLineNumber() + " " + row[0]);
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class RandomAccessCSVReader implements CSVParse {
+
+	private CSVRowIndex index;
+
+	/**
+	 * Parser over the whole file, positioned at the next row.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private MappedCSVParser parser;
+
+	/**
+	 * Number of the row that the next value comes from.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long row;
+
+	/**
+	 * Open a file for reading at any row.
+	 *
+	 * @param f file to read.
+	 * @param index index of the file.
+	 * @throws IOException if the file cannot be opened or the index is not current.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public RandomAccessCSVReader(File f, CSVRowIndex index) throws IOException {
+		if (!index.isCurrent(f)) throw new IOException("Index of " + f + " is out of date.");
+		this.index = index;
+		parser = new MappedCSVParser(f);
+		try {
+			CSVRowIndex.configure(parser, index.getDelimiter(), index.getQuote(), index.getCommentStart());
+		} catch (BadDelimiterException | BadQuoteException x){
+			// Already checked when the index was built.
+			parser.close();
+			throw new IOException(x);
+		}
+		seek(0);
+	}
+
+	/**
+	 * Position the reader so that the next value comes from the start of the given row.
+	 *
+	 * @param row row number, counting from zero.  The number of rows may
+	 *     be given, in which case there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws IndexOutOfBoundsException if there is no such row.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void seek(long row) throws IOException {
+		long entryRow = index.getEntryRow(row);
+		// Moving the one parser keeps its window mapped for nearby rows.
+		parser.seek(index.getEntryPosition(row));
+		parser.setPhysicalLine(index.getEntryLine(row));
+		for (long r = entryRow; r < row; r++){
+			parser.skipRecord();
+		}
+		this.row = row;
+	}
+
+	/**
+	 * Get the number of the row that the next value comes from.
+	 *
+	 * @return row number, counting from zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getRowNumber(){
+		return row;
+	}
+
+	/**
+	 * Get the number of rows in the file.
+	 *
+	 * @return number of rows.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getRowCount(){
+		return index.getRowCount();
+	}
+
+	/**
+	 * Get the values of a row.  Reading continues from the following row.
+	 *
+	 * @param row row number, counting from zero.
+	 * @return the values of the row.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws IndexOutOfBoundsException if there is no such row.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[] getRow(long row) throws IOException {
+		if (row >= index.getRowCount()) throw new IndexOutOfBoundsException("Row " + row + " of " + index.getRowCount());
+		seek(row);
+		return getLine();
+	}
+
+	/**
+	 * Get the values of a range of rows.  Reading continues from the row
+	 * after the last one returned.
+	 *
+	 * @param from number of the first row, counting from zero.
+	 * @param count largest number of rows to return.
+	 * @return the values of the rows, fewer than count if the end of the file is reached.
+	 * @throws IOException if an error occurs while reading.
+	 * @throws IndexOutOfBoundsException if the first row does not exist.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[][] getRows(long from, int count) throws IOException {
+		seek(from);
+		ArrayList<String[]> v = new ArrayList<String[]>();
+		String[] line;
+		while (v.size() < count && (line = getLine()) != null){
+			v.add(line);
+		}
+		String[][] result = new String[v.size()][];
+		return v.toArray(result);
+	}
+
+	/**
+	 * Read the next value from the file.  The line number from
+	 * which this value was taken can be obtained from getLastLineNumber().
+	 *
+	 * @return the next value or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String nextValue() throws IOException {
+		String value = parser.nextValue();
+		if (value != null && !parser.isInRecord()) row++;
+		return value;
+	}
+
+	/**
+	 * Get the line number that the last value came from.
+	 *
+	 * @return line number or -1 if no values have been returned yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int lastLineNumber(){
+		return parser.lastLineNumber();
+	}
+
+	/**
+	 * Get all the values from a line.
+	 * <p>
+	 * If the line has already been partially read, only the
+	 * values that have not already been read will be included.
+	 *
+	 * @return all the values from the line or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[] getLine() throws IOException {
+		String[] line = parser.getLine();
+		if (line != null) row++;
+		return line;
+	}
+
+	/**
+	 * Get the line number that the last value came from.
+	 * <p>
+	 * New line breaks that occur in the middle of a value are not
+	 * counted in the line number count.
+	 *
+	 * @return line number or -1 if no values have been returned yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getLastLineNumber(){
+		return parser.getLastLineNumber();
+	}
+
+	/**
+	 * Get all the values from the file.
+	 * <p>
+	 * If the file has already been partially read, only the
+	 * values that have not already been read will be included.
+	 * <p>
+	 * Each line of the file that has at least one value will be
+	 * represented.  Comments and empty lines are ignored.
+	 * <p>
+	 * The resulting double array may be jagged.
+	 *
+	 * @return all the values from the file or null if there are no more values.
+	 * @throws IOException if an error occurs while reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String[][] getAllValues() throws IOException {
+		ArrayList<String[]> v = new ArrayList<String[]>();
+		String[] line;
+		while((line = getLine()) != null){
+			v.add(line);
+		}
+		if (v.size() == 0){
+			return null;
+		}
+		String[][] result = new String[v.size()][];
+		return v.toArray(result);
+	}
+
+	/**
+	 * The delimiter is fixed by the index; only the delimiter it was built
+	 * with is accepted.
+	 *
+	 * @param newDelim delimiter to which to switch.
+	 * @throws BadDelimiterException if the character is not the indexed delimiter.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeDelimiter(char newDelim) throws BadDelimiterException {
+		if (newDelim != index.getDelimiter()) throw new BadDelimiterException("The file was indexed with the delimiter " + index.getDelimiter());
+	}
+
+	/**
+	 * The quote is fixed by the index; only the quote it was built
+	 * with is accepted.
+	 *
+	 * @param newQuote character to use for quoting.
+	 * @throws BadQuoteException if the character is not the indexed quote.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void changeQuote(char newQuote) throws BadQuoteException {
+		if (newQuote != index.getQuote()) throw new BadQuoteException("The file was indexed with the quote " + index.getQuote());
+	}
+
+	/**
+	 * Close the file.
+	 *
+	 * @throws IOException if an error occurs while closing the file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void close() throws IOException {
+		parser.close();
+	}
+}
@@ -23,6 +23,9 @@ import com._64bitlabs.util.exception.Base64DecodingException;
 import com._64bitlabs.util.file.FileHelper;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 import java.util.Locale;
@@ -146,19 +149,12 @@ import java.util.Locale;
  */
 public class Base64 {
 
-	/**
-	 * Symbol that represents the end of an input stream
-	 *
-	 * @since 64bitlabsutils 1.0.0
-	 */
-	private static final int END_OF_INPUT = -1;
-
 	/**
 	 * A character that is not a valid base 64 character.
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
-	private static final int NON_BASE_64 = -1;
+	static final int NON_BASE_64 = -1;
 
 	/**
 	 * A character that is not a valid base 64 character.
@@ -172,7 +168,7 @@ public class Base64 {
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
-	private static final int NON_BASE_64_PADDING = -3;
+	static final int NON_BASE_64_PADDING = -3;
 
 	/**
 	 * This class need not be instantiated, all methods are static.
@@ -600,12 +596,7 @@ public class Base64 {
 	 * @since 64bitlabsutils 1.04.00
 	 */
 	public static String encodeToString(byte[] bytes, boolean lineBreaks){
-		try {
-			return new String(encode(bytes, lineBreaks), "ASCII");
-		} catch (UnsupportedEncodingException iex){
-			// ASCII should be supported
-			throw new RuntimeException(iex);
-		}
+		return new String(encode(bytes, lineBreaks), StandardCharsets.US_ASCII);
 	}
 
 	/**
@@ -631,28 +622,128 @@ public class Base64 {
 	 * @since 64bitlabsutils 1.04.00
 	 */
 	public static byte[] encode(byte[] bytes, boolean lineBreaks){
-		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-		// calculate the length of the resulting output.
-		// in general it will be 4/3 the size of the input
-		// but the input length must be divisible by three.
-		// If it isn't the next largest size that is divisible
-		// by three is used.
-		int mod;
-		int length = bytes.length;
-		if ((mod = length % 3) != 0){
-			length += 3 - mod;
+		byte[] out = new byte[encodedLength(bytes.length, lineBreaks)];
+		encode(bytes, 0, bytes.length, out, 0, lineBreaks);
+		return out;
+	}
+
+	/**
+	 * Get the exact number of bytes that encoding the given number of bytes
+	 * produces.
+	 *
+	 * @param length number of bytes to encode.
+	 * @param lineBreaks Whether line breaks are inserted every 76 characters in the output.
+	 * @return the length of the encoded data.
+	 * @throws IllegalArgumentException if the length is negative or the encoded data would not fit in an array.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int encodedLength(int length, boolean lineBreaks){
+		if (length < 0) throw new IllegalArgumentException("Negative length: " + length);
+		long chars = ((length + 2L) / 3) * 4;
+		if (lineBreaks) chars += (chars + 75) / 76;
+		if (chars > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too much data to encode: " + length);
+		return (int)chars;
+	}
+
+	/**
+	 * Encode a portion of an array into another array in Base64, without
+	 * any intermediate buffers.
+	 *
+	 * @param src The data to encode.
+	 * @param srcOff Offset of the first byte to encode.
+	 * @param srcLen Number of bytes to encode.
+	 * @param dst Array into which the encoded data is written.
+	 * @param dstOff Offset at which to start writing.
+	 * @param lineBreaks Whether to insert line breaks every 76 characters in the output.
+	 * @return the number of bytes written, which is encodedLength(srcLen, lineBreaks).
+	 * @throws IndexOutOfBoundsException if either portion is outside its array.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int encode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, boolean lineBreaks){
+		int length = encodedLength(srcLen, lineBreaks);
+		if (srcOff < 0 || srcOff + srcLen > src.length || srcOff + srcLen < 0 || dstOff < 0 || dstOff + length > dst.length || dstOff + length < 0) throw new IndexOutOfBoundsException();
+		byte[] chars = base64Chars;
+		int end = srcOff + srcLen;
+		int d = dstOff;
+		while (srcOff < end){
+			// 57 bytes make a line of 76 characters.
+			int lineEnd = lineBreaks ? Math.min(end, srcOff + 57) : end;
+			for (int full = lineEnd - (lineEnd - srcOff) % 3; srcOff < full; srcOff += 3){
+				int bits = (src[srcOff] & 0xff) << 16 | (src[srcOff + 1] & 0xff) << 8 | (src[srcOff + 2] & 0xff);
+				dst[d] = chars[bits >>> 18];
+				dst[d + 1] = chars[(bits >>> 12) & 0x3f];
+				dst[d + 2] = chars[(bits >>> 6) & 0x3f];
+				dst[d + 3] = chars[bits & 0x3f];
+				d += 4;
+			}
+			int left = lineEnd - srcOff;
+			if (left > 0){
+				int bits = (src[srcOff] & 0xff) << 16 | (left == 2 ? (src[srcOff + 1] & 0xff) << 8 : 0);
+				dst[d] = chars[bits >>> 18];
+				dst[d + 1] = chars[(bits >>> 12) & 0x3f];
+				dst[d + 2] = left == 2 ? chars[(bits >>> 6) & 0x3f] : (byte)'=';
+				dst[d + 3] = '=';
+				d += 4;
+				srcOff = lineEnd;
+			}
+			if (lineBreaks) dst[d++] = '\n';
 		}
-		length = length * 4 / 3;
-		ByteArrayOutputStream out = new ByteArrayOutputStream(length);
-		try {
-			encode(in, out, lineBreaks);
-		} catch (IOException x){
-			// This can't happen.
-			// The input and output streams were constructed
-			// on memory structures that don't actually use IO.
-			throw new RuntimeException(x);
+		return d - dstOff;
+	}
+
+	/**
+	 * Encode the bytes remaining in one buffer into another buffer in Base64.
+	 * The position of the source is advanced to its limit and the position
+	 * of the destination past the encoded data.
+	 *
+	 * @param src The data to encode.
+	 * @param dst Buffer into which the encoded data is written.
+	 * @param lineBreaks Whether to insert line breaks every 76 characters in the output.
+	 * @return the number of bytes written.
+	 * @throws BufferOverflowException if the destination does not have room for all the encoded data, in which case neither buffer is changed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int encode(ByteBuffer src, ByteBuffer dst, boolean lineBreaks){
+		int length = encodedLength(src.remaining(), lineBreaks);
+		if (dst.remaining() < length) throw new BufferOverflowException();
+		if (src.hasArray() && dst.hasArray()){
+			encode(src.array(), src.arrayOffset() + src.position(), src.remaining(), dst.array(), dst.arrayOffset() + dst.position(), lineBreaks);
+			src.position(src.limit());
+			dst.position(dst.position() + length);
+			return length;
 		}
-		return out.toByteArray();
+		byte[] chars = base64Chars;
+		int s = src.position();
+		int end = src.limit();
+		int d = dst.position();
+		while (s < end){
+			int lineEnd = lineBreaks ? Math.min(end, s + 57) : end;
+			for (int full = lineEnd - (lineEnd - s) % 3; s < full; s += 3){
+				int bits = (src.get(s) & 0xff) << 16 | (src.get(s + 1) & 0xff) << 8 | (src.get(s + 2) & 0xff);
+				dst.put(d, chars[bits >>> 18]);
+				dst.put(d + 1, chars[(bits >>> 12) & 0x3f]);
+				dst.put(d + 2, chars[(bits >>> 6) & 0x3f]);
+				dst.put(d + 3, chars[bits & 0x3f]);
+				d += 4;
+			}
+			int left = lineEnd - s;
+			if (left > 0){
+				int bits = (src.get(s) & 0xff) << 16 | (left == 2 ? (src.get(s + 1) & 0xff) << 8 : 0);
+				dst.put(d, chars[bits >>> 18]);
+				dst.put(d + 1, chars[(bits >>> 12) & 0x3f]);
+				dst.put(d + 2, left == 2 ? chars[(bits >>> 6) & 0x3f] : (byte)'=');
+				dst.put(d + 3, (byte)'=');
+				d += 4;
+				s = lineEnd;
+			}
+			if (lineBreaks) dst.put(d++, (byte)'\n');
+		}
+		src.position(end);
+		dst.position(d);
+		return length;
 	}
 
 	/**
@@ -758,64 +849,13 @@ public class Base64 {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public static void encode(InputStream in, OutputStream out, boolean lineBreaks) throws IOException {
-		// Base64 encoding converts three bytes of input to
-		// four bytes of output
-		int[] inBuffer = new int[3];
-		int lineCount = 0;
-
-		boolean done = false;
-		while (!done && (inBuffer[0] = in.read()) != END_OF_INPUT){
-			// Fill the buffer
-			inBuffer[1] = in.read();
-			inBuffer[2] = in.read();
-
-			// Calculate the out Buffer
-			// The first byte of our in buffer will always be valid
-			// but we must check to make sure the other two bytes
-			// are not END_OF_INPUT before using them.
-			// The basic idea is that the three bytes get split into
-			// four bytes along these lines:
-			//      [AAAAAABB] [BBBBCCCC] [CCDDDDDD]
-			// [xxAAAAAA] [xxBBBBBB] [xxCCCCCC] [xxDDDDDD]
-			// bytes are considered to be zero when absent.
-			// the four bytes are then mapped to common ASCII symbols
-
-			// A's: first six bits of first byte
-			out.write(base64Chars[ inBuffer[0] >> 2 ]);
-			if (inBuffer[1] != END_OF_INPUT){
-				// B's: last two bits of first byte, first four bits of second byte
-				out.write(base64Chars [(( inBuffer[0] << 4 ) & 0x30) | (inBuffer[1] >> 4) ]);
-				if (inBuffer[2] != END_OF_INPUT){
-					// C's: last four bits of second byte, first two bits of third byte
-					out.write(base64Chars [((inBuffer[1] << 2) & 0x3c) | (inBuffer[2] >> 6) ]);
-					// D's: last six bits of third byte
-					out.write(base64Chars [inBuffer[2] & 0x3F]);
-				} else {
-					// C's: last four bits of second byte
-					out.write(base64Chars [((inBuffer[1] << 2) & 0x3c)]);
-					// an equals sign for a character that is not a Base64 character
-					out.write('=');
-					done = true;
-				}
-			} else {
-				// B's: last two bits of first byte
-				out.write(base64Chars [(( inBuffer[0] << 4 ) & 0x30)]);
-				// an equal signs for characters that is not a Base64 characters
-				out.write('=');
-				out.write('=');
-				done = true;
-			}
-			lineCount += 4;
-			if (lineBreaks && lineCount >= 76){
-				out.write('\n');
-				lineCount = 0;
-			}
-		}
-		if (lineBreaks && lineCount >= 1){
-			out.write('\n');
-			lineCount = 0;
+		Base64EncodingOutputStream base64 = new Base64EncodingOutputStream(out, lineBreaks);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1){
+			base64.write(buffer, 0, read);
 		}
-		out.flush();
+		base64.finish();
 	}
 
 	/**
@@ -1039,28 +1079,226 @@ public class Base64 {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public static byte[] decode(byte[] bytes){
-		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-		// calculate the length of the resulting output.
-		// in general it will be at most 3/4 the size of the input
-		// but the input length must be divisible by four.
-		// If it isn't the next largest size that is divisible
-		// by four is used.
-		int mod;
-		int length = bytes.length;
-		if ((mod = length % 4) != 0){
-			length += 4 - mod;
-		}
-		length = length * 3 / 4;
-		ByteArrayOutputStream out = new ByteArrayOutputStream(length);
 		try {
-			decode(in, out, false);
-		} catch (IOException x){
+			byte[] out = new byte[decodedLength(bytes, 0, bytes.length, false)];
+			decodeChecked(bytes, 0, bytes.length, out, 0);
+			return out;
+		} catch (Base64DecodingException x){
 			// This can't happen.
-			// The input and output streams were constructed
-			// on memory structures that don't actually use IO.
-			 throw new RuntimeException(x);
+			// Unexpected characters are skipped.
+			throw new RuntimeException(x);
 		}
-		return out.toByteArray();
+	}
+
+	/**
+	 * Get the exact number of bytes that decoding a portion of an array
+	 * produces.  Characters that are not part of the Base64 alphabet do not
+	 * count.
+	 *
+	 * @param src Base64 encoded data.
+	 * @param srcOff Offset of the first byte to decode.
+	 * @param srcLen Number of bytes to decode.
+	 * @param throwExceptions Whether to throw exceptions when unexpected data is encountered.
+	 * @return the length of the decoded data.
+	 * @throws Base64DecodingException if unexpected data is encountered when throwExceptions is specified.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int decodedLength(byte[] src, int srcOff, int srcLen, boolean throwExceptions) throws Base64DecodingException {
+		if (srcOff < 0 || srcLen < 0 || srcOff + srcLen > src.length || srcOff + srcLen < 0) throw new IndexOutOfBoundsException();
+		byte[] reverse = reverseBase64Chars;
+		int end = srcOff + srcLen;
+		int sextets = 0;
+		if (!throwExceptions){
+			for (; srcOff < end; srcOff++){
+				// One for each alphabet character, whose table entries are not negative.
+				sextets += ~reverse[src[srcOff] & 0xff] >>> 31;
+			}
+			return decodedLength(sextets);
+		}
+		boolean padding = false;
+		for (; srcOff < end; srcOff++){
+			int b = src[srcOff] & 0xff;
+			int v = reverse[b];
+			if (v >= 0){
+				if (padding) throw unexpected(b);
+				sextets++;
+			} else if (v == NON_BASE_64){
+				throw unexpected(b);
+			} else if (v == NON_BASE_64_PADDING){
+				padding = true;
+			}
+		}
+		return decodedLength(sextets);
+	}
+
+	/**
+	 * Number of bytes decoded from the given number of Base64 characters.
+	 * A final character that does not complete a byte is dropped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static int decodedLength(int sextets){
+		int mod = sextets & 3;
+		return (sextets >>> 2) * 3 + (mod == 0 ? 0 : mod - 1);
+	}
+
+	/**
+	 * Exception for an unexpected character in Base64 encoded data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static Base64DecodingException unexpected(int b){
+		return new Base64DecodingException (
+			MessageFormat.format(
+				labels.getString("unexpectedchar"),
+				(Object[])new String[] {
+					"'" + (char)b + "' (0x" + Integer.toHexString(b) + ")"
+				}
+			),
+			(char)b
+		);
+	}
+
+	/**
+	 * Decode a portion of an array of Base64 encoded data into another
+	 * array, without any intermediate buffers.  Characters that are not
+	 * part of the Base64 alphabet are skipped, or cause an exception if
+	 * throwExceptions is specified and they are not white space or padding.
+	 *
+	 * @param src Base64 encoded data.
+	 * @param srcOff Offset of the first byte to decode.
+	 * @param srcLen Number of bytes to decode.
+	 * @param dst Array into which the decoded data is written.
+	 * @param dstOff Offset at which to start writing.
+	 * @param throwExceptions Whether to throw exceptions when unexpected data is encountered.
+	 * @return the number of bytes written, which is decodedLength() of the same data.
+	 * @throws Base64DecodingException if unexpected data is encountered when throwExceptions is specified, in which case nothing is written.
+	 * @throws IndexOutOfBoundsException if either portion is outside its array.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int decode(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, boolean throwExceptions) throws Base64DecodingException {
+		int length = decodedLength(src, srcOff, srcLen, throwExceptions);
+		if (dstOff < 0 || dstOff + length > dst.length || dstOff + length < 0) throw new IndexOutOfBoundsException();
+		return decodeChecked(src, srcOff, srcLen, dst, dstOff);
+	}
+
+	/**
+	 * Decode into an array that is known to have room for the decoded data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static int decodeChecked(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff){
+		byte[] reverse = reverseBase64Chars;
+		int end = srcOff + srcLen;
+		int d = dstOff;
+		int bits = 0;
+		int sextets = 0;
+		while (srcOff < end){
+			if (sextets == 0){
+				// Usually four characters in a row decode to three bytes.
+				for (int quadEnd = end - 3; srcOff < quadEnd; srcOff += 4){
+					int quad = reverse[src[srcOff] & 0xff] << 18 | reverse[src[srcOff + 1] & 0xff] << 12 | reverse[src[srcOff + 2] & 0xff] << 6 | reverse[src[srcOff + 3] & 0xff];
+					// Any negative entry makes the whole quad negative.
+					if (quad < 0) break;
+					dst[d] = (byte)(quad >>> 16);
+					dst[d + 1] = (byte)(quad >>> 8);
+					dst[d + 2] = (byte)quad;
+					d += 3;
+				}
+				if (srcOff == end) break;
+			}
+			int v = reverse[src[srcOff++] & 0xff];
+			if (v >= 0){
+				bits = bits << 6 | v;
+				if (++sextets == 4){
+					dst[d] = (byte)(bits >>> 16);
+					dst[d + 1] = (byte)(bits >>> 8);
+					dst[d + 2] = (byte)bits;
+					d += 3;
+					bits = 0;
+					sextets = 0;
+				}
+			}
+		}
+		if (sextets == 2){
+			dst[d++] = (byte)(bits >>> 4);
+		} else if (sextets == 3){
+			dst[d++] = (byte)(bits >>> 10);
+			dst[d++] = (byte)(bits >>> 2);
+		}
+		return d - dstOff;
+	}
+
+	/**
+	 * Decode the Base64 encoded data remaining in one buffer into another
+	 * buffer.  The position of the source is advanced to its limit and the
+	 * position of the destination past the decoded data.  Characters that
+	 * are not part of the Base64 alphabet are skipped, or cause an exception
+	 * if throwExceptions is specified and they are not white space or padding.
+	 *
+	 * @param src Base64 encoded data.
+	 * @param dst Buffer into which the decoded data is written.
+	 * @param throwExceptions Whether to throw exceptions when unexpected data is encountered.
+	 * @return the number of bytes written.
+	 * @throws Base64DecodingException if unexpected data is encountered when throwExceptions is specified, in which case neither buffer is changed.
+	 * @throws BufferOverflowException if the destination does not have room for all the decoded data, in which case neither buffer is changed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static int decode(ByteBuffer src, ByteBuffer dst, boolean throwExceptions) throws Base64DecodingException {
+		if (src.hasArray() && dst.hasArray()){
+			int length = decodedLength(src.array(), src.arrayOffset() + src.position(), src.remaining(), throwExceptions);
+			if (dst.remaining() < length) throw new BufferOverflowException();
+			decodeChecked(src.array(), src.arrayOffset() + src.position(), src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+			src.position(src.limit());
+			dst.position(dst.position() + length);
+			return length;
+		}
+		byte[] reverse = reverseBase64Chars;
+		int end = src.limit();
+		int sextets = 0;
+		boolean padding = false;
+		for (int s = src.position(); s < end; s++){
+			int b = src.get(s) & 0xff;
+			int v = reverse[b];
+			if (v >= 0){
+				if (throwExceptions && padding) throw unexpected(b);
+				sextets++;
+			} else if (throwExceptions){
+				if (v == NON_BASE_64) throw unexpected(b);
+				if (v == NON_BASE_64_PADDING) padding = true;
+			}
+		}
+		int length = decodedLength(sextets);
+		if (dst.remaining() < length) throw new BufferOverflowException();
+		int d = dst.position();
+		int bits = 0;
+		sextets = 0;
+		for (int s = src.position(); s < end; s++){
+			int v = reverse[src.get(s) & 0xff];
+			if (v >= 0){
+				bits = bits << 6 | v;
+				if (++sextets == 4){
+					dst.put(d, (byte)(bits >>> 16));
+					dst.put(d + 1, (byte)(bits >>> 8));
+					dst.put(d + 2, (byte)bits);
+					d += 3;
+					bits = 0;
+					sextets = 0;
+				}
+			}
+		}
+		if (sextets == 2){
+			dst.put(d++, (byte)(bits >>> 4));
+		} else if (sextets == 3){
+			dst.put(d++, (byte)(bits >>> 10));
+			dst.put(d++, (byte)(bits >>> 2));
+		}
+		src.position(end);
+		dst.position(d);
+		return length;
 	}
 
 	/**
@@ -1075,8 +1313,8 @@ public class Base64 {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public static void decode(byte[] bytes, OutputStream out) throws IOException {
-		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-		decode(in, out, false);
+		out.write(decode(bytes));
+		out.flush();
 	}
 
 	/**
@@ -1091,8 +1329,7 @@ public class Base64 {
 	 * @since 64bitlabsutils 1.02.16
 	 */
 	public static void decodeToStream(byte[] bytes, OutputStream out) throws IOException {
-		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-		decode(in, out, false);
+		decode(bytes, out);
 	}
 
 	/**
@@ -1195,43 +1432,6 @@ public class Base64 {
 		}
 	}
 
-	/**
-	 * Reads the next (decoded) Base64 character from the input stream.
-	 * Non Base64 characters are skipped.
-	 *
-	 * @param in Stream from which bytes are read.
-	 * @param throwExceptions Throw an exception if an unexpected character is encountered.
-	 * @return the next Base64 character from the stream or -1 if there are no more Base64 characters on the stream.
-	 * @throws IOException if an IO Error occurs.
-	 * @throws Base64DecodingException if unexpected data is encountered when throwExceptions is specified.
-	 *
-	 * @since 64bitlabsutils 1.0.0
-	 */
-	private static final int readBase64(InputStream in, boolean throwExceptions) throws IOException {
-		int read;
-		int numPadding = 0;
-		do {
-			read = in.read();
-			if (read == END_OF_INPUT) return END_OF_INPUT;
-			read = reverseBase64Chars[(byte)read];
-			if (throwExceptions && (read == NON_BASE_64 || (numPadding > 0 && read > NON_BASE_64))){
-				throw new Base64DecodingException (
-					MessageFormat.format(
-						labels.getString("unexpectedchar"),
-						(Object[])new String[] {
-							"'" + (char)read + "' (0x" + Integer.toHexString(read) + ")"
-						}
-					),
-					(char)read
-				);
-			}
-			if (read == NON_BASE_64_PADDING){
-				numPadding++;
-			}
-		} while (read <= NON_BASE_64);
-		return read;
-	}
-
 	/**
 	 * Decode Base64 encoded data from the InputStream to a byte array.
 	 * Characters that are not part of the Base64 alphabet are ignored
@@ -1315,42 +1515,11 @@ public class Base64 {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public static void decode(InputStream in, OutputStream out, boolean throwExceptions) throws IOException {
-		// Base64 decoding converts four bytes of input to three bytes of output
-		int[] inBuffer = new int[4];
-
-		// read bytes un-mapping them from their ASCII encoding in the process
-		// we must read at least two bytes to be able to output anything
-		boolean done = false;
-		while (!done && (inBuffer[0] = readBase64(in, throwExceptions)) != END_OF_INPUT
-			&& (inBuffer[1] = readBase64(in, throwExceptions)) != END_OF_INPUT){
-			// Fill the buffer
-			inBuffer[2] = readBase64(in, throwExceptions);
-			inBuffer[3] = readBase64(in, throwExceptions);
-
-			// Calculate the output
-			// The first two bytes of our in buffer will always be valid
-			// but we must check to make sure the other two bytes
-			// are not END_OF_INPUT before using them.
-			// The basic idea is that the four bytes will get reconstituted
-			// into three bytes along these lines:
-			// [xxAAAAAA] [xxBBBBBB] [xxCCCCCC] [xxDDDDDD]
-			//      [AAAAAABB] [BBBBCCCC] [CCDDDDDD]
-			// bytes are considered to be zero when absent.
-
-			// six A and two B
-			out.write(inBuffer[0] << 2 | inBuffer[1] >> 4);
-			if (inBuffer[2] != END_OF_INPUT){
-				// four B and four C
-				out.write(inBuffer[1] << 4 | inBuffer[2] >> 2);
-				if (inBuffer[3] != END_OF_INPUT){
-					// two C and six D
-					out.write(inBuffer[2] << 6 | inBuffer[3]);
-				} else {
-					done = true;
-				}
-			} else {
-				done = true;
-			}
+		Base64DecodingInputStream base64 = new Base64DecodingInputStream(in, throwExceptions);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = base64.read(buffer)) != -1){
+			out.write(buffer, 0, read);
 		}
 		out.flush();
 	}
@@ -0,0 +1,193 @@
+/*
+ * Encodes or decodes Base64 data read from a channel.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import com._64bitlabs.util.exception.Base64DecodingException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A channel that reads from another channel and gives the data read
+ * encoded in Base64 or decoded from Base64, depending on the coder.
+ * For example, a Base64 encoded attachment arriving on a socket can be
+ * decoded as it arrives:
+ * <pre>
+ * ReadableByteChannel decoded = new Base64Channel(socketChannel, new Base64Decoder(false));
+ * </pre>
+ * <p>
+ * If the underlying channel is in non-blocking mode and has nothing to
+ * give, read() returns zero rather than blocking.
+ *
+ * @see Base64Encoder
+ * @see Base64Decoder
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class Base64Channel implements ReadableByteChannel {
+
+	/**
+	 * The underlying channel.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ReadableByteChannel in;
+
+	/**
+	 * Encoder or decoder, which keeps partial groups between reads.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Base64Coder coder;
+
+	/**
+	 * Data read from the underlying channel and not yet converted, ready
+	 * to be read from.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+	/**
+	 * Converted data for reads into buffers with too little room for a
+	 * whole group and line break, ready to be read from.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ByteBuffer group = ByteBuffer.allocate(5);
+
+	/**
+	 * Whether the underlying channel has ended.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean endOfInput;
+
+	/**
+	 * Whether this channel has been closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean closed;
+
+	/**
+	 * Unexpected data found after some data was decoded, to be thrown by
+	 * the next read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private Base64DecodingException error;
+
+	/**
+	 * Create a channel that converts the data read from another channel.
+	 *
+	 * @param in the underlying channel.
+	 * @param coder a new Base64Encoder or Base64Decoder, which must not be used elsewhere.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Base64Channel(ReadableByteChannel in, Base64Coder coder){
+		this.in = in;
+		this.coder = coder;
+		buffer.flip();
+		group.flip();
+	}
+
+	/**
+	 * Reads converted data into the given buffer.  This blocks, if the
+	 * underlying channel blocks, only until some data has been converted.
+	 *
+	 * @param dst the buffer into which data is read.
+	 * @return the number of bytes read, possibly zero, or -1 at the end of the data.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws com._64bitlabs.util.exception.Base64DecodingException if a decoder that throws exceptions encounters unexpected data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int read(ByteBuffer dst) throws IOException {
+		if (closed) throw new ClosedChannelException();
+		int start = dst.position();
+		while (true){
+			while (group.hasRemaining() && dst.hasRemaining()){
+				dst.put(group.get());
+			}
+			if (!dst.hasRemaining() || group.hasRemaining() || error != null || coder.isFinished()) break;
+			if (!buffer.hasRemaining() && !endOfInput){
+				// Don't risk blocking once there is something to return.
+				if (dst.position() > start) break;
+				buffer.clear();
+				int n = in.read(buffer);
+				buffer.flip();
+				if (n == -1){
+					endOfInput = true;
+				} else if (n == 0){
+					break;
+				}
+			}
+			try {
+				if (dst.remaining() < group.capacity()){
+					group.clear();
+					try {
+						coder.code(buffer, group, endOfInput);
+					} finally {
+						group.flip();
+					}
+				} else {
+					coder.code(buffer, dst, endOfInput);
+				}
+			} catch (Base64DecodingException x){
+				// Skip the unexpected character so that reading may go on, and
+				// hand over what was decoded before it first.
+				buffer.position(buffer.position() + 1);
+				error = x;
+			}
+		}
+		int read = dst.position() - start;
+		if (read == 0 && error != null && !group.hasRemaining()){
+			Base64DecodingException x = error;
+			error = null;
+			throw x;
+		}
+		return read == 0 && coder.isFinished() && !group.hasRemaining() ? -1 : read;
+	}
+
+	/**
+	 * Tells whether this channel is open.
+	 *
+	 * @return true until the channel is closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public boolean isOpen(){
+		return !closed;
+	}
+
+	/**
+	 * Close this channel and the underlying channel.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close() throws IOException {
+		closed = true;
+		in.close();
+	}
+}
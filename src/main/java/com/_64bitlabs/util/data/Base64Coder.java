@@ -0,0 +1,187 @@
+/*
+ * Incremental Base64 encoding or decoding between buffers.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import com._64bitlabs.util.exception.Base64DecodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts data to or from Base64 a piece at a time, keeping any partial
+ * group of bytes or characters between calls.  This lets data be encoded
+ * or decoded as it arrives, without waiting for all of it.
+ * <p>
+ * A coder is used much like a java.nio.charset.CharsetEncoder: it is fed
+ * input until the end of the input is reached, and then fed once more
+ * with endOfInput set, until it reports that it is finished.  After that
+ * it must be reset before it is used again.
+ * <p>
+ * Coders are not safe for use by several threads at once.
+ *
+ * @see Base64Encoder
+ * @see Base64Decoder
+ * @see Base64Channel
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public abstract class Base64Coder {
+
+	/**
+	 * Size of the arrays through which buffers that are not backed by
+	 * arrays are converted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int STAGE_SIZE = 4096;
+
+	/**
+	 * Index in the source array of the first byte not consumed by the last
+	 * call to code().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	int srcPos;
+
+	/**
+	 * Index in the destination array just past the last byte produced by
+	 * the last call to code().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	int dstPos;
+
+	/**
+	 * Whether the end of the input has been reached and all output produced.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	boolean finished;
+
+	/**
+	 * Input for buffers without arrays, created when first needed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private byte[] stageIn;
+
+	/**
+	 * Output for buffers without arrays, created when first needed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private byte[] stageOut;
+
+	/**
+	 * Only the encoder and decoder in this package extend this class.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	Base64Coder(){
+	}
+
+	/**
+	 * Convert as much of the source array as the destination has room for.
+	 * srcPos and dstPos are set to show what was consumed and produced,
+	 * also when an exception is thrown.
+	 *
+	 * @param src input.
+	 * @param srcOff index of the first byte of input.
+	 * @param srcEnd index just past the last byte of input.
+	 * @param dst array for the output.
+	 * @param dstOff index at which to put the first byte of output.
+	 * @param dstEnd index past which no output may be put.
+	 * @param endOfInput whether there is no more input after this.
+	 * @return true if all input was consumed, and when endOfInput is set, all output produced; false if the destination ran out of room.
+	 * @throws Base64DecodingException if a decoder that throws exceptions encounters unexpected data.
+	 * @throws IllegalStateException if more input is given after the end of the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	abstract boolean code(byte[] src, int srcOff, int srcEnd, byte[] dst, int dstOff, int dstEnd, boolean endOfInput) throws Base64DecodingException;
+
+	/**
+	 * Convert as much of the remaining input as the output has room for,
+	 * advancing the position of each buffer past what was consumed or
+	 * produced.
+	 *
+	 * @param in input.
+	 * @param out buffer for the output.
+	 * @param endOfInput whether there is no more input after what remains in the input buffer.
+	 * @return true if all input was consumed, and when endOfInput is set, all output produced; false if the output buffer ran out of room.
+	 * @throws Base64DecodingException if a decoder that throws exceptions encounters unexpected data, in which case the input is positioned at the unexpected character.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	boolean code(ByteBuffer in, ByteBuffer out, boolean endOfInput) throws Base64DecodingException {
+		if (in.hasArray() && out.hasArray()){
+			int inBase = in.arrayOffset();
+			int outBase = out.arrayOffset();
+			try {
+				return code(in.array(), inBase + in.position(), inBase + in.limit(), out.array(), outBase + out.position(), outBase + out.limit(), endOfInput);
+			} finally {
+				in.position(srcPos - inBase);
+				out.position(dstPos - outBase);
+			}
+		}
+		if (stageIn == null){
+			stageIn = new byte[STAGE_SIZE];
+			stageOut = new byte[STAGE_SIZE];
+		}
+		while (true){
+			int start = in.position();
+			int length = Math.min(in.remaining(), STAGE_SIZE);
+			int room = Math.min(out.remaining(), STAGE_SIZE);
+			in.get(stageIn, 0, length);
+			boolean done;
+			try {
+				done = code(stageIn, 0, length, stageOut, 0, room, endOfInput && !in.hasRemaining());
+			} finally {
+				// Give back what was not consumed.
+				in.position(start + srcPos);
+				out.put(stageOut, 0, dstPos);
+			}
+			if (done){
+				if (!in.hasRemaining()) return true;
+			} else if (room < STAGE_SIZE){
+				// The output buffer itself is full.
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Whether the end of the input has been reached and all output produced.
+	 *
+	 * @return true once the coder has been given the end of the input and has produced all of its output.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean isFinished(){
+		return finished;
+	}
+
+	/**
+	 * Forget any partial input and the end of the input, so that the coder
+	 * can be used for new data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void reset(){
+		finished = false;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Incremental Base64 decoding between buffers.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import com._64bitlabs.util.exception.Base64DecodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes Base64 data a piece at a time.  Characters that do not yet make
+ * up a group of four are kept until more input or the end of the input
+ * arrives.  The output is the same as Base64.decode() gives for all of
+ * the input at once: characters that are not part of the Base64 alphabet
+ * are skipped, or cause an exception if exceptions are requested and they
+ * are not white space or padding.
+ *
+ * @see Base64DecodingInputStream
+ * @see Base64Encoder
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class Base64Decoder extends Base64Coder {
+
+	/**
+	 * Whether unexpected data causes an exception.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final boolean throwExceptions;
+
+	/**
+	 * Six bits for each character of an incomplete group, in the low bits.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int bits;
+
+	/**
+	 * Number of characters in bits.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int sextets;
+
+	/**
+	 * Whether an equals sign has been seen, after which no more Base64
+	 * characters are expected.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean padding;
+
+	/**
+	 * Create a decoder.
+	 *
+	 * @param throwExceptions Whether to throw exceptions when unexpected data is encountered.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Base64Decoder(boolean throwExceptions){
+		this.throwExceptions = throwExceptions;
+	}
+
+	/**
+	 * Decode as much of the remaining input as the output has room for,
+	 * advancing the position of each buffer past what was consumed or
+	 * produced.  Once all input has been given, call this with endOfInput
+	 * set until it returns true, to write the bytes of a final partial group.
+	 *
+	 * @param in Base64 encoded data.
+	 * @param out buffer for the decoded data.
+	 * @param endOfInput whether there is no more data after what remains in the input buffer.
+	 * @return true if all input was consumed, and when endOfInput is set, all output produced; false if the output buffer ran out of room.
+	 * @throws Base64DecodingException if unexpected data is encountered when throwExceptions is specified, in which case the input is positioned at the unexpected character.
+	 * @throws IllegalStateException if more input is given after the end of the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean decode(ByteBuffer in, ByteBuffer out, boolean endOfInput) throws Base64DecodingException {
+		return code(in, out, endOfInput);
+	}
+
+	@Override boolean code(byte[] src, int s, int srcEnd, byte[] dst, int d, int dstEnd, boolean endOfInput) throws Base64DecodingException {
+		if (finished && s < srcEnd) throw new IllegalStateException("Input after the end of the input");
+		byte[] reverse = Base64.reverseBase64Chars;
+		try {
+			while (s < srcEnd){
+				if (sextets == 0 && !padding){
+					// Usually four characters in a row decode to three bytes.
+					for (int quadEnd = srcEnd - 3; s < quadEnd && dstEnd - d >= 3; s += 4){
+						int quad = reverse[src[s] & 0xff] << 18 | reverse[src[s + 1] & 0xff] << 12 | reverse[src[s + 2] & 0xff] << 6 | reverse[src[s + 3] & 0xff];
+						if (quad < 0) break;
+						dst[d] = (byte)(quad >>> 16);
+						dst[d + 1] = (byte)(quad >>> 8);
+						dst[d + 2] = (byte)quad;
+						d += 3;
+					}
+					if (s == srcEnd) break;
+				}
+				int b = src[s] & 0xff;
+				int v = reverse[b];
+				if (v >= 0){
+					if (throwExceptions && padding) throw Base64.unexpected(b);
+					if (sextets == 3){
+						if (dstEnd - d < 3) return false;
+						bits = bits << 6 | v;
+						dst[d] = (byte)(bits >>> 16);
+						dst[d + 1] = (byte)(bits >>> 8);
+						dst[d + 2] = (byte)bits;
+						d += 3;
+						bits = 0;
+						sextets = 0;
+					} else {
+						bits = bits << 6 | v;
+						sextets++;
+					}
+				} else if (throwExceptions){
+					if (v == Base64.NON_BASE_64) throw Base64.unexpected(b);
+					if (v == Base64.NON_BASE_64_PADDING) padding = true;
+				}
+				s++;
+			}
+			if (endOfInput && !finished){
+				if (dstEnd - d < sextets - 1) return false;
+				if (sextets == 2){
+					dst[d++] = (byte)(bits >>> 4);
+				} else if (sextets == 3){
+					dst[d++] = (byte)(bits >>> 10);
+					dst[d++] = (byte)(bits >>> 2);
+				}
+				bits = 0;
+				sextets = 0;
+				finished = true;
+			}
+			return true;
+		} finally {
+			srcPos = s;
+			dstPos = d;
+		}
+	}
+
+	@Override public void reset(){
+		super.reset();
+		bits = 0;
+		sextets = 0;
+		padding = false;
+	}
+}
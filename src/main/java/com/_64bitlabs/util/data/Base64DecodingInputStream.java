@@ -0,0 +1,286 @@
+/*
+ * Decodes Base64 data read from a stream.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import com._64bitlabs.util.exception.Base64DecodingException;
+import java.io.*;
+
+/**
+ * Decodes Base64 data read from the underlying stream as it is read,
+ * so that large data can be decoded without holding all of it.
+ * <p>
+ * Characters that are not part of the Base64 alphabet are skipped, or,
+ * if exceptions are requested, cause a Base64DecodingException once the
+ * data decoded before them has been read.
+ *
+ * @see Base64EncodingOutputStream
+ * @see Base64Decoder
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class Base64DecodingInputStream extends FilterInputStream {
+
+	/**
+	 * Keeps the partial group between reads.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Base64Decoder decoder;
+
+	/**
+	 * Encoded data read from the underlying stream.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final byte[] buffer = new byte[8192];
+
+	/**
+	 * Index of the first byte in buffer not yet decoded.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int bufferPos;
+
+	/**
+	 * Index just past the last byte read into buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int bufferEnd;
+
+	/**
+	 * Whether the underlying stream has ended.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean endOfInput;
+
+	/**
+	 * A decoded group for reads of fewer than three bytes, which have no
+	 * room for a whole group.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final byte[] group = new byte[3];
+
+	/**
+	 * Index of the first byte in group not yet read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int groupPos;
+
+	/**
+	 * Index just past the last byte in group.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int groupEnd;
+
+	/**
+	 * Unexpected data found after some data was decoded, to be thrown by
+	 * the next read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private Base64DecodingException error;
+
+	/**
+	 * Create a stream that skips characters that are not part of the
+	 * Base64 alphabet.
+	 *
+	 * @param in the underlying input stream, from which encoded data is read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Base64DecodingInputStream(InputStream in){
+		this(in, false);
+	}
+
+	/**
+	 * Create a stream that decodes the data read from the underlying stream.
+	 *
+	 * @param in the underlying input stream, from which encoded data is read.
+	 * @param throwExceptions Whether to throw exceptions when unexpected data is encountered.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Base64DecodingInputStream(InputStream in, boolean throwExceptions){
+		super(in);
+		decoder = new Base64Decoder(throwExceptions);
+	}
+
+	/**
+	 * Reads the next decoded byte.
+	 *
+	 * @return the next byte of data, or -1 if the end of the stream is reached.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws Base64DecodingException if unexpected data is encountered when throwExceptions is specified.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int read() throws IOException {
+		if (groupPos == groupEnd && !fillGroup()) return -1;
+		return group[groupPos++] & 0xff;
+	}
+
+	/**
+	 * Reads up to length decoded bytes into an array, blocking until at
+	 * least one byte has been decoded or the end of the stream is reached.
+	 *
+	 * @param b the buffer into which the data is read.
+	 * @param off the start offset of the data.
+	 * @param len the maximum number of bytes read.
+	 * @return the total number of bytes read into the buffer, or -1 if the end of the stream is reached.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws Base64DecodingException if unexpected data is encountered when throwExceptions is specified.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > b.length || off + len < 0) throw new IndexOutOfBoundsException();
+		if (len == 0) return 0;
+		if (groupPos == groupEnd){
+			if (len >= 3) return decode(b, off, len);
+			if (!fillGroup()) return -1;
+		}
+		int n = Math.min(len, groupEnd - groupPos);
+		System.arraycopy(group, groupPos, b, off, n);
+		groupPos += n;
+		return n;
+	}
+
+	/**
+	 * Decode the next bytes into group.
+	 *
+	 * @return false at the end of the stream.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean fillGroup() throws IOException {
+		int n = decode(group, 0, group.length);
+		if (n == -1) return false;
+		groupPos = 0;
+		groupEnd = n;
+		return true;
+	}
+
+	/**
+	 * Decode into an array with room for at least one group, reading from
+	 * the underlying stream until something is decoded.
+	 *
+	 * @return number of bytes decoded, or -1 at the end of the stream.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int decode(byte[] b, int off, int len) throws IOException {
+		if (error != null){
+			Base64DecodingException x = error;
+			error = null;
+			throw x;
+		}
+		while (true){
+			if (bufferPos == bufferEnd && !endOfInput){
+				int n = in.read(buffer);
+				if (n == -1){
+					endOfInput = true;
+				} else {
+					bufferPos = 0;
+					bufferEnd = n;
+				}
+			}
+			try {
+				decoder.code(buffer, bufferPos, bufferEnd, b, off, off + len, endOfInput);
+			} catch (Base64DecodingException x){
+				// Skip the unexpected character so that reading may go on.
+				bufferPos = decoder.srcPos + 1;
+				if (decoder.dstPos == off) throw x;
+				error = x;
+				return decoder.dstPos - off;
+			}
+			bufferPos = decoder.srcPos;
+			if (decoder.dstPos > off) return decoder.dstPos - off;
+			if (decoder.isFinished()) return -1;
+		}
+	}
+
+	/**
+	 * Skips over and discards n decoded bytes.
+	 *
+	 * @param n the number of bytes to be skipped.
+	 * @return the actual number of bytes skipped.
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public long skip(long n) throws IOException {
+		byte[] b = new byte[(int)Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n){
+			int read = read(b, 0, (int)Math.min(n - skipped, b.length));
+			if (read == -1) break;
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Returns the number of decoded bytes that can be read without
+	 * blocking.
+	 *
+	 * @return bytes that have been decoded but not yet read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int available(){
+		return groupEnd - groupPos;
+	}
+
+	/**
+	 * Marks are not supported since the decoder cannot go back.
+	 *
+	 * @return false
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public boolean markSupported(){
+		return false;
+	}
+
+	/**
+	 * Does nothing, since marks are not supported.
+	 *
+	 * @param readlimit ignored.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void mark(int readlimit){
+	}
+
+	/**
+	 * Marks are not supported.
+	 *
+	 * @throws IOException always.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Incremental Base64 encoding between buffers.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import com._64bitlabs.util.exception.Base64DecodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes data in Base64 a piece at a time.  Bytes that do not yet make
+ * up a group of three are kept until more input or the end of the input
+ * arrives.  The output is the same as Base64.encode() gives for all of
+ * the input at once.
+ *
+ * @see Base64EncodingOutputStream
+ * @see Base64Decoder
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class Base64Encoder extends Base64Coder {
+
+	/**
+	 * Whether a line break follows every 76 characters and the last line.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final boolean lineBreaks;
+
+	/**
+	 * Bytes of an incomplete group, in the low bits.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int carry;
+
+	/**
+	 * Number of bytes in carry.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int carried;
+
+	/**
+	 * Number of characters written to the current line.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int column;
+
+	/**
+	 * Create an encoder.
+	 *
+	 * @param lineBreaks Whether to insert line breaks every 76 characters in the output.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Base64Encoder(boolean lineBreaks){
+		this.lineBreaks = lineBreaks;
+	}
+
+	/**
+	 * Encode as much of the remaining input as the output has room for,
+	 * advancing the position of each buffer past what was consumed or
+	 * produced.  Once all input has been given, call this with endOfInput
+	 * set until it returns true, to write the final padded group and line
+	 * break.
+	 *
+	 * @param in data to encode.
+	 * @param out buffer for the encoded data.
+	 * @param endOfInput whether there is no more data after what remains in the input buffer.
+	 * @return true if all input was consumed, and when endOfInput is set, all output produced; false if the output buffer ran out of room.
+	 * @throws IllegalStateException if more input is given after the end of the input.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean encode(ByteBuffer in, ByteBuffer out, boolean endOfInput){
+		try {
+			return code(in, out, endOfInput);
+		} catch (Base64DecodingException x){
+			// This can't happen.
+			// Encoding accepts any data.
+			throw new RuntimeException(x);
+		}
+	}
+
+	@Override boolean code(byte[] src, int s, int srcEnd, byte[] dst, int d, int dstEnd, boolean endOfInput){
+		if (finished && s < srcEnd) throw new IllegalStateException("Input after the end of the input");
+		byte[] chars = Base64.base64Chars;
+		try {
+			while (true){
+				if (carried == 0){
+					// Whole groups straight from the input.
+					for (; srcEnd - s >= 3; s += 3){
+						boolean lineEnd = lineBreaks && column == 72;
+						if (dstEnd - d < (lineEnd ? 5 : 4)) return false;
+						int bits = (src[s] & 0xff) << 16 | (src[s + 1] & 0xff) << 8 | (src[s + 2] & 0xff);
+						dst[d] = chars[bits >>> 18];
+						dst[d + 1] = chars[(bits >>> 12) & 0x3f];
+						dst[d + 2] = chars[(bits >>> 6) & 0x3f];
+						dst[d + 3] = chars[bits & 0x3f];
+						d += 4;
+						column += 4;
+						if (lineEnd){
+							dst[d++] = '\n';
+							column = 0;
+						}
+					}
+				}
+				for (; carried < 3 && s < srcEnd; s++){
+					carry = carry << 8 | (src[s] & 0xff);
+					carried++;
+				}
+				if (carried < 3) break;
+				boolean lineEnd = lineBreaks && column == 72;
+				if (dstEnd - d < (lineEnd ? 5 : 4)) return false;
+				dst[d] = chars[carry >>> 18];
+				dst[d + 1] = chars[(carry >>> 12) & 0x3f];
+				dst[d + 2] = chars[(carry >>> 6) & 0x3f];
+				dst[d + 3] = chars[carry & 0x3f];
+				d += 4;
+				column += 4;
+				if (lineEnd){
+					dst[d++] = '\n';
+					column = 0;
+				}
+				carry = 0;
+				carried = 0;
+			}
+			if (endOfInput && !finished){
+				if (carried > 0){
+					if (dstEnd - d < (lineBreaks ? 5 : 4)) return false;
+					int bits = carry << (carried == 1 ? 16 : 8);
+					dst[d] = chars[bits >>> 18];
+					dst[d + 1] = chars[(bits >>> 12) & 0x3f];
+					dst[d + 2] = carried == 2 ? chars[(bits >>> 6) & 0x3f] : (byte)'=';
+					dst[d + 3] = '=';
+					d += 4;
+					column += 4;
+					carry = 0;
+					carried = 0;
+				}
+				if (lineBreaks && column > 0){
+					if (d == dstEnd) return false;
+					dst[d++] = '\n';
+					column = 0;
+				}
+				finished = true;
+			}
+			return true;
+		} finally {
+			srcPos = s;
+			dstPos = d;
+		}
+	}
+
+	@Override public void reset(){
+		super.reset();
+		carry = 0;
+		carried = 0;
+		column = 0;
+	}
+}
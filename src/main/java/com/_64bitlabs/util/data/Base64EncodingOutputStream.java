@@ -0,0 +1,160 @@
+/*
+ * Encodes the data written to a stream in Base64.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import java.io.*;
+
+/**
+ * Encodes all data written to this stream in Base64 and writes the
+ * encoded data to the underlying stream as it goes, so that large data
+ * can be encoded without holding all of it.
+ * <p>
+ * The final padded group and line break can only be written once all
+ * data is known, so the stream must be finished or closed for the
+ * encoded data to be complete.  flush() passes on whatever whole groups
+ * have been encoded so far.
+ *
+ * @see Base64DecodingInputStream
+ * @see Base64Encoder
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class Base64EncodingOutputStream extends FilterOutputStream {
+
+	/**
+	 * Keeps the partial group and line between writes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Base64Encoder encoder;
+
+	/**
+	 * Encoded data on its way to the underlying stream.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final byte[] buffer = new byte[8192];
+
+	/**
+	 * Holds a single byte that was written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final byte[] single = new byte[1];
+
+	/**
+	 * Create a stream that encodes with line breaks every 76 characters.
+	 *
+	 * @param out the underlying output stream, to which encoded data is written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Base64EncodingOutputStream(OutputStream out){
+		this(out, true);
+	}
+
+	/**
+	 * Create a stream that encodes the data written to it.
+	 *
+	 * @param out the underlying output stream, to which encoded data is written.
+	 * @param lineBreaks Whether to insert line breaks every 76 characters in the output.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Base64EncodingOutputStream(OutputStream out, boolean lineBreaks){
+		super(out);
+		encoder = new Base64Encoder(lineBreaks);
+	}
+
+	/**
+	 * Encodes the specified byte.
+	 *
+	 * @param b the byte.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws IllegalStateException if the stream has been finished.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(int b) throws IOException {
+		single[0] = (byte)b;
+		write(single, 0, 1);
+	}
+
+	/**
+	 * Encodes length bytes from the specified byte array starting at
+	 * offset off.
+	 *
+	 * @param b the data.
+	 * @param off the start offset in the data.
+	 * @param len the number of bytes to write.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws IllegalStateException if the stream has been finished.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > b.length || off + len < 0) throw new IndexOutOfBoundsException();
+		encode(b, off, off + len, false);
+	}
+
+	/**
+	 * Encode and pass on data until all of it is consumed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void encode(byte[] b, int off, int end, boolean endOfInput) throws IOException {
+		boolean done;
+		do {
+			done = encoder.code(b, off, end, buffer, 0, buffer.length, endOfInput);
+			off = encoder.srcPos;
+			if (encoder.dstPos > 0) out.write(buffer, 0, encoder.dstPos);
+		} while (!done);
+	}
+
+	/**
+	 * Write the final padded group and line break to the underlying stream
+	 * and flush it, without closing it.  Nothing more may be written after
+	 * this.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void finish() throws IOException {
+		if (!encoder.isFinished()){
+			encode(buffer, 0, 0, true);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Finish the encoding and close the underlying stream.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * CRC-32C checksum
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum, as used by iSCSI, ext4 and many storage
+ * formats.
+ * <p>
+ * The checksum is computed eight bytes at a time from eight lookup tables.
+ * Unlike java.util.zip.CRC32C, this class is available on Java 8.
+ *
+ * @see FileHasher
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CRC32C implements Checksum, Hasher {
+
+	/**
+	 * The Castagnoli polynomial, bit reversed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int POLYNOMIAL = 0x82f63b78;
+
+	/**
+	 * Eight tables of 256 entries.  The first is the usual byte at a time
+	 * table; each further table advances the checksum by one more byte of zeros.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int[] TABLE = new int[8 * 256];
+	static {
+		for (int i = 0; i < 256; i++){
+			int crc = i;
+			for (int j = 0; j < 8; j++){
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+			}
+			TABLE[i] = crc;
+		}
+		for (int i = 256; i < TABLE.length; i++){
+			int previous = TABLE[i - 256];
+			TABLE[i] = (previous >>> 8) ^ TABLE[previous & 0xff];
+		}
+	}
+
+	/**
+	 * The checksum so far, inverted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int crc = 0xffffffff;
+
+	/**
+	 * Create a checksum of no bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CRC32C(){
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void update(int b){
+		crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xff];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void update(byte[] buffer, int offset, int length){
+		if (offset < 0 || length < 0 || offset + length > buffer.length) throw new IndexOutOfBoundsException();
+		int c = crc;
+		for (; length >= 8; offset += 8, length -= 8){
+			int one = c ^ ((buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8) | ((buffer[offset + 2] & 0xff) << 16) | (buffer[offset + 3] << 24));
+			int two = (buffer[offset + 4] & 0xff) | ((buffer[offset + 5] & 0xff) << 8) | ((buffer[offset + 6] & 0xff) << 16) | (buffer[offset + 7] << 24);
+			c = slice(one, two);
+		}
+		for (; length > 0; offset++, length--){
+			c = (c >>> 8) ^ TABLE[(c ^ buffer[offset]) & 0xff];
+		}
+		crc = c;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void update(ByteBuffer buffer){
+		if (buffer.hasArray()){
+			update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+		ByteBuffer in = buffer.order() == ByteOrder.LITTLE_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int position = buffer.position();
+		int limit = buffer.limit();
+		int c = crc;
+		for (; limit - position >= 8; position += 8){
+			c = slice(c ^ in.getInt(position), in.getInt(position + 4));
+		}
+		for (; position < limit; position++){
+			c = (c >>> 8) ^ TABLE[(c ^ in.get(position)) & 0xff];
+		}
+		crc = c;
+		buffer.position(limit);
+	}
+
+	/**
+	 * Advance the checksum over eight bytes, given as two little-endian
+	 * words with the checksum already mixed into the first.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static int slice(int one, int two){
+		return TABLE[7 * 256 + (one & 0xff)] ^
+			TABLE[6 * 256 + ((one >>> 8) & 0xff)] ^
+			TABLE[5 * 256 + ((one >>> 16) & 0xff)] ^
+			TABLE[4 * 256 + (one >>> 24)] ^
+			TABLE[3 * 256 + (two & 0xff)] ^
+			TABLE[2 * 256 + ((two >>> 8) & 0xff)] ^
+			TABLE[256 + ((two >>> 16) & 0xff)] ^
+			TABLE[two >>> 24];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public long getValue(){
+		return ~crc & 0xffffffffL;
+	}
+
+	/**
+	 * Get the checksum as four bytes, most significant first.
+	 *
+	 * @return the checksum.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public byte[] getHash(){
+		int value = ~crc;
+		return new byte[]{
+			(byte)(value >>> 24),
+			(byte)(value >>> 16),
+			(byte)(value >>> 8),
+			(byte)value,
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void reset(){
+		crc = 0xffffffff;
+	}
+}
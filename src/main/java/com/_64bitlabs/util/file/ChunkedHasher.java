@@ -0,0 +1,664 @@
+/*
+ * Hashes huge files in chunks combined into a hash tree
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Hashes a file as a sequence of fixed size chunks that are hashed in
+ * parallel and combined into a Merkle tree.
+ * <p>
+ * The root hash of the tree stands for the whole file, but unlike a plain
+ * MD5 or SHA-256 of the file it is not the same value that md5sum or
+ * sha256sum would print.  Following RFC 6962, each chunk is hashed with a
+ * zero byte in front of it, each pair of child hashes is hashed with a one
+ * byte in front of them, and a tree with n leaves splits after the largest
+ * power of two less than n.
+ * <p>
+ * When hashing with a checkpoint file, the chunk hashes finished so far are
+ * saved to it every few seconds, so hashing the same unchanged file with the
+ * same checkpoint after a crash only hashes the chunks that are missing.
+ * A saved Tree also lets a changed region be rehashed without reading the
+ * rest of the file.
+ * <p>
+ * Each tree records its chunk size and which algorithm made it, so a
+ * checkpoint or tree made with a different algorithm or chunk size is never
+ * mixed into another tree.
+ *
+ * @see FileHasher
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ChunkedHasher implements Closeable {
+
+	/**
+	 * Default number of bytes in each chunk.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+	/**
+	 * Default milliseconds between saves of a checkpoint.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 5000;
+
+	/**
+	 * Put in front of a chunk before hashing it.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final byte[] LEAF_PREFIX = {0};
+
+	/**
+	 * Put in front of a pair of child hashes before hashing them.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final byte[] NODE_PREFIX = {1};
+
+	/**
+	 * Creates a Hasher for each chunk.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Supplier<? extends Hasher> algorithm;
+
+	/**
+	 * Identifies the algorithm in trees: the hash of a leaf prefix alone,
+	 * which differs between algorithms and has the length of their hashes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final byte[] algorithmId;
+
+	private final int chunkSize;
+
+	/**
+	 * Pool on which chunks are hashed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Whether the pool was created by (and should be shut down with) this hasher.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean ownPool;
+
+	/**
+	 * Maximum number of chunks that are hashed at once.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final int maxInFlight;
+
+	private volatile long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	/**
+	 * Create a hasher with the default chunk size that uses a new pool
+	 * with one thread per processor.
+	 *
+	 * @param algorithm creates a Hasher for each chunk, for example FileHasher.sha256().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ChunkedHasher(Supplier<? extends Hasher> algorithm){
+		this(algorithm, DEFAULT_CHUNK_SIZE, null);
+	}
+
+	/**
+	 * Create a hasher.
+	 *
+	 * @param algorithm creates a Hasher for each chunk, for example FileHasher.sha256().
+	 * @param chunkSize number of bytes in each chunk.
+	 * @param pool pool on which to hash chunks, or null to create a pool for this hasher.
+	 * @throws IllegalArgumentException if the chunk size is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ChunkedHasher(Supplier<? extends Hasher> algorithm, int chunkSize, ForkJoinPool pool){
+		if (algorithm == null) throw new NullPointerException();
+		if (chunkSize <= 0) throw new IllegalArgumentException("Bad chunk size: " + chunkSize);
+		this.algorithm = algorithm;
+		this.chunkSize = chunkSize;
+		Hasher probe = algorithm.get();
+		probe.update(LEAF_PREFIX, 0, 1);
+		algorithmId = probe.getHash();
+		if (pool == null){
+			pool = new ForkJoinPool();
+			ownPool = true;
+		}
+		this.pool = pool;
+		maxInFlight = 2 * pool.getParallelism();
+	}
+
+	/**
+	 * Get the number of bytes in each chunk.
+	 *
+	 * @return the chunk size.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getChunkSize(){
+		return chunkSize;
+	}
+
+	/**
+	 * Set how often a checkpoint is saved while hashing.
+	 *
+	 * @param checkpointInterval milliseconds between saves.
+	 * @throws IllegalArgumentException if the interval is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setCheckpointInterval(long checkpointInterval){
+		if (checkpointInterval < 0) throw new IllegalArgumentException("Negative checkpoint interval: " + checkpointInterval);
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Get how often a checkpoint is saved while hashing.
+	 *
+	 * @return milliseconds between saves.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getCheckpointInterval(){
+		return checkpointInterval;
+	}
+
+	/**
+	 * Hash every chunk of a file.
+	 *
+	 * @param file file to hash.
+	 * @return the hashes of the chunks.
+	 * @throws IOException if the file cannot be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Tree hash(Path file) throws IOException {
+		return hash(file, null);
+	}
+
+	/**
+	 * Hash every chunk of a file, resuming from and saving progress to a
+	 * checkpoint.  If the checkpoint is missing, unreadable, or was made for
+	 * a different length, modification time, chunk size, or algorithm,
+	 * hashing starts over.  The checkpoint is left holding the complete tree.
+	 *
+	 * @param file file to hash.
+	 * @param checkpoint file in which progress is kept, or null for none.
+	 * @return the hashes of the chunks.
+	 * @throws IOException if the file cannot be read or the checkpoint cannot be saved.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Tree hash(Path file, Path checkpoint) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long length = channel.size();
+			long lastModified = Files.getLastModifiedTime(file).toMillis();
+			Tree tree = null;
+			if (checkpoint != null && Files.exists(checkpoint)){
+				try {
+					tree = Tree.load(checkpoint);
+				} catch (IOException x){
+					// Start over.
+				}
+			}
+			if (tree == null || !matches(tree) || tree.length != length || tree.lastModified != lastModified){
+				tree = new Tree(algorithmId, chunkSize, length, lastModified);
+			}
+			hashChunks(channel, tree, checkpoint);
+			return tree;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Hash again the chunks of a file that overlap a region that changed,
+	 * and any chunks past the end of the shorter of the old and new file.
+	 * The hashes of the other chunks are taken from the previous tree
+	 * without reading them.
+	 *
+	 * @param file file to hash.
+	 * @param previous hashes of the file before it changed.
+	 * @param position start of the region that changed.
+	 * @param length length of the region that changed.
+	 * @return the hashes of the chunks of the file as it is now.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the previous tree used a different algorithm or chunk size, or the region is negative.
+	 *
+	 * @see Tree#getChangedChunks(Tree)
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Tree rehash(Path file, Tree previous, long position, long length) throws IOException {
+		check(previous);
+		if (position < 0 || length < 0) throw new IllegalArgumentException("Bad region: " + position + ", " + length);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			Tree tree = new Tree(algorithmId, chunkSize, channel.size(), Files.getLastModifiedTime(file).toMillis());
+			// Chunks that end before the shorter length have the same extent in both files.
+			long unchanged = tree.length == previous.length ? tree.leaves.length : Math.min(tree.length, previous.length) / chunkSize;
+			long firstChanged = position / chunkSize;
+			long lastChanged = length == 0 ? firstChanged - 1 : (position + length - 1) / chunkSize;
+			for (int i=0; i<unchanged; i++){
+				if (i < firstChanged || i > lastChanged){
+					tree.leaves[i] = previous.leaves[i];
+				}
+			}
+			hashChunks(channel, tree, null);
+			return tree;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Whether a tree was made with the algorithm and chunk size of this hasher.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean matches(Tree tree){
+		return tree.chunkSize == chunkSize && Arrays.equals(tree.algorithmId, algorithmId);
+	}
+
+	/**
+	 * Make sure a tree was made with the algorithm and chunk size of this hasher.
+	 *
+	 * @throws IllegalArgumentException if it was not.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void check(Tree tree){
+		if (tree.chunkSize != chunkSize) throw new IllegalArgumentException("Tree has chunk size " + tree.chunkSize + ", not " + chunkSize);
+		if (!Arrays.equals(tree.algorithmId, algorithmId)) throw new IllegalArgumentException("Tree was made with a different algorithm");
+	}
+
+	/**
+	 * Hash the chunks of the tree that have no hash yet.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void hashChunks(FileChannel channel, Tree tree, Path checkpoint) throws IOException {
+		ArrayDeque<ChunkTask> inFlight = new ArrayDeque<ChunkTask>();
+		long lastSave = System.currentTimeMillis();
+		int next = 0;
+		boolean saved = false;
+		try {
+			while (true){
+				for (; next < tree.leaves.length && inFlight.size() < maxInFlight; next++){
+					if (tree.leaves[next] == null){
+						ChunkTask task = new ChunkTask(channel, tree, next);
+						pool.execute(task);
+						inFlight.add(task);
+					}
+				}
+				if (inFlight.isEmpty()) break;
+				ChunkTask task = inFlight.remove();
+				byte[] hash = task.join();
+				if (task.error != null) throw task.error;
+				tree.leaves[task.index] = hash;
+				if (checkpoint != null && System.currentTimeMillis() - lastSave >= checkpointInterval){
+					tree.save(checkpoint);
+					lastSave = System.currentTimeMillis();
+				}
+			}
+			if (checkpoint != null) tree.save(checkpoint);
+			saved = true;
+		} finally {
+			for (ChunkTask task: inFlight){
+				task.cancel(false);
+			}
+			if (!saved && checkpoint != null){
+				// Keep what was finished for the next attempt.
+				try {
+					tree.save(checkpoint);
+				} catch (IOException x){
+					// The original error is more useful.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hashes one chunk on the pool.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private class ChunkTask extends RecursiveTask<byte[]> {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel channel;
+		private final long position;
+		private final long size;
+		private final int index;
+		private IOException error;
+
+		ChunkTask(FileChannel channel, Tree tree, int index){
+			this.channel = channel;
+			this.index = index;
+			position = (long)index * chunkSize;
+			size = Math.min(chunkSize, tree.length - position);
+		}
+
+		@Override protected byte[] compute(){
+			Hasher hasher = algorithm.get();
+			hasher.update(LEAF_PREFIX, 0, 1);
+			try {
+				hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+			} catch (IOException x){
+				error = x;
+				return null;
+			}
+			return hasher.getHash();
+		}
+	}
+
+	/**
+	 * Get the root hash of a complete tree.
+	 *
+	 * @param tree hashes of the chunks, made by this hasher or one with the same algorithm.
+	 * @return the hash of the tree, which is the hash of no bytes for an empty file.
+	 * @throws IllegalArgumentException if the tree was made with a different algorithm or chunk size.
+	 * @throws IllegalStateException if some chunks have not been hashed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public byte[] getRootHash(Tree tree){
+		check(tree);
+		if (!tree.isComplete()) throw new IllegalStateException("Only " + tree.getCompletedChunks() + " of " + tree.getChunkCount() + " chunks have been hashed");
+		if (tree.leaves.length == 0) return algorithm.get().getHash();
+		return root(tree.leaves, 0, tree.leaves.length);
+	}
+
+	/**
+	 * Hash of the subtree over the given leaves.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private byte[] root(byte[][] leaves, int from, int to){
+		if (to - from == 1) return leaves[from];
+		int split = Integer.highestOneBit(to - from - 1);
+		byte[] left = root(leaves, from, from + split);
+		byte[] right = root(leaves, from + split, to);
+		Hasher hasher = algorithm.get();
+		hasher.update(NODE_PREFIX, 0, 1);
+		hasher.update(left, 0, left.length);
+		hasher.update(right, 0, right.length);
+		return hasher.getHash();
+	}
+
+	/**
+	 * The hashes of the chunks of a file, some of which may be missing if
+	 * hashing was interrupted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static class Tree {
+
+		/**
+		 * Identifies a saved tree.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private static final int MAGIC = 0x43484b32;
+
+		/**
+		 * Identifies the algorithm that made the tree, and has the length
+		 * of its chunk hashes.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private final byte[] algorithmId;
+
+		private final int chunkSize;
+		private final long length;
+		private final long lastModified;
+
+		/**
+		 * Hash of each chunk, or null for chunks not yet hashed.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private final byte[][] leaves;
+
+		private Tree(byte[] algorithmId, int chunkSize, long length, long lastModified){
+			long count = (length + chunkSize - 1) / chunkSize;
+			if (count > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many chunks: " + count);
+			this.algorithmId = algorithmId;
+			this.chunkSize = chunkSize;
+			this.length = length;
+			this.lastModified = lastModified;
+			leaves = new byte[(int)count][];
+		}
+
+		/**
+		 * Get the number of bytes in each chunk.
+		 *
+		 * @return the chunk size.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int getChunkSize(){
+			return chunkSize;
+		}
+
+		/**
+		 * Get the length of the file that was hashed.
+		 *
+		 * @return the length in bytes.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public long getLength(){
+			return length;
+		}
+
+		/**
+		 * Get the modification time of the file that was hashed.
+		 *
+		 * @return milliseconds since the epoch.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public long getLastModified(){
+			return lastModified;
+		}
+
+		/**
+		 * Get the number of chunks in the file.
+		 *
+		 * @return the number of chunks, zero for an empty file.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int getChunkCount(){
+			return leaves.length;
+		}
+
+		/**
+		 * Get the number of chunks that have been hashed.
+		 *
+		 * @return the number of chunks with a hash.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int getCompletedChunks(){
+			int completed = 0;
+			for (byte[] leaf: leaves){
+				if (leaf != null) completed++;
+			}
+			return completed;
+		}
+
+		/**
+		 * Whether every chunk has been hashed.
+		 *
+		 * @return true if the tree is complete.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public boolean isComplete(){
+			return getCompletedChunks() == leaves.length;
+		}
+
+		/**
+		 * Get the hash of one chunk.
+		 *
+		 * @param index index of the chunk.
+		 * @return the hash of the chunk, or null if it has not been hashed.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public byte[] getChunkHash(int index){
+			byte[] leaf = leaves[index];
+			return leaf == null ? null : leaf.clone();
+		}
+
+		/**
+		 * Compare with another tree of the same file, such as one taken
+		 * before the file changed.
+		 *
+		 * @param other tree to compare with.
+		 * @return indexes, in order, of the chunks whose hashes differ or are missing in one tree.
+		 * @throws IllegalArgumentException if the trees have different chunk sizes or algorithms.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public int[] getChangedChunks(Tree other){
+			if (other.chunkSize != chunkSize) throw new IllegalArgumentException("Tree has chunk size " + other.chunkSize + ", not " + chunkSize);
+			if (!Arrays.equals(other.algorithmId, algorithmId)) throw new IllegalArgumentException("Tree was made with a different algorithm");
+			int count = Math.max(leaves.length, other.leaves.length);
+			int[] changed = new int[count];
+			int n = 0;
+			for (int i=0; i<count; i++){
+				byte[] a = i < leaves.length ? leaves[i] : null;
+				byte[] b = i < other.leaves.length ? other.leaves[i] : null;
+				if (a == null || b == null || !Arrays.equals(a, b)){
+					changed[n++] = i;
+				}
+			}
+			return Arrays.copyOf(changed, n);
+		}
+
+		/**
+		 * Save this tree.  The tree is written to a temporary file that
+		 * then replaces the given file, so a crash never leaves a partly
+		 * written tree behind.
+		 *
+		 * @param file file to write.
+		 * @throws IOException if the file cannot be written.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public void save(Path file) throws IOException {
+			Path absolute = file.toAbsolutePath();
+			Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+				try {
+					out.writeInt(MAGIC);
+					out.writeShort(algorithmId.length);
+					out.write(algorithmId);
+					out.writeInt(chunkSize);
+					out.writeLong(length);
+					out.writeLong(lastModified);
+					out.writeInt(leaves.length);
+					for (byte[] leaf: leaves){
+						if (leaf == null){
+							out.writeBoolean(false);
+						} else {
+							out.writeBoolean(true);
+							out.write(leaf);
+						}
+					}
+				} finally {
+					out.close();
+				}
+				Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		/**
+		 * Read a saved tree.
+		 *
+		 * @param file file written by save().
+		 * @return the tree.
+		 * @throws IOException if the file cannot be read or is not a saved tree.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public static Tree load(Path file) throws IOException {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC) throw new IOException("Not a saved hash tree: " + file);
+				int idLength = in.readShort();
+				if (idLength <= 0) throw new IOException("Corrupt hash tree: " + file);
+				byte[] algorithmId = new byte[idLength];
+				in.readFully(algorithmId);
+				int chunkSize = in.readInt();
+				long length = in.readLong();
+				long lastModified = in.readLong();
+				int count = in.readInt();
+				if (chunkSize <= 0 || length < 0 || count != (length + chunkSize - 1) / chunkSize) throw new IOException("Corrupt hash tree: " + file);
+				Tree tree = new Tree(algorithmId, chunkSize, length, lastModified);
+				for (int i=0; i<count; i++){
+					// Every chunk hash has the length of the algorithm id.
+					if (in.readBoolean()){
+						tree.leaves[i] = new byte[idLength];
+						in.readFully(tree.leaves[i]);
+					}
+				}
+				return tree;
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Shut down the pool if it was created by this hasher.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close(){
+		if (ownPool){
+			pool.shutdown();
+			ownPool = false;
+		}
+	}
+}
@@ -20,6 +20,8 @@ package com._64bitlabs.util.file;
 import com._64bitlabs.util.exception.BufferOverflowException;
 
 import java.io.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Implements the Circular Buffer producer/consumer model for bytes.
@@ -32,7 +34,17 @@ import java.io.*;
  * and have a more complicated API that requires instantiating two
  * classes and connecting them.
  * <p>
- * This class is thread safe.
+ * This class is thread safe.  A read that has to wait for bytes, or a
+ * write that has to wait for space, is woken as soon as the other stream
+ * makes progress or is closed.  How long they may wait can be limited with
+ * {@link #setReadTimeout(long)} and {@link #setWriteTimeout(long)}.
+ * <p>
+ * A buffer created with
+ * {@link #CircularByteBuffer(int, boolean, boolean) singleProducerSingleConsumer}
+ * set supports exactly one thread writing and one thread reading, and in
+ * return uses no locks: each side owns its own position in the buffer and
+ * publishes it through a volatile field, and a side that has to wait parks
+ * until the other side unparks it.
  *
  * @see CircularCharBuffer
  * @see CircularObjectBuffer
@@ -128,7 +140,7 @@ public class CircularByteBuffer {
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
-	protected boolean inputStreamClosed = false;
+	protected volatile boolean inputStreamClosed = false;
 	/**
 	 * The OutputStream that can fill this buffer.
 	 *
@@ -140,7 +152,86 @@ public class CircularByteBuffer {
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
-	protected boolean outputStreamClosed = false;
+	protected volatile boolean outputStreamClosed = false;
+	/**
+	 * Reader parked waiting for bytes, in single producer single consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile Thread waitingReader;
+	/**
+	 * Writer parked waiting for space, in single producer single consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile Thread waitingWriter;
+
+	/**
+	 * Largest length to which an infinite buffer grows in memory.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int maxSize = MAX_ARRAY_SIZE;
+
+	/**
+	 * Factor by which an infinite buffer grows when it is full.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private double growthFactor = 2;
+
+	/**
+	 * Milliseconds without a write after which an infinite buffer that has
+	 * grown shrinks back, or zero to never shrink.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long shrinkDelay = 0;
+
+	/**
+	 * Value of System.nanoTime() at the last write, kept while shrinking is enabled.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long lastWrite = System.nanoTime();
+
+	/**
+	 * If an infinite buffer at its maximum size writes further bytes to a
+	 * temporary file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean spillToFile = false;
+
+	/**
+	 * Temporary file holding bytes that come after those in memory, or
+	 * null if nothing has been spilled.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private File spillFile;
+	private RandomAccessFile spill;
+
+	/**
+	 * Offset in the spill file of the first byte not yet moved back into memory.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long spillReadPosition = 0;
+
+	/**
+	 * Offset in the spill file at which the next spilled byte goes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long spillWritePosition = 0;
+
+	/**
+	 * The longest array that may be allocated.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final static int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 
 	/**
 	 * Make this buffer ready for reuse.  The contents of the buffer
@@ -156,6 +247,8 @@ public class CircularByteBuffer {
 			markPosition = 0;
 			outputStreamClosed = false;
 			inputStreamClosed = false;
+			if (spill != null) closeSpill();
+			notifyAll();
 		}
 	}
 
@@ -207,7 +300,7 @@ public class CircularByteBuffer {
 	 */
 	public int getAvailable(){
 		synchronized (this){
-			return available();
+			return (int)Math.min(Integer.MAX_VALUE, available() + spilled());
 		}
 	}
 
@@ -249,12 +342,390 @@ public class CircularByteBuffer {
 	}
 
 	/**
-	 * double the size of the buffer
+	 * Set the largest length to which an infinite buffer grows.  A full
+	 * buffer of that length blocks writes, or refuses them if it does not
+	 * allow blocking writes, as a buffer of fixed size does, unless it
+	 * spills to a file.  A buffer that is already longer keeps its length
+	 * until it shrinks.
+	 *
+	 * @param maxSize largest length in bytes.
+	 * @throws IllegalArgumentException if the size is less than two.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setMaxSize(int maxSize){
+		if (maxSize < 2) throw new IllegalArgumentException("Bad maximum size: " + maxSize);
+		synchronized (this){
+			this.maxSize = Math.min(maxSize, MAX_ARRAY_SIZE);
+		}
+	}
+
+	/**
+	 * Get the largest length to which an infinite buffer grows.
+	 *
+	 * @return largest length in bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getMaxSize(){
+		synchronized (this){
+			return maxSize;
+		}
+	}
+
+	/**
+	 * Set the factor by which an infinite buffer grows when it is full.
+	 * The default doubles the buffer.
+	 *
+	 * @param growthFactor factor greater than one.
+	 * @throws IllegalArgumentException if the factor is not greater than one.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setGrowthFactor(double growthFactor){
+		if (!(growthFactor > 1)) throw new IllegalArgumentException("Bad growth factor: " + growthFactor);
+		synchronized (this){
+			this.growthFactor = growthFactor;
+		}
+	}
+
+	/**
+	 * Get the factor by which an infinite buffer grows when it is full.
+	 *
+	 * @return the growth factor.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getGrowthFactor(){
+		synchronized (this){
+			return growthFactor;
+		}
+	}
+
+	/**
+	 * Set how long an infinite buffer that has grown must go without a
+	 * write before it shrinks back towards its initial size.  The buffer
+	 * shrinks on the next read after that time, or while a reader is
+	 * waiting for it.  The default of zero never shrinks the buffer.
+	 *
+	 * @param shrinkDelay delay in milliseconds, or zero to never shrink.
+	 * @throws IllegalArgumentException if the delay is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setShrinkDelay(long shrinkDelay){
+		if (shrinkDelay < 0) throw new IllegalArgumentException("Negative shrink delay: " + shrinkDelay);
+		synchronized (this){
+			this.shrinkDelay = shrinkDelay;
+			lastWrite = System.nanoTime();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get how long an infinite buffer must go without a write before it shrinks.
+	 *
+	 * @return delay in milliseconds, or zero if the buffer never shrinks.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getShrinkDelay(){
+		synchronized (this){
+			return shrinkDelay;
+		}
+	}
+
+	/**
+	 * Set whether an infinite buffer that has reached its maximum size
+	 * writes further bytes to a temporary file instead of blocking.  The
+	 * spilled bytes are read back in order once the bytes in memory have
+	 * been read, and the file is deleted once it has been emptied.
+	 *
+	 * @param spillToFile true to spill to a temporary file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setSpillToFile(boolean spillToFile){
+		synchronized (this){
+			this.spillToFile = spillToFile;
+		}
+	}
+
+	/**
+	 * Get whether an infinite buffer spills to a temporary file once it
+	 * has reached its maximum size.
+	 *
+	 * @return true if the buffer spills to a file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public boolean isSpillToFile(){
+		synchronized (this){
+			return spillToFile;
+		}
+	}
+
+	/**
+	 * Longest time in milliseconds that a read waits for bytes, or zero to
+	 * wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile long readTimeout = 0;
+
+	/**
+	 * Longest time in milliseconds that a write waits for space, or zero to
+	 * wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile long writeTimeout = 0;
+
+	/**
+	 * Set how long a read from the InputStream may block waiting for bytes.
+	 * If the time runs out, the read throws an InterruptedIOException, as
+	 * a read from a socket with a timeout does.
+	 *
+	 * @param timeout timeout in milliseconds, or zero to wait as long as it takes.
+	 * @throws IllegalArgumentException if the timeout is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setReadTimeout(long timeout){
+		if (timeout < 0) throw new IllegalArgumentException("Negative timeout: " + timeout);
+		readTimeout = timeout;
+	}
+
+	/**
+	 * Get how long a read from the InputStream may block.
+	 *
+	 * @return timeout in milliseconds, or zero if reads wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getReadTimeout(){
+		return readTimeout;
+	}
+
+	/**
+	 * Set how long a write to the OutputStream may block waiting for space.
+	 * If the time runs out, the write throws an InterruptedIOException whose
+	 * bytesTransferred field holds the number of bytes that were written.
+	 *
+	 * @param timeout timeout in milliseconds, or zero to wait as long as it takes.
+	 * @throws IllegalArgumentException if the timeout is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setWriteTimeout(long timeout){
+		if (timeout < 0) throw new IllegalArgumentException("Negative timeout: " + timeout);
+		writeTimeout = timeout;
+	}
+
+	/**
+	 * Get how long a write to the OutputStream may block.
+	 *
+	 * @return timeout in milliseconds, or zero if writes wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getWriteTimeout(){
+		return writeTimeout;
+	}
+
+	/**
+	 * Convert a timeout to the value of System.nanoTime() at which it runs out.
+	 *
+	 * @return the deadline, or zero for no timeout.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static long deadline(long timeout){
+		if (timeout == 0) return 0;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		return deadline == 0 ? 1 : deadline;
+	}
+
+	/**
+	 * Wait until another thread changes this buffer.  Must be called while
+	 * holding the lock on this buffer, and the caller must check again
+	 * whatever it was waiting for.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @param reading true if a read is waiting, false if a write is.
+	 * @param transferred number of bytes written so far by a waiting write.
+	 * @throws InterruptedIOException if the thread is interrupted or the deadline has passed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void awaitChange(long deadline, boolean reading, int transferred) throws InterruptedIOException {
+		// A reader waiting on an empty buffer wakes in time to shrink it.
+		long shrinkTime = reading && available() == 0 ? shrinkTime() : 0;
+		try {
+			if (deadline == 0 && shrinkTime == 0){
+				wait();
+				return;
+			}
+			long now = System.nanoTime();
+			long remaining = deadline == 0 ? Long.MAX_VALUE : deadline - now;
+			if (remaining > 0){
+				if (shrinkTime != 0) remaining = Math.min(remaining, shrinkTime - now);
+				if (remaining > 0) TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				shrinkIfIdle();
+				return;
+			}
+		} catch (InterruptedException x){
+			throw new InterruptedIOException(reading ? "Blocking read operation interrupted." : "Waiting for available space in buffer interrupted.");
+		}
+		InterruptedIOException timeout = new InterruptedIOException(reading ? "Read timed out." : "Write timed out.");
+		timeout.bytesTransferred = transferred;
+		throw timeout;
+	}
+
+	/**
+	 * The value of System.nanoTime() at which this buffer may shrink.
+	 *
+	 * @return the time, or zero if the buffer is not going to shrink.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long shrinkTime(){
+		if (!infinite || shrinkDelay == 0 || buffer.length <= DEFAULT_SIZE) return 0;
+		long time = lastWrite + TimeUnit.MILLISECONDS.toNanos(shrinkDelay);
+		return time == 0 ? 1 : time;
+	}
+
+	/**
+	 * Shrink the buffer if it has gone without writes for long enough,
+	 * leaving room for twice the bytes it holds and keeps for the mark.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void shrinkIfIdle(){
+		long shrinkTime = shrinkTime();
+		if (shrinkTime == 0 || System.nanoTime() - shrinkTime < 0) return;
+		long length = Math.max(DEFAULT_SIZE, 2L * (marked() + available()) + 1);
+		length = Math.max(length, markSize + 2L);
+		if (length < buffer.length) resize((int)length);
+	}
+
+	/**
+	 * Make room for the given number of bytes if the buffer is infinite,
+	 * growing by the growth factor but no further than the maximum size.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void ensureSpace(int needed){
+		if (!infinite || spaceLeft() >= needed) return;
+		long length = Math.max((long)Math.ceil(buffer.length * growthFactor), (long)marked() + available() + needed + 1);
+		length = Math.min(length, maxSize);
+		if (length > buffer.length) resize((int)length);
+	}
+
+	/**
+	 * Number of bytes in the spill file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long spilled(){
+		return spillWritePosition - spillReadPosition;
+	}
+
+	/**
+	 * If this write has to go to the spill file: either bytes have already
+	 * been spilled and must be read first, or the buffer is as large as it
+	 * may grow and the bytes do not fit.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean mustSpill(int len){
+		return spilled() > 0 || (spillToFile && infinite && spaceLeft() < len);
+	}
+
+	/**
+	 * Append bytes to the spill file, creating it if needed.
+	 *
+	 * @throws IOException if the file cannot be written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void spill(byte[] b, int off, int len) throws IOException {
+		if (spill == null){
+			spillFile = File.createTempFile("CircularByteBuffer", ".spill");
+			spillFile.deleteOnExit();
+			spill = new RandomAccessFile(spillFile, "rw");
+		}
+		spill.seek(spillWritePosition);
+		spill.write(b, off, len);
+		spillWritePosition += len;
+	}
+
+	/**
+	 * Move as many spilled bytes back into memory as fit.  Must only be
+	 * called when no bytes in memory are available for reading.
+	 *
+	 * @throws IOException if the file cannot be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void unspill() throws IOException {
+		int length = (int)Math.min(spilled(), spaceLeft());
+		int firstLen = Math.min(length, buffer.length - writePosition);
+		int secondLen = length - firstLen;
+		spill.seek(spillReadPosition);
+		spill.readFully(buffer, writePosition, firstLen);
+		if (secondLen > 0){
+			spill.readFully(buffer, 0, secondLen);
+			writePosition = secondLen;
+		} else {
+			writePosition += length;
+		}
+		if (writePosition == buffer.length){
+			writePosition = 0;
+		}
+		spillReadPosition += length;
+		if (spilled() == 0) closeSpill();
+	}
+
+	/**
+	 * Close and delete the spill file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void closeSpill(){
+		try {
+			spill.close();
+		} catch (IOException x){
+			// Nothing more can be read from it anyway.
+		}
+		spillFile.delete();
+		spill = null;
+		spillFile = null;
+		spillReadPosition = 0;
+		spillWritePosition = 0;
+	}
+
+	/**
+	 * Bytes available for reading, first moving spilled bytes back into
+	 * memory if there are none there.
+	 *
+	 * @throws IOException if the spill file cannot be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int readable() throws IOException {
+		if (available() == 0 && spilled() > 0) unspill();
+		return available();
+	}
+
+	/**
+	 * Move the bytes, including those kept for the mark, into a new array
+	 * of the given length.
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
-	private void resize(){
-		byte[] newBuffer = new byte[buffer.length * 2];
+	private void resize(int newLength){
+		byte[] newBuffer = new byte[newLength];
 		int marked = marked();
 		int available = available();
 		if (markPosition <= writePosition){
@@ -281,6 +752,15 @@ public class CircularByteBuffer {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	private int spaceLeft(){
+		return spaceLeft(writePosition, markPosition);
+	}
+
+	/**
+	 * Space available for writing between the given write and mark positions.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int spaceLeft(int writePosition, int markPosition){
 		if (writePosition < markPosition){
 			// any space between the first write and
 			// the mark except one byte is available.
@@ -297,6 +777,15 @@ public class CircularByteBuffer {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	private int available(){
+		return available(readPosition, writePosition);
+	}
+
+	/**
+	 * Bytes available for reading between the given read and write positions.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int available(int readPosition, int writePosition){
 		if (readPosition <= writePosition){
 			// any space between the first read and
 			// the first write is available.  In this case i
@@ -358,7 +847,7 @@ public class CircularByteBuffer {
 	 * <p>
 	 * Note that if the buffer is of INFINITE_SIZE it will
 	 * neither block or throw exceptions, but rather grow
-	 * without bound.
+	 * without bound, unless limited with setMaxSize().
 	 *
 	 * @param size desired capacity of the buffer in bytes or CircularByteBuffer.INFINITE_SIZE.
 	 *
@@ -392,7 +881,7 @@ public class CircularByteBuffer {
 	 * <p>
 	 * Note that if the buffer is of INFINITE_SIZE it will
 	 * neither block or throw exceptions, but rather grow
-	 * without bound.
+	 * without bound, unless limited with setMaxSize().
 	 *
 	 * @param size desired capacity of the buffer in bytes or CircularByteBuffer.INFINITE_SIZE.
 	 * @param blockingWrite true writing to a full buffer should block
@@ -412,6 +901,57 @@ public class CircularByteBuffer {
 		this.blockingWrite = blockingWrite;
 	}
 
+	/**
+	 * Create a new buffer with the given capacity and blocking behavior,
+	 * optionally for use by a single producer and a single consumer.
+	 * <p>
+	 * In single producer single consumer mode, only one thread at a time may
+	 * use the OutputStream and only one thread at a time may use the
+	 * InputStream, the buffer cannot be of INFINITE_SIZE, and
+	 * {@link #clear()} may only be called while neither stream is in use.
+	 * Neither stream takes a lock, and a blocked read or write is woken as
+	 * soon as the other side has made progress.
+	 *
+	 * @param size desired capacity of the buffer in bytes.
+	 * @param blockingWrite true writing to a full buffer should block
+	 *        until space is available, false if an exception should
+	 *        be thrown instead.
+	 * @param singleProducerSingleConsumer true if the buffer will only be
+	 *        written by one thread and read by one thread.
+	 * @throws IllegalArgumentException if the buffer is of INFINITE_SIZE in
+	 *        single producer single consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CircularByteBuffer(int size, boolean blockingWrite, boolean singleProducerSingleConsumer){
+		this (size, blockingWrite);
+		if (singleProducerSingleConsumer){
+			if (infinite) throw new IllegalArgumentException("A single producer single consumer buffer cannot be of infinite size.");
+			in = new LockFreeInputStream();
+			out = new LockFreeOutputStream();
+		}
+	}
+
+	/**
+	 * Wake the reader if it is parked waiting for bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void signalReader(){
+		Thread t = waitingReader;
+		if (t != null) LockSupport.unpark(t);
+	}
+
+	/**
+	 * Wake the writer if it is parked waiting for space.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void signalWriter(){
+		Thread t = waitingWriter;
+		if (t != null) LockSupport.unpark(t);
+	}
+
 	/**
 	 * Class for reading from a circular byte buffer.
 	 *
@@ -432,7 +972,7 @@ public class CircularByteBuffer {
 		@Override public int available() throws IOException {
 			synchronized (CircularByteBuffer.this){
 				if (inputStreamClosed) throw new IOException("InputStream has been closed, it is not ready.");
-				return (CircularByteBuffer.this.available());
+				return (int)Math.min(Integer.MAX_VALUE, CircularByteBuffer.this.available() + spilled());
 			}
 		}
 
@@ -448,6 +988,7 @@ public class CircularByteBuffer {
 		@Override public void close() throws IOException {
 			synchronized (CircularByteBuffer.this){
 				inputStreamClosed = true;
+				CircularByteBuffer.this.notifyAll();
 			}
 		}
 
@@ -470,6 +1011,7 @@ public class CircularByteBuffer {
 				if (buffer.length - 1 > readAheadLimit) {
 					markSize = readAheadLimit;
 					markPosition = readPosition;
+					CircularByteBuffer.this.notifyAll();
 				}
 			}
 		}
@@ -497,10 +1039,11 @@ public class CircularByteBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public int read() throws IOException {
-			while (true){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				long deadline = deadline(readTimeout);
+				while (true){
 					if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
-					int available = CircularByteBuffer.this.available();
+					int available = readable();
 					if (available > 0){
 						int result = buffer[readPosition] & 0xff;
 						readPosition++;
@@ -508,15 +1051,13 @@ public class CircularByteBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						shrinkIfIdle();
+						CircularByteBuffer.this.notifyAll();
 						return result;
 					} else if (outputStreamClosed){
 						return -1;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					awaitChange(deadline, true, 0);
 				}
 			}
 		}
@@ -552,10 +1093,11 @@ public class CircularByteBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public int read(byte[] cbuf, int off, int len) throws IOException {
-			while (true){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				long deadline = deadline(readTimeout);
+				while (true){
 					if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
-					int available = CircularByteBuffer.this.available();
+					int available = readable();
 					if (available > 0){
 						int length = Math.min(len, available);
 						int firstLen = Math.min(length, buffer.length - readPosition);
@@ -571,15 +1113,13 @@ public class CircularByteBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						shrinkIfIdle();
+						CircularByteBuffer.this.notifyAll();
 						return length;
 					} else if (outputStreamClosed){
 						return -1;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					awaitChange(deadline, true, 0);
 				}
 			}
 		}
@@ -614,10 +1154,11 @@ public class CircularByteBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public long skip(long n) throws IOException, IllegalArgumentException {
-			while (true){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				long deadline = deadline(readTimeout);
+				while (true){
 					if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot skip bytes on a closed InputStream.");
-					int available = CircularByteBuffer.this.available();
+					int available = readable();
 					if (available > 0){
 						int length = Math.min((int)n, available);
 						int firstLen = Math.min(length, buffer.length - readPosition);
@@ -631,15 +1172,13 @@ public class CircularByteBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						shrinkIfIdle();
+						CircularByteBuffer.this.notifyAll();
 						return length;
 					} else if (outputStreamClosed){
 						return 0;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					awaitChange(deadline, true, 0);
 				}
 			}
 		}
@@ -673,6 +1212,7 @@ public class CircularByteBuffer {
 					flush();
 				}
 				outputStreamClosed = true;
+				CircularByteBuffer.this.notifyAll();
 			}
 		}
 
@@ -724,19 +1264,25 @@ public class CircularByteBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public void write(byte[] cbuf, int off, int len) throws IOException {
-			while (len > 0){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				long deadline = deadline(writeTimeout);
+				int total = len;
+				while (len > 0){
 					if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
 					if (inputStreamClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
-					int spaceLeft = spaceLeft();
-					while (infinite && spaceLeft < len){
-						resize();
-						spaceLeft = spaceLeft();
+					if (spilled() == 0) ensureSpace(len);
+					if (mustSpill(len)){
+						spill(cbuf, off, len);
+						if (shrinkDelay != 0) lastWrite = System.nanoTime();
+						CircularByteBuffer.this.notifyAll();
+						return;
 					}
+					int spaceLeft = spaceLeft();
 					if (!blockingWrite && spaceLeft < len) throw new BufferOverflowException("CircularByteBuffer is full; cannot write " + len + " bytes");
 					int realLen = Math.min(len, spaceLeft);
 					int firstLen = Math.min(realLen, buffer.length - writePosition);
-					int secondLen = Math.min(realLen - firstLen, buffer.length - markPosition - 1);
+					// realLen is no more than the space left, so the rest fits before the mark.
+					int secondLen = realLen - firstLen;
 					int written = firstLen + secondLen;
 					if (firstLen > 0){
 						System.arraycopy(cbuf, off, buffer, writePosition, firstLen);
@@ -752,13 +1298,11 @@ public class CircularByteBuffer {
 					}
 					off += written;
 					len -= written;
-				}
-				if (len > 0){
-					try {
-						Thread.sleep(100);
-					} catch(Exception x){
-						throw new IOException("Waiting for available space in buffer interrupted.");
+					if (written > 0){
+						if (shrinkDelay != 0) lastWrite = System.nanoTime();
+						CircularByteBuffer.this.notifyAll();
 					}
+					if (len > 0) awaitChange(deadline, false, total - len);
 				}
 			}
 		}
@@ -778,16 +1322,20 @@ public class CircularByteBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public void write(int c) throws IOException {
-			boolean written = false;
-			while (!written){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				long deadline = deadline(writeTimeout);
+				boolean written = false;
+				while (!written){
 					if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
 					if (inputStreamClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
-					int spaceLeft = spaceLeft();
-					while (infinite && spaceLeft < 1){
-						resize();
-						spaceLeft = spaceLeft();
+					if (spilled() == 0) ensureSpace(1);
+					if (mustSpill(1)){
+						spill(new byte[]{(byte)c}, 0, 1);
+						if (shrinkDelay != 0) lastWrite = System.nanoTime();
+						CircularByteBuffer.this.notifyAll();
+						return;
 					}
+					int spaceLeft = spaceLeft();
 					if (!blockingWrite && spaceLeft < 1) throw new BufferOverflowException("CircularByteBuffer is full; cannot write 1 byte");
 					if (spaceLeft > 0){
 						buffer[writePosition] = (byte)(c & 0xff);
@@ -796,15 +1344,292 @@ public class CircularByteBuffer {
 							writePosition = 0;
 						}
 						written = true;
+						if (shrinkDelay != 0) lastWrite = System.nanoTime();
+						CircularByteBuffer.this.notifyAll();
 					}
+					if (!written) awaitChange(deadline, false, 0);
 				}
-				if (!written){
-					try {
-						Thread.sleep(100);
-					} catch(Exception x){
-						throw new IOException("Waiting for available space in buffer interrupted.");
+			}
+		}
+	}
+
+	/**
+	 * Class for reading from a circular byte buffer without locking, for a
+	 * single consumer.  The reader owns readPosition, markPosition and
+	 * markSize; it reads writePosition once per attempt and publishes how
+	 * far the writer may go by updating markPosition after it is done
+	 * with the bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected class LockFreeInputStream extends InputStream {
+
+		/**
+		 * Park until bytes are available, the OutputStream is closed, the
+		 * deadline passes, or the thread is interrupted.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private void awaitBytes(long deadline) throws IOException {
+			long remaining = deadline == 0 ? 0 : deadline - System.nanoTime();
+			if (deadline != 0 && remaining <= 0) throw new InterruptedIOException("Read timed out.");
+			waitingReader = Thread.currentThread();
+			try {
+				// The writer publishes writePosition before looking for a waiting reader,
+				// so checking again after registering cannot miss a wake up.
+				if (readPosition == writePosition && !outputStreamClosed && !inputStreamClosed){
+					if (deadline == 0){
+						LockSupport.park(CircularByteBuffer.this);
+					} else {
+						LockSupport.parkNanos(CircularByteBuffer.this, remaining);
 					}
 				}
+			} finally {
+				waitingReader = null;
+			}
+			if (Thread.interrupted()) throw new InterruptedIOException("Blocking read operation interrupted.");
+		}
+
+		/**
+		 * Wait for bytes to be available.
+		 *
+		 * @return the number of bytes available, or -1 if the end of the stream has been reached.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private int waitAvailable(String operation) throws IOException {
+			long deadline = 0;
+			while (true){
+				if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot " + operation + " a closed InputStream.");
+				// Read before writePosition so that a close is never seen before the last write.
+				boolean closed = outputStreamClosed;
+				int available = CircularByteBuffer.this.available(readPosition, writePosition);
+				if (available > 0) return available;
+				if (closed) return -1;
+				if (deadline == 0) deadline = deadline(readTimeout);
+				awaitBytes(deadline);
+			}
+		}
+
+		/**
+		 * Move the read position past bytes that have been consumed and let
+		 * the writer reuse the space.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private void advance(int length){
+			int position = readPosition + length;
+			if (position >= buffer.length) position -= buffer.length;
+			readPosition = position;
+			ensureMark();
+			signalWriter();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public int available() throws IOException {
+			if (inputStreamClosed) throw new IOException("InputStream has been closed, it is not ready.");
+			return CircularByteBuffer.this.available(readPosition, writePosition);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void close() throws IOException {
+			inputStreamClosed = true;
+			signalWriter();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void mark(int readAheadLimit) {
+			if (buffer.length - 1 > readAheadLimit) {
+				markSize = readAheadLimit;
+				markPosition = readPosition;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public boolean markSupported() {
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public int read() throws IOException {
+			if (waitAvailable("read from") < 0) return -1;
+			int result = buffer[readPosition] & 0xff;
+			advance(1);
+			return result;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public int read(byte[] cbuf) throws IOException {
+			return read(cbuf, 0, cbuf.length);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public int read(byte[] cbuf, int off, int len) throws IOException {
+			int available = waitAvailable("read from");
+			if (available < 0) return -1;
+			int length = Math.min(len, available);
+			int firstLen = Math.min(length, buffer.length - readPosition);
+			System.arraycopy(buffer, readPosition, cbuf, off, firstLen);
+			if (length > firstLen){
+				System.arraycopy(buffer, 0, cbuf, off + firstLen, length - firstLen);
+			}
+			advance(length);
+			return length;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void reset() throws IOException {
+			if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot reset a closed InputStream.");
+			readPosition = markPosition;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public long skip(long n) throws IOException, IllegalArgumentException {
+			int available = waitAvailable("skip bytes on");
+			if (available < 0) return 0;
+			int length = (int)Math.min(n, available);
+			advance(length);
+			return length;
+		}
+	}
+
+	/**
+	 * Class for writing to a circular byte buffer without locking, for a
+	 * single producer.  The writer owns writePosition and publishes it only
+	 * after the bytes have been copied into the buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected class LockFreeOutputStream extends OutputStream {
+
+		private void ensureOpen() throws IOException {
+			if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
+			if (inputStreamClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
+		}
+
+		/**
+		 * Park until space is available, the InputStream is closed, the
+		 * deadline passes, or the thread is interrupted.
+		 *
+		 * @param transferred number of bytes written so far by the waiting write.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private void awaitSpace(long deadline, int transferred) throws IOException {
+			long remaining = deadline == 0 ? 0 : deadline - System.nanoTime();
+			if (deadline != 0 && remaining <= 0){
+				InterruptedIOException timeout = new InterruptedIOException("Write timed out.");
+				timeout.bytesTransferred = transferred;
+				throw timeout;
+			}
+			waitingWriter = Thread.currentThread();
+			try {
+				if (spaceLeft(writePosition, markPosition) == 0 && !inputStreamClosed){
+					if (deadline == 0){
+						LockSupport.park(CircularByteBuffer.this);
+					} else {
+						LockSupport.parkNanos(CircularByteBuffer.this, remaining);
+					}
+				}
+			} finally {
+				waitingWriter = null;
+			}
+			if (Thread.interrupted()) throw new InterruptedIOException("Waiting for available space in buffer interrupted.");
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void close() throws IOException {
+			if (!outputStreamClosed){
+				flush();
+			}
+			outputStreamClosed = true;
+			signalReader();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void flush() throws IOException {
+			if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot flush a closed OutputStream.");
+			if (inputStreamClosed) throw new IOException("Buffer closed by inputStream; cannot flush.");
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void write(byte[] cbuf) throws IOException {
+			write(cbuf, 0, cbuf.length);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void write(byte[] cbuf, int off, int len) throws IOException {
+			long deadline = 0;
+			int total = len;
+			while (len > 0){
+				ensureOpen();
+				int position = writePosition;
+				int spaceLeft = spaceLeft(position, markPosition);
+				if (!blockingWrite && spaceLeft < len) throw new BufferOverflowException("CircularByteBuffer is full; cannot write " + len + " bytes");
+				if (spaceLeft == 0){
+					if (deadline == 0) deadline = deadline(writeTimeout);
+					awaitSpace(deadline, total - len);
+					continue;
+				}
+				int written = Math.min(len, spaceLeft);
+				int firstLen = Math.min(written, buffer.length - position);
+				System.arraycopy(cbuf, off, buffer, position, firstLen);
+				if (written > firstLen){
+					System.arraycopy(cbuf, off + firstLen, buffer, 0, written - firstLen);
+				}
+				position += written;
+				if (position >= buffer.length) position -= buffer.length;
+				writePosition = position;
+				signalReader();
+				off += written;
+				len -= written;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void write(int c) throws IOException {
+			long deadline = 0;
+			while (true){
+				ensureOpen();
+				int position = writePosition;
+				int spaceLeft = spaceLeft(position, markPosition);
+				if (!blockingWrite && spaceLeft < 1) throw new BufferOverflowException("CircularByteBuffer is full; cannot write 1 byte");
+				if (spaceLeft > 0){
+					buffer[position] = (byte)(c & 0xff);
+					writePosition = position + 1 == buffer.length ? 0 : position + 1;
+					signalReader();
+					return;
+				}
+				if (deadline == 0) deadline = deadline(writeTimeout);
+				awaitSpace(deadline, 0);
 			}
 		}
 	}
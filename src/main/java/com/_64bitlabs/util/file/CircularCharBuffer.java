@@ -20,6 +20,7 @@ package com._64bitlabs.util.file;
 import com._64bitlabs.util.exception.BufferOverflowException;
 
 import java.io.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements the Circular Buffer producer/consumer model for characters.
@@ -32,7 +33,10 @@ import java.io.*;
  * and have a more complicated API that requires instantiating two
  * classes and connecting them.
  * <p>
- * This class is thread safe.
+ * This class is thread safe.  A read that has to wait for characters, or a
+ * write that has to wait for space, is woken as soon as the other stream
+ * makes progress or is closed.  How long they may wait can be limited with
+ * {@link #setReadTimeout(long)} and {@link #setWriteTimeout(long)}.
  *
  * @see CircularByteBuffer
  * @see CircularObjectBuffer
@@ -156,6 +160,7 @@ public class CircularCharBuffer {
 			markPosition = 0;
 			readerClosed = false;
 			writerClosed = false;
+			notifyAll();
 		}
 	}
 
@@ -248,6 +253,118 @@ public class CircularCharBuffer {
 		}
 	}
 
+	/**
+	 * Longest time in milliseconds that a read waits for characters, or zero to
+	 * wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile long readTimeout = 0;
+
+	/**
+	 * Longest time in milliseconds that a write waits for space, or zero to
+	 * wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile long writeTimeout = 0;
+
+	/**
+	 * Set how long a read from the Reader may block waiting for characters.
+	 * If the time runs out, the read throws an InterruptedIOException, as
+	 * a read from a socket with a timeout does.
+	 *
+	 * @param timeout timeout in milliseconds, or zero to wait as long as it takes.
+	 * @throws IllegalArgumentException if the timeout is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setReadTimeout(long timeout){
+		if (timeout < 0) throw new IllegalArgumentException("Negative timeout: " + timeout);
+		readTimeout = timeout;
+	}
+
+	/**
+	 * Get how long a read from the Reader may block.
+	 *
+	 * @return timeout in milliseconds, or zero if reads wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getReadTimeout(){
+		return readTimeout;
+	}
+
+	/**
+	 * Set how long a write to the Writer may block waiting for space.
+	 * If the time runs out, the write throws an InterruptedIOException whose
+	 * bytesTransferred field holds the number of characters that were written.
+	 *
+	 * @param timeout timeout in milliseconds, or zero to wait as long as it takes.
+	 * @throws IllegalArgumentException if the timeout is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setWriteTimeout(long timeout){
+		if (timeout < 0) throw new IllegalArgumentException("Negative timeout: " + timeout);
+		writeTimeout = timeout;
+	}
+
+	/**
+	 * Get how long a write to the Writer may block.
+	 *
+	 * @return timeout in milliseconds, or zero if writes wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getWriteTimeout(){
+		return writeTimeout;
+	}
+
+	/**
+	 * Convert a timeout to the value of System.nanoTime() at which it runs out.
+	 *
+	 * @return the deadline, or zero for no timeout.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static long deadline(long timeout){
+		if (timeout == 0) return 0;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		return deadline == 0 ? 1 : deadline;
+	}
+
+	/**
+	 * Wait until another thread changes this buffer.  Must be called while
+	 * holding the lock on this buffer, and the caller must check again
+	 * whatever it was waiting for.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @param reading true if a read is waiting, false if a write is.
+	 * @param transferred number of characters written so far by a waiting write.
+	 * @throws InterruptedIOException if the thread is interrupted or the deadline has passed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void awaitChange(long deadline, boolean reading, int transferred) throws InterruptedIOException {
+		try {
+			if (deadline == 0){
+				wait();
+				return;
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining > 0){
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				return;
+			}
+		} catch (InterruptedException x){
+			throw new InterruptedIOException(reading ? "Blocking read operation interrupted." : "Waiting for available space in buffer interrupted.");
+		}
+		InterruptedIOException timeout = new InterruptedIOException(reading ? "Read timed out." : "Write timed out.");
+		timeout.bytesTransferred = transferred;
+		throw timeout;
+	}
+
 	/**
 	 * double the size of the buffer
 	 *
@@ -431,6 +548,7 @@ public class CircularCharBuffer {
 		@Override public void close() throws IOException {
 			synchronized (CircularCharBuffer.this){
 				readerClosed = true;
+				CircularCharBuffer.this.notifyAll();
 			}
 		}
 
@@ -454,6 +572,7 @@ public class CircularCharBuffer {
 				if (buffer.length - 1 <= readAheadLimit) throw new IOException("Cannot mark stream, readAheadLimit bigger than buffer size.");
 				markSize = readAheadLimit;
 				markPosition = readPosition;
+				CircularCharBuffer.this.notifyAll();
 			}
 		}
 
@@ -480,8 +599,9 @@ public class CircularCharBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public int read() throws IOException {
-			while (true){
-				synchronized (CircularCharBuffer.this){
+			synchronized (CircularCharBuffer.this){
+				long deadline = deadline(readTimeout);
+				while (true){
 					if (readerClosed) throw new IOException("Reader has been closed; cannot read from a closed Reader.");
 					int available = available();
 					if (available > 0){
@@ -491,15 +611,12 @@ public class CircularCharBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						CircularCharBuffer.this.notifyAll();
 						return result;
 					} else if (writerClosed){
 						return -1;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					awaitChange(deadline, true, 0);
 				}
 			}
 		}
@@ -535,8 +652,9 @@ public class CircularCharBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public int read(char[] cbuf, int off, int len) throws IOException {
-			while (true){
-				synchronized (CircularCharBuffer.this){
+			synchronized (CircularCharBuffer.this){
+				long deadline = deadline(readTimeout);
+				while (true){
 					if (readerClosed) throw new IOException("Reader has been closed; cannot read from a closed Reader.");
 					int available = available();
 					if (available > 0){
@@ -554,15 +672,12 @@ public class CircularCharBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						CircularCharBuffer.this.notifyAll();
 						return length;
 					} else if (writerClosed){
 						return -1;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					awaitChange(deadline, true, 0);
 				}
 			}
 		}
@@ -614,8 +729,9 @@ public class CircularCharBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public long skip(long n) throws IOException, IllegalArgumentException {
-			while (true){
-				synchronized (CircularCharBuffer.this){
+			synchronized (CircularCharBuffer.this){
+				long deadline = deadline(readTimeout);
+				while (true){
 					if (readerClosed) throw new IOException("Reader has been closed; cannot skip characters on a closed Reader.");
 					int available = available();
 					if (available > 0){
@@ -631,15 +747,12 @@ public class CircularCharBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						CircularCharBuffer.this.notifyAll();
 						return length;
 					} else if (writerClosed){
 						return 0;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					awaitChange(deadline, true, 0);
 				}
 			}
 		}
@@ -673,6 +786,7 @@ public class CircularCharBuffer {
 					flush();
 				}
 				writerClosed = true;
+				CircularCharBuffer.this.notifyAll();
 			}
 		}
 
@@ -724,8 +838,10 @@ public class CircularCharBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public void write(char[] cbuf, int off, int len) throws IOException {
-			while (len > 0){
-				synchronized (CircularCharBuffer.this){
+			synchronized (CircularCharBuffer.this){
+				long deadline = deadline(writeTimeout);
+				int total = len;
+				while (len > 0){
 					if (writerClosed) throw new IOException("Writer has been closed; cannot write to a closed Writer.");
 					if (readerClosed) throw new IOException("Buffer closed by Reader; cannot write to a closed buffer.");
 					int spaceLeft = spaceLeft();
@@ -736,7 +852,8 @@ public class CircularCharBuffer {
 					if (!blockingWrite && spaceLeft < len) throw new BufferOverflowException("CircularCharBuffer is full; cannot write " + len + " characters");
 					int realLen = Math.min(len, spaceLeft);
 					int firstLen = Math.min(realLen, buffer.length - writePosition);
-					int secondLen = Math.min(realLen - firstLen, buffer.length - markPosition - 1);
+					// realLen is no more than the space left, so the rest fits before the mark.
+					int secondLen = realLen - firstLen;
 					int written = firstLen + secondLen;
 					if (firstLen > 0){
 						System.arraycopy(cbuf, off, buffer, writePosition, firstLen);
@@ -752,13 +869,8 @@ public class CircularCharBuffer {
 					}
 					off += written;
 					len -= written;
-				}
-				if (len > 0){
-					try {
-						Thread.sleep(100);
-					} catch(Exception x){
-						throw new IOException("Waiting for available space in buffer interrupted.");
-					}
+					if (written > 0) CircularCharBuffer.this.notifyAll();
+					if (len > 0) awaitChange(deadline, false, total - len);
 				}
 			}
 		}
@@ -778,9 +890,10 @@ public class CircularCharBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public void write(int c) throws IOException {
-			boolean written = false;
-			while (!written){
-				synchronized (CircularCharBuffer.this){
+			synchronized (CircularCharBuffer.this){
+				long deadline = deadline(writeTimeout);
+				boolean written = false;
+				while (!written){
 					if (writerClosed) throw new IOException("Writer has been closed; cannot write to a closed Writer.");
 					if (readerClosed) throw new IOException("Buffer closed by Reader; cannot write to a closed buffer.");
 					int spaceLeft = spaceLeft();
@@ -796,14 +909,9 @@ public class CircularCharBuffer {
 							writePosition = 0;
 						}
 						written = true;
+						CircularCharBuffer.this.notifyAll();
 					}
-				}
-				if (!written){
-					try {
-						Thread.sleep(100);
-					} catch(Exception x){
-						throw new IOException("Waiting for available space in buffer interrupted.");
-					}
+					if (!written) awaitChange(deadline, false, 0);
 				}
 			}
 		}
@@ -841,8 +949,10 @@ public class CircularCharBuffer {
 		 * @since 64bitlabsutils 1.0.0
 		 */
 		@Override public void write(String str, int off, int len) throws IOException {
-			while (len > 0){
-				synchronized (CircularCharBuffer.this){
+			synchronized (CircularCharBuffer.this){
+				long deadline = deadline(writeTimeout);
+				int total = len;
+				while (len > 0){
 					if (writerClosed) throw new IOException("Writer has been closed; cannot write to a closed Writer.");
 					if (readerClosed) throw new IOException("Buffer closed by Reader; cannot write to a closed buffer.");
 					int spaceLeft = spaceLeft();
@@ -853,7 +963,8 @@ public class CircularCharBuffer {
 					if (!blockingWrite && spaceLeft < len) throw new BufferOverflowException("CircularCharBuffer is full; cannot write " + len + " characters");
 					int realLen = Math.min(len, spaceLeft);
 					int firstLen = Math.min(realLen, buffer.length - writePosition);
-					int secondLen = Math.min(realLen - firstLen, buffer.length - markPosition - 1);
+					// realLen is no more than the space left, so the rest fits before the mark.
+					int secondLen = realLen - firstLen;
 					int written = firstLen + secondLen;
 					for (int i=0; i<firstLen; i++){
 						buffer[writePosition + i] = str.charAt(off+i);
@@ -871,13 +982,8 @@ public class CircularCharBuffer {
 					}
 					off += written;
 					len -= written;
-				}
-				if (len > 0){
-					try {
-						Thread.sleep(100);
-					} catch(Exception x){
-						throw new IOException("Waiting for available space in buffer interrupted.");
-					}
+					if (written > 0) CircularCharBuffer.this.notifyAll();
+					if (len > 0) awaitChange(deadline, false, total - len);
 				}
 			}
 		}
@@ -0,0 +1,862 @@
+/*
+ * Circular Int Buffer
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import com._64bitlabs.util.exception.BufferOverflowException;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Implements the Circular Buffer producer/consumer model for int values.
+ * <p>
+ * This class works as CircularObjectBuffer does, but keeps the values in
+ * a int[] so that they are never boxed.  Since there is no null to
+ * return once the producer is done and the buffer is empty, reading a
+ * single value then throws a NoSuchElementException; reading into an
+ * array returns -1 as CircularObjectBuffer does.
+ * <p>
+ * This class is thread safe.  A read that has to wait for values, or a
+ * write that has to wait for space, is woken as soon as the other side
+ * makes progress or done() is called.
+ *
+ * @see CircularObjectBuffer
+ * @see CircularLongBuffer
+ * @see CircularDoubleBuffer
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CircularIntBuffer {
+
+	/**
+	 * The default size for a circular int buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final static int DEFAULT_SIZE = 1024;
+
+	/**
+	 * A buffer that will grow as things are added.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public final static int INFINITE_SIZE = -1;
+
+	/**
+	 * The longest array that may be allocated.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final static int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The circular buffer.
+	 * <p>
+	 * The actual capacity of the buffer is one less than the actual length
+	 * of the buffer so that an empty and a full buffer can be
+	 * distinguished.  An empty buffer will have the readPostion and the
+	 * writePosition equal to each other.  A full buffer will have
+	 * the writePosition one less than the readPostion.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected int[] buffer;
+	/**
+	 * Index of the first value available to be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected volatile int readPosition = 0;
+	/**
+	 * Index of the first value available to be written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected volatile int writePosition = 0;
+	/**
+	 * If this buffer is infinite (should resize itself when full)
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected volatile boolean infinite = false;
+	/**
+	 * True if a write to a full buffer should block until the buffer
+	 * has room, false if the write method should throw an exception.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected boolean blockingWrite = true;
+
+	/**
+	 * True when no more input is coming into this buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected volatile boolean inputDone = false;
+
+	/**
+	 * Largest length to which an infinite buffer grows.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int maxSize = MAX_ARRAY_SIZE;
+
+	/**
+	 * Factor by which an infinite buffer grows when it is full.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private double growthFactor = 2;
+
+	/**
+	 * Milliseconds without a write after which an infinite buffer that has
+	 * grown shrinks back, or zero to never shrink.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long shrinkDelay = 0;
+
+	/**
+	 * Value of System.nanoTime() at the last write, kept while shrinking is enabled.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long lastWrite = System.nanoTime();
+
+	/**
+	 * Create a new buffer with a default capacity.
+	 * Writing to a full buffer will block until space
+	 * is available rather than throw an exception.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CircularIntBuffer(){
+		this (DEFAULT_SIZE, true);
+	}
+
+	/**
+	 * Create a new buffer with given capacity.
+	 * Writing to a full buffer will block until space
+	 * is available rather than throw an exception.
+	 * <p>
+	 * Note that if the buffer is of INFINITE_SIZE it will
+	 * neither block or throw exceptions, but rather grow
+	 * without bound, unless limited with setMaxSize().
+	 *
+	 * @param size desired capacity of the buffer in values or CircularIntBuffer.INFINITE_SIZE.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CircularIntBuffer(int size){
+		this (size, true);
+	}
+
+	/**
+	 * Create a new buffer with a default capacity and
+	 * given blocking behavior.
+	 *
+	 * @param blockingWrite true writing to a full buffer should block
+	 *        until space is available, false if an exception should
+	 *        be thrown instead.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CircularIntBuffer(boolean blockingWrite){
+		this (DEFAULT_SIZE, blockingWrite);
+	}
+
+	/**
+	 * Create a new buffer with the given capacity and
+	 * blocking behavior.
+	 * <p>
+	 * Note that the buffer reserves one value so that a full buffer
+	 * can be told from an empty one, so it holds one value less than its
+	 * size.
+	 *
+	 * @param size desired capacity of the buffer in values or CircularIntBuffer.INFINITE_SIZE.
+	 * @param blockingWrite true writing to a full buffer should block
+	 *        until space is available, false if an exception should
+	 *        be thrown instead.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CircularIntBuffer(int size, boolean blockingWrite){
+		if (size == INFINITE_SIZE){
+			buffer = new int[DEFAULT_SIZE];
+			infinite = true;
+		} else {
+			buffer = new int[size];
+			infinite = false;
+		}
+		this.blockingWrite = blockingWrite;
+	}
+
+	/**
+	 * Make this buffer ready for reuse.  The contents of the buffer
+	 * will be cleared and the buffer will accept writes again if
+	 * done() had been called.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void clear(){
+		synchronized (this){
+			readPosition = 0;
+			writePosition = 0;
+			inputDone = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get number of values that are available to be read.
+	 *
+	 * @return the number of values available.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getAvailable(){
+		synchronized (this){
+			return available();
+		}
+	}
+
+	/**
+	 * Get the number of values this buffer has free for writing.
+	 *
+	 * @return the available space in values of this buffer
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getSpaceLeft(){
+		synchronized (this){
+			return spaceLeft();
+		}
+	}
+
+	/**
+	 * Get the capacity of this buffer.
+	 *
+	 * @return the size in values of this buffer
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getSize(){
+		synchronized (this){
+			return buffer.length;
+		}
+	}
+
+	/**
+	 * Set the largest length to which an infinite buffer grows.
+	 *
+	 * @param maxSize largest length in values.
+	 * @throws IllegalArgumentException if the size is less than two.
+	 * @see CircularObjectBuffer#setMaxSize(int)
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setMaxSize(int maxSize){
+		if (maxSize < 2) throw new IllegalArgumentException("Bad maximum size: " + maxSize);
+		synchronized (this){
+			this.maxSize = Math.min(maxSize, MAX_ARRAY_SIZE);
+		}
+	}
+
+	/**
+	 * Get the largest length to which an infinite buffer grows.
+	 *
+	 * @return largest length in values.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getMaxSize(){
+		synchronized (this){
+			return maxSize;
+		}
+	}
+
+	/**
+	 * Set the factor by which an infinite buffer grows when it is full.
+	 *
+	 * @param growthFactor factor greater than one.
+	 * @throws IllegalArgumentException if the factor is not greater than one.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setGrowthFactor(double growthFactor){
+		if (!(growthFactor > 1)) throw new IllegalArgumentException("Bad growth factor: " + growthFactor);
+		synchronized (this){
+			this.growthFactor = growthFactor;
+		}
+	}
+
+	/**
+	 * Get the factor by which an infinite buffer grows when it is full.
+	 *
+	 * @return the growth factor.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getGrowthFactor(){
+		synchronized (this){
+			return growthFactor;
+		}
+	}
+
+	/**
+	 * Set how long an infinite buffer that has grown must go without a
+	 * write before it shrinks back towards its initial size.
+	 *
+	 * @param shrinkDelay delay in milliseconds, or zero to never shrink.
+	 * @throws IllegalArgumentException if the delay is negative.
+	 * @see CircularObjectBuffer#setShrinkDelay(long)
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setShrinkDelay(long shrinkDelay){
+		if (shrinkDelay < 0) throw new IllegalArgumentException("Negative shrink delay: " + shrinkDelay);
+		synchronized (this){
+			this.shrinkDelay = shrinkDelay;
+			lastWrite = System.nanoTime();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get how long an infinite buffer must go without a write before it shrinks.
+	 *
+	 * @return delay in milliseconds, or zero if the buffer never shrinks.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getShrinkDelay(){
+		synchronized (this){
+			return shrinkDelay;
+		}
+	}
+
+	/**
+	 * Convert a timeout to the value of System.nanoTime() at which it runs out.
+	 *
+	 * @return the deadline, which is never zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static long deadline(long timeout){
+		long deadline = System.nanoTime() + Math.max(0, timeout);
+		return deadline == 0 ? 1 : deadline;
+	}
+
+	/**
+	 * Wait until another thread changes this buffer.  Must be called while
+	 * holding the lock on this buffer, and the caller must check again
+	 * whatever it was waiting for.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @return false if the deadline has passed.
+	 * @throws InterruptedException if the thread is interrupted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean awaitChange(long deadline) throws InterruptedException {
+		// A reader waiting on an empty buffer wakes in time to shrink it.
+		long shrinkTime = available() == 0 ? shrinkTime() : 0;
+		if (deadline == 0 && shrinkTime == 0){
+			wait();
+			return true;
+		}
+		long now = System.nanoTime();
+		long remaining = deadline == 0 ? Long.MAX_VALUE : deadline - now;
+		if (remaining <= 0) return false;
+		if (shrinkTime != 0) remaining = Math.min(remaining, shrinkTime - now);
+		if (remaining > 0) TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		shrinkIfIdle();
+		return true;
+	}
+
+	/**
+	 * The value of System.nanoTime() at which this buffer may shrink.
+	 *
+	 * @return the time, or zero if the buffer is not going to shrink.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long shrinkTime(){
+		if (!infinite || shrinkDelay == 0 || buffer.length <= DEFAULT_SIZE) return 0;
+		long time = lastWrite + TimeUnit.MILLISECONDS.toNanos(shrinkDelay);
+		return time == 0 ? 1 : time;
+	}
+
+	/**
+	 * Shrink the buffer if it has gone without writes for long enough,
+	 * leaving room for twice the values it holds.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void shrinkIfIdle(){
+		long shrinkTime = shrinkTime();
+		if (shrinkTime == 0 || System.nanoTime() - shrinkTime < 0) return;
+		int length = (int)Math.max(DEFAULT_SIZE, 2L * available() + 1);
+		if (length < buffer.length) resize(length);
+	}
+
+	/**
+	 * Make room for the given number of values if the buffer is infinite,
+	 * growing by the growth factor but no further than the maximum size.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void ensureSpace(int needed){
+		if (!infinite || spaceLeft() >= needed) return;
+		long length = Math.max((long)Math.ceil(buffer.length * growthFactor), (long)available() + needed + 1);
+		length = Math.min(length, maxSize);
+		if (length > buffer.length) resize((int)length);
+	}
+
+	/**
+	 * Move the values into a new array of the given length.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void resize(int newLength){
+		int[] newBuffer = new int[newLength];
+		int available = available();
+		if (readPosition <= writePosition){
+			System.arraycopy(buffer, readPosition, newBuffer, 0, available);
+		} else {
+			int length1 = buffer.length - readPosition;
+			System.arraycopy(buffer, readPosition, newBuffer, 0, length1);
+			System.arraycopy(buffer, 0, newBuffer, length1, writePosition);
+		}
+		buffer = newBuffer;
+		readPosition = 0;
+		writePosition = available;
+	}
+
+	/**
+	 * Space available in the buffer which can be written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int spaceLeft(){
+		if (writePosition < readPosition){
+			return (readPosition - writePosition - 1);
+		}
+		return ((buffer.length - 1) - (writePosition - readPosition));
+	}
+
+	/**
+	 * Values available for reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int available(){
+		if (readPosition <= writePosition){
+			return (writePosition - readPosition);
+		}
+		return (buffer.length - (readPosition - writePosition));
+	}
+
+	/**
+	 * Move up to len available values into the array, or discard them if
+	 * the array is null.  Must be called while holding the lock on this
+	 * buffer.
+	 *
+	 * @return the number of values removed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int removeTo(int[] buf, int off, int len){
+		int length = Math.min(len, available());
+		int firstLen = Math.min(length, buffer.length - readPosition);
+		int secondLen = length - firstLen;
+		if (buf != null){
+			System.arraycopy(buffer, readPosition, buf, off, firstLen);
+			System.arraycopy(buffer, 0, buf, off+firstLen, secondLen);
+		}
+		if (secondLen > 0){
+			readPosition = secondLen;
+		} else {
+			readPosition += length;
+		}
+		if (readPosition == buffer.length) {
+			readPosition = 0;
+		}
+		return length;
+	}
+
+	/**
+	 * Copy as many of len values from the array as there is space for.
+	 * Must be called while holding the lock on this buffer.
+	 *
+	 * @return the number of values written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int insertFrom(int[] buf, int off, int len){
+		int realLen = Math.min(len, spaceLeft());
+		int firstLen = Math.min(realLen, buffer.length - writePosition);
+		int secondLen = realLen - firstLen;
+		System.arraycopy(buf, off, buffer, writePosition, firstLen);
+		if (secondLen > 0){
+			System.arraycopy(buf, off+firstLen, buffer, 0, secondLen);
+			writePosition = secondLen;
+		} else {
+			writePosition += realLen;
+		}
+		if (writePosition == buffer.length) {
+			writePosition = 0;
+		}
+		if (realLen > 0 && shrinkDelay != 0) lastWrite = System.nanoTime();
+		return realLen;
+	}
+
+	/**
+	 * Get a single value from this buffer.  This method should be called
+	 * by the consumer.
+	 * This method will block until a value is available or no more
+	 * values are coming.
+	 *
+	 * @return The value read.
+	 * @throws NoSuchElementException if done() has been called and the buffer is empty.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int read() throws InterruptedException {
+		try {
+			return readValue(0);
+		} catch (TimeoutException x){
+			// Not possible without a deadline.
+			throw new IllegalStateException(x);
+		}
+	}
+
+	/**
+	 * Get a single value from this buffer, waiting no longer than the
+	 * given time for one to become available.  This method should be
+	 * called by the consumer.
+	 *
+	 * @param timeout longest time to wait.
+	 * @param unit unit of the timeout.
+	 * @return The value read.
+	 * @throws NoSuchElementException if done() has been called and the buffer is empty.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 * @throws TimeoutException if no value became available in time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int read(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return readValue(deadline(unit.toNanos(timeout)));
+	}
+
+	/**
+	 * Get a single value from this buffer, waiting until the deadline.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int readValue(long deadline) throws InterruptedException, TimeoutException {
+		synchronized (this){
+			while (true){
+				if (available() > 0){
+					int result = buffer[readPosition];
+					readPosition++;
+					if (readPosition == buffer.length){
+						readPosition = 0;
+					}
+					shrinkIfIdle();
+					notifyAll();
+					return result;
+				} else if (inputDone){
+					throw new NoSuchElementException("CircularIntBuffer is empty and done() has been called");
+				}
+				if (!awaitChange(deadline)) throw new TimeoutException("CircularIntBuffer is empty; timed out waiting to read a value");
+			}
+		}
+	}
+
+	/**
+	 * Get values into an array from this buffer.  This method should
+	 * be called by the consumer.
+	 * This method will block until some input is available,
+	 * or there is no more input.
+	 *
+	 * @param buf Destination buffer.
+	 * @return The number of values read, or -1 if there will
+	 *     be no more values available.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int read(int[] buf) throws InterruptedException {
+		return read(buf, 0, buf.length);
+	}
+
+	/**
+	 * Get values into a portion of an array from this buffer.  This
+	 * method should be called by the consumer.
+	 * This method will block until some input is available,
+	 * or there is no more input.
+	 *
+	 * @param buf Destination buffer.
+	 * @param off Offset at which to start storing values.
+	 * @param len Maximum number of values to read.
+	 * @return The number of values read, or -1 if there will
+	 *     be no more values available.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int read(int[] buf, int off, int len) throws InterruptedException {
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		synchronized (this){
+			while (true){
+				if (available() > 0){
+					int length = removeTo(buf, off, len);
+					shrinkIfIdle();
+					notifyAll();
+					return length;
+				} else if (inputDone){
+					return -1;
+				}
+				awaitChange(0);
+			}
+		}
+	}
+
+	/**
+	 * Skip values.  This method should be used by the consumer
+	 * when it does not care to examine some number of values.
+	 * This method will block until some values are available,
+	 * or there will be no more values available.
+	 *
+	 * @param n The number of values to skip
+	 * @return The number of values actually skipped
+	 * @throws IllegalArgumentException if n is negative.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long skip(long n) throws InterruptedException, IllegalArgumentException {
+		if (n < 0) throw new IllegalArgumentException("Negative skip: " + n);
+		synchronized (this){
+			while (true){
+				if (available() > 0){
+					int length = removeTo(null, 0, (int)Math.min(n, Integer.MAX_VALUE));
+					shrinkIfIdle();
+					notifyAll();
+					return length;
+				} else if (inputDone){
+					return 0;
+				}
+				awaitChange(0);
+			}
+		}
+	}
+
+	/**
+	 * Move the values that are available into a portion of an array
+	 * without waiting for more.  This method should be called by the
+	 * consumer.
+	 *
+	 * @param buf Destination buffer.
+	 * @param off Offset at which to start storing values.
+	 * @param len Maximum number of values to move.
+	 * @return The number of values moved, possibly zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int drainTo(int[] buf, int off, int len){
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		synchronized (this){
+			int length = removeTo(buf, off, len);
+			if (length > 0){
+				shrinkIfIdle();
+				notifyAll();
+			}
+			return length;
+		}
+	}
+
+	/**
+	 * This method should be used by the producer to signal to the consumer
+	 * that the producer is done producing values and that the consumer
+	 * should stop asking for values once it has used up buffered values.
+	 * <p>
+	 * Once the producer has signaled that it is done, further write() invocations
+	 * will cause an IllegalStateException to be thrown. Calling done() multiple times,
+	 * however, has no effect.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void done(){
+		synchronized (this){
+			inputDone = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Fill this buffer with an array of values.  This method should be
+	 * called by the producer.
+	 * If the buffer allows blocking writes, this method will block until
+	 * all the data has been written rather than throw a BufferOverflowException.
+	 *
+	 * @param buf Array of values to be written
+	 * @throws BufferOverflowException if buffer does not allow blocking writes
+	 *   and the buffer is full.  If the exception is thrown, no data
+	 *   will have been written since the buffer was set to be non-blocking.
+	 * @throws IllegalStateException if done() has been called.
+	 * @throws InterruptedException if the write is interrupted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void write(int[] buf) throws BufferOverflowException, IllegalStateException, InterruptedException {
+		write(buf, 0, buf.length);
+	}
+
+	/**
+	 * Fill this buffer with a portion of an array of values.
+	 * This method should be called by the producer.
+	 * If the buffer allows blocking writes, this method will block until
+	 * all the data has been written rather than throw a BufferOverflowException.
+	 *
+	 * @param buf Array of values
+	 * @param off Offset from which to start writing values
+	 * @param len Number of values to write
+	 * @throws BufferOverflowException if buffer does not allow blocking writes
+	 *   and the buffer is full.  If the exception is thrown, no data
+	 *   will have been written since the buffer was set to be non-blocking.
+	 * @throws IllegalStateException if done() has been called.
+	 * @throws InterruptedException if the write is interrupted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void write(int[] buf, int off, int len) throws BufferOverflowException, IllegalStateException, InterruptedException {
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		synchronized (this){
+			while (len > 0){
+				if (inputDone) throw new IllegalStateException("CircularIntBuffer.done() has been called, CircularIntBuffer.write() failed.");
+				ensureSpace(len);
+				if (!blockingWrite && spaceLeft() < len) throw new BufferOverflowException("CircularIntBuffer is full; cannot write " + len + " values");
+				int written = insertFrom(buf, off, len);
+				off += written;
+				len -= written;
+				if (written > 0) notifyAll();
+				if (len > 0) awaitChange(0);
+			}
+		}
+	}
+
+	/**
+	 * Add as many values from a portion of an array as there is space
+	 * for, without waiting for more space.  An infinite buffer grows to
+	 * take them all if it may.  This method should be called by the
+	 * producer.
+	 *
+	 * @param buf Array of values
+	 * @param off Offset from which to start writing values
+	 * @param len Number of values to write
+	 * @return The number of values written, possibly zero.
+	 * @throws IllegalStateException if done() has been called.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int putAll(int[] buf, int off, int len) throws IllegalStateException {
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		synchronized (this){
+			if (inputDone) throw new IllegalStateException("CircularIntBuffer.done() has been called, CircularIntBuffer.putAll() failed.");
+			ensureSpace(len);
+			int written = insertFrom(buf, off, len);
+			if (written > 0) notifyAll();
+			return written;
+		}
+	}
+
+	/**
+	 * Add a single value to this buffer.  This method should be
+	 * called by the producer.
+	 * If the buffer allows blocking writes, this method will block until
+	 * the value has been written rather than throw a BufferOverflowException.
+	 *
+	 * @param v value to be written.
+	 * @throws BufferOverflowException if buffer does not allow blocking writes
+	 *   and the buffer is full.
+	 * @throws IllegalStateException if done() has been called.
+	 * @throws InterruptedException if the write is interrupted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void write(int v) throws BufferOverflowException, IllegalStateException, InterruptedException {
+		try {
+			writeValue(v, 0);
+		} catch (TimeoutException x){
+			// Not possible without a deadline.
+			throw new IllegalStateException(x);
+		}
+	}
+
+	/**
+	 * Add a single value to this buffer, waiting no longer than the given
+	 * time for space to become available.  This method should be called by
+	 * the producer.
+	 *
+	 * @param v value to be written.
+	 * @param timeout longest time to wait.
+	 * @param unit unit of the timeout.
+	 * @throws BufferOverflowException if buffer does not allow blocking writes
+	 *   and the buffer is full.
+	 * @throws IllegalStateException if done() has been called.
+	 * @throws InterruptedException if the write is interrupted.
+	 * @throws TimeoutException if no space became available in time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void write(int v, long timeout, TimeUnit unit) throws BufferOverflowException, IllegalStateException, InterruptedException, TimeoutException {
+		writeValue(v, deadline(unit.toNanos(timeout)));
+	}
+
+	/**
+	 * Add a single value to this buffer, waiting until the deadline.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeValue(int v, long deadline) throws BufferOverflowException, InterruptedException, TimeoutException {
+		synchronized (this){
+			while (true){
+				if (inputDone) throw new IllegalStateException("CircularIntBuffer.done() has been called, CircularIntBuffer.write() failed.");
+				ensureSpace(1);
+				int spaceLeft = spaceLeft();
+				if (!blockingWrite && spaceLeft < 1) throw new BufferOverflowException("CircularIntBuffer is full; cannot write 1 value");
+				if (spaceLeft > 0){
+					buffer[writePosition] = v;
+					writePosition++;
+					if (writePosition == buffer.length) {
+						writePosition = 0;
+					}
+					if (shrinkDelay != 0) lastWrite = System.nanoTime();
+					notifyAll();
+					return;
+				}
+				if (!awaitChange(deadline)) throw new TimeoutException("CircularIntBuffer is full; timed out waiting to write 1 value");
+			}
+		}
+	}
+}
@@ -19,12 +19,32 @@ package com._64bitlabs.util.file;
 
 import com._64bitlabs.util.exception.BufferOverflowException;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * Implements the Circular Buffer producer/consumer model for Objects.
  * More information about this class is available from <a target="_top" href=
  * "http://64bitlabs.com/utils/CircularObjectBuffer.html">64bitlabs.com</a>.
  * <p>
- * This class is thread safe.
+ * This class is thread safe.  A read that has to wait for Objects, or a
+ * write that has to wait for space, is woken as soon as the other side
+ * makes progress or done() is called.
+ * <p>
+ * A buffer created with
+ * {@link #CircularObjectBuffer(int, boolean, boolean) multiProducerMultiConsumer}
+ * set takes no lock to read or write.  Each slot has a sequence number
+ * that says whether it is waiting for a writer or a reader of a given lap
+ * around the buffer; producers and consumers claim runs of positions with
+ * a compare-and-set and then fill or empty their slots independently.  The
+ * lock is only taken to sleep when the buffer is full or empty.
+ * {@link #putAll(Object[], int, int)} and drainTo() claim many slots at
+ * once, so that a busy consumer pays for one compare-and-set per batch.
  *
  * @see CircularCharBuffer
  * @see CircularByteBuffer
@@ -101,7 +121,82 @@ public class CircularObjectBuffer <ElementType> {
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
-	protected boolean inputDone = false;
+	protected volatile boolean inputDone = false;
+
+	/**
+	 * Largest length to which an infinite buffer grows.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int maxSize = MAX_ARRAY_SIZE;
+
+	/**
+	 * Factor by which an infinite buffer grows when it is full.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private double growthFactor = 2;
+
+	/**
+	 * Milliseconds without a write after which an infinite buffer that has
+	 * grown shrinks back, or zero to never shrink.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long shrinkDelay = 0;
+
+	/**
+	 * Value of System.nanoTime() at the last write, kept while shrinking is enabled.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long lastWrite = System.nanoTime();
+
+	/**
+	 * The longest array that may be allocated.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final static int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Sequence number of each slot in multi producer multi consumer mode,
+	 * or null if this buffer uses its lock.  A slot whose sequence equals
+	 * a position is free for the writer of that position; one whose
+	 * sequence is a position plus one holds the Object for the reader of
+	 * that position.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private AtomicLongArray sequences;
+
+	/**
+	 * Next position to be claimed by a reader, in multi producer multi consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private AtomicLong head;
+
+	/**
+	 * Next position to be claimed by a writer, in multi producer multi consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private AtomicLong tail;
+
+	/**
+	 * Number of threads sleeping on the lock in multi producer multi consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private AtomicInteger waiters;
+
+	/**
+	 * Returned by pollOne() when there is nothing to read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final static Object EMPTY = new Object();
 
 	/**
 	 * Make this buffer ready for reuse.  The contents of the buffer
@@ -114,7 +209,17 @@ public class CircularObjectBuffer <ElementType> {
 		synchronized (this){
 			readPosition = 0;
 			writePosition = 0;
+			Arrays.fill(buffer, null);
+			if (sequences != null){
+				// Not safe while other threads are reading or writing.
+				for (int i = 0; i < buffer.length; i++){
+					sequences.set(i, i);
+				}
+				head.set(0);
+				tail.set(0);
+			}
 			inputDone = false;
+			notifyAll();
 		}
 	}
 
@@ -131,6 +236,7 @@ public class CircularObjectBuffer <ElementType> {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public int getAvailable(){
+		if (sequences != null) return used();
 		synchronized (this){
 			return available();
 		}
@@ -150,6 +256,7 @@ public class CircularObjectBuffer <ElementType> {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public int getSpaceLeft(){
+		if (sequences != null) return buffer.length - used();
 		synchronized (this){
 			return spaceLeft();
 		}
@@ -173,17 +280,188 @@ public class CircularObjectBuffer <ElementType> {
 		}
 	}
 
+	/**
+	 * Set the largest length to which an infinite buffer grows.  A full
+	 * buffer of that length blocks writes, or refuses them if it does not
+	 * allow blocking writes, as a buffer of fixed size does.  A buffer
+	 * that is already longer keeps its length until it shrinks.
+	 *
+	 * @param maxSize largest length in Objects.
+	 * @throws IllegalArgumentException if the size is less than two.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setMaxSize(int maxSize){
+		if (maxSize < 2) throw new IllegalArgumentException("Bad maximum size: " + maxSize);
+		synchronized (this){
+			this.maxSize = Math.min(maxSize, MAX_ARRAY_SIZE);
+		}
+	}
+
+	/**
+	 * Get the largest length to which an infinite buffer grows.
+	 *
+	 * @return largest length in Objects.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getMaxSize(){
+		synchronized (this){
+			return maxSize;
+		}
+	}
+
+	/**
+	 * Set the factor by which an infinite buffer grows when it is full.
+	 * The default doubles the buffer.
+	 *
+	 * @param growthFactor factor greater than one.
+	 * @throws IllegalArgumentException if the factor is not greater than one.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setGrowthFactor(double growthFactor){
+		if (!(growthFactor > 1)) throw new IllegalArgumentException("Bad growth factor: " + growthFactor);
+		synchronized (this){
+			this.growthFactor = growthFactor;
+		}
+	}
+
+	/**
+	 * Get the factor by which an infinite buffer grows when it is full.
+	 *
+	 * @return the growth factor.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getGrowthFactor(){
+		synchronized (this){
+			return growthFactor;
+		}
+	}
+
+	/**
+	 * Set how long an infinite buffer that has grown must go without a
+	 * write before it shrinks back towards its initial size.  The buffer
+	 * shrinks on the next read after that time, or while a reader is
+	 * waiting for it.  The default of zero never shrinks the buffer.
+	 *
+	 * @param shrinkDelay delay in milliseconds, or zero to never shrink.
+	 * @throws IllegalArgumentException if the delay is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setShrinkDelay(long shrinkDelay){
+		if (shrinkDelay < 0) throw new IllegalArgumentException("Negative shrink delay: " + shrinkDelay);
+		synchronized (this){
+			this.shrinkDelay = shrinkDelay;
+			lastWrite = System.nanoTime();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get how long an infinite buffer must go without a write before it shrinks.
+	 *
+	 * @return delay in milliseconds, or zero if the buffer never shrinks.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getShrinkDelay(){
+		synchronized (this){
+			return shrinkDelay;
+		}
+	}
+
 	@SuppressWarnings("unchecked") private ElementType[] createArray(int size){
 		return (ElementType[]) new Object[size];
 	}
 
 	/**
-	 * double the size of the buffer
+	 * Convert a timeout to the value of System.nanoTime() at which it runs out.
+	 *
+	 * @return the deadline, which is never zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static long deadline(long timeout){
+		long deadline = System.nanoTime() + Math.max(0, timeout);
+		return deadline == 0 ? 1 : deadline;
+	}
+
+	/**
+	 * Wait until another thread changes this buffer.  Must be called while
+	 * holding the lock on this buffer, and the caller must check again
+	 * whatever it was waiting for.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @return false if the deadline has passed.
+	 * @throws InterruptedException if the thread is interrupted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean awaitChange(long deadline) throws InterruptedException {
+		// A reader waiting on an empty buffer wakes in time to shrink it.
+		long shrinkTime = available() == 0 ? shrinkTime() : 0;
+		if (deadline == 0 && shrinkTime == 0){
+			wait();
+			return true;
+		}
+		long now = System.nanoTime();
+		long remaining = deadline == 0 ? Long.MAX_VALUE : deadline - now;
+		if (remaining <= 0) return false;
+		if (shrinkTime != 0) remaining = Math.min(remaining, shrinkTime - now);
+		if (remaining > 0) TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		shrinkIfIdle();
+		return true;
+	}
+
+	/**
+	 * The value of System.nanoTime() at which this buffer may shrink.
+	 *
+	 * @return the time, or zero if the buffer is not going to shrink.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long shrinkTime(){
+		if (!infinite || shrinkDelay == 0 || buffer.length <= DEFAULT_SIZE) return 0;
+		long time = lastWrite + TimeUnit.MILLISECONDS.toNanos(shrinkDelay);
+		return time == 0 ? 1 : time;
+	}
+
+	/**
+	 * Shrink the buffer if it has gone without writes for long enough,
+	 * leaving room for twice the Objects it holds.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void shrinkIfIdle(){
+		long shrinkTime = shrinkTime();
+		if (shrinkTime == 0 || System.nanoTime() - shrinkTime < 0) return;
+		int length = (int)Math.max(DEFAULT_SIZE, 2L * available() + 1);
+		if (length < buffer.length) resize(length);
+	}
+
+	/**
+	 * Make room for the given number of Objects if the buffer is infinite,
+	 * growing by the growth factor but no further than the maximum size.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void ensureSpace(int needed){
+		if (!infinite || spaceLeft() >= needed) return;
+		long length = Math.max((long)Math.ceil(buffer.length * growthFactor), (long)available() + needed + 1);
+		length = Math.min(length, maxSize);
+		if (length > buffer.length) resize((int)length);
+	}
+
+	/**
+	 * Move the Objects into a new array of the given length.
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
-	private void resize(){
-		ElementType[] newBuffer = createArray(buffer.length * 2);
+	private void resize(int newLength){
+		ElementType[] newBuffer = createArray(newLength);
 		int available = available();
 		if (readPosition <= writePosition){
 			// any space between the read and
@@ -256,7 +534,7 @@ public class CircularObjectBuffer <ElementType> {
 	 * <p>
 	 * Note that if the buffer is of INFINITE_SIZE it will
 	 * neither block or throw exceptions, but rather grow
-	 * without bound.
+	 * without bound, unless limited with setMaxSize().
 	 *
 	 * @param size desired capacity of the buffer in Objects or CircularObjectBuffer.INFINITE_SIZE.
 	 *
@@ -290,7 +568,7 @@ public class CircularObjectBuffer <ElementType> {
 	 * <p>
 	 * Note that if the buffer is of INFINITE_SIZE it will
 	 * neither block or throw exceptions, but rather grow
-	 * without bound.
+	 * without bound, unless limited with setMaxSize().
 	 *
 	 * @param size desired capacity of the buffer in Objects or CircularObjectBuffer.INFINITE_SIZE.
 	 * @param blockingWrite true writing to a full buffer should block
@@ -310,6 +588,269 @@ public class CircularObjectBuffer <ElementType> {
 		this.blockingWrite = blockingWrite;
 	}
 
+	/**
+	 * Create a new buffer with the given capacity and blocking behavior,
+	 * optionally for use by many producers and many consumers without a
+	 * lock.
+	 * <p>
+	 * In multi producer multi consumer mode every slot of the buffer can
+	 * be used, clear() must not be called while other threads use the
+	 * buffer, and the settings for growing and shrinking have no effect.
+	 *
+	 * @param size desired capacity of the buffer in Objects.
+	 * @param blockingWrite true writing to a full buffer should block
+	 *        until space is available, false if an exception should
+	 *        be thrown instead.
+	 * @param multiProducerMultiConsumer true to read and write without a lock.
+	 * @throws IllegalArgumentException if a multi producer multi consumer buffer would be of infinite size or hold fewer than two Objects.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public CircularObjectBuffer(int size, boolean blockingWrite, boolean multiProducerMultiConsumer){
+		this (size, blockingWrite);
+		if (multiProducerMultiConsumer){
+			if (infinite) throw new IllegalArgumentException("A multi producer multi consumer buffer cannot be of infinite size.");
+			// With one slot, "filled for position p" and "free for position
+			// p + 1" would be the same sequence number.
+			if (size < 2) throw new IllegalArgumentException("Bad size for a multi producer multi consumer buffer: " + size);
+			sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++){
+				sequences.set(i, i);
+			}
+			head = new AtomicLong();
+			tail = new AtomicLong();
+			waiters = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Number of Objects claimed by writers and not yet by readers, in
+	 * multi producer multi consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int used(){
+		long h = head.get();
+		return (int)Math.max(0, Math.min(buffer.length, tail.get() - h));
+	}
+
+	/**
+	 * Wake sleeping readers and writers, in multi producer multi consumer mode.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void signal(){
+		if (waiters.get() > 0){
+			synchronized (this){
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Sleep until a read or write might make progress, in multi producer
+	 * multi consumer mode.  The caller must try again.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @param reading true if a read is waiting, false if a write is.
+	 * @return false if the deadline has passed.
+	 * @throws InterruptedException if the thread is interrupted.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean awaitReady(long deadline, boolean reading) throws InterruptedException {
+		synchronized (this){
+			// Registered before checking, so a thread that changes the
+			// buffer after the check is sure to see the waiter.
+			waiters.incrementAndGet();
+			try {
+				long used = tail.get() - head.get();
+				if (inputDone || (reading ? used > 0 : used < buffer.length)) return true;
+				return awaitChange(deadline);
+			} finally {
+				waiters.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Claim and fill slots for up to len Objects, as many as are free,
+	 * in multi producer multi consumer mode.
+	 *
+	 * @param whole true to write nothing unless all of the Objects fit.
+	 * @return the number of Objects written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int offer(ElementType[] buf, int off, int len, boolean whole){
+		while (true){
+			long t = tail.get();
+			long free = buffer.length - (t - head.get());
+			int n = (int)Math.min(len, Math.min(free, buffer.length));
+			if (n <= 0 || (whole && n < len)) return 0;
+			if (tail.compareAndSet(t, t + n)){
+				for (int k = 0; k < n; k++){
+					long position = t + k;
+					int i = (int)(position % buffer.length);
+					// A reader of the previous lap may still be emptying the slot.
+					while (sequences.get(i) != position) Thread.yield();
+					buffer[i] = buf[off + k];
+					sequences.lazySet(i, position + 1);
+				}
+				signal();
+				return n;
+			}
+		}
+	}
+
+	/**
+	 * Claim and fill a slot for one Object if one is free, in multi
+	 * producer multi consumer mode.
+	 *
+	 * @return true if the Object was written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean offerOne(ElementType o){
+		while (true){
+			long t = tail.get();
+			int i = (int)(t % buffer.length);
+			long sequence = sequences.get(i);
+			if (sequence < t) return false;
+			if (sequence == t && tail.compareAndSet(t, t + 1)){
+				buffer[i] = o;
+				sequences.lazySet(i, t + 1);
+				signal();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Claim and empty slots for up to len Objects, as many as have been
+	 * claimed by writers, in multi producer multi consumer mode.  The
+	 * Objects go into the array if there is one, otherwise into the
+	 * collection if there is one, otherwise they are discarded.
+	 *
+	 * @return the number of Objects read.
+	 * @throws RuntimeException if the collection refuses an Object; the
+	 *     slots are still emptied.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int poll(ElementType[] buf, int off, int len, Collection<? super ElementType> c){
+		while (true){
+			long h = head.get();
+			int n = (int)Math.min(len, tail.get() - h);
+			if (n <= 0) return 0;
+			if (head.compareAndSet(h, h + n)){
+				RuntimeException failure = null;
+				for (int k = 0; k < n; k++){
+					long position = h + k;
+					int i = (int)(position % buffer.length);
+					// The writer may have claimed the slot but not filled it yet.
+					while (sequences.get(i) != position + 1) Thread.yield();
+					ElementType o = buffer[i];
+					buffer[i] = null;
+					sequences.lazySet(i, position + buffer.length);
+					if (buf != null){
+						buf[off + k] = o;
+					} else if (c != null && failure == null){
+						try {
+							c.add(o);
+						} catch (RuntimeException x){
+							failure = x;
+						}
+					}
+				}
+				signal();
+				if (failure != null) throw failure;
+				return n;
+			}
+		}
+	}
+
+	/**
+	 * Claim and empty the slot of one Object if there is one, in multi
+	 * producer multi consumer mode.
+	 *
+	 * @return the Object, or EMPTY if there is none.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private Object pollOne(){
+		while (true){
+			long h = head.get();
+			if (tail.get() - h <= 0) return EMPTY;
+			if (head.compareAndSet(h, h + 1)){
+				int i = (int)(h % buffer.length);
+				while (sequences.get(i) != h + 1) Thread.yield();
+				Object o = buffer[i];
+				buffer[i] = null;
+				sequences.lazySet(i, h + buffer.length);
+				signal();
+				return o;
+			}
+		}
+	}
+
+	/**
+	 * Move up to len available Objects into the array, or discard them if
+	 * the array is null, clearing their slots.  Must be called while
+	 * holding the lock on this buffer.
+	 *
+	 * @return the number of Objects removed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int removeTo(ElementType[] buf, int off, int len){
+		int length = Math.min(len, available());
+		int firstLen = Math.min(length, buffer.length - readPosition);
+		int secondLen = length - firstLen;
+		if (buf != null) System.arraycopy(buffer, readPosition, buf, off, firstLen);
+		Arrays.fill(buffer, readPosition, readPosition + firstLen, null);
+		if (secondLen > 0){
+			if (buf != null) System.arraycopy(buffer, 0, buf, off+firstLen, secondLen);
+			Arrays.fill(buffer, 0, secondLen, null);
+			readPosition = secondLen;
+		} else {
+			readPosition += length;
+		}
+		if (readPosition == buffer.length) {
+			readPosition = 0;
+		}
+		return length;
+	}
+
+	/**
+	 * Copy as many of len Objects from the array as there is space for.
+	 * Must be called while holding the lock on this buffer.
+	 *
+	 * @return the number of Objects written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int insertFrom(ElementType[] buf, int off, int len){
+		int realLen = Math.min(len, spaceLeft());
+		int firstLen = Math.min(realLen, buffer.length - writePosition);
+		// realLen is no more than the space left, so the rest fits before the read position.
+		int secondLen = realLen - firstLen;
+		if (firstLen > 0){
+			System.arraycopy(buf, off, buffer, writePosition, firstLen);
+		}
+		if (secondLen > 0){
+			System.arraycopy(buf, off+firstLen, buffer, 0, secondLen);
+			writePosition = secondLen;
+		} else {
+			writePosition += realLen;
+		}
+		if (writePosition == buffer.length) {
+			writePosition = 0;
+		}
+		if (realLen > 0 && shrinkDelay != 0) lastWrite = System.nanoTime();
+		return realLen;
+	}
+
 
 	/**
 	 * Get a single Object from this buffer.  This method should be called
@@ -323,21 +864,67 @@ public class CircularObjectBuffer <ElementType> {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public ElementType read() throws InterruptedException {
-		while (true){
-			synchronized (this){
+		try {
+			return readElement(0);
+		} catch (TimeoutException x){
+			// Not possible without a deadline.
+			throw new IllegalStateException(x);
+		}
+	}
+
+	/**
+	 * Get a single Object from this buffer, waiting no longer than the given
+	 * time for one to become available.  This method should be called by
+	 * the consumer.
+	 *
+	 * @param timeout longest time to wait.
+	 * @param unit unit of the timeout.
+	 * @return The Object read, or null if there are no more objects
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 * @throws TimeoutException if no Object became available in time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ElementType read(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		return readElement(deadline(unit.toNanos(timeout)));
+	}
+
+	/**
+	 * Get a single Object from this buffer, waiting until the deadline.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@SuppressWarnings("unchecked") private ElementType readElement(long deadline) throws InterruptedException, TimeoutException {
+		if (sequences != null){
+			while (true){
+				Object o = pollOne();
+				if (o != EMPTY) return (ElementType)o;
+				if (inputDone){
+					// Writes that finished before done() must still be read.
+					o = pollOne();
+					return o == EMPTY ? null : (ElementType)o;
+				}
+				if (!awaitReady(deadline, true)) throw new TimeoutException("CircularObjectBuffer is empty; timed out waiting to read an Object");
+			}
+		}
+		synchronized (this){
+			while (true){
 				int available = available();
 				if (available > 0){
 					ElementType result = buffer[readPosition];
+					buffer[readPosition] = null;
 					readPosition++;
 					if (readPosition == buffer.length){
 						readPosition = 0;
 					}
+					shrinkIfIdle();
+					notifyAll();
 					return result;
 				} else if (inputDone){
 					return null;
 				}
+				if (!awaitChange(deadline)) throw new TimeoutException("CircularObjectBuffer is empty; timed out waiting to read an Object");
 			}
-			Thread.sleep(100);
 		}
 	}
 
@@ -369,34 +956,39 @@ public class CircularObjectBuffer <ElementType> {
 	 * @param len Maximum number of Objects to read.
 	 * @return The number of Objects read, or -1 there will
 	 *     be no more objects available.
+	 * @throws IndexOutOfBoundsException if the portion is outside the array.
 	 * @throws InterruptedException if the thread is interrupted while waiting.
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public int read(ElementType[] buf, int off, int len) throws InterruptedException {
-		while (true){
-			synchronized (this){
+		// Check before claiming any slots, which must then be filled.
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		if (sequences != null){
+			if (len <= 0) return 0;
+			while (true){
+				int length = poll(buf, off, len, null);
+				if (length > 0) return length;
+				if (inputDone){
+					length = poll(buf, off, len, null);
+					return length > 0 ? length : -1;
+				}
+				awaitReady(0, true);
+			}
+		}
+		synchronized (this){
+			while (true){
 				int available = available();
 				if (available > 0){
-					int length = Math.min(len, available);
-					int firstLen = Math.min(length, buffer.length - readPosition);
-					int secondLen = length - firstLen;
-					System.arraycopy(buffer, readPosition, buf, off, firstLen);
-					if (secondLen > 0){
-						System.arraycopy(buffer, 0, buf, off+firstLen,  secondLen);
-						readPosition = secondLen;
-					} else {
-						readPosition += length;
-					}
-					if (readPosition == buffer.length) {
-						readPosition = 0;
-					}
+					int length = removeTo(buf, off, len);
+					shrinkIfIdle();
+					notifyAll();
 					return length;
 				} else if (inputDone){
 					return -1;
 				}
+				awaitChange(0);
 			}
-			Thread.sleep(100);
 		}
 	}
 
@@ -415,27 +1007,85 @@ public class CircularObjectBuffer <ElementType> {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public long skip(long n) throws InterruptedException, IllegalArgumentException {
-		while (true){
-			synchronized (this){
+		if (n < 0) throw new IllegalArgumentException("Negative skip: " + n);
+		int len = (int)Math.min(n, Integer.MAX_VALUE);
+		if (sequences != null){
+			if (len == 0) return 0;
+			while (true){
+				int length = poll(null, 0, len, null);
+				if (length > 0 || inputDone) return length;
+				awaitReady(0, true);
+			}
+		}
+		synchronized (this){
+			while (true){
 				int available = available();
 				if (available > 0){
-					int length = Math.min((int)n, available);
-					int firstLen = Math.min(length, buffer.length - readPosition);
-					int secondLen = length - firstLen;
-					if (secondLen > 0){
-						readPosition = secondLen;
-					} else {
-						readPosition += length;
-					}
-					if (readPosition == buffer.length) {
-						readPosition = 0;
-					}
+					int length = removeTo(null, 0, len);
+					shrinkIfIdle();
+					notifyAll();
 					return length;
 				} else if (inputDone){
 					return 0;
 				}
+				awaitChange(0);
+			}
+		}
+	}
+
+	/**
+	 * Move the Objects that are available into a portion of an array
+	 * without waiting for more.  This method should be called by the
+	 * consumer.
+	 *
+	 * @param buf Destination buffer.
+	 * @param off Offset at which to start storing Objects.
+	 * @param len Maximum number of Objects to move.
+	 * @return The number of Objects moved, possibly zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int drainTo(ElementType[] buf, int off, int len){
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		if (sequences != null) return poll(buf, off, len, null);
+		synchronized (this){
+			int length = removeTo(buf, off, len);
+			if (length > 0){
+				shrinkIfIdle();
+				notifyAll();
+			}
+			return length;
+		}
+	}
+
+	/**
+	 * Move the Objects that are available into a collection without
+	 * waiting for more.  This method should be called by the consumer.
+	 *
+	 * @param c Destination collection.
+	 * @param max Maximum number of Objects to move.
+	 * @return The number of Objects moved, possibly zero.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int drainTo(Collection<? super ElementType> c, int max){
+		if (sequences != null) return poll(null, 0, max, c);
+		synchronized (this){
+			int length = 0;
+			while (length < max && available() > 0){
+				c.add(buffer[readPosition]);
+				buffer[readPosition] = null;
+				readPosition++;
+				if (readPosition == buffer.length){
+					readPosition = 0;
+				}
+				length++;
 			}
-			Thread.sleep(100);
+			if (length > 0){
+				shrinkIfIdle();
+				notifyAll();
+			}
+			return length;
 		}
 	}
 
@@ -453,6 +1103,7 @@ public class CircularObjectBuffer <ElementType> {
 	public void done(){
 		synchronized (this){
 			inputDone = true;
+			notifyAll();
 		}
 	}
 
@@ -488,45 +1139,65 @@ public class CircularObjectBuffer <ElementType> {
 	 *   and the buffer is full.  If the exception is thrown, no data
 	 *   will have been written since the buffer was set to be non-blocking.
 	 * @throws IllegalStateException if done() has been called.
+	 * @throws IndexOutOfBoundsException if the portion is outside the array.
 	 * @throws InterruptedException if the write is interrupted.
 	 *
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public void write(ElementType[] buf, int off, int len) throws BufferOverflowException, IllegalStateException, InterruptedException {
-		while (len > 0){
-			synchronized (CircularObjectBuffer.this){
+		// Check before claiming any slots, which must then be filled.
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		if (sequences != null){
+			while (len > 0){
 				if (inputDone) throw new IllegalStateException("CircularObjectBuffer.done() has been called, CircularObjectBuffer.write() failed.");
-				int spaceLeft = spaceLeft();
-				while (infinite && spaceLeft < len){
-					resize();
-					spaceLeft = spaceLeft();
-				}
-				if (!blockingWrite && spaceLeft < len) throw new BufferOverflowException("CircularObjectBuffer is full; cannot write " + len + " Objects");
-				int realLen = Math.min(len, spaceLeft);
-				int firstLen = Math.min(realLen, buffer.length - writePosition);
-				int secondLen = Math.min(realLen - firstLen, buffer.length - readPosition - 1);
-				int written = firstLen + secondLen;
-				if (firstLen > 0){
-					System.arraycopy(buf, off, buffer, writePosition, firstLen);
-				}
-				if (secondLen > 0){
-					System.arraycopy(buf, off+firstLen, buffer, 0, secondLen);
-					writePosition = secondLen;
-				} else {
-					writePosition += written;
-				}
-				if (writePosition == buffer.length) {
-					writePosition = 0;
-				}
+				int written = offer(buf, off, len, !blockingWrite);
+				if (!blockingWrite && written < len) throw new BufferOverflowException("CircularObjectBuffer is full; cannot write " + len + " Objects");
 				off += written;
 				len -= written;
+				if (len > 0 && written == 0) awaitReady(0, false);
 			}
-			if (len > 0){
-				Thread.sleep(100);
+			return;
+		}
+		synchronized (this){
+			while (len > 0){
+				if (inputDone) throw new IllegalStateException("CircularObjectBuffer.done() has been called, CircularObjectBuffer.write() failed.");
+				ensureSpace(len);
+				if (!blockingWrite && spaceLeft() < len) throw new BufferOverflowException("CircularObjectBuffer is full; cannot write " + len + " Objects");
+				int written = insertFrom(buf, off, len);
+				off += written;
+				len -= written;
+				if (written > 0) notifyAll();
+				if (len > 0) awaitChange(0);
 			}
 		}
 	}
 
+	/**
+	 * Add as many Objects from a portion of an array as there is space
+	 * for, without waiting for more space.  An infinite buffer grows to
+	 * take them all if it may.  This method should be called by the
+	 * producer.
+	 *
+	 * @param buf Array of Objects
+	 * @param off Offset from which to start writing Objects
+	 * @param len Number of Objects to write
+	 * @return The number of Objects written, possibly zero.
+	 * @throws IllegalStateException if done() has been called.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int putAll(ElementType[] buf, int off, int len) throws IllegalStateException {
+		if (off < 0 || len < 0 || off + len > buf.length) throw new IndexOutOfBoundsException();
+		if (inputDone) throw new IllegalStateException("CircularObjectBuffer.done() has been called, CircularObjectBuffer.putAll() failed.");
+		if (sequences != null) return offer(buf, off, len, false);
+		synchronized (this){
+			ensureSpace(len);
+			int written = insertFrom(buf, off, len);
+			if (written > 0) notifyAll();
+			return written;
+		}
+	}
+
 	/**
 	 * Add a single Object to this buffer.  This method should be
 	 * called by the producer.
@@ -543,15 +1214,54 @@ public class CircularObjectBuffer <ElementType> {
 	 * @since 64bitlabsutils 1.0.0
 	 */
 	public void write(ElementType o) throws BufferOverflowException, IllegalStateException, InterruptedException {
-		boolean written = false;
-		while (!written){
-			synchronized (CircularObjectBuffer.this){
+		try {
+			writeElement(o, 0);
+		} catch (TimeoutException x){
+			// Not possible without a deadline.
+			throw new IllegalStateException(x);
+		}
+	}
+
+	/**
+	 * Add a single Object to this buffer, waiting no longer than the given
+	 * time for space to become available.  This method should be called by
+	 * the producer.
+	 *
+	 * @param o Object to be written.
+	 * @param timeout longest time to wait.
+	 * @param unit unit of the timeout.
+	 * @throws BufferOverflowException if buffer does not allow blocking writes
+	 *   and the buffer is full.
+	 * @throws IllegalStateException if done() has been called.
+	 * @throws InterruptedException if the write is interrupted.
+	 * @throws TimeoutException if no space became available in time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void write(ElementType o, long timeout, TimeUnit unit) throws BufferOverflowException, IllegalStateException, InterruptedException, TimeoutException {
+		writeElement(o, deadline(unit.toNanos(timeout)));
+	}
+
+	/**
+	 * Add a single Object to this buffer, waiting until the deadline.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeElement(ElementType o, long deadline) throws BufferOverflowException, InterruptedException, TimeoutException {
+		if (sequences != null){
+			while (true){
 				if (inputDone) throw new IllegalStateException("CircularObjectBuffer.done() has been called, CircularObjectBuffer.write() failed.");
+				if (offerOne(o)) return;
+				if (!blockingWrite) throw new BufferOverflowException("CircularObjectBuffer is full; cannot write 1 Object");
+				if (!awaitReady(deadline, false)) throw new TimeoutException("CircularObjectBuffer is full; timed out waiting to write 1 Object");
+			}
+		}
+		synchronized (this){
+			boolean written = false;
+			while (!written){
+				if (inputDone) throw new IllegalStateException("CircularObjectBuffer.done() has been called, CircularObjectBuffer.write() failed.");
+				ensureSpace(1);
 				int spaceLeft = spaceLeft();
-				while (infinite && spaceLeft < 1){
-					resize();
-					spaceLeft = spaceLeft();
-				}
 				if (!blockingWrite && spaceLeft < 1) throw new BufferOverflowException("CircularObjectBuffer is full; cannot write 1 Object");
 				if (spaceLeft > 0){
 					buffer[writePosition] = o;
@@ -560,10 +1270,10 @@ public class CircularObjectBuffer <ElementType> {
 						writePosition = 0;
 					}
 					written = true;
+					if (shrinkDelay != 0) lastWrite = System.nanoTime();
+					notifyAll();
 				}
-			}
-			if (!written){
-				Thread.sleep(100);
+				if (!written && !awaitChange(deadline)) throw new TimeoutException("CircularObjectBuffer is full; timed out waiting to write 1 Object");
 			}
 		}
 	}
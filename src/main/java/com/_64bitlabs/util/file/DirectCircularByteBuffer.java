@@ -0,0 +1,1061 @@
+/*
+ * Circular byte buffer in memory outside the Java heap.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import com._64bitlabs.util.exception.BufferOverflowException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements the Circular Buffer producer/consumer model for bytes held in
+ * a direct ByteBuffer rather than a byte array.
+ * <p>
+ * Besides an InputStream and an OutputStream, the buffer offers a
+ * {@link #getReadableChannel() ReadableByteChannel} and a
+ * {@link #getWritableChannel() WritableByteChannel}, and
+ * {@link #transferFrom(ReadableByteChannel, long)} and
+ * {@link #transferTo(WritableByteChannel, long)}, which read from and write
+ * to other channels straight out of the buffer's memory.  Data can then move
+ * from a socket through the buffer to a file without being copied onto the
+ * Java heap.
+ * <p>
+ * An infinite buffer grows whenever it is full.  It is either held in
+ * direct memory or, when created with
+ * {@link #DirectCircularByteBuffer(File)}, in a memory-mapped file so that
+ * the operating system can page it out to disk instead of it using up
+ * memory.
+ * <p>
+ * This class is thread safe.  Only one thread reads and one thread writes
+ * at a time; other readers and writers wait their turn.  The copy between
+ * the buffer and another array or channel is made without holding the lock
+ * on the buffer, so a writer blocked reading from a socket never holds up
+ * the reader.  The InputStream does not support marks.
+ *
+ * @see CircularByteBuffer
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class DirectCircularByteBuffer implements Closeable {
+
+	/**
+	 * The default size for a direct circular byte buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final static int DEFAULT_SIZE = 1 << 16;
+
+	/**
+	 * A buffer that will grow as things are added.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public final static int INFINITE_SIZE = -1;
+
+	/**
+	 * Largest capacity to which an infinite buffer grows.  A full buffer of
+	 * this size behaves as a buffer of fixed size.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public final static int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The memory holding the bytes.  Reads and writes work on duplicates
+	 * so that the position and limit of this buffer never change.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Index of the first byte available to be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int readPosition = 0;
+
+	/**
+	 * Number of bytes available to be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int available = 0;
+
+	/**
+	 * If this buffer grows when it is full.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean infinite = false;
+
+	/**
+	 * True if a write to a full buffer should block until the buffer
+	 * has room, false if the write method should throw an IOException
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean blockingWrite = true;
+
+	/**
+	 * File mapped into memory to hold the buffer, or null if the buffer
+	 * is in direct memory.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private FileChannel file;
+
+	/**
+	 * If the reading side of this buffer has been closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean inputClosed = false;
+
+	/**
+	 * If the writing side of this buffer has been closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean outputClosed = false;
+
+	/**
+	 * Count of calls to clear().  A read or write that started before the
+	 * buffer was cleared does not move the positions when it finishes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int generation = 0;
+	private int readGeneration;
+	private int writeGeneration;
+
+	/**
+	 * Held by the thread that is reading.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ReentrantLock readLock = new ReentrantLock();
+
+	/**
+	 * Held by the thread that is writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	/**
+	 * Longest time in milliseconds that a read waits for bytes, or zero to
+	 * wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile long readTimeout = 0;
+
+	/**
+	 * Longest time in milliseconds that a write waits for space, or zero to
+	 * wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile long writeTimeout = 0;
+
+	private final InputStream in = new DirectInputStream();
+	private final OutputStream out = new DirectOutputStream();
+	private final ReadableByteChannel readChannel = new DirectReadableChannel();
+	private final WritableByteChannel writeChannel = new DirectWritableChannel();
+
+	/**
+	 * Create a new buffer with a default capacity.
+	 * Writing to a full buffer will block until space
+	 * is available rather than throw an exception.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public DirectCircularByteBuffer(){
+		this (DEFAULT_SIZE, true);
+	}
+
+	/**
+	 * Create a new buffer with given capacity.
+	 * Writing to a full buffer will block until space
+	 * is available rather than throw an exception.
+	 *
+	 * @param size desired capacity of the buffer in bytes or DirectCircularByteBuffer.INFINITE_SIZE.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public DirectCircularByteBuffer(int size){
+		this (size, true);
+	}
+
+	/**
+	 * Create a new buffer with the given capacity and
+	 * blocking behavior.
+	 *
+	 * @param size desired capacity of the buffer in bytes or DirectCircularByteBuffer.INFINITE_SIZE.
+	 * @param blockingWrite true writing to a full buffer should block
+	 *        until space is available, false if an exception should
+	 *        be thrown instead.
+	 * @throws IllegalArgumentException if the size is not positive or INFINITE_SIZE.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public DirectCircularByteBuffer(int size, boolean blockingWrite){
+		if (size == INFINITE_SIZE){
+			buffer = ByteBuffer.allocateDirect(DEFAULT_SIZE);
+			infinite = true;
+		} else if (size > 0){
+			buffer = ByteBuffer.allocateDirect(size);
+		} else {
+			throw new IllegalArgumentException("Bad buffer size: " + size);
+		}
+		this.blockingWrite = blockingWrite;
+	}
+
+	/**
+	 * Create a new infinite buffer held in a memory-mapped file.  Anything
+	 * already in the file is discarded.  The file grows with the buffer and
+	 * is closed when this buffer is closed; the mapping itself is released
+	 * once it is garbage collected.
+	 *
+	 * @param spill file in which to hold the buffer.
+	 * @throws IOException if the file cannot be opened or mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public DirectCircularByteBuffer(File spill) throws IOException {
+		file = FileChannel.open(
+			spill.toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.READ, StandardOpenOption.WRITE
+		);
+		try {
+			buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, DEFAULT_SIZE);
+		} catch (IOException x){
+			file.close();
+			throw x;
+		}
+		infinite = true;
+	}
+
+	/**
+	 * Make this buffer ready for reuse.  The contents of the buffer
+	 * will be cleared and the streams and channels associated with this
+	 * buffer will be reopened if they had been closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void clear(){
+		synchronized (this){
+			readPosition = 0;
+			available = 0;
+			generation++;
+			inputClosed = false;
+			outputClosed = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Close both sides of this buffer, and the file that holds it if there
+	 * is one.  Readers and writers that are waiting are woken and fail.
+	 *
+	 * @throws IOException if the file cannot be closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close() throws IOException {
+		synchronized (this){
+			inputClosed = true;
+			outputClosed = true;
+			notifyAll();
+		}
+		if (file != null) file.close();
+	}
+
+	/**
+	 * Retrieve an OutputStream that can be used to fill this buffer.
+	 * <p>
+	 * Write methods may throw a BufferOverflowException if
+	 * the buffer is not large enough and does not block writes.
+	 *
+	 * @return the producer for this buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public OutputStream getOutputStream(){
+		return out;
+	}
+
+	/**
+	 * Retrieve an InputStream that can be used to empty this buffer.
+	 *
+	 * @return the consumer for this buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public InputStream getInputStream(){
+		return in;
+	}
+
+	/**
+	 * Retrieve a channel that can be used to fill this buffer.  It shares
+	 * its open state with the OutputStream.
+	 * <p>
+	 * A write blocks until all of the source has been written.  If the
+	 * buffer does not block writes, a write instead writes what fits,
+	 * possibly nothing, as a non-blocking channel does.
+	 *
+	 * @return the producer for this buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public WritableByteChannel getWritableChannel(){
+		return writeChannel;
+	}
+
+	/**
+	 * Retrieve a channel that can be used to empty this buffer.  It shares
+	 * its open state with the InputStream.
+	 *
+	 * @return the consumer for this buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ReadableByteChannel getReadableChannel(){
+		return readChannel;
+	}
+
+	/**
+	 * Get number of bytes that are available to be read.
+	 *
+	 * @return the number of bytes available.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getAvailable(){
+		synchronized (this){
+			return available;
+		}
+	}
+
+	/**
+	 * Get the number of bytes this buffer has free for writing.
+	 *
+	 * @return the available space in bytes of this buffer
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getSpaceLeft(){
+		synchronized (this){
+			return buffer.capacity() - available;
+		}
+	}
+
+	/**
+	 * Get the capacity of this buffer.
+	 *
+	 * @return the size in bytes of this buffer
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getSize(){
+		synchronized (this){
+			return buffer.capacity();
+		}
+	}
+
+	/**
+	 * Set how long a read may block waiting for bytes.  If the time runs
+	 * out, the read throws an InterruptedIOException.
+	 *
+	 * @param timeout timeout in milliseconds, or zero to wait as long as it takes.
+	 * @throws IllegalArgumentException if the timeout is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setReadTimeout(long timeout){
+		if (timeout < 0) throw new IllegalArgumentException("Negative timeout: " + timeout);
+		readTimeout = timeout;
+	}
+
+	/**
+	 * Get how long a read may block.
+	 *
+	 * @return timeout in milliseconds, or zero if reads wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getReadTimeout(){
+		return readTimeout;
+	}
+
+	/**
+	 * Set how long a write may block waiting for space.  If the time runs
+	 * out, the write throws an InterruptedIOException whose
+	 * bytesTransferred field holds the number of bytes that were written.
+	 *
+	 * @param timeout timeout in milliseconds, or zero to wait as long as it takes.
+	 * @throws IllegalArgumentException if the timeout is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setWriteTimeout(long timeout){
+		if (timeout < 0) throw new IllegalArgumentException("Negative timeout: " + timeout);
+		writeTimeout = timeout;
+	}
+
+	/**
+	 * Get how long a write may block.
+	 *
+	 * @return timeout in milliseconds, or zero if writes wait as long as it takes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getWriteTimeout(){
+		return writeTimeout;
+	}
+
+	/**
+	 * Read bytes from a channel into this buffer until the count has been
+	 * read or the channel reaches its end.  The bytes go straight from the
+	 * channel into the buffer's memory.  If the channel is non-blocking,
+	 * or this buffer does not block writes, the transfer stops early
+	 * when either has nothing more to give.
+	 * <p>
+	 * The write timeout limits each wait for space rather than the whole
+	 * transfer.
+	 *
+	 * @param src channel from which to read.
+	 * @param count largest number of bytes to transfer.
+	 * @return number of bytes transferred, or -1 if the channel had reached its end.
+	 * @throws IOException if this buffer or the channel fails.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long transferFrom(ReadableByteChannel src, long count) throws IOException {
+		if (count < 0) throw new IllegalArgumentException("Negative count: " + count);
+		long transferred = 0;
+		lockSide(writeLock, deadline(writeTimeout), false);
+		try {
+			while (transferred < count){
+				ByteBuffer run = beginWrite(deadline(writeTimeout), 1, transferred, false, false);
+				if (run == null) break;
+				if (run.remaining() > count - transferred) run.limit(run.position() + (int)(count - transferred));
+				int n = src.read(run);
+				if (n < 0) return transferred == 0 ? -1 : transferred;
+				endWrite(n);
+				if (n == 0) break;
+				transferred += n;
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		return transferred;
+	}
+
+	/**
+	 * Write bytes from this buffer to a channel until the count has been
+	 * written or the writing side of this buffer has been closed and the
+	 * buffer emptied.  The bytes go straight from the buffer's memory to
+	 * the channel.  If the channel is non-blocking, the transfer stops
+	 * early when the channel accepts nothing more.
+	 * <p>
+	 * The read timeout limits each wait for bytes rather than the whole
+	 * transfer.
+	 *
+	 * @param target channel to which to write.
+	 * @param count largest number of bytes to transfer.
+	 * @return number of bytes transferred, or -1 if the buffer had reached its end.
+	 * @throws IOException if this buffer or the channel fails.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long transferTo(WritableByteChannel target, long count) throws IOException {
+		if (count < 0) throw new IllegalArgumentException("Negative count: " + count);
+		long transferred = 0;
+		lockSide(readLock, deadline(readTimeout), true);
+		try {
+			while (transferred < count){
+				ByteBuffer run = beginRead(deadline(readTimeout), transferred, false);
+				if (run == null) return transferred == 0 ? -1 : transferred;
+				if (run.remaining() > count - transferred) run.limit(run.position() + (int)(count - transferred));
+				int n = target.write(run);
+				endRead(n);
+				if (n == 0) break;
+				transferred += n;
+			}
+		} finally {
+			readLock.unlock();
+		}
+		return transferred;
+	}
+
+	/**
+	 * Convert a timeout to the value of System.nanoTime() at which it runs out.
+	 *
+	 * @return the deadline, or zero for no timeout.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static long deadline(long timeout){
+		if (timeout == 0) return 0;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		return deadline == 0 ? 1 : deadline;
+	}
+
+	/**
+	 * Build the exception thrown when a wait runs out of time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static InterruptedIOException timedOut(boolean reading, long transferred){
+		InterruptedIOException timeout = new InterruptedIOException(reading ? "Read timed out." : "Write timed out.");
+		timeout.bytesTransferred = (int)Math.min(transferred, Integer.MAX_VALUE);
+		return timeout;
+	}
+
+	/**
+	 * Wait for this thread's turn to read or write.
+	 *
+	 * @param lock the read or write lock.
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @param reading true if a read is waiting, false if a write is.
+	 * @throws InterruptedIOException if the thread is interrupted or the deadline has passed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static void lockSide(ReentrantLock lock, long deadline, boolean reading) throws InterruptedIOException {
+		try {
+			if (deadline == 0){
+				lock.lockInterruptibly();
+			} else if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)){
+				throw timedOut(reading, 0);
+			}
+		} catch (InterruptedException x){
+			throw new InterruptedIOException(reading ? "Blocking read operation interrupted." : "Waiting for available space in buffer interrupted.");
+		}
+	}
+
+	/**
+	 * Wait until another thread changes this buffer.  Must be called while
+	 * holding the lock on this buffer, and the caller must check again
+	 * whatever it was waiting for.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @param reading true if a read is waiting, false if a write is.
+	 * @param transferred number of bytes moved so far by the waiting call.
+	 * @throws InterruptedIOException if the thread is interrupted or the deadline has passed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void awaitChange(long deadline, boolean reading, long transferred) throws InterruptedIOException {
+		try {
+			if (deadline == 0){
+				wait();
+				return;
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining > 0){
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				return;
+			}
+		} catch (InterruptedException x){
+			throw new InterruptedIOException(reading ? "Blocking read operation interrupted." : "Waiting for available space in buffer interrupted.");
+		}
+		throw timedOut(reading, transferred);
+	}
+
+	/**
+	 * Wait for bytes to read.  Must be called while holding the read lock.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @param transferred number of bytes moved so far by the waiting call.
+	 * @param channel true if called through the channel, which reports being closed differently.
+	 * @return a buffer whose remaining bytes are the next bytes to be read, or null at the end of the data.
+	 * @throws IOException if the reading side is closed or the wait fails.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ByteBuffer beginRead(long deadline, long transferred, boolean channel) throws IOException {
+		synchronized (this){
+			while (true){
+				if (inputClosed){
+					if (channel) throw new ClosedChannelException();
+					throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
+				}
+				if (available > 0){
+					ByteBuffer run = buffer.duplicate();
+					run.limit(readPosition + Math.min(available, buffer.capacity() - readPosition));
+					run.position(readPosition);
+					readGeneration = generation;
+					return run;
+				} else if (outputClosed){
+					return null;
+				}
+				awaitChange(deadline, true, transferred);
+			}
+		}
+	}
+
+	/**
+	 * Give the space taken by bytes that have been read back to the writer.
+	 *
+	 * @param length number of bytes read from the start of the run.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void endRead(int length){
+		if (length <= 0) return;
+		synchronized (this){
+			if (readGeneration != generation) return;
+			readPosition += length;
+			if (readPosition == buffer.capacity()) readPosition = 0;
+			available -= length;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Wait for space to write.  Must be called while holding the write lock.
+	 *
+	 * @param deadline value of System.nanoTime() at which to give up, or zero to wait as long as it takes.
+	 * @param wanted number of bytes the caller wants to write.
+	 * @param transferred number of bytes moved so far by the waiting call.
+	 * @param whole true if a buffer that does not block writes should refuse the write unless all of it fits.
+	 * @param channel true if called through the channel, which reports being closed differently.
+	 * @return a buffer whose remaining bytes are free space at the end of the data, or null if
+	 *     the buffer does not block writes and is full.
+	 * @throws BufferOverflowException if the write must fit and does not.
+	 * @throws IOException if either side is closed or the wait fails.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ByteBuffer beginWrite(long deadline, int wanted, long transferred, boolean whole, boolean channel) throws IOException {
+		synchronized (this){
+			while (true){
+				if (outputClosed){
+					if (channel) throw new ClosedChannelException();
+					throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
+				}
+				if (inputClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
+				if (infinite && buffer.capacity() - available < wanted) grow(wanted);
+				int capacity = buffer.capacity();
+				int space = capacity - available;
+				if (!blockingWrite){
+					if (whole && space < wanted) throw new BufferOverflowException("DirectCircularByteBuffer is full; cannot write " + wanted + " bytes");
+					if (space == 0) return null;
+				}
+				if (space > 0){
+					int writePosition = readPosition < space ? readPosition + available : readPosition - space;
+					ByteBuffer run = buffer.duplicate();
+					run.limit(writePosition + Math.min(space, capacity - writePosition));
+					run.position(writePosition);
+					writeGeneration = generation;
+					return run;
+				}
+				awaitChange(deadline, false, transferred);
+			}
+		}
+	}
+
+	/**
+	 * Make bytes that have been written available to the reader.
+	 *
+	 * @param length number of bytes written at the start of the run.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void endWrite(int length){
+		if (length <= 0) return;
+		synchronized (this){
+			if (writeGeneration != generation) return;
+			available += length;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Make room for at least the wanted number of bytes, doubling the
+	 * capacity up to MAX_SIZE.  Must be called while holding the lock on
+	 * this buffer and the write lock.
+	 * <p>
+	 * A reader may still be copying out of a run it was given.  Those
+	 * bytes stay where they are in the old memory, and they are the first
+	 * bytes in the grown buffer, so the reader's position stays right.
+	 *
+	 * @throws IOException if the file cannot be extended.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void grow(int wanted) throws IOException {
+		int capacity = buffer.capacity();
+		int newCapacity = (int)Math.min(MAX_SIZE, Math.max(2L * capacity, (long)available + wanted));
+		if (newCapacity <= capacity) return;
+		// Bytes that have wrapped around to the start of the buffer.
+		int wrapped = (int)Math.max(0, (long)readPosition + available - capacity);
+		if (file != null){
+			// The bytes stay where they are in the file; those that wrapped
+			// move to just after the old end, where they follow the rest.
+			if (newCapacity - capacity < wrapped) return;
+			ByteBuffer grown = file.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+			if (wrapped > 0){
+				ByteBuffer head = grown.duplicate();
+				head.limit(wrapped);
+				ByteBuffer tail = grown.duplicate();
+				tail.position(capacity);
+				tail.put(head);
+			}
+			buffer = grown;
+		} else {
+			ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity);
+			ByteBuffer run = buffer.duplicate();
+			run.limit(readPosition + available - wrapped);
+			run.position(readPosition);
+			grown.put(run);
+			if (wrapped > 0){
+				run = buffer.duplicate();
+				run.limit(wrapped);
+				run.position(0);
+				grown.put(run);
+			}
+			// Duplicates inherit the position, so leave it at zero.
+			grown.clear();
+			buffer = grown;
+			readPosition = 0;
+		}
+	}
+
+	/**
+	 * Class for reading from a direct circular byte buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected class DirectInputStream extends InputStream {
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public int available() throws IOException {
+			synchronized (DirectCircularByteBuffer.this){
+				if (inputClosed) throw new IOException("InputStream has been closed, it is not ready.");
+				return DirectCircularByteBuffer.this.available;
+			}
+		}
+
+		/**
+		 * Close the stream, and with it the readable channel.
+		 *
+		 * @throws IOException never.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public void close() throws IOException {
+			synchronized (DirectCircularByteBuffer.this){
+				inputClosed = true;
+				DirectCircularByteBuffer.this.notifyAll();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public int read() throws IOException {
+			lockSide(readLock, deadline(readTimeout), true);
+			try {
+				ByteBuffer run = beginRead(deadline(readTimeout), 0, false);
+				if (run == null) return -1;
+				int result = run.get() & 0xff;
+				endRead(1);
+				return result;
+			} finally {
+				readLock.unlock();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public int read(byte[] cbuf, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || off + len > cbuf.length) throw new IndexOutOfBoundsException();
+			if (len == 0) return 0;
+			long deadline = deadline(readTimeout);
+			lockSide(readLock, deadline, true);
+			try {
+				ByteBuffer run = beginRead(deadline, 0, false);
+				if (run == null) return -1;
+				int length = Math.min(len, run.remaining());
+				run.get(cbuf, off, length);
+				endRead(length);
+				return length;
+			} finally {
+				readLock.unlock();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public long skip(long n) throws IOException {
+			if (n <= 0) return 0;
+			long deadline = deadline(readTimeout);
+			lockSide(readLock, deadline, true);
+			try {
+				ByteBuffer run = beginRead(deadline, 0, false);
+				if (run == null) return 0;
+				int length = (int)Math.min(n, run.remaining());
+				endRead(length);
+				return length;
+			} finally {
+				readLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Class for writing to a direct circular byte buffer.
+	 * If the buffer is full, the writes will either block
+	 * until there is some space available or throw an IOException
+	 * based on the buffer's preference.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected class DirectOutputStream extends OutputStream {
+
+		/**
+		 * Close the stream, and with it the writable channel.  The reader
+		 * reaches the end of the data once it empties the buffer.
+		 *
+		 * @throws IOException never.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public void close() throws IOException {
+			synchronized (DirectCircularByteBuffer.this){
+				outputClosed = true;
+				DirectCircularByteBuffer.this.notifyAll();
+			}
+		}
+
+		/**
+		 * Flush the stream.
+		 *
+		 * @throws IOException if the stream is closed.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public void flush() throws IOException {
+			synchronized (DirectCircularByteBuffer.this){
+				if (outputClosed) throw new IOException("OutputStream has been closed; cannot flush a closed OutputStream.");
+				if (inputClosed) throw new IOException("Buffer closed by inputStream; cannot flush.");
+			}
+		}
+
+		/**
+		 * Write a portion of an array of bytes.
+		 * If the buffer allows blocking writes, this method will block until
+		 * all the data has been written rather than throw an IOException.
+		 *
+		 * @param cbuf Array of bytes
+		 * @param off Offset from which to start writing bytes
+		 * @param len - Number of bytes to write
+		 * @throws BufferOverflowException if buffer does not allow blocking writes
+		 *   and the buffer is full.  If the exception is thrown, no data
+		 *   will have been written since the buffer was set to be non-blocking.
+		 * @throws IOException if the stream is closed, or the write is interrupted.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public void write(byte[] cbuf, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || off + len > cbuf.length) throw new IndexOutOfBoundsException();
+			long deadline = deadline(writeTimeout);
+			lockSide(writeLock, deadline, false);
+			try {
+				int total = len;
+				while (len > 0){
+					ByteBuffer run = beginWrite(deadline, len, total - len, true, false);
+					int written = Math.min(len, run.remaining());
+					run.put(cbuf, off, written);
+					endWrite(written);
+					off += written;
+					len -= written;
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		/**
+		 * Write a single byte.
+		 * If the buffer allows blocking writes, this method will block until
+		 * the byte has been written rather than throw an IOException.
+		 *
+		 * @param c the byte, in the low eight bits.
+		 * @throws BufferOverflowException if buffer does not allow blocking writes
+		 *   and the buffer is full.
+		 * @throws IOException if the stream is closed, or the write is interrupted.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public void write(int c) throws IOException {
+			long deadline = deadline(writeTimeout);
+			lockSide(writeLock, deadline, false);
+			try {
+				ByteBuffer run = beginWrite(deadline, 1, 0, true, false);
+				run.put((byte)c);
+				endWrite(1);
+			} finally {
+				writeLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Channel for reading from a direct circular byte buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected class DirectReadableChannel implements ReadableByteChannel {
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public boolean isOpen(){
+			synchronized (DirectCircularByteBuffer.this){
+				return !inputClosed;
+			}
+		}
+
+		/**
+		 * Close the channel, and with it the InputStream.
+		 *
+		 * @throws IOException never.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public void close() throws IOException {
+			in.close();
+		}
+
+		/**
+		 * Read bytes into the given buffer, blocking until at least one is
+		 * available or the writing side has been closed and the buffer emptied.
+		 *
+		 * @param dst buffer into which to read.
+		 * @return number of bytes read, or -1 at the end of the data.
+		 * @throws IOException if the channel is closed, or the read is interrupted.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public int read(ByteBuffer dst) throws IOException {
+			long deadline = deadline(readTimeout);
+			lockSide(readLock, deadline, true);
+			try {
+				ByteBuffer run = beginRead(deadline, 0, true);
+				if (run == null) return -1;
+				if (run.remaining() > dst.remaining()) run.limit(run.position() + dst.remaining());
+				int length = run.remaining();
+				dst.put(run);
+				endRead(length);
+				return length;
+			} finally {
+				readLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Channel for writing to a direct circular byte buffer.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	protected class DirectWritableChannel implements WritableByteChannel {
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public boolean isOpen(){
+			synchronized (DirectCircularByteBuffer.this){
+				return !outputClosed;
+			}
+		}
+
+		/**
+		 * Close the channel, and with it the OutputStream.
+		 *
+		 * @throws IOException never.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public void close() throws IOException {
+			out.close();
+		}
+
+		/**
+		 * Write the remaining bytes of the given buffer.  If the buffer
+		 * allows blocking writes, this method blocks until all of them have
+		 * been written; otherwise it writes what fits.
+		 *
+		 * @param src buffer from which to write.
+		 * @return number of bytes written.
+		 * @throws IOException if the channel is closed, or the write is interrupted.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public int write(ByteBuffer src) throws IOException {
+			long deadline = deadline(writeTimeout);
+			lockSide(writeLock, deadline, false);
+			try {
+				int total = src.remaining();
+				while (src.hasRemaining()){
+					ByteBuffer run = beginWrite(deadline, src.remaining(), total - src.remaining(), false, true);
+					if (run == null) break;
+					int written = Math.min(src.remaining(), run.remaining());
+					ByteBuffer part = src.duplicate();
+					part.limit(part.position() + written);
+					run.put(part);
+					src.position(src.position() + written);
+					endWrite(written);
+				}
+				return total - src.remaining();
+			} finally {
+				writeLock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,645 @@
+/*
+ * Hashes many files at once
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Hashes files, many at a time, on a ForkJoinPool.
+ * <p>
+ * Large files are memory mapped and hashed in place.  Small files are read
+ * into direct buffers that are reused from file to file.  The algorithm is
+ * any Hasher; md5(), sha256(), crc32(), crc32c() and messageDigest() supply
+ * the common ones, and hasher() adapts a MessageDigest or Checksum.
+ * <p>
+ * Checksumming a directory tree:
+ * <pre>
+ * FileHasher hasher = new FileHasher(FileHasher.sha256());
+ * Stream&lt;FileHasher.Result&gt; results = hasher.hashTree(Paths.get("/data"));
+ * Iterator&lt;FileHasher.Result&gt; i = results.iterator();
+ * while (i.hasNext()){
+ *     System.out.println(i.next());
+ * }
+ * results.close();
+ * hasher.close();
+ * </pre>
+ *
+ * @see Hasher
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class FileHasher implements Closeable {
+
+	/**
+	 * Default size in bytes from which files are memory mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final long DEFAULT_MAP_THRESHOLD = 1 << 20;
+
+	/**
+	 * Size of the buffers into which smaller files are read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Largest piece of a file that is mapped at once.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final long MAP_SIZE = 1 << 26;
+
+	/**
+	 * Creates a Hasher for each file.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Supplier<? extends Hasher> algorithm;
+
+	/**
+	 * Pool on which files are hashed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Whether the pool was created by (and should be shut down with) this hasher.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean ownPool;
+
+	/**
+	 * Maximum number of files that are hashed ahead of the reader.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final int maxInFlight;
+
+	/**
+	 * Size in bytes from which files are memory mapped.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private volatile long mapThreshold = DEFAULT_MAP_THRESHOLD;
+
+	/**
+	 * Read buffers that are not in use.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/**
+	 * Create a hasher that uses a new pool with one thread per processor.
+	 *
+	 * @param algorithm creates a Hasher for each file, for example FileHasher.md5().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public FileHasher(Supplier<? extends Hasher> algorithm){
+		this(algorithm, null);
+	}
+
+	/**
+	 * Create a hasher.
+	 *
+	 * @param algorithm creates a Hasher for each file, for example FileHasher.md5().
+	 * @param pool pool on which to hash files, or null to create a pool for this hasher.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public FileHasher(Supplier<? extends Hasher> algorithm, ForkJoinPool pool){
+		if (algorithm == null) throw new NullPointerException();
+		this.algorithm = algorithm;
+		if (pool == null){
+			pool = new ForkJoinPool();
+			ownPool = true;
+		}
+		this.pool = pool;
+		maxInFlight = 2 * pool.getParallelism();
+	}
+
+	/**
+	 * MD5, computed by java.security.MessageDigest.
+	 *
+	 * @return supplier of MD5 hashers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static Supplier<Hasher> md5(){
+		try {
+			return messageDigest("MD5");
+		} catch (NoSuchAlgorithmException x){
+			// Every Java platform is required to support MD5.
+			throw new IllegalStateException(x);
+		}
+	}
+
+	/**
+	 * SHA-256, computed by java.security.MessageDigest.
+	 *
+	 * @return supplier of SHA-256 hashers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static Supplier<Hasher> sha256(){
+		try {
+			return messageDigest("SHA-256");
+		} catch (NoSuchAlgorithmException x){
+			// Every Java platform is required to support SHA-256.
+			throw new IllegalStateException(x);
+		}
+	}
+
+	/**
+	 * CRC-32C, computed by the CRC32C class.
+	 *
+	 * @return supplier of CRC-32C hashers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static Supplier<Hasher> crc32c(){
+		return new Supplier<Hasher>(){
+			@Override public Hasher get(){
+				return new CRC32C();
+			}
+		};
+	}
+
+	/**
+	 * CRC-32, computed by java.util.zip.CRC32.
+	 *
+	 * @return supplier of CRC-32 hashers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static Supplier<Hasher> crc32(){
+		return new Supplier<Hasher>(){
+			@Override public Hasher get(){
+				return hasher(new CRC32());
+			}
+		};
+	}
+
+	/**
+	 * Any algorithm supported by java.security.MessageDigest.
+	 *
+	 * @param name name of the algorithm, such as "SHA-1" or "SHA-512".
+	 * @return supplier of hashers for the algorithm.
+	 * @throws NoSuchAlgorithmException if no provider supports the algorithm.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static Supplier<Hasher> messageDigest(final String name) throws NoSuchAlgorithmException {
+		MessageDigest.getInstance(name);
+		return new Supplier<Hasher>(){
+			@Override public Hasher get(){
+				try {
+					return hasher(MessageDigest.getInstance(name));
+				} catch (NoSuchAlgorithmException x){
+					// Already checked that the algorithm exists.
+					throw new IllegalStateException(x);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Use a MessageDigest as a Hasher.  Getting the hash does not end the
+	 * digest if it can be cloned, which the JDK's digests can.
+	 *
+	 * @param digest digest to update.
+	 * @return a Hasher that updates the digest.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static Hasher hasher(MessageDigest digest){
+		return new MessageDigestHasher(digest);
+	}
+
+	/**
+	 * Use a Checksum, such as java.util.zip.CRC32 or Adler32, as a Hasher.
+	 * The hash is the low 32 bits of the checksum value, most significant
+	 * byte first.
+	 *
+	 * @param checksum checksum to update.
+	 * @return a Hasher that updates the checksum.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static Hasher hasher(Checksum checksum){
+		if (checksum instanceof Hasher) return (Hasher)checksum;
+		return new ChecksumHasher(checksum);
+	}
+
+	/**
+	 * Adapts a Checksum to the Hasher interface.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class ChecksumHasher implements Hasher {
+		private final Checksum checksum;
+
+		private ChecksumHasher(Checksum checksum){
+			this.checksum = checksum;
+		}
+
+		@Override public void update(byte[] buffer, int offset, int length){
+			checksum.update(buffer, offset, length);
+		}
+
+		@Override public void update(ByteBuffer buffer){
+			if (buffer.hasArray()){
+				checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+				buffer.position(buffer.limit());
+			} else {
+				byte[] piece = new byte[Math.min(buffer.remaining(), 8192)];
+				while (buffer.hasRemaining()){
+					int length = Math.min(piece.length, buffer.remaining());
+					buffer.get(piece, 0, length);
+					checksum.update(piece, 0, length);
+				}
+			}
+		}
+
+		@Override public byte[] getHash(){
+			long value = checksum.getValue();
+			return new byte[]{
+				(byte)(value >>> 24),
+				(byte)(value >>> 16),
+				(byte)(value >>> 8),
+				(byte)value,
+			};
+		}
+
+		@Override public void reset(){
+			checksum.reset();
+		}
+	}
+
+	/**
+	 * Adapts a MessageDigest to the Hasher interface.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class MessageDigestHasher implements Hasher {
+		private final MessageDigest digest;
+
+		private MessageDigestHasher(MessageDigest digest){
+			this.digest = digest;
+		}
+
+		@Override public void update(byte[] buffer, int offset, int length){
+			digest.update(buffer, offset, length);
+		}
+
+		@Override public void update(ByteBuffer buffer){
+			digest.update(buffer);
+		}
+
+		@Override public byte[] getHash(){
+			try {
+				return ((MessageDigest)digest.clone()).digest();
+			} catch (CloneNotSupportedException x){
+				throw new UnsupportedOperationException(digest.getAlgorithm() + " cannot give a hash and continue", x);
+			}
+		}
+
+		@Override public void reset(){
+			digest.reset();
+		}
+	}
+
+	/**
+	 * Set the size from which files are memory mapped rather than read.
+	 *
+	 * @param mapThreshold size in bytes.
+	 * @throws IllegalArgumentException if the size is negative.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void setMapThreshold(long mapThreshold){
+		if (mapThreshold < 0) throw new IllegalArgumentException("Negative map threshold: " + mapThreshold);
+		this.mapThreshold = mapThreshold;
+	}
+
+	/**
+	 * Get the size from which files are memory mapped rather than read.
+	 *
+	 * @return size in bytes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public long getMapThreshold(){
+		return mapThreshold;
+	}
+
+	/**
+	 * Hash one file on the calling thread.
+	 *
+	 * @param file file to hash.
+	 * @return the hash of the contents of the file.
+	 * @throws IOException if the file cannot be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public byte[] hash(Path file) throws IOException {
+		Hasher hasher = algorithm.get();
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size >= mapThreshold && size > 0){
+				for (long position = 0; position < size; position += MAP_SIZE){
+					hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)));
+				}
+			} else {
+				ByteBuffer buffer = buffers.poll();
+				if (buffer == null) buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+				try {
+					while (channel.read(buffer) != -1){
+						if (!buffer.hasRemaining()){
+							buffer.flip();
+							hasher.update(buffer);
+							buffer.clear();
+						}
+					}
+					buffer.flip();
+					hasher.update(buffer);
+				} finally {
+					buffer.clear();
+					buffers.offer(buffer);
+				}
+			}
+		} finally {
+			channel.close();
+		}
+		return hasher.getHash();
+	}
+
+	/**
+	 * Hash every regular file in a directory tree, many at a time.
+	 * Symbolic links are not followed.
+	 * <p>
+	 * The stream should be closed when it is no longer needed.
+	 *
+	 * @param root directory to walk.
+	 * @return results in the order the files finish hashing.
+	 * @throws IOException if the root cannot be read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Stream<Result> hashTree(Path root) throws IOException {
+		return hash(Files.find(root, Integer.MAX_VALUE, new BiPredicate<Path, BasicFileAttributes>(){
+			@Override public boolean test(Path path, BasicFileAttributes attributes){
+				return attributes.isRegularFile();
+			}
+		}));
+	}
+
+	/**
+	 * Hash the given files, many at a time.  Files are taken from the
+	 * given stream only as fast as the results are used.
+	 * <p>
+	 * A file that cannot be read gives a result that holds the exception,
+	 * so the other files are still hashed.  The stream should be closed
+	 * when it is no longer needed, which also closes the given stream.
+	 *
+	 * @param files files to hash.
+	 * @return results in the order the files finish hashing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public Stream<Result> hash(final Stream<Path> files){
+		final ResultIterator results = new ResultIterator(files.iterator());
+		return StreamSupport.stream(
+			Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL),
+			false
+		).onClose(new Runnable(){
+			@Override public void run(){
+				try {
+					results.cancel();
+				} finally {
+					files.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Keeps up to maxInFlight files hashing and gives back each result
+	 * as it completes.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private class ResultIterator implements Iterator<Result> {
+		private final Iterator<Path> paths;
+		private final CompletionService<Result> completed = new ExecutorCompletionService<Result>(pool);
+		private final ArrayList<Future<Result>> submitted = new ArrayList<Future<Result>>();
+		private int inFlight = 0;
+
+		private ResultIterator(Iterator<Path> paths){
+			this.paths = paths;
+		}
+
+		private void fill(){
+			while (inFlight < maxInFlight && paths.hasNext()){
+				final Path path = paths.next();
+				submitted.add(completed.submit(new Callable<Result>(){
+					@Override public Result call(){
+						try {
+							return new Result(path, hash(path), null);
+						} catch (IOException x){
+							return new Result(path, null, x);
+						}
+					}
+				}));
+				inFlight++;
+			}
+		}
+
+		@Override public boolean hasNext(){
+			fill();
+			return inFlight > 0;
+		}
+
+		@Override public Result next(){
+			if (!hasNext()) throw new NoSuchElementException();
+			try {
+				Future<Result> future = completed.take();
+				submitted.remove(future);
+				inFlight--;
+				return future.get();
+			} catch (InterruptedException x){
+				Thread.currentThread().interrupt();
+				throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for a file to be hashed"));
+			} catch (ExecutionException x){
+				Throwable cause = x.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+				if (cause instanceof Error) throw (Error)cause;
+				throw new IllegalStateException(cause);
+			}
+		}
+
+		@Override public void remove(){
+			throw new UnsupportedOperationException();
+		}
+
+		private void cancel(){
+			for (Future<Result> future: submitted){
+				future.cancel(false);
+			}
+			submitted.clear();
+			inFlight = 0;
+		}
+	}
+
+	/**
+	 * The hash of one file, or the reason it could not be hashed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static class Result {
+		private final Path path;
+		private final byte[] hash;
+		private final IOException error;
+
+		private Result(Path path, byte[] hash, IOException error){
+			this.path = path;
+			this.hash = hash;
+			this.error = error;
+		}
+
+		/**
+		 * Get the file that was hashed.
+		 *
+		 * @return the path of the file.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public Path getPath(){
+			return path;
+		}
+
+		/**
+		 * Get the hash of the file.
+		 *
+		 * @return the hash.
+		 * @throws IOException if the file could not be read.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public byte[] getHash() throws IOException {
+			if (error != null) throw error;
+			return hash.clone();
+		}
+
+		/**
+		 * Get the hash of the file as lower case hex digits.
+		 *
+		 * @return the hash in hex.
+		 * @throws IOException if the file could not be read.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public String getHashString() throws IOException {
+			if (error != null) throw error;
+			return toHex(hash);
+		}
+
+		/**
+		 * Get the exception that kept the file from being hashed.
+		 *
+		 * @return the exception, or null if the file was hashed.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		public IOException getException(){
+			return error;
+		}
+
+		/**
+		 * The hash in hex and the path, as printed by md5sum, or the
+		 * error and the path.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		@Override public String toString(){
+			return (error == null ? toHex(hash) : error.toString()) + " " + path;
+		}
+	}
+
+	/**
+	 * Turns array of bytes into lower case hex digits, two per byte.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static String toHex(byte[] hash){
+		StringBuilder buf = new StringBuilder(hash.length * 2);
+		for (byte element: hash){
+			buf.append(Character.forDigit((element >>> 4) & 0xf, 16));
+			buf.append(Character.forDigit(element & 0xf, 16));
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Shut down the pool if it was created by this hasher.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close(){
+		if (ownPool){
+			pool.shutdown();
+			ownPool = false;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Hash or checksum over a stream of bytes
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A hash or checksum computed over bytes given a piece at a time, such as
+ * MD5, SHA-256 or CRC32C.
+ * <p>
+ * Implementations are not thread safe; each thread needs its own.
+ *
+ * @see FileHasher
+ * @see CRC32C
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public interface Hasher {
+
+	/**
+	 * Update the hash with a portion of an array.
+	 *
+	 * @param buffer Array of bytes to be hashed.
+	 * @param offset Offset to buffer array.
+	 * @param length number of bytes to hash.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void update(byte[] buffer, int offset, int length);
+
+	/**
+	 * Update the hash with the bytes remaining in the buffer, advancing
+	 * its position to its limit.
+	 *
+	 * @param buffer bytes to be hashed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void update(ByteBuffer buffer);
+
+	/**
+	 * Get the hash of all the bytes given so far.  More bytes may be
+	 * added afterwards.
+	 *
+	 * @return the hash, in its usual byte order.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public byte[] getHash();
+
+	/**
+	 * Start over as if no bytes had been given.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void reset();
+}
@@ -0,0 +1,245 @@
+/*
+ * Computes several hashes of the data read from a stream
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.io.*;
+
+/**
+ * Computes several hashes, such as MD5, SHA-256 and CRC-32, of all data
+ * read from this stream, so the data only has to be read once.
+ * <p>
+ * Each block of data read is given to the hashers a few kilobytes at a
+ * time, each hasher in turn, so that the bytes are still in the processor's
+ * cache when the next hasher sees them.
+ * <pre>
+ * MultiDigestInputStream in = new MultiDigestInputStream(
+ *     new FileInputStream(f), FileHasher.md5().get(), FileHasher.sha256().get(), FileHasher.crc32().get()
+ * );
+ * ... read all of in ...
+ * String md5 = in.getHashString(0);
+ * String sha256 = in.getHashString(1);
+ * String crc32 = in.getHashString(2);
+ * </pre>
+ *
+ * @see MultiDigestOutputStream
+ * @see MD5InputStream
+ * @see FileHasher
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class MultiDigestInputStream extends FilterInputStream {
+
+	/**
+	 * Number of bytes given to each hasher before moving on to the next.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int SLICE_SIZE = 8192;
+
+	/**
+	 * Hashers updated with the data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Hasher[] hashers;
+
+	/**
+	 * Holds a single byte that was read.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final byte[] single = new byte[1];
+
+	/**
+	 * Create a stream that hashes the data read from the underlying stream.
+	 *
+	 * @param in the underlying input stream.
+	 * @param hashers hashers to update with the data, such as FileHasher.md5().get().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MultiDigestInputStream(InputStream in, Hasher... hashers){
+		super(in);
+		this.hashers = hashers.clone();
+	}
+
+	/**
+	 * Give a portion of an array to each hasher, a slice at a time.
+	 *
+	 * @param hashers hashers to update.
+	 * @param buffer Array of bytes to be hashed.
+	 * @param offset Offset to buffer array.
+	 * @param length number of bytes to hash.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static void update(Hasher[] hashers, byte[] buffer, int offset, int length){
+		if (hashers.length == 1){
+			hashers[0].update(buffer, offset, length);
+			return;
+		}
+		for (int end = offset + length; offset < end; offset += SLICE_SIZE){
+			int slice = Math.min(SLICE_SIZE, end - offset);
+			for (Hasher hasher: hashers){
+				hasher.update(buffer, offset, slice);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next byte of data from this input stream and hashes it.
+	 *
+	 * @return the next byte of data, or -1 if the end of the stream is reached.
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int read() throws IOException {
+		int c = in.read();
+		if (c == -1) {
+			return -1;
+		}
+		single[0] = (byte)c;
+		update(hashers, single, 0, 1);
+		return c;
+	}
+
+	/**
+	 * Reads up to length bytes of data from this input stream into an
+	 * array of bytes and hashes them. This method blocks until some input
+	 * is available.
+	 *
+	 * @param bytes the buffer into which the data is read.
+	 * @param offset the start offset of the data.
+	 * @param length the maximum number of bytes read.
+	 * @return the number of bytes read, or -1 if the end of the stream is reached.
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int read(byte[] bytes, int offset, int length) throws IOException {
+		int r = in.read(bytes, offset, length);
+		if (r > 0) {
+			update(hashers, bytes, offset, r);
+		}
+		return r;
+	}
+
+	/**
+	 * Skips over and hashes up to n bytes.  The bytes are read so that
+	 * they are included in the hashes.
+	 *
+	 * @param n the number of bytes to skip.
+	 * @return the number of bytes skipped.
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public long skip(long n) throws IOException {
+		byte[] buffer = new byte[(int)Math.min(SLICE_SIZE, Math.max(n, 0))];
+		long skipped = 0;
+		while (skipped < n){
+			int r = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+			if (r == -1) break;
+			skipped += r;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Marks are not supported since data read again would be hashed twice.
+	 *
+	 * @return false
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public boolean markSupported(){
+		return false;
+	}
+
+	/**
+	 * Does nothing, since marks are not supported.
+	 *
+	 * @param readlimit ignored.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void mark(int readlimit){
+	}
+
+	/**
+	 * Marks are not supported.
+	 *
+	 * @throws IOException always.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Get the number of hashes computed.
+	 *
+	 * @return the number of hashers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getHashCount(){
+		return hashers.length;
+	}
+
+	/**
+	 * Get one of the hashes of the data read so far.
+	 *
+	 * @param index index of the hasher, in the order given to the constructor.
+	 * @return the hash.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public byte[] getHash(int index){
+		return hashers[index].getHash();
+	}
+
+	/**
+	 * Get one of the hashes of the data read so far as lower case hex digits.
+	 *
+	 * @param index index of the hasher, in the order given to the constructor.
+	 * @return the hash in hex.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String getHashString(int index){
+		return toHex(getHash(index));
+	}
+
+	/**
+	 * Turns array of bytes into lower case hex digits, two per byte.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static String toHex(byte[] hash){
+		StringBuilder buf = new StringBuilder(hash.length * 2);
+		for (byte element: hash){
+			buf.append(Character.forDigit((element >>> 4) & 0xf, 16));
+			buf.append(Character.forDigit(element & 0xf, 16));
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Computes several hashes of the data written to a stream
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.io.*;
+
+/**
+ * Computes several hashes, such as MD5, SHA-256 and CRC-32, of all data
+ * written to this stream while passing it on to the underlying stream.
+ * <p>
+ * Arrays written are passed on whole, rather than a byte at a time as
+ * FilterOutputStream would, and are hashed as MultiDigestInputStream
+ * hashes what it reads.
+ *
+ * @see MultiDigestInputStream
+ * @see MD5OutputStream
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class MultiDigestOutputStream extends FilterOutputStream {
+
+	/**
+	 * Hashers updated with the data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Hasher[] hashers;
+
+	/**
+	 * Holds a single byte that was written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final byte[] single = new byte[1];
+
+	/**
+	 * Create a stream that hashes the data written to the underlying stream.
+	 *
+	 * @param out the underlying output stream.
+	 * @param hashers hashers to update with the data, such as FileHasher.md5().get().
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public MultiDigestOutputStream(OutputStream out, Hasher... hashers){
+		super(out);
+		this.hashers = hashers.clone();
+	}
+
+	/**
+	 * Writes and hashes the specified byte.
+	 *
+	 * @param b the byte.
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(int b) throws IOException {
+		out.write(b);
+		single[0] = (byte)b;
+		MultiDigestInputStream.update(hashers, single, 0, 1);
+	}
+
+	/**
+	 * Writes and hashes length bytes from the specified byte array
+	 * starting at offset off.
+	 *
+	 * @param b the data.
+	 * @param off the start offset in the data.
+	 * @param len the number of bytes to write.
+	 * @throws IOException if an I/O error occurs.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		MultiDigestInputStream.update(hashers, b, off, len);
+	}
+
+	/**
+	 * Get the number of hashes computed.
+	 *
+	 * @return the number of hashers.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getHashCount(){
+		return hashers.length;
+	}
+
+	/**
+	 * Get one of the hashes of the data written so far.
+	 *
+	 * @param index index of the hasher, in the order given to the constructor.
+	 * @return the hash.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public byte[] getHash(int index){
+		return hashers[index].getHash();
+	}
+
+	/**
+	 * Get one of the hashes of the data written so far as lower case hex digits.
+	 *
+	 * @param index index of the hasher, in the order given to the constructor.
+	 * @return the hash in hex.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public String getHashString(int index){
+		return MultiDigestInputStream.toHex(getHash(index));
+	}
+}
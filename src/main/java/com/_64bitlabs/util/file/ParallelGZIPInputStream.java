@@ -0,0 +1,434 @@
+/*
+ * Decompress a stream in gzip format using multiple threads.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An input stream that decompresses gzip data ahead of the reader.
+ * <p>
+ * A decoder thread reads the compressed stream one member at a time.
+ * Members written by {@link ParallelGZIPOutputStream} record their own
+ * length, so the decoder reads each of them whole and hands it to a
+ * ForkJoinPool to be decompressed while it moves on to the next; several
+ * members are then decompressed at once.  Any other member is decompressed
+ * by the decoder thread itself, which still lets decompression overlap with
+ * whatever is reading this stream.  Either way the decompressed data passes
+ * to the reader, in order, through a queue of bounded length.
+ * <p>
+ * As with GZIPInputStream, concatenated members are read as one stream and
+ * anything after the last member that is not a gzip header is ignored.
+ *
+ * @see ParallelGZIPOutputStream
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ParallelGZIPInputStream extends InputStream {
+
+	/**
+	 * Number of bytes decompressed at a time by the decoder thread.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Marks the end of the decompressed data in the queue.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final Future<byte[]> END = CompletableFuture.completedFuture(null);
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	private PushbackInputStream in;
+	private ForkJoinPool pool;
+	private boolean ownPool;
+
+	/**
+	 * Decompressed chunks, or tasks that will produce them, in order.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private BlockingQueue<Future<byte[]>> queue;
+
+	private Thread decoder;
+	private byte[] chunk = new byte[0];
+	private int chunkPos = 0;
+	private boolean eof = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * Create a stream that uses a new pool with one thread per processor.
+	 *
+	 * @param in stream of gzip data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelGZIPInputStream(InputStream in){
+		this(in, null);
+	}
+
+	/**
+	 * Create a stream.
+	 *
+	 * @param in stream of gzip data.
+	 * @param pool pool on which to decompress members, or null to create a pool for this stream.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelGZIPInputStream(InputStream in, ForkJoinPool pool){
+		this.in = new PushbackInputStream(in, CHUNK_SIZE);
+		if (pool == null){
+			pool = new ForkJoinPool();
+			ownPool = true;
+		}
+		this.pool = pool;
+		queue = new ArrayBlockingQueue<Future<byte[]>>(2 * pool.getParallelism());
+		decoder = new Thread(new Decoder(), "ParallelGZIPInputStream decoder");
+		decoder.setDaemon(true);
+		decoder.start();
+	}
+
+	/**
+	 * Reads members from the compressed stream and queues their data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private class Decoder implements Runnable {
+		public void run(){
+			try {
+				boolean first = true;
+				while (!closed && readMember(first)){
+					first = false;
+				}
+				queue.put(END);
+			} catch (InterruptedException x){
+				// Closed.
+			} catch (Throwable t){
+				CompletableFuture<byte[]> failed = new CompletableFuture<byte[]>();
+				failed.completeExceptionally(t);
+				try {
+					queue.put(failed);
+				} catch (InterruptedException x){
+					// Closed.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decompresses one member on the pool.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class InflateTask extends RecursiveTask<byte[]> {
+		private static final long serialVersionUID = 1L;
+		private byte[] member;
+		private int offset;
+
+		InflateTask(byte[] member, int offset){
+			this.member = member;
+			this.offset = offset;
+		}
+
+		@Override protected byte[] compute(){
+			int end = member.length - ParallelGZIPOutputStream.TRAILER_SIZE;
+			int length = readInt(member, end + 4);
+			if (length < 0 || length > ParallelGZIPOutputStream.MAX_BLOCK_SIZE){
+				throw new CompletionException(new ZipException("Corrupt GZIP trailer"));
+			}
+			byte[] data = new byte[length];
+			Inflater inflater = new Inflater(true);
+			try {
+				inflater.setInput(member, offset, end - offset);
+				byte[] extra = new byte[1];
+				int n = 0;
+				while (!inflater.finished()){
+					// Once the array is full, any more data means the trailer is wrong.
+					int m = n < data.length ? inflater.inflate(data, n, data.length - n) : inflater.inflate(extra);
+					if (n == data.length && m > 0) throw new ZipException("Corrupt GZIP trailer");
+					if (m == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) throw new ZipException("Corrupt GZIP member");
+					n += m;
+				}
+				checkTrailer(member, end, data, n);
+			} catch (DataFormatException x){
+				throw new CompletionException(new ZipException(x.getMessage()));
+			} catch (ZipException x){
+				throw new CompletionException(x);
+			} finally {
+				inflater.end();
+			}
+			return data;
+		}
+	}
+
+	/**
+	 * Read the next member from the compressed stream and queue its data.
+	 *
+	 * @param first whether this is the first member, which must be present.
+	 * @return false at the end of the gzip data.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean readMember(boolean first) throws IOException, InterruptedException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream(ParallelGZIPOutputStream.HEADER_SIZE);
+		int id1 = in.read();
+		if (id1 == -1 && !first) return false;
+		int id2 = in.read();
+		if (id1 != 0x1f || id2 != 0x8b){
+			if (first) throw new ZipException("Not in GZIP format");
+			// Trailing garbage is ignored.
+			return false;
+		}
+		header.write(id1);
+		header.write(id2);
+		int method = readByte(header);
+		if (method != 8) throw new ZipException("Unsupported compression method");
+		int flags = readByte(header);
+		for (int i = 0; i < 6; i++){
+			readByte(header);
+		}
+		int memberSize = -1;
+		if ((flags & FEXTRA) != 0){
+			int xlen = readByte(header) | (readByte(header) << 8);
+			while (xlen >= 4){
+				int si1 = readByte(header);
+				int si2 = readByte(header);
+				int len = readByte(header) | (readByte(header) << 8);
+				xlen -= 4;
+				if (len > xlen) throw new ZipException("Corrupt GZIP header");
+				if (si1 == ParallelGZIPOutputStream.SUBFIELD_ID1 && si2 == ParallelGZIPOutputStream.SUBFIELD_ID2 && len == 4){
+					memberSize = readByte(header) | (readByte(header) << 8) | (readByte(header) << 16) | (readByte(header) << 24);
+				} else {
+					for (int i = 0; i < len; i++){
+						readByte(header);
+					}
+				}
+				xlen -= len;
+			}
+			for (int i = 0; i < xlen; i++){
+				readByte(header);
+			}
+		}
+		if ((flags & FNAME) != 0) while (readByte(header) != 0);
+		if ((flags & FCOMMENT) != 0) while (readByte(header) != 0);
+		if ((flags & FHCRC) != 0){
+			readByte(header);
+			readByte(header);
+		}
+		int headerSize = header.size();
+		if (memberSize > 0 && memberSize >= headerSize + ParallelGZIPOutputStream.TRAILER_SIZE){
+			byte[] member = new byte[memberSize];
+			System.arraycopy(header.toByteArray(), 0, member, 0, headerSize);
+			readFully(member, headerSize, memberSize - headerSize);
+			InflateTask task = new InflateTask(member, headerSize);
+			pool.execute(task);
+			queue.put(task);
+		} else {
+			inflateMember();
+		}
+		return true;
+	}
+
+	/**
+	 * Decompress the body of a member whose length is not known, queueing
+	 * the data a chunk at a time.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void inflateMember() throws IOException, InterruptedException {
+		Inflater inflater = new Inflater(true);
+		CRC32 crc = new CRC32();
+		long total = 0;
+		byte[] input = new byte[CHUNK_SIZE];
+		int inputLength = 0;
+		byte[] output = new byte[CHUNK_SIZE];
+		int n = 0;
+		try {
+			while (!inflater.finished()){
+				if (inflater.needsInput()){
+					inputLength = in.read(input);
+					if (inputLength == -1) throw new EOFException("Unexpected end of GZIP data");
+					inflater.setInput(input, 0, inputLength);
+				}
+				int m;
+				try {
+					m = inflater.inflate(output, n, output.length - n);
+				} catch (DataFormatException x){
+					throw new ZipException(x.getMessage());
+				}
+				if (m == 0 && inflater.needsDictionary()) throw new ZipException("Corrupt GZIP member");
+				n += m;
+				if (n == output.length || (inflater.finished() && n > 0)){
+					crc.update(output, 0, n);
+					total += n;
+					queue.put(CompletableFuture.completedFuture(n == output.length ? output : Arrays.copyOf(output, n)));
+					output = new byte[CHUNK_SIZE];
+					n = 0;
+				}
+			}
+			int remaining = inflater.getRemaining();
+			if (remaining > 0) in.unread(input, inputLength - remaining, remaining);
+		} finally {
+			inflater.end();
+		}
+		byte[] trailer = new byte[ParallelGZIPOutputStream.TRAILER_SIZE];
+		readFully(trailer, 0, trailer.length);
+		if (readInt(trailer, 0) != (int)crc.getValue() || readInt(trailer, 4) != (int)total){
+			throw new ZipException("Corrupt GZIP trailer");
+		}
+	}
+
+	private static void checkTrailer(byte[] b, int offset, byte[] data, int length) throws ZipException {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		if (readInt(b, offset) != (int)crc.getValue() || readInt(b, offset + 4) != length){
+			throw new ZipException("Corrupt GZIP trailer");
+		}
+	}
+
+	private int readByte(ByteArrayOutputStream header) throws IOException {
+		int b = in.read();
+		if (b == -1) throw new EOFException("Unexpected end of GZIP data");
+		header.write(b);
+		return b;
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0){
+			int n = in.read(b, off, len);
+			if (n == -1) throw new EOFException("Unexpected end of GZIP data");
+			off += n;
+			len -= n;
+		}
+	}
+
+	private static int readInt(byte[] b, int offset){
+		return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8) | ((b[offset + 2] & 0xff) << 16) | ((b[offset + 3] & 0xff) << 24);
+	}
+
+	/**
+	 * Make sure there is unread data in the current chunk.
+	 *
+	 * @return false at the end of the data.
+	 * @throws IOException if the data could not be decompressed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private boolean fill() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		while (chunkPos >= chunk.length){
+			if (eof) return false;
+			Future<byte[]> next;
+			byte[] data;
+			try {
+				next = queue.take();
+				data = next.get();
+			} catch (InterruptedException x){
+				throw new InterruptedIOException();
+			} catch (ExecutionException x){
+				Throwable cause = x.getCause();
+				while (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+				if (cause instanceof IOException) throw (IOException)cause;
+				throw new IOException(cause);
+			}
+			if (next == END){
+				eof = true;
+				return false;
+			}
+			chunk = data;
+			chunkPos = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Read a byte of decompressed data.
+	 *
+	 * @return the byte, or -1 at the end of the data.
+	 * @throws IOException if the data could not be decompressed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int read() throws IOException {
+		if (!fill()) return -1;
+		return chunk[chunkPos++] & 0xff;
+	}
+
+	/**
+	 * Read decompressed data into an array.
+	 *
+	 * @param b the buffer into which the data is read.
+	 * @param off the start offset in the buffer.
+	 * @param len the maximum number of bytes read.
+	 * @return the number of bytes read, or -1 at the end of the data.
+	 * @throws IOException if the data could not be decompressed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+		if (len == 0) return 0;
+		if (!fill()) return -1;
+		int n = Math.min(len, chunk.length - chunkPos);
+		System.arraycopy(chunk, chunkPos, b, off, n);
+		chunkPos += n;
+		return n;
+	}
+
+	/**
+	 * Get the number of decompressed bytes that can be read without waiting.
+	 *
+	 * @return number of bytes.
+	 * @throws IOException if the stream is closed.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public int available() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		return chunk.length - chunkPos;
+	}
+
+	/**
+	 * Stop decompressing and close the underlying stream.  If this stream
+	 * created its pool, the pool is shut down.
+	 *
+	 * @throws IOException if an error occurs while closing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		decoder.interrupt();
+		queue.clear();
+		if (ownPool) pool.shutdown();
+		in.close();
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * Compress a stream in gzip format using multiple threads.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that compresses data in gzip format on several threads.
+ * <p>
+ * The data is cut into blocks and each block is compressed on a ForkJoinPool
+ * into its own gzip member, as pigz does.  Members are written in order, and
+ * any gzip reader, including GZIPInputStream, reads the concatenated members
+ * as one stream.  The compressed length of each member is stored in an extra
+ * field of its header so that {@link ParallelGZIPInputStream} can find the
+ * next member without decompressing and can decompress members in parallel.
+ * <p>
+ * At most twice the pool's parallelism blocks are compressed at once; when
+ * that many are pending, writing waits for the oldest to be written out.
+ *
+ * @see ParallelGZIPInputStream
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+	/**
+	 * Default number of uncompressed bytes in each member.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Largest number of uncompressed bytes in a member, small enough that the
+	 * compressed length always fits in the extra field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public static final int MAX_BLOCK_SIZE = 1 << 26;
+
+	/**
+	 * Identifier of the extra field that holds the length of the member.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final byte SUBFIELD_ID1 = '6';
+	static final byte SUBFIELD_ID2 = '4';
+
+	/**
+	 * Length of a member header with the extra field.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final int HEADER_SIZE = 20;
+
+	/**
+	 * Length of the CRC and size at the end of a member.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	static final int TRAILER_SIZE = 8;
+
+	private OutputStream out;
+	private int level;
+	private ForkJoinPool pool;
+	private boolean ownPool;
+	private int maxInFlight;
+
+	private byte[] block;
+	private int count = 0;
+	private boolean wroteMember = false;
+	private boolean closed = false;
+
+	/**
+	 * Blocks that have been submitted to the pool, in output order.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private ArrayDeque<CompressTask> inFlight = new ArrayDeque<CompressTask>();
+
+	/**
+	 * Create a stream with the default compression level and block size
+	 * that uses a new pool with one thread per processor.
+	 *
+	 * @param out stream to which compressed data is written.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelGZIPOutputStream(OutputStream out){
+		this(out, Deflater.DEFAULT_COMPRESSION, null, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Create a stream.
+	 *
+	 * @param out stream to which compressed data is written.
+	 * @param level compression level from 0 to 9, or -1 for the default.
+	 * @param pool pool on which to compress blocks, or null to create a pool for this stream.
+	 * @param blockSize number of uncompressed bytes in each member.
+	 * @throws IllegalArgumentException if the level or block size is not valid.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int level, ForkJoinPool pool, int blockSize){
+		if (level < -1 || level > 9) throw new IllegalArgumentException("Bad compression level: " + level);
+		if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) throw new IllegalArgumentException("Bad block size: " + blockSize);
+		this.out = out;
+		this.level = level;
+		if (pool == null){
+			pool = new ForkJoinPool();
+			ownPool = true;
+		}
+		this.pool = pool;
+		maxInFlight = 2 * pool.getParallelism();
+		block = new byte[blockSize];
+	}
+
+	/**
+	 * Compresses one block into a complete gzip member on the pool.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private class CompressTask extends RecursiveTask<byte[]> {
+		private static final long serialVersionUID = 1L;
+		private byte[] data;
+		private int length;
+		private int size;
+
+		CompressTask(byte[] data, int length){
+			this.data = data;
+			this.length = length;
+		}
+
+		@Override protected byte[] compute(){
+			byte[] member = new byte[HEADER_SIZE + length + (length >> 9) + 64 + TRAILER_SIZE];
+			int n = HEADER_SIZE;
+			Deflater deflater = new Deflater(level, true);
+			try {
+				deflater.setInput(data, 0, length);
+				deflater.finish();
+				while (!deflater.finished()){
+					if (n == member.length - TRAILER_SIZE) member = Arrays.copyOf(member, member.length * 2);
+					n += deflater.deflate(member, n, member.length - TRAILER_SIZE - n);
+				}
+			} finally {
+				deflater.end();
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, length);
+			writeHeader(member, n + TRAILER_SIZE);
+			writeInt(member, n, (int)crc.getValue());
+			writeInt(member, n + 4, length);
+			size = n + TRAILER_SIZE;
+			return member;
+		}
+	}
+
+	/**
+	 * Fill in a gzip header with an extra field holding the length of the member.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static void writeHeader(byte[] b, int memberSize){
+		b[0] = 0x1f;
+		b[1] = (byte)0x8b;
+		b[2] = 8; // deflate
+		b[3] = 4; // FEXTRA
+		// Modification time (4 bytes) and extra flags are zero.
+		b[9] = (byte)0xff; // unknown operating system
+		b[10] = 8; // length of the extra field
+		b[11] = 0;
+		b[12] = SUBFIELD_ID1;
+		b[13] = SUBFIELD_ID2;
+		b[14] = 4; // length of the subfield
+		b[15] = 0;
+		writeInt(b, 16, memberSize);
+	}
+
+	private static void writeInt(byte[] b, int offset, int value){
+		b[offset] = (byte)value;
+		b[offset + 1] = (byte)(value >>> 8);
+		b[offset + 2] = (byte)(value >>> 16);
+		b[offset + 3] = (byte)(value >>> 24);
+	}
+
+	/**
+	 * Hand the current block to the pool, first writing out the oldest
+	 * member if the limit on blocks in flight has been reached.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void submitBlock() throws IOException {
+		while (inFlight.size() >= maxInFlight){
+			writeMember();
+		}
+		CompressTask task = new CompressTask(block, count);
+		pool.execute(task);
+		inFlight.add(task);
+		block = new byte[block.length];
+		count = 0;
+		wroteMember = true;
+	}
+
+	/**
+	 * Wait for the oldest block to be compressed and write it out.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void writeMember() throws IOException {
+		CompressTask task = inFlight.poll();
+		byte[] member = task.join();
+		out.write(member, 0, task.size);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+	}
+
+	/**
+	 * Write a byte.
+	 *
+	 * @param b the byte.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(int b) throws IOException {
+		ensureOpen();
+		block[count++] = (byte)b;
+		if (count == block.length) submitBlock();
+	}
+
+	/**
+	 * Write bytes from an array.
+	 *
+	 * @param b the data.
+	 * @param off the start offset in the data.
+	 * @param len the number of bytes to write.
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+		while (len > 0){
+			int n = Math.min(len, block.length - count);
+			System.arraycopy(b, off, block, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == block.length) submitBlock();
+		}
+	}
+
+	/**
+	 * Compress and write everything written so far, ending the current
+	 * member early, and flush the underlying stream.
+	 *
+	 * @throws IOException if an error occurs while writing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void flush() throws IOException {
+		ensureOpen();
+		if (count > 0) submitBlock();
+		while (!inFlight.isEmpty()){
+			writeMember();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compress and write everything written so far and close the
+	 * underlying stream.  If this stream created its pool, the pool is
+	 * shut down.
+	 *
+	 * @throws IOException if an error occurs while writing or closing.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	@Override public void close() throws IOException {
+		if (closed) return;
+		try {
+			// An empty stream still needs one member to be valid gzip.
+			if (count > 0 || !wroteMember) submitBlock();
+			flush();
+		} finally {
+			closed = true;
+			if (ownPool) pool.shutdown();
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,515 @@
+/*
+ * Sliding Window Statistics
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.file;
+
+/**
+ * Statistics over the most recent values added, such as the last thousand
+ * request latencies.
+ * <p>
+ * The values in the window are kept in a CircularDoubleBuffer.  Once the
+ * window is full, each value added pushes out the oldest one.  The count,
+ * sum, mean, minimum and maximum are kept up to date as values come and go,
+ * so reading them does not look at the values in the window.
+ * <p>
+ * Percentiles come from a histogram whose buckets each cover a sixteenth
+ * of a power of two, so a percentile is within about 3% of the value at
+ * that rank in the window.  The histogram only spans the magnitudes that
+ * have been seen, so finding a percentile costs a few hundred steps at
+ * most for typical data, however large the window.
+ * <p>
+ * This class is thread safe.
+ *
+ * @see CircularDoubleBuffer
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class SlidingWindowStats {
+
+	/**
+	 * Bits of the mantissa that choose a bucket within a power of two.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * Number of values the window holds.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final int windowSize;
+
+	/**
+	 * Values in the window, oldest first.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final CircularDoubleBuffer window;
+
+	/**
+	 * Single value moved in or out of the window.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final double[] value = new double[1];
+
+	/**
+	 * Number of values in the window.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int count;
+
+	/**
+	 * Number of values ever added, which is also the sequence number of
+	 * the next value.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private long added;
+
+	/**
+	 * Sum of the values in the window, less the compensation.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private double sum;
+
+	/**
+	 * Rounding error lost from the sum, so that values going in and out
+	 * do not let the sum drift.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private double compensation;
+
+	/**
+	 * Candidates for the minimum.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final MonotonicQueue minimums;
+
+	/**
+	 * Candidates for the maximum.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final MonotonicQueue maximums;
+
+	/**
+	 * Counts of positive values.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Histogram positive = new Histogram();
+
+	/**
+	 * Counts of negative values by magnitude.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private final Histogram negative = new Histogram();
+
+	/**
+	 * Count of zero values.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private int zeros;
+
+	/**
+	 * Create statistics over a window of the given number of values.
+	 *
+	 * @param windowSize number of most recent values to keep.
+	 * @throws IllegalArgumentException if the size is not positive.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public SlidingWindowStats(int windowSize){
+		if (windowSize < 1 || windowSize == Integer.MAX_VALUE) throw new IllegalArgumentException("Bad window size: " + windowSize);
+		this.windowSize = windowSize;
+		window = new CircularDoubleBuffer(windowSize + 1, false);
+		minimums = new MonotonicQueue(windowSize, false);
+		maximums = new MonotonicQueue(windowSize, true);
+	}
+
+	/**
+	 * Add a value, pushing the oldest value out of the window if it is full.
+	 *
+	 * @param v value to add.
+	 * @throws IllegalArgumentException if the value is NaN or infinite.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void add(double v){
+		if (Double.isNaN(v) || Double.isInfinite(v)) throw new IllegalArgumentException("Not a finite value: " + v);
+		synchronized (this){
+			if (count == windowSize){
+				window.drainTo(value, 0, 1);
+				remove(value[0]);
+			}
+			value[0] = v;
+			window.putAll(value, 0, 1);
+			insert(v);
+		}
+	}
+
+	/**
+	 * Add a portion of an array of values, in order.
+	 *
+	 * @param values Array of values
+	 * @param off Offset from which to start adding values
+	 * @param len Number of values to add
+	 * @throws IllegalArgumentException if a value is NaN or infinite.  The values before it will have been added.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void add(double[] values, int off, int len){
+		if (off < 0 || len < 0 || off + len > values.length) throw new IndexOutOfBoundsException();
+		synchronized (this){
+			for (int i=off; i<off+len; i++){
+				add(values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Count a value coming into the window.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void insert(double v){
+		count++;
+		addToSum(v);
+		minimums.push(v, added);
+		maximums.push(v, added);
+		added++;
+		if (v > 0){
+			positive.add(bucket(v), 1);
+		} else if (v < 0){
+			negative.add(bucket(-v), 1);
+		} else {
+			zeros++;
+		}
+	}
+
+	/**
+	 * Count the oldest value going out of the window.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void remove(double v){
+		long sequence = added - count;
+		count--;
+		addToSum(-v);
+		minimums.expire(sequence);
+		maximums.expire(sequence);
+		if (v > 0){
+			positive.add(bucket(v), -1);
+		} else if (v < 0){
+			negative.add(bucket(-v), -1);
+		} else {
+			zeros--;
+		}
+	}
+
+	/**
+	 * Add to the sum, keeping the rounding error in the compensation.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private void addToSum(double v){
+		double t = sum + v;
+		if (Math.abs(sum) >= Math.abs(v)){
+			compensation += (sum - t) + v;
+		} else {
+			compensation += (v - t) + sum;
+		}
+		sum = t;
+	}
+
+	/**
+	 * Histogram bucket for a positive value: its exponent followed by the
+	 * top bits of its mantissa, which orders buckets as the values are ordered.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static int bucket(double magnitude){
+		return (int)(Double.doubleToRawLongBits(magnitude) >>> (52 - SUB_BUCKET_BITS));
+	}
+
+	/**
+	 * The middle of the values that fall in a bucket.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static double middle(int bucket){
+		double low = Double.longBitsToDouble((long)bucket << (52 - SUB_BUCKET_BITS));
+		double high = Double.longBitsToDouble((long)(bucket + 1) << (52 - SUB_BUCKET_BITS));
+		return Double.isInfinite(high) ? low : low + (high - low) / 2;
+	}
+
+	/**
+	 * Empty the window.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public void clear(){
+		synchronized (this){
+			window.clear();
+			count = 0;
+			sum = 0;
+			compensation = 0;
+			minimums.clear();
+			maximums.clear();
+			positive.clear();
+			negative.clear();
+			zeros = 0;
+		}
+	}
+
+	/**
+	 * Get the number of values the window holds when it is full.
+	 *
+	 * @return the size of the window.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getWindowSize(){
+		return windowSize;
+	}
+
+	/**
+	 * Get the number of values in the window.
+	 *
+	 * @return the number of values, which is the window size once it has filled.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public int getCount(){
+		synchronized (this){
+			return count;
+		}
+	}
+
+	/**
+	 * Get the sum of the values in the window.
+	 *
+	 * @return the sum, or zero if the window is empty.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getSum(){
+		synchronized (this){
+			return count == 0 ? 0 : sum + compensation;
+		}
+	}
+
+	/**
+	 * Get the mean of the values in the window.
+	 *
+	 * @return the mean, or NaN if the window is empty.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getMean(){
+		synchronized (this){
+			return count == 0 ? Double.NaN : (sum + compensation) / count;
+		}
+	}
+
+	/**
+	 * Get the smallest value in the window.
+	 *
+	 * @return the minimum, or NaN if the window is empty.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getMin(){
+		synchronized (this){
+			return count == 0 ? Double.NaN : minimums.first();
+		}
+	}
+
+	/**
+	 * Get the largest value in the window.
+	 *
+	 * @return the maximum, or NaN if the window is empty.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getMax(){
+		synchronized (this){
+			return count == 0 ? Double.NaN : maximums.first();
+		}
+	}
+
+	/**
+	 * Get an approximate percentile of the values in the window.  The value
+	 * returned is within about 3% of the value of that rank in the window
+	 * and is never outside the minimum and maximum.
+	 *
+	 * @param percent percentile wanted, from 0 to 100, for example 99 for the 99th percentile.
+	 * @return the percentile, or NaN if the window is empty.
+	 * @throws IllegalArgumentException if the percent is not from 0 to 100.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	public double getPercentile(double percent){
+		if (!(percent >= 0 && percent <= 100)) throw new IllegalArgumentException("Bad percentile: " + percent);
+		synchronized (this){
+			if (count == 0) return Double.NaN;
+			// Nearest rank: the smallest value with at least the given percent of values at or below it.
+			long rank = Math.max(1, (long)Math.ceil(percent / 100 * count));
+			double result;
+			int bucket;
+			if ((bucket = negative.findDescending(rank)) != Integer.MIN_VALUE){
+				result = -middle(bucket);
+			} else if ((rank -= negative.total) <= zeros){
+				result = 0;
+			} else {
+				result = middle(positive.findAscending(rank - zeros));
+			}
+			return Math.min(maximums.first(), Math.max(minimums.first(), result));
+		}
+	}
+
+	/**
+	 * Values in the window that may yet become the minimum (or maximum)
+	 * as older values leave it, in order, each with its sequence number.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class MonotonicQueue {
+
+		private final double[] values;
+		private final long[] sequences;
+		private final boolean maximum;
+		private int head = 0;
+		private int size = 0;
+
+		private MonotonicQueue(int capacity, boolean maximum){
+			values = new double[capacity];
+			sequences = new long[capacity];
+			this.maximum = maximum;
+		}
+
+		/**
+		 * Add a value, dropping the values it outranks since they can
+		 * no longer be the minimum (or maximum) while it is in the window.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private void push(double v, long sequence){
+			while (size > 0){
+				double last = values[(head + size - 1) % values.length];
+				if (maximum ? last > v : last < v) break;
+				size--;
+			}
+			int tail = (head + size) % values.length;
+			values[tail] = v;
+			sequences[tail] = sequence;
+			size++;
+		}
+
+		/**
+		 * Drop the value with the given sequence number if it is first.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private void expire(long sequence){
+			if (size > 0 && sequences[head] == sequence){
+				head = (head + 1) % values.length;
+				size--;
+			}
+		}
+
+		private double first(){
+			return values[head];
+		}
+
+		private void clear(){
+			head = 0;
+			size = 0;
+		}
+	}
+
+	/**
+	 * Counts of values by bucket, over the range of buckets that have been used.
+	 *
+	 * @since 64bitlabsutils 1.09.00
+	 */
+	private static class Histogram {
+
+		private int[] counts = new int[0];
+		private int base;
+		private int total;
+
+		private void add(int bucket, int n){
+			if (bucket < base || bucket >= base + counts.length){
+				int low = counts.length == 0 ? bucket : Math.min(base, bucket);
+				int high = counts.length == 0 ? bucket : Math.max(base + counts.length - 1, bucket);
+				// Leave room for nearby buckets so the range is not extended one at a time.
+				low = Math.max(0, low - (1 << SUB_BUCKET_BITS));
+				high = high + (1 << SUB_BUCKET_BITS);
+				int[] newCounts = new int[high - low + 1];
+				if (counts.length > 0) System.arraycopy(counts, 0, newCounts, base - low, counts.length);
+				counts = newCounts;
+				base = low;
+			}
+			counts[bucket - base] += n;
+			total += n;
+		}
+
+		/**
+		 * The bucket holding the value of the given rank, counting up from 1.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private int findAscending(long rank){
+			for (int i=0; i<counts.length; i++){
+				rank -= counts[i];
+				if (rank <= 0) return base + i;
+			}
+			return base + counts.length - 1;
+		}
+
+		/**
+		 * The bucket holding the value of the given rank counting down
+		 * from the largest bucket, or Integer.MIN_VALUE if there are fewer
+		 * values than the rank.
+		 *
+		 * @since 64bitlabsutils 1.09.00
+		 */
+		private int findDescending(long rank){
+			if (rank > total) return Integer.MIN_VALUE;
+			for (int i=counts.length-1; i>=0; i--){
+				rank -= counts[i];
+				if (rank <= 0) return base + i;
+			}
+			return base;
+		}
+
+		private void clear(){
+			counts = new int[0];
+			total = 0;
+		}
+	}
+}
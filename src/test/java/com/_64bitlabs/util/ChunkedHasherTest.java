@@ -0,0 +1,173 @@
+/*
+ * Tests hashing files in chunks.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.file.ChunkedHasher;
+import com._64bitlabs.util.file.FileHasher;
+import com._64bitlabs.util.file.Hasher;
+import junit.framework.TestCase;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Tests ChunkedHasher.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ChunkedHasherTest extends TestCase {
+
+	/**
+	 * SHA-256 hashers that count how many are made, and that fail once
+	 * the given number have been made.
+	 */
+	private static class Counting implements Supplier<Hasher> {
+		private final AtomicInteger made = new AtomicInteger();
+		private final int failAfter;
+
+		Counting(int failAfter){
+			this.failAfter = failAfter;
+		}
+
+		@Override public Hasher get(){
+			if (made.incrementAndGet() > failAfter) throw new IllegalStateException("failing on purpose");
+			return FileHasher.sha256().get();
+		}
+	}
+
+	private static byte[] sha256(byte[]... parts) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		for (byte[] part: parts) digest.update(part);
+		return digest.digest();
+	}
+
+	public void testTree() throws Exception {
+		Path file = Files.createTempFile("chunked", ".bin");
+		Path checkpoint = Files.createTempFile("chunked", ".tree");
+		try {
+			byte[] data = new byte[5 * 1000 + 123];
+			new Random(6).nextBytes(data);
+			Files.write(file, data);
+			Files.delete(checkpoint);
+
+			// Interrupt hashing after a few chunks, then resume.
+			ChunkedHasher failing = new ChunkedHasher(new Counting(3), 1000, null);
+			try {
+				failing.hash(file, checkpoint);
+				fail("expected failure");
+			} catch (IllegalStateException x){
+			}
+			failing.close();
+			ChunkedHasher.Tree partial = ChunkedHasher.Tree.load(checkpoint);
+			assertEquals(6, partial.getChunkCount());
+			assertFalse(partial.isComplete());
+			int done = partial.getCompletedChunks();
+			assertTrue(done > 0);
+
+			Counting counting = new Counting(Integer.MAX_VALUE);
+			ChunkedHasher hasher = new ChunkedHasher(counting, 1000, null);
+			// One hasher is made to identify the algorithm.
+			counting.made.set(0);
+			ChunkedHasher.Tree tree = hasher.hash(file, checkpoint);
+			assertTrue(tree.isComplete());
+			assertEquals(6 - done, counting.made.get());
+
+			// RFC 6962 shape for six leaves: ((01)(23))(45)
+			byte[][] leaves = new byte[6][];
+			for (int i=0; i<6; i++){
+				leaves[i] = sha256(new byte[]{0}, Arrays.copyOfRange(data, i * 1000, Math.min(data.length, (i + 1) * 1000)));
+				assertTrue(Arrays.equals(leaves[i], tree.getChunkHash(i)));
+			}
+			byte[] one = {1};
+			byte[] expected = sha256(one,
+				sha256(one, sha256(one, leaves[0], leaves[1]), sha256(one, leaves[2], leaves[3])),
+				sha256(one, leaves[4], leaves[5])
+			);
+			assertTrue(Arrays.equals(expected, hasher.getRootHash(tree)));
+			assertTrue(Arrays.equals(expected, hasher.getRootHash(ChunkedHasher.Tree.load(checkpoint))));
+
+			// Change a region in the third chunk and rehash only it.
+			RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+			raf.seek(2500);
+			raf.write(new byte[]{1, 2, 3});
+			raf.close();
+			counting.made.set(0);
+			ChunkedHasher.Tree changed = hasher.rehash(file, tree, 2500, 3);
+			assertEquals(1, counting.made.get());
+			assertTrue(Arrays.equals(new int[]{2}, changed.getChangedChunks(tree)));
+			Files.delete(checkpoint);
+			assertTrue(Arrays.equals(hasher.getRootHash(hasher.hash(file)), hasher.getRootHash(changed)));
+			hasher.close();
+
+			ChunkedHasher md5 = new ChunkedHasher(FileHasher.md5(), 1000, null);
+			Files.write(file, new byte[0]);
+			assertTrue(Arrays.equals(MessageDigest.getInstance("MD5").digest(), md5.getRootHash(md5.hash(file))));
+			md5.close();
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(checkpoint);
+		}
+	}
+
+	public void testAlgorithmMismatch() throws Exception {
+		Path file = Files.createTempFile("chunked", ".bin");
+		Path checkpoint = Files.createTempFile("chunked", ".tree");
+		try {
+			byte[] data = new byte[3500];
+			new Random(7).nextBytes(data);
+			Files.write(file, data);
+			Files.delete(checkpoint);
+			ChunkedHasher md5 = new ChunkedHasher(FileHasher.md5(), 1000, null);
+			ChunkedHasher sha256 = new ChunkedHasher(FileHasher.sha256(), 1000, null);
+			ChunkedHasher.Tree md5Tree = md5.hash(file, checkpoint);
+
+			// An MD5 checkpoint is not resumed by a SHA-256 hasher.
+			ChunkedHasher.Tree tree = sha256.hash(file, checkpoint);
+			assertEquals(32, tree.getChunkHash(0).length);
+			assertTrue(Arrays.equals(sha256.getRootHash(sha256.hash(file)), sha256.getRootHash(tree)));
+			assertEquals(32, ChunkedHasher.Tree.load(checkpoint).getChunkHash(3).length);
+
+			try {
+				sha256.rehash(file, md5Tree, 0, 1);
+				fail("expected IllegalArgumentException");
+			} catch (IllegalArgumentException x){
+			}
+			try {
+				sha256.getRootHash(md5Tree);
+				fail("expected IllegalArgumentException");
+			} catch (IllegalArgumentException x){
+			}
+			try {
+				tree.getChangedChunks(md5Tree);
+				fail("expected IllegalArgumentException");
+			} catch (IllegalArgumentException x){
+			}
+			md5.close();
+			sha256.close();
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(checkpoint);
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Tests the circular byte buffer.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.exception.BufferOverflowException;
+import com._64bitlabs.util.file.CircularByteBuffer;
+import junit.framework.TestCase;
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Tests CircularByteBuffer.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CircularByteBufferTest extends TestCase {
+
+	/**
+	 * Write a known sequence of bytes from another thread in pieces of
+	 * random size and check that it is read back unchanged.
+	 */
+	private static void transfer(final CircularByteBuffer cbb, final int total) throws Exception {
+		final Throwable[] error = new Throwable[1];
+		Thread producer = new Thread(){
+			@Override public void run(){
+				try {
+					OutputStream out = cbb.getOutputStream();
+					Random r = new Random(1);
+					byte[] b = new byte[3000];
+					int written = 0;
+					while (written < total){
+						if (r.nextInt(10) == 0){
+							out.write((byte)written);
+							written++;
+						} else {
+							int n = Math.min(total - written, r.nextInt(b.length));
+							for (int i = 0; i < n; i++){
+								b[i] = (byte)(written + i);
+							}
+							out.write(b, 0, n);
+							written += n;
+						}
+					}
+					out.close();
+				} catch (Throwable t){
+					error[0] = t;
+				}
+			}
+		};
+		producer.start();
+		InputStream in = cbb.getInputStream();
+		Random r = new Random(2);
+		byte[] b = new byte[2000];
+		int read = 0;
+		while (true){
+			int choice = r.nextInt(10);
+			if (choice == 0){
+				int c = in.read();
+				if (c == -1) break;
+				assertEquals(read & 0xff, c);
+				read++;
+			} else if (choice == 1){
+				long n = in.skip(r.nextInt(100));
+				read += n;
+				if (n == 0 && in.read() == -1) break;
+				if (n == 0) read++;
+			} else {
+				int n = in.read(b, 0, 1 + r.nextInt(b.length - 1));
+				if (n == -1) break;
+				for (int i = 0; i < n; i++){
+					assertEquals((byte)(read + i), b[i]);
+				}
+				read += n;
+			}
+		}
+		producer.join();
+		assertNull(error[0]);
+		assertEquals(total, read);
+	}
+
+	public void testTransfer() throws Exception {
+		transfer(new CircularByteBuffer(1000), 3000000);
+		transfer(new CircularByteBuffer(2), 100000);
+	}
+
+	public void testLockFreeTransfer() throws Exception {
+		transfer(new CircularByteBuffer(1000, true, true), 3000000);
+		transfer(new CircularByteBuffer(2, true, true), 100000);
+	}
+
+	/**
+	 * Bytes passed back and forth one at a time should not each wait for a
+	 * polling interval.
+	 */
+	public void testLockFreeHandoff() throws Exception {
+		final CircularByteBuffer ping = new CircularByteBuffer(16, true, true);
+		final CircularByteBuffer pong = new CircularByteBuffer(16, true, true);
+		Thread echo = new Thread(){
+			@Override public void run(){
+				try {
+					int c;
+					while ((c = ping.getInputStream().read()) != -1){
+						pong.getOutputStream().write(c);
+					}
+					pong.getOutputStream().close();
+				} catch (IOException x){
+					throw new RuntimeException(x);
+				}
+			}
+		};
+		echo.start();
+		long start = System.nanoTime();
+		for (int i = 0; i < 500; i++){
+			ping.getOutputStream().write(i);
+			assertEquals(i & 0xff, pong.getInputStream().read());
+		}
+		ping.getOutputStream().close();
+		assertEquals(-1, pong.getInputStream().read());
+		echo.join();
+		assertTrue(System.nanoTime() - start < 10000000000L);
+	}
+
+	public void testLockFreeMarkAndClose() throws IOException {
+		CircularByteBuffer cbb = new CircularByteBuffer(8, false, true);
+		OutputStream out = cbb.getOutputStream();
+		InputStream in = cbb.getInputStream();
+		out.write(new byte[]{1, 2, 3, 4, 5});
+		assertEquals(5, in.available());
+		in.mark(4);
+		assertEquals(1, in.read());
+		assertEquals(2, in.read());
+		in.reset();
+		assertEquals(1, in.read());
+		// The marked bytes are kept, so there is room for only three more.
+		assertEquals(2, cbb.getSpaceLeft());
+		try {
+			out.write(new byte[3]);
+			fail();
+		} catch (BufferOverflowException x){
+		}
+		out.write(6);
+		out.close();
+		byte[] b = new byte[10];
+		assertEquals(5, in.read(b));
+		assertEquals(6, b[4]);
+		assertEquals(-1, in.read());
+		in.close();
+		try {
+			in.read();
+			fail();
+		} catch (IOException x){
+		}
+		try {
+			new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE, true, true);
+			fail();
+		} catch (IllegalArgumentException x){
+		}
+	}
+
+	/**
+	 * Reads and writes that cannot make progress should give up once the
+	 * timeout runs out, and should be woken by a close before that.
+	 */
+	private static void timeouts(final CircularByteBuffer cbb) throws Exception {
+		cbb.setReadTimeout(50);
+		cbb.setWriteTimeout(50);
+		long start = System.nanoTime();
+		try {
+			cbb.getInputStream().read();
+			fail();
+		} catch (InterruptedIOException x){
+		}
+		assertTrue(System.nanoTime() - start >= 40000000L);
+		cbb.getOutputStream().write(new byte[3]);
+		try {
+			cbb.getOutputStream().write(new byte[5]);
+			fail();
+		} catch (InterruptedIOException x){
+			assertEquals(4, x.bytesTransferred);
+		}
+		assertEquals(7, cbb.getInputStream().read(new byte[10]));
+
+		cbb.setReadTimeout(0);
+		new Thread(){
+			@Override public void run(){
+				try {
+					Thread.sleep(20);
+					cbb.getOutputStream().close();
+				} catch (Exception x){
+					throw new RuntimeException(x);
+				}
+			}
+		}.start();
+		assertEquals(-1, cbb.getInputStream().read());
+	}
+
+	public void testTimeouts() throws Exception {
+		timeouts(new CircularByteBuffer(8));
+	}
+
+	public void testLockFreeTimeouts() throws Exception {
+		timeouts(new CircularByteBuffer(8, true, true));
+	}
+
+	/**
+	 * An infinite buffer should stop growing at its maximum size, spill
+	 * what does not fit to a file and give it back in order, and shrink
+	 * once it has gone without writes for the shrink delay.
+	 */
+	public void testGrowthPolicy() throws Exception {
+		CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE, false);
+		cbb.setMaxSize(5000);
+		cbb.setGrowthFactor(1.5);
+		OutputStream out = cbb.getOutputStream();
+		InputStream in = cbb.getInputStream();
+		out.write(new byte[1500]);
+		assertEquals(1536, cbb.getSize());
+		out.write(new byte[3000]);
+		assertEquals(4501, cbb.getSize());
+		try {
+			out.write(new byte[1000]);
+			fail();
+		} catch (BufferOverflowException x){
+		}
+		assertEquals(5000, cbb.getSize());
+		assertEquals(4500, in.skip(10000));
+
+		cbb.setSpillToFile(true);
+		byte[] data = new byte[20000];
+		new Random(3).nextBytes(data);
+		out.write(data, 0, 4000);
+		out.write(data, 4000, 6000);
+		out.write(data[10000]);
+		out.write(data, 10001, 9999);
+		assertEquals(5000, cbb.getSize());
+		assertEquals(20000, cbb.getAvailable());
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		byte[] b = new byte[3000];
+		while (read.size() < data.length){
+			read.write(b, 0, in.read(b));
+		}
+		assertTrue(java.util.Arrays.equals(data, read.toByteArray()));
+
+		cbb.setShrinkDelay(30);
+		out.write(new byte[100]);
+		assertEquals(100, in.read(new byte[200]));
+		assertEquals(5000, cbb.getSize());
+		cbb.setReadTimeout(200);
+		try {
+			in.read();
+			fail();
+		} catch (InterruptedIOException x){
+		}
+		assertEquals(1024, cbb.getSize());
+	}
+}
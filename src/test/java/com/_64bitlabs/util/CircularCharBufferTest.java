@@ -0,0 +1,86 @@
+/*
+ * Tests the circular character buffer.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.file.CircularCharBuffer;
+import junit.framework.TestCase;
+import java.io.*;
+
+/**
+ * Tests CircularCharBuffer.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CircularCharBufferTest extends TestCase {
+
+	public void testTransfer() throws Exception {
+		final CircularCharBuffer ccb = new CircularCharBuffer(10);
+		Thread producer = new Thread(){
+			@Override public void run(){
+				try {
+					Writer out = ccb.getWriter();
+					for (int i = 0; i < 20000; i++){
+						out.write(i % 3 == 0 ? "line " + i + "\n" : "");
+						out.write('.');
+					}
+					out.close();
+				} catch (IOException x){
+					throw new RuntimeException(x);
+				}
+			}
+		};
+		producer.start();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++){
+			expected.append(i % 3 == 0 ? "line " + i + "\n" : "").append('.');
+		}
+		StringBuilder read = new StringBuilder();
+		Reader in = ccb.getReader();
+		char[] c = new char[7];
+		int n;
+		while ((n = in.read(c)) != -1){
+			read.append(c, 0, n);
+			int ch = in.read();
+			if (ch == -1) break;
+			read.append((char)ch);
+		}
+		producer.join();
+		assertEquals(expected.toString(), read.toString());
+	}
+
+	public void testTimeouts() throws Exception {
+		CircularCharBuffer ccb = new CircularCharBuffer(4);
+		ccb.setReadTimeout(20);
+		ccb.setWriteTimeout(20);
+		try {
+			ccb.getReader().read();
+			fail();
+		} catch (InterruptedIOException x){
+		}
+		try {
+			ccb.getWriter().write("abcde");
+			fail();
+		} catch (InterruptedIOException x){
+			assertEquals(3, x.bytesTransferred);
+		}
+		char[] c = new char[4];
+		assertEquals(3, ccb.getReader().read(c));
+		assertEquals("abc", new String(c, 0, 3));
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Tests the circular object buffer.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.exception.BufferOverflowException;
+import com._64bitlabs.util.file.CircularObjectBuffer;
+import junit.framework.TestCase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests CircularObjectBuffer.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CircularObjectBufferTest extends TestCase {
+
+	public void testTransfer() throws Exception {
+		final CircularObjectBuffer<Integer> cob = new CircularObjectBuffer<Integer>(3);
+		Thread producer = new Thread(){
+			@Override public void run(){
+				try {
+					for (int i = 0; i < 50000; i += 3){
+						cob.write(i);
+						cob.write(new Integer[]{i + 1, i + 2});
+					}
+					cob.done();
+				} catch (Exception x){
+					throw new RuntimeException(x);
+				}
+			}
+		};
+		producer.start();
+		Integer[] buf = new Integer[5];
+		int next = 0;
+		while (true){
+			Integer o = cob.read();
+			if (o == null) break;
+			assertEquals(next++, o.intValue());
+			int n = cob.read(buf);
+			if (n == -1) break;
+			for (int i = 0; i < n; i++){
+				assertEquals(next++, buf[i].intValue());
+			}
+		}
+		producer.join();
+		assertEquals(50001, next);
+	}
+
+	public void testTimeouts() throws Exception {
+		CircularObjectBuffer<String> cob = new CircularObjectBuffer<String>(2);
+		try {
+			cob.read(20, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (TimeoutException x){
+		}
+		cob.write("a", 20, TimeUnit.MILLISECONDS);
+		try {
+			cob.write("b", 20, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (TimeoutException x){
+		}
+		assertEquals("a", cob.read(0, TimeUnit.MILLISECONDS));
+		cob.done();
+		assertNull(cob.read(1, TimeUnit.DAYS));
+	}
+
+	public void testGrowthPolicy() throws Exception {
+		CircularObjectBuffer<Integer> cob = new CircularObjectBuffer<Integer>(CircularObjectBuffer.INFINITE_SIZE, false);
+		cob.setMaxSize(3000);
+		cob.setShrinkDelay(30);
+		for (int i = 0; i < 2000; i++){
+			cob.write(i);
+		}
+		assertEquals(2048, cob.getSize());
+		try {
+			cob.write(new Integer[1500]);
+			fail();
+		} catch (BufferOverflowException x){
+		}
+		assertEquals(3000, cob.getSize());
+		assertEquals(2000, cob.skip(5000));
+		try {
+			cob.read(200, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (TimeoutException x){
+		}
+		assertEquals(1024, cob.getSize());
+	}
+
+	/**
+	 * Several producers and consumers share a lock-free buffer; every
+	 * Object written should be read exactly once.
+	 */
+	public void testMultiProducerMultiConsumer() throws Exception {
+		final CircularObjectBuffer<Integer> cob = new CircularObjectBuffer<Integer>(64, true, true);
+		final int producers = 4;
+		final int perProducer = 50000;
+		final AtomicInteger running = new AtomicInteger(producers);
+		final Throwable[] error = new Throwable[1];
+		Thread[] threads = new Thread[producers + 3];
+		for (int p = 0; p < producers; p++){
+			final int base = p * perProducer;
+			threads[p] = new Thread(){
+				@Override public void run(){
+					try {
+						Integer[] batch = new Integer[7];
+						int i = 0;
+						while (i < perProducer){
+							if (i % 3 == 0){
+								cob.write(base + i++);
+							} else {
+								int n = Math.min(batch.length, perProducer - i);
+								for (int k = 0; k < n; k++){
+									batch[k] = base + i + k;
+								}
+								cob.write(batch, 0, n);
+								i += n;
+							}
+						}
+						if (running.decrementAndGet() == 0) cob.done();
+					} catch (Throwable t){
+						error[0] = t;
+					}
+				}
+			};
+		}
+		final boolean[] seen = new boolean[producers * perProducer];
+		for (int c = 0; c < 3; c++){
+			final int consumer = c;
+			threads[producers + c] = new Thread(){
+				@Override public void run(){
+					try {
+						ArrayList<Integer> drained = new ArrayList<Integer>();
+						Integer[] batch = new Integer[100];
+						while (true){
+							drained.clear();
+							if (consumer == 0){
+								Integer o = cob.read();
+								if (o == null) break;
+								drained.add(o);
+							} else if (consumer == 1){
+								int n = cob.read(batch, 0, batch.length);
+								if (n == -1) break;
+								drained.addAll(Arrays.asList(batch).subList(0, n));
+							} else if (cob.drainTo(drained, 100) == 0){
+								try {
+									Integer o = cob.read(10, TimeUnit.MILLISECONDS);
+									if (o == null) break;
+									drained.add(o);
+								} catch (TimeoutException x){
+									continue;
+								}
+							}
+							synchronized (seen){
+								for (Integer o: drained){
+									assertFalse(seen[o]);
+									seen[o] = true;
+								}
+							}
+						}
+					} catch (Throwable t){
+						error[0] = t;
+					}
+				}
+			};
+		}
+		for (Thread t: threads){
+			t.start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		assertNull(error[0]);
+		for (int i = 0; i < seen.length; i++){
+			assertTrue(seen[i]);
+		}
+		assertEquals(0, cob.getAvailable());
+	}
+
+	public void testBatches() throws Exception {
+		for (boolean lockFree: new boolean[]{false, true}){
+			CircularObjectBuffer<String> cob = new CircularObjectBuffer<String>(4, false, lockFree);
+			int capacity = lockFree ? 4 : 3;
+			assertEquals(capacity, cob.putAll(new String[]{"a", "b", "c", "d", "e"}, 0, 5));
+			assertEquals(0, cob.putAll(new String[]{"f"}, 0, 1));
+			try {
+				cob.write("f");
+				fail();
+			} catch (BufferOverflowException x){
+			}
+			String[] out = new String[3];
+			assertEquals(2, cob.drainTo(out, 1, 2));
+			assertEquals("a", out[1]);
+			assertEquals("b", out[2]);
+			cob.write(new String[]{"x", "y"});
+			ArrayList<String> list = new ArrayList<String>();
+			assertEquals(capacity, cob.drainTo(list, 10));
+			assertEquals(lockFree ? Arrays.asList("c", "d", "x", "y") : Arrays.asList("c", "x", "y"), list);
+			assertEquals(0, cob.drainTo(list, 10));
+			cob.done();
+			assertNull(cob.read());
+			assertEquals(-1, cob.read(out));
+		}
+		try {
+			new CircularObjectBuffer<String>(CircularObjectBuffer.INFINITE_SIZE, true, true);
+			fail();
+		} catch (IllegalArgumentException x){
+		}
+		try {
+			new CircularObjectBuffer<String>(1, false, true);
+			fail();
+		} catch (IllegalArgumentException x){
+		}
+		CircularObjectBuffer<String> two = new CircularObjectBuffer<String>(2, false, true);
+		two.write("first");
+		two.write("second");
+		try {
+			two.write("third");
+			fail();
+		} catch (BufferOverflowException x){
+		}
+		assertEquals("first", two.read());
+		assertEquals("second", two.read());
+	}
+	/**
+	 * A bad range must be rejected before any slot is claimed, or the
+	 * other side would wait forever for a slot that is never filled.
+	 */
+	public void testBadRangeLeavesBufferUsable() throws Exception {
+		for (boolean lockFree: new boolean[]{false, true}){
+			CircularObjectBuffer<String> cob = new CircularObjectBuffer<String>(4, true, lockFree);
+			try {
+				cob.write(new String[2], 1, 3);
+				fail();
+			} catch (IndexOutOfBoundsException x){
+			}
+			cob.write(new String[]{"a", "b"}, 0, 2);
+			try {
+				cob.read(new String[2], 1, 3);
+				fail();
+			} catch (IndexOutOfBoundsException x){
+			}
+			try {
+				cob.read(new String[2], -1, 1);
+				fail();
+			} catch (IndexOutOfBoundsException x){
+			}
+			String[] out = new String[2];
+			assertEquals(2, cob.read(out, 0, 2));
+			assertEquals(Arrays.asList("a", "b"), Arrays.asList(out));
+			cob.write(new String[]{"c", "d", "e"});
+			assertEquals("c", cob.read());
+			assertEquals(2, cob.getAvailable());
+		}
+	}
+}
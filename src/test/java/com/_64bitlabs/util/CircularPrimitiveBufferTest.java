@@ -0,0 +1,149 @@
+/*
+ * Tests the circular buffers for primitive values.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.exception.BufferOverflowException;
+import com._64bitlabs.util.file.CircularDoubleBuffer;
+import com._64bitlabs.util.file.CircularIntBuffer;
+import com._64bitlabs.util.file.CircularLongBuffer;
+import junit.framework.TestCase;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests CircularIntBuffer, CircularLongBuffer and CircularDoubleBuffer.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CircularPrimitiveBufferTest extends TestCase {
+
+	/**
+	 * Write a sequence of longs from another thread in pieces of random
+	 * size and check that they are read back in order.
+	 */
+	private static void transfer(final CircularLongBuffer clb, final int count) throws Exception {
+		final Throwable[] error = new Throwable[1];
+		Thread producer = new Thread(){
+			@Override public void run(){
+				try {
+					Random r = new Random(1);
+					long[] b = new long[500];
+					long next = 0;
+					while (next < count){
+						if (r.nextInt(10) == 0){
+							clb.write(next++);
+						} else {
+							int n = (int)Math.min(count - next, r.nextInt(b.length));
+							for (int i=0; i<n; i++) b[i] = next++;
+							clb.write(b, 0, n);
+						}
+					}
+					clb.done();
+				} catch (Throwable t){
+					error[0] = t;
+				}
+			}
+		};
+		producer.start();
+		long expected = 0;
+		long[] b = new long[300];
+		int n;
+		while ((n = clb.read(b)) != -1){
+			for (int i=0; i<n; i++) assertEquals(expected++, b[i]);
+			if (expected < count) assertEquals(expected++, clb.read());
+		}
+		producer.join();
+		if (error[0] != null) throw new Exception(error[0]);
+		assertEquals(count, expected);
+		try {
+			clb.read();
+			fail("expected end of data");
+		} catch (NoSuchElementException x){
+		}
+	}
+
+	public void testTransfer() throws Exception {
+		transfer(new CircularLongBuffer(), 1000000);
+		transfer(new CircularLongBuffer(2), 10000);
+		CircularLongBuffer infinite = new CircularLongBuffer(CircularLongBuffer.INFINITE_SIZE);
+		transfer(infinite, 1000000);
+		assertTrue(infinite.getSize() >= 1024);
+	}
+
+	public void testNonBlocking() throws Exception {
+		CircularIntBuffer cib = new CircularIntBuffer(10, false);
+		cib.write(new int[]{1, 2, 3, 4, 5, 6, 7, 8});
+		try {
+			cib.write(new int[3]);
+			fail("expected overflow");
+		} catch (BufferOverflowException x){
+		}
+		assertEquals(1, cib.putAll(new int[]{9, 10}, 0, 2));
+		assertEquals(0, cib.putAll(new int[]{10}, 0, 1));
+		try {
+			cib.write(10, 10, TimeUnit.MILLISECONDS);
+			fail("expected overflow");
+		} catch (BufferOverflowException x){
+		}
+		assertEquals(9, cib.getAvailable());
+		assertEquals(0, cib.getSpaceLeft());
+		assertEquals(1, cib.read());
+		assertEquals(2, cib.skip(2));
+		int[] b = new int[10];
+		assertEquals(6, cib.drainTo(b, 1, 9));
+		assertEquals(4, b[1]);
+		assertEquals(9, b[6]);
+		assertEquals(0, cib.drainTo(b, 0, 10));
+		try {
+			cib.read(10, TimeUnit.MILLISECONDS);
+			fail("expected timeout");
+		} catch (TimeoutException x){
+		}
+		cib.done();
+		assertEquals(-1, cib.read(b));
+		try {
+			cib.write(1);
+			fail("expected done");
+		} catch (IllegalStateException x){
+		}
+	}
+
+	public void testInfinite() throws Exception {
+		CircularDoubleBuffer cdb = new CircularDoubleBuffer(CircularDoubleBuffer.INFINITE_SIZE, false);
+		cdb.setMaxSize(5000);
+		double[] data = new double[4000];
+		for (int i=0; i<data.length; i++) data[i] = i / 3.0;
+		cdb.write(data);
+		assertTrue(cdb.getSize() > 4000);
+		assertEquals(999, cdb.putAll(data, 0, data.length));
+		assertEquals(4999, cdb.getAvailable());
+		double[] b = new double[5000];
+		assertEquals(4999, cdb.read(b));
+		for (int i=0; i<data.length; i++) assertEquals(data[i], b[i], 0);
+		assertEquals(data[998], b[4998], 0);
+		cdb.setShrinkDelay(1);
+		Thread.sleep(5);
+		cdb.write(0.5);
+		Thread.sleep(5);
+		assertEquals(0.5, cdb.read(), 0);
+		assertEquals(1024, cdb.getSize());
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Tests the circular byte buffer held outside the Java heap.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.exception.BufferOverflowException;
+import com._64bitlabs.util.file.DirectCircularByteBuffer;
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Random;
+
+/**
+ * Tests DirectCircularByteBuffer.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class DirectCircularByteBufferTest extends TestCase {
+
+	private static byte[] data(int length){
+		byte[] b = new byte[length];
+		new Random(length).nextBytes(b);
+		return b;
+	}
+
+	/**
+	 * Write the data through the OutputStream from another thread in pieces
+	 * of random size and read it back through the InputStream.
+	 */
+	private static void streamTransfer(final DirectCircularByteBuffer dcbb, final byte[] data) throws Exception {
+		final Throwable[] error = new Throwable[1];
+		Thread producer = new Thread(){
+			@Override public void run(){
+				try {
+					OutputStream out = dcbb.getOutputStream();
+					Random r = new Random(1);
+					int written = 0;
+					while (written < data.length){
+						if (r.nextInt(10) == 0){
+							out.write(data[written++]);
+						} else {
+							int n = Math.min(data.length - written, r.nextInt(3000));
+							out.write(data, written, n);
+							written += n;
+						}
+					}
+					out.close();
+				} catch (Throwable t){
+					error[0] = t;
+				}
+			}
+		};
+		producer.start();
+		InputStream in = dcbb.getInputStream();
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		byte[] b = new byte[2000];
+		int c;
+		while ((c = in.read()) != -1){
+			read.write(c);
+			int n = in.read(b);
+			if (n == -1) break;
+			read.write(b, 0, n);
+		}
+		producer.join();
+		if (error[0] != null) throw new Exception(error[0]);
+		assertTrue(java.util.Arrays.equals(data, read.toByteArray()));
+	}
+
+	public void testStreams() throws Exception {
+		streamTransfer(new DirectCircularByteBuffer(1000), data(1000000));
+		streamTransfer(new DirectCircularByteBuffer(1), data(10000));
+		DirectCircularByteBuffer infinite = new DirectCircularByteBuffer(DirectCircularByteBuffer.INFINITE_SIZE);
+		streamTransfer(infinite, data(1000000));
+		assertTrue(infinite.getSize() >= 65536);
+	}
+
+	public void testNonBlocking() throws IOException {
+		DirectCircularByteBuffer dcbb = new DirectCircularByteBuffer(10, false);
+		dcbb.getOutputStream().write(new byte[8]);
+		try {
+			dcbb.getOutputStream().write(new byte[3]);
+			fail("expected overflow");
+		} catch (BufferOverflowException x){
+		}
+		assertEquals(2, dcbb.getWritableChannel().write(ByteBuffer.wrap(new byte[5])));
+		assertEquals(0, dcbb.getWritableChannel().write(ByteBuffer.wrap(new byte[5])));
+		assertEquals(10, dcbb.getAvailable());
+		dcbb.setReadTimeout(20);
+		assertEquals(10, dcbb.getInputStream().skip(100));
+		try {
+			dcbb.getInputStream().read();
+			fail("expected timeout");
+		} catch (InterruptedIOException x){
+		}
+	}
+
+	/**
+	 * Move data from a pipe through the buffer into a file, the way data
+	 * would move from a socket to a file.
+	 */
+	private static void channelTransfer(final DirectCircularByteBuffer dcbb, final byte[] data) throws Exception {
+		final Pipe pipe = Pipe.open();
+		final Throwable[] error = new Throwable[2];
+		Thread source = new Thread(){
+			@Override public void run(){
+				try {
+					ByteBuffer b = ByteBuffer.wrap(data);
+					while (b.hasRemaining()){
+						b.limit(Math.min(data.length, b.position() + 7777));
+						pipe.sink().write(b);
+						b.limit(data.length);
+					}
+					pipe.sink().close();
+				} catch (Throwable t){
+					error[0] = t;
+				}
+			}
+		};
+		Thread producer = new Thread(){
+			@Override public void run(){
+				try {
+					while (dcbb.transferFrom(pipe.source(), Long.MAX_VALUE) != -1);
+					dcbb.getWritableChannel().close();
+				} catch (Throwable t){
+					error[1] = t;
+				}
+			}
+		};
+		source.start();
+		producer.start();
+		File f = File.createTempFile("direct", ".bin");
+		f.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(f);
+		FileChannel channel = out.getChannel();
+		assertEquals(1000, dcbb.transferTo(channel, 1000));
+		ByteBuffer b = ByteBuffer.allocate(5000);
+		while (b.hasRemaining()){
+			assertTrue(dcbb.getReadableChannel().read(b) > 0);
+		}
+		b.flip();
+		channel.write(b);
+		assertEquals(data.length - 6000, dcbb.transferTo(channel, Long.MAX_VALUE));
+		assertEquals(-1, dcbb.transferTo(channel, Long.MAX_VALUE));
+		out.close();
+		source.join();
+		producer.join();
+		if (error[0] != null) throw new Exception(error[0]);
+		if (error[1] != null) throw new Exception(error[1]);
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		byte[] copy = new byte[(int)f.length()];
+		in.readFully(copy);
+		in.close();
+		f.delete();
+		assertTrue(java.util.Arrays.equals(data, copy));
+	}
+
+	public void testChannels() throws Exception {
+		channelTransfer(new DirectCircularByteBuffer(4096), data(2000000));
+		File spill = File.createTempFile("spill", ".bin");
+		spill.deleteOnExit();
+		DirectCircularByteBuffer mapped = new DirectCircularByteBuffer(spill);
+		try {
+			channelTransfer(mapped, data(2000000));
+		} finally {
+			mapped.close();
+		}
+		spill.delete();
+	}
+
+	public void testGrowWrapped() throws IOException {
+		File spill = File.createTempFile("spill", ".bin");
+		spill.deleteOnExit();
+		DirectCircularByteBuffer[] buffers = {
+			new DirectCircularByteBuffer(DirectCircularByteBuffer.INFINITE_SIZE),
+			new DirectCircularByteBuffer(spill),
+		};
+		for (DirectCircularByteBuffer dcbb: buffers){
+			int size = dcbb.getSize();
+			byte[] data = data(size * 3);
+			OutputStream out = dcbb.getOutputStream();
+			InputStream in = dcbb.getInputStream();
+			ByteArrayOutputStream read = new ByteArrayOutputStream();
+			// Leave the data wrapped around the end of the buffer, then overfill it.
+			out.write(data, 0, size - 10);
+			byte[] b = new byte[size];
+			read.write(b, 0, in.read(b, 0, size - 100));
+			out.write(data, size - 10, size * 3 - (size - 10));
+			assertTrue(dcbb.getSize() > size);
+			out.close();
+			int n;
+			while ((n = in.read(b)) != -1){
+				read.write(b, 0, n);
+			}
+			assertTrue(java.util.Arrays.equals(data, read.toByteArray()));
+			dcbb.close();
+		}
+		spill.delete();
+	}
+}
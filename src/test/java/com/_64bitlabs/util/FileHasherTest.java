@@ -0,0 +1,129 @@
+/*
+ * Tests hashing many files at once.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.file.CRC32C;
+import com._64bitlabs.util.file.FileHasher;
+import junit.framework.TestCase;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Tests FileHasher and CRC32C.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class FileHasherTest extends TestCase {
+
+	public void testCRC32C(){
+		CRC32C crc = new CRC32C();
+		crc.update("123456789".getBytes(), 0, 9);
+		assertEquals(0xe3069283L, crc.getValue());
+		byte[] data = new byte[10000];
+		new Random(2).nextBytes(data);
+		crc.reset();
+		crc.update(data, 0, data.length);
+		long expected = crc.getValue();
+		crc.reset();
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data, 0, 4321).flip();
+		crc.update(direct);
+		for (int i=4321; i<4330; i++) crc.update(data[i]);
+		direct.clear();
+		direct.put(data, 4330, data.length - 4330).flip();
+		crc.update(direct);
+		assertEquals(expected, crc.getValue());
+	}
+
+	public void testHashTree() throws Exception {
+		Path root = Files.createTempDirectory("hash");
+		Random r = new Random(4);
+		Map<Path, byte[]> contents = new HashMap<Path, byte[]>();
+		try {
+			for (int i=0; i<40; i++){
+				Path dir = root.resolve("d" + (i % 3)).resolve("e" + (i % 2));
+				Files.createDirectories(dir);
+				byte[] data = new byte[i == 0 ? 0 : r.nextInt(i % 5 == 0 ? 300000 : 5000)];
+				r.nextBytes(data);
+				Path file = dir.resolve("f" + i);
+				Files.write(file, data);
+				contents.put(file, data);
+			}
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			MessageDigest md5 = MessageDigest.getInstance("MD5");
+			FileHasher[] hashers = {new FileHasher(FileHasher.sha256()), new FileHasher(FileHasher.md5())};
+			MessageDigest[] digests = {sha, md5};
+			for (int i=0; i<hashers.length; i++){
+				hashers[i].setMapThreshold(100000);
+				Stream<FileHasher.Result> results = hashers[i].hashTree(root);
+				Set<Path> seen = new HashSet<Path>();
+				Iterator<FileHasher.Result> it = results.iterator();
+				while (it.hasNext()){
+					FileHasher.Result result = it.next();
+					assertTrue(seen.add(result.getPath()));
+					assertTrue(Arrays.equals(digests[i].digest(contents.get(result.getPath())), result.getHash()));
+				}
+				results.close();
+				assertEquals(contents.keySet(), seen);
+				hashers[i].close();
+			}
+			FileHasher crc = new FileHasher(FileHasher.crc32c());
+			Path missing = root.resolve("missing");
+			Stream<FileHasher.Result> results = crc.hash(Stream.of(missing));
+			FileHasher.Result result = results.iterator().next();
+			assertEquals(missing, result.getPath());
+			assertNotNull(result.getException());
+			try {
+				result.getHash();
+				fail("expected exception");
+			} catch (IOException x){
+			}
+			results.close();
+			assertEquals("e3069283", hex(crc, root, "123456789"));
+			crc.close();
+		} finally {
+			for (Path file: contents.keySet()) Files.delete(file);
+			Stream<Path> dirs = Files.walk(root);
+			List<Path> all = new ArrayList<Path>();
+			Iterator<Path> it = dirs.iterator();
+			while (it.hasNext()) all.add(it.next());
+			dirs.close();
+			Collections.reverse(all);
+			for (Path dir: all) Files.delete(dir);
+		}
+	}
+
+	private static String hex(FileHasher hasher, Path root, String content) throws IOException {
+		Path file = root.resolve("check");
+		Files.write(file, content.getBytes("ASCII"));
+		try {
+			Stream<FileHasher.Result> results = hasher.hash(Stream.of(file));
+			String hash = results.iterator().next().getHashString();
+			results.close();
+			return hash;
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
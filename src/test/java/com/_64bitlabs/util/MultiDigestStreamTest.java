@@ -0,0 +1,81 @@
+/*
+ * Tests computing several hashes in one pass over a stream.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.file.FileHasher;
+import com._64bitlabs.util.file.MD5;
+import com._64bitlabs.util.file.MultiDigestInputStream;
+import com._64bitlabs.util.file.MultiDigestOutputStream;
+import junit.framework.TestCase;
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Tests MultiDigestInputStream and MultiDigestOutputStream.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class MultiDigestStreamTest extends TestCase {
+
+	private static void check(byte[] data, byte[] md5, byte[] sha256, byte[] crc32) throws Exception {
+		assertTrue(Arrays.equals(MessageDigest.getInstance("MD5").digest(data), md5));
+		assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(data), sha256));
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		assertEquals(crc.getValue(), ((crc32[0] & 0xffL) << 24) | ((crc32[1] & 0xff) << 16) | ((crc32[2] & 0xff) << 8) | (crc32[3] & 0xff));
+	}
+
+	public void testStreams() throws Exception {
+		byte[] data = new byte[100000];
+		Random r = new Random(7);
+		r.nextBytes(data);
+
+		MultiDigestInputStream in = new MultiDigestInputStream(new ByteArrayInputStream(data), FileHasher.md5().get(), FileHasher.sha256().get(), FileHasher.crc32().get());
+		assertEquals(3, in.getHashCount());
+		assertFalse(in.markSupported());
+		byte[] b = new byte[20000];
+		int c;
+		while ((c = in.read()) != -1){
+			in.skip(r.nextInt(100));
+			in.read(b, 0, r.nextInt(b.length));
+		}
+		check(data, in.getHash(0), in.getHash(1), in.getHash(2));
+		assertEquals(MD5.getHashString(data), in.getHashString(0));
+		in.close();
+
+		ByteArrayOutputStream copy = new ByteArrayOutputStream();
+		MultiDigestOutputStream out = new MultiDigestOutputStream(copy, FileHasher.md5().get(), FileHasher.sha256().get(), FileHasher.crc32().get());
+		for (int i=0; i<data.length; ){
+			if (r.nextBoolean()){
+				out.write(data[i++]);
+			} else {
+				int n = Math.min(data.length - i, r.nextInt(30000));
+				out.write(data, i, n);
+				i += n;
+			}
+		}
+		out.close();
+		assertTrue(Arrays.equals(data, copy.toByteArray()));
+		check(data, out.getHash(0), out.getHash(1), out.getHash(2));
+		assertEquals(MD5.getHashString(data), out.getHashString(0));
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Tests compressing and decompressing gzip streams on multiple threads.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.csv.CSVParser;
+import com._64bitlabs.util.csv.CSVPrinter;
+import com._64bitlabs.util.file.ParallelGZIPInputStream;
+import com._64bitlabs.util.file.ParallelGZIPOutputStream;
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tests ParallelGZIPOutputStream and ParallelGZIPInputStream against each
+ * other and against the gzip streams in java.util.zip.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ParallelGZIPTest extends TestCase {
+
+	private ForkJoinPool pool;
+
+	@Override protected void setUp(){
+		pool = new ForkJoinPool(3);
+	}
+
+	@Override protected void tearDown(){
+		pool.shutdown();
+	}
+
+	private static byte[] data(int length){
+		Random r = new Random(length);
+		byte[] b = new byte[length];
+		for (int i = 0; i < length; i++){
+			// Compressible, but not trivially.
+			b[i] = (byte)('a' + r.nextInt(r.nextInt(26) + 1));
+		}
+		return b;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int n;
+		while ((n = in.read(buffer)) != -1){
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	private byte[] compress(byte[] data, int blockSize) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out = new ParallelGZIPOutputStream(bytes, Deflater.DEFAULT_COMPRESSION, pool, blockSize);
+		// Mix single bytes and arrays of several sizes.
+		int i = 0;
+		while (i < data.length){
+			if (i % 3 == 0){
+				out.write(data[i++]);
+			} else {
+				int n = Math.min(data.length - i, i % 5000);
+				out.write(data, i, n);
+				i += n;
+			}
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	public void testRoundTrip() throws IOException {
+		for (int length : new int[]{0, 1, 1000, 100000}){
+			byte[] data = data(length);
+			for (int blockSize : new int[]{1, 100, 4096, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE}){
+				if (blockSize == 1 && length > 1000) continue;
+				byte[] gz = compress(data, blockSize);
+				assertTrue(Arrays.equals(data, readAll(new ParallelGZIPInputStream(new ByteArrayInputStream(gz), pool))));
+				assertTrue(Arrays.equals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(gz)))));
+			}
+		}
+	}
+
+	public void testStandardGZIP() throws IOException {
+		byte[] data = data(300000);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		// Two members, as from concatenating two files, followed by padding.
+		for (int i = 0; i < 2; i++){
+			GZIPOutputStream out = new GZIPOutputStream(bytes);
+			out.write(data, i * 100000, 100000 + i * 100000);
+			out.finish();
+		}
+		bytes.write(new byte[10]);
+		byte[] result = readAll(new ParallelGZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertTrue(Arrays.equals(data, result));
+	}
+
+	public void testCorrupt() throws IOException {
+		byte[] gz = compress(data(10000), 4096);
+		// CRC of the last member.
+		gz[gz.length - 6] ^= 1;
+		try {
+			readAll(new ParallelGZIPInputStream(new ByteArrayInputStream(gz), pool));
+			fail();
+		} catch (IOException x){
+		}
+		try {
+			readAll(new ParallelGZIPInputStream(new ByteArrayInputStream(Arrays.copyOf(gz, gz.length - 100)), pool));
+			fail();
+		} catch (IOException x){
+		}
+		try {
+			readAll(new ParallelGZIPInputStream(new ByteArrayInputStream("not gzip".getBytes(StandardCharsets.UTF_8)), pool));
+			fail();
+		} catch (IOException x){
+		}
+	}
+
+	public void testCSV() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ParallelGZIPOutputStream gz = new ParallelGZIPOutputStream(bytes, Deflater.BEST_SPEED, pool, 1000);
+		CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(gz, StandardCharsets.UTF_8));
+		for (int i = 0; i < 5000; i++){
+			printer.writeln(new String[]{"row" + i, "value, \"" + i + "\""});
+		}
+		printer.close();
+
+		CSVParser parser = new CSVParser(new InputStreamReader(new ParallelGZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()), pool), StandardCharsets.UTF_8));
+		String[][] rows = parser.getAllValues();
+		assertEquals(5000, rows.length);
+		assertEquals("row4999", rows[4999][0]);
+		assertEquals("value, \"4999\"", rows[4999][1]);
+		parser.close();
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Tests statistics over a sliding window of values.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util;
+
+import com._64bitlabs.util.file.SlidingWindowStats;
+import junit.framework.TestCase;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests SlidingWindowStats.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class SlidingWindowStatsTest extends TestCase {
+
+	/**
+	 * Check the statistics against the values that should be in the window.
+	 */
+	private static void check(SlidingWindowStats stats, double[] values, int end, int windowSize){
+		int start = Math.max(0, end - windowSize);
+		double[] window = Arrays.copyOfRange(values, start, end);
+		assertEquals(window.length, stats.getCount());
+		double sum = 0;
+		for (double v: window) sum += v;
+		assertEquals(sum, stats.getSum(), 1e-6 * (1 + Math.abs(sum)));
+		Arrays.sort(window);
+		assertEquals(window[0], stats.getMin(), 0);
+		assertEquals(window[window.length - 1], stats.getMax(), 0);
+		for (double percent: new double[]{0, 1, 25, 50, 90, 99, 99.9, 100}){
+			int rank = Math.max(1, (int)Math.ceil(percent / 100 * window.length));
+			double expected = window[rank - 1];
+			assertEquals(expected, stats.getPercentile(percent), Math.abs(expected) * 0.035);
+		}
+	}
+
+	public void testRandom(){
+		Random r = new Random(5);
+		double[] values = new double[20000];
+		for (int i=0; i<values.length; i++){
+			switch (r.nextInt(4)){
+				case 0: values[i] = 0; break;
+				case 1: values[i] = -r.nextDouble() * 1000; break;
+				default: values[i] = Math.exp(r.nextGaussian() * 3) * 1000000;
+			}
+		}
+		for (int windowSize: new int[]{1, 7, 1000}){
+			SlidingWindowStats stats = new SlidingWindowStats(windowSize);
+			assertTrue(Double.isNaN(stats.getMean()));
+			assertTrue(Double.isNaN(stats.getPercentile(50)));
+			for (int i=0; i<values.length; ){
+				int n = Math.min(values.length - i, r.nextInt(3) == 0 ? r.nextInt(3000) : 1);
+				if (n == 1){
+					stats.add(values[i]);
+				} else {
+					stats.add(values, i, n);
+				}
+				i += n;
+				if (r.nextInt(100) == 0 || i == values.length) check(stats, values, i, windowSize);
+			}
+			stats.clear();
+			assertEquals(0, stats.getCount());
+			stats.add(3);
+			check(stats, new double[]{3}, 1, windowSize);
+		}
+	}
+
+	public void testLatencies(){
+		SlidingWindowStats stats = new SlidingWindowStats(100);
+		for (int i=1; i<=1000; i++){
+			stats.add(i);
+		}
+		assertEquals(100, stats.getCount());
+		assertEquals(950.5, stats.getMean(), 1e-9);
+		assertEquals(901, stats.getMin(), 0);
+		assertEquals(1000, stats.getMax(), 0);
+		assertEquals(950, stats.getPercentile(50), 950 * 0.035);
+		try {
+			stats.add(Double.NaN);
+			fail("expected rejection");
+		} catch (IllegalArgumentException x){
+		}
+		try {
+			stats.getPercentile(101);
+			fail("expected rejection");
+		} catch (IllegalArgumentException x){
+		}
+	}
+}
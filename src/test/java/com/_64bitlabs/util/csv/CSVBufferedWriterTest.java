@@ -0,0 +1,151 @@
+/*
+ * Tests printing comma separated value files through a byte buffer.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests CSVBufferedWriter and the printers' fast paths for it.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CSVBufferedWriterTest extends TestCase {
+
+	private static final String[][] VALUES = {
+		{"plain", "", "two words", " lead", "trail\t", "with,comma"},
+		{"", "\"quoted\"", "line\nbreak", "cr\rlf", "back\\slash", "-1"},
+		{"#comment", "café", "€100", "😀 smile", "lone \ud800 high", "lone \udc00 low"},
+	};
+
+	public void testWriteString() throws IOException {
+		String s = "ascii é€😀 \ud800x";
+		for (int size : new int[]{32, 33, 1 << 16}){
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			CSVBufferedWriter out = new CSVBufferedWriter(bytes, size);
+			for (int i = 0; i < 20; i++){
+				out.write(s);
+				out.write(s.toCharArray(), 0, s.length());
+				for (int j = 0; j < s.length(); j++){
+					out.write(s.charAt(j));
+				}
+			}
+			out.close();
+			StringBuilder expected = new StringBuilder();
+			for (int i = 0; i < 60; i++){
+				expected.append(s.replace('\ud800', '?'));
+			}
+			assertEquals("buffer " + size, expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+
+	public void testClosed() throws IOException {
+		CSVBufferedWriter out = new CSVBufferedWriter(new ByteArrayOutputStream());
+		out.close();
+		try {
+			out.write("x");
+			out.flush();
+			fail();
+		} catch (IOException x){
+		}
+	}
+
+	public void testPrinters() throws IOException {
+		for (boolean alwaysQuote : new boolean[]{false, true}){
+			StringWriter expected = new StringWriter();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			print(new CSVPrinter(expected, '#', '"', ',', "\n", alwaysQuote, true));
+			print(new CSVPrinter(new CSVBufferedWriter(bytes, 32), '#', '"', ',', "\n", alwaysQuote, false));
+			assertEquals(encoded(expected), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+			expected = new StringWriter();
+			bytes = new ByteArrayOutputStream();
+			print(new ExcelCSVPrinter(expected, '\'', ';', "\r\n", alwaysQuote, true));
+			print(new ExcelCSVPrinter(new CSVBufferedWriter(Channels.newChannel(bytes), 32), '\'', ';', "\r\n", alwaysQuote, false));
+			assertEquals(encoded(expected), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * The printed text as it reads back from UTF-8, with unpaired surrogates replaced.
+	 */
+	private static String encoded(StringWriter expected){
+		return expected.toString().replace('\ud800', '?').replace('\udc00', '?');
+	}
+
+	private static void print(CSVPrint printer) throws IOException {
+		printer.writeln(VALUES);
+		printer.writeln(new String[]{"it's", "semi;colon", "'"});
+		printer.close();
+	}
+
+	public void testNumbers() throws IOException {
+		long[] longs = {0, 1, -1, 9, 10, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE};
+		double[] doubles = {
+			0.0, -0.0, 1, -1, 0.1, 0.001, 0.00123, 123.456, -9999999.5, 1e7, 1.5e-4, 1e300,
+			Math.PI, 1.0 / 3, 0.1 + 0.2, Double.MIN_VALUE, Double.MAX_VALUE,
+			Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+		};
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CSVPrinter printer = new CSVPrinter(new CSVBufferedWriter(bytes, 32));
+		printer.setLineEnding("\n");
+		for (long l : longs){
+			printer.writeLong(l);
+			printer.writeInt((int)l);
+			printer.writeln();
+		}
+		for (double d : doubles){
+			printer.writeDouble(d);
+			printer.writeDouble(d);
+			printer.writeln();
+		}
+		printer.close();
+
+		String output = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		CSVParser parser = new CSVParser(new StringReader(output));
+		for (long l : longs){
+			String[] line = parser.getLine();
+			assertEquals(2, line.length);
+			assertEquals(l, Long.parseLong(line[0]));
+			assertEquals((int)l, Integer.parseInt(line[1]));
+		}
+		for (double d : doubles){
+			String[] line = parser.getLine();
+			assertEquals(2, line.length);
+			for (String value : line){
+				assertEquals(value, Double.doubleToLongBits(d), Double.doubleToLongBits(Double.parseDouble(value)));
+			}
+		}
+		assertNull(parser.getLine());
+	}
+
+	public void testNumberNeedsQuote() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ExcelCSVPrinter printer = new ExcelCSVPrinter(new CSVBufferedWriter(bytes));
+		printer.changeDelimiter('.');
+		printer.setLineEnding("\n");
+		printer.writeDouble(1.5);
+		printer.writeLong(-2);
+		printer.writeln();
+		printer.close();
+		assertEquals("\"1.5\".-2\n", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Tests reading numbers from comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tests the typed readers of the CSV parsers and CSVColumns.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CSVColumnsTest extends TestCase {
+
+	private static final String NUMBERS = "1,-20,\"300\"\n4,5,6\n\n-2147483648,2147483647,0\n";
+
+	private static CSVParse[] parsers(String input) throws IOException {
+		return new CSVParse[]{
+			new CSVParser(new StringReader(input)),
+			new ExcelCSVParser(new StringReader(input)),
+			new MappedCSVParser(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))),
+			new LabeledCSVParser(new CSVParser(new StringReader("A,B,C\n" + input))),
+		};
+	}
+
+	public void testParseInt(){
+		for (String n : new String[]{"0", "-0", "+7", "123", "-2147483648", "2147483647"}){
+			assertEquals(n, Integer.parseInt(n), CSVColumns.parseInt(n.toCharArray(), 0, n.length()));
+		}
+		for (String n : new String[]{"", "-", "+", "1.0", "a", "2147483648", "-2147483649", "1 "}){
+			try {
+				CSVColumns.parseInt(n.toCharArray(), 0, n.length());
+				fail(n);
+			} catch (NumberFormatException x){
+			}
+		}
+	}
+
+	public void testParseLong(){
+		for (String n : new String[]{"0", "-9", "9223372036854775807", "-9223372036854775808", "2147483648"}){
+			assertEquals(n, Long.parseLong(n), CSVColumns.parseLong(n.toCharArray(), 0, n.length()));
+		}
+		for (String n : new String[]{"", "9223372036854775808", "-9223372036854775809", "99999999999999999999", "x1"}){
+			try {
+				CSVColumns.parseLong(n.toCharArray(), 0, n.length());
+				fail(n);
+			} catch (NumberFormatException x){
+			}
+		}
+	}
+
+	public void testParseDouble(){
+		String[] numbers = {"0", "-0", "-3", "+12.50", "100.25", "7e1", "0.1", "123456789012345.6", ".5", "5.", "1.7976931348623157E308", "NaN"};
+		for (String n : numbers){
+			assertEquals(n, Double.doubleToLongBits(Double.parseDouble(n)), Double.doubleToLongBits(CSVColumns.parseDouble(n.toCharArray(), 0, n.length())));
+		}
+		for (String n : new String[]{"", "-", ".", "1.2.3", "abc", "1-"}){
+			try {
+				CSVColumns.parseDouble(n.toCharArray(), 0, n.length());
+				fail(n);
+			} catch (NumberFormatException x){
+			}
+		}
+	}
+
+	public void testNextNumbers() throws IOException {
+		CSVParser csv = new CSVParser(new StringReader(NUMBERS));
+		ExcelCSVParser excel = new ExcelCSVParser(new StringReader(NUMBERS));
+		MappedCSVParser mapped = new MappedCSVParser(ByteBuffer.wrap(NUMBERS.getBytes(StandardCharsets.UTF_8)));
+		assertEquals("1", csv.nextValue());
+		assertEquals("1", excel.nextValue());
+		assertEquals("1", mapped.nextValue());
+		assertEquals(-20, csv.nextInt());
+		assertEquals(-20, excel.nextInt());
+		assertEquals(-20, mapped.nextInt());
+		assertEquals(300L, csv.nextLong());
+		assertEquals(300L, excel.nextLong());
+		assertEquals(300L, mapped.nextLong());
+		assertEquals(1, csv.getLastLineNumber());
+		assertEquals(1, excel.getLastLineNumber());
+		assertEquals(1, mapped.getLastLineNumber());
+		assertEquals(4.0, csv.nextDouble());
+		assertEquals(4.0, excel.nextDouble());
+		assertEquals(4.0, mapped.nextDouble());
+		assertEquals(2, csv.getLastLineNumber());
+		assertEquals(2, excel.getLastLineNumber());
+		assertEquals(2, mapped.getLastLineNumber());
+		long[] longs = new long[1];
+		assertEquals(2, csv.getLine(longs));
+		assertEquals(5L, longs[0]);
+		assertEquals(2, excel.getLine(longs));
+		assertEquals(5L, longs[0]);
+		assertEquals(2, mapped.getLine(longs));
+		assertEquals(5L, longs[0]);
+		int[] ints = new int[4];
+		assertEquals(3, csv.getLine(ints));
+		assertEquals(3, excel.getLine(ints));
+		assertEquals(3, mapped.getLine(ints));
+		assertTrue(Arrays.equals(new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE, 0, 0}, ints));
+		assertEquals(-1, csv.getLine(new double[3]));
+		assertEquals(-1, excel.getLine(new double[3]));
+		assertEquals(-1, mapped.getLine(new double[3]));
+		try {
+			csv.nextInt();
+			fail();
+		} catch (EOFException x){
+		}
+		try {
+			mapped.nextInt();
+			fail();
+		} catch (EOFException x){
+		}
+	}
+
+	public void testValuesMatchStrings() throws IOException {
+		String input = "12,-7.25,1e3\n0.1,\"2\",3\n";
+		double[] values = new double[3];
+		for (CSVParse parse : parsers(input)){
+			if (parse instanceof LabeledCSVParser) continue;
+			CSVParser expected = new CSVParser(new StringReader(input));
+			String[] line;
+			while ((line = expected.getLine()) != null){
+				int count;
+				if (parse instanceof CSVParser){
+					count = ((CSVParser)parse).getLine(values);
+				} else if (parse instanceof ExcelCSVParser){
+					count = ((ExcelCSVParser)parse).getLine(values);
+				} else {
+					count = ((MappedCSVParser)parse).getLine(values);
+				}
+				assertEquals(line.length, count);
+				for (int i = 0; i < line.length; i++){
+					assertEquals(Double.parseDouble(line[i]), values[i]);
+				}
+				assertEquals(expected.getLastLineNumber(), parse.getLastLineNumber());
+			}
+		}
+	}
+
+	public void testColumns() throws IOException {
+		for (CSVParse parse : parsers(NUMBERS)){
+			TIntArrayList a = new TIntArrayList();
+			TIntArrayList c = new TIntArrayList();
+			assertEquals(3, CSVColumns.readInts(parse, a, null, c));
+			assertEquals(new TIntArrayList(new int[]{1, 4, Integer.MIN_VALUE}), a);
+			assertEquals(new TIntArrayList(new int[]{300, 6, 0}), c);
+		}
+		for (CSVParse parse : parsers(NUMBERS)){
+			TLongArrayList b = new TLongArrayList();
+			assertEquals(3, CSVColumns.readLongs(parse, null, b));
+			assertEquals(new TLongArrayList(new long[]{-20, 5, Integer.MAX_VALUE}), b);
+		}
+		for (CSVParse parse : parsers(NUMBERS)){
+			TDoubleArrayList a = new TDoubleArrayList();
+			assertEquals(3, CSVColumns.readDoubles(parse, a));
+			assertEquals(new TDoubleArrayList(new double[]{1, 4, Integer.MIN_VALUE}), a);
+		}
+		try {
+			CSVColumns.readInts(new CSVParser(new StringReader("1,2\n3\n")), new TIntArrayList(), new TIntArrayList());
+			fail();
+		} catch (NumberFormatException x){
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Tests reading fields from comma separated value files without allocation.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests that reading records through a CSVFieldHandler gives the same
+ * values and line numbers as reading them as String arrays.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CSVFieldHandlerTest extends TestCase {
+
+	private static final String[] INPUTS = {
+		"",
+		"a",
+		"a,b,c\nd,e\n",
+		"\"quoted\",\"with,comma\",\"multi\nline\"\r\nnext\n",
+		"\"esc\\\"aped\",\"back\\\\slash\"\n",
+		"\"esc\"\"aped\",x\n",
+		"\n\na,,\n\n,b\n",
+		"#comment\nfield\n #not comment\n",
+		"trailing , spaces ,\"q\" \nlast",
+		"\"unterminated,\nvalue",
+	};
+
+	private static class Collector implements CSVFieldHandler {
+		List<String> values = new ArrayList<String>();
+		boolean ended;
+		public void field(char[] buffer, int offset, int length, int fieldIndex, boolean endOfRecord){
+			assertEquals(values.size(), fieldIndex);
+			assertFalse(ended);
+			values.add(new String(buffer, offset, length));
+			ended = endOfRecord;
+		}
+	}
+
+	public void testCSVParser() throws IOException {
+		for (String input : INPUTS){
+			CSVParser expected = new CSVParser(new StringReader(input));
+			expected.setCommentStart("#");
+			CSVParser actual = new CSVParser(new StringReader(input));
+			actual.setCommentStart("#");
+			String[] line;
+			while ((line = expected.getLine()) != null){
+				Collector collector = new Collector();
+				assertTrue(input, actual.getLine(collector));
+				assertTrue(input, collector.ended);
+				assertEquals(input, Arrays.asList(line), collector.values);
+				assertEquals(input, expected.getLastLineNumber(), actual.getLastLineNumber());
+			}
+			assertFalse(input, actual.getLine(new Collector()));
+		}
+	}
+
+	public void testExcelCSVParser() throws IOException {
+		for (String input : INPUTS){
+			ExcelCSVParser expected = new ExcelCSVParser(new StringReader(input));
+			expected.setCommentStart("#");
+			ExcelCSVParser actual = new ExcelCSVParser(new StringReader(input));
+			actual.setCommentStart("#");
+			String[] line;
+			while ((line = expected.getLine()) != null){
+				Collector collector = new Collector();
+				assertTrue(input, actual.getLine(collector));
+				assertTrue(input, collector.ended);
+				assertEquals(input, Arrays.asList(line), collector.values);
+				assertEquals(input, expected.getLastLineNumber(), actual.getLastLineNumber());
+			}
+			assertFalse(input, actual.getLine(new Collector()));
+		}
+	}
+
+	public void testMixedWithNextValue() throws IOException {
+		CSVParser parser = new CSVParser(new StringReader("a,b,c\nd,e\n"));
+		assertEquals("a", parser.nextValue());
+		Collector collector = new Collector();
+		assertTrue(parser.getLine(collector));
+		assertEquals(Arrays.asList("b", "c"), collector.values);
+		assertEquals(1, parser.getLastLineNumber());
+		assertEquals("d", parser.nextValue());
+		assertEquals("e", parser.nextValue());
+		assertEquals(2, parser.getLastLineNumber());
+		assertNull(parser.nextValue());
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Tests reading records as they are appended to comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests CSVFollower.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CSVFollowerTest extends TestCase {
+
+	private File f;
+
+	@Override protected void setUp() throws IOException {
+		f = File.createTempFile("follow", ".csv");
+		f.deleteOnExit();
+	}
+
+	@Override protected void tearDown(){
+		f.delete();
+	}
+
+	private void append(String s) throws IOException {
+		OutputStream out = new FileOutputStream(f, true);
+		out.write(s.getBytes(StandardCharsets.UTF_8));
+		out.close();
+	}
+
+	/**
+	 * Collects records and their line numbers as "line:value|value".
+	 */
+	private static class Collector implements CSVRecordHandler {
+		ArrayList<String> records = new ArrayList<String>();
+
+		public synchronized void record(String[] values, int lineNumber){
+			StringBuilder sb = new StringBuilder().append(lineNumber).append(':');
+			for (int i = 0; i < values.length; i++){
+				if (i > 0) sb.append('|');
+				sb.append(values[i]);
+			}
+			records.add(sb.toString());
+		}
+
+		List<String> take(){
+			List<String> taken = new ArrayList<String>(records);
+			records.clear();
+			return taken;
+		}
+	}
+
+	public void testAppends() throws IOException {
+		CSVFollower follower = new CSVFollower(f);
+		follower.setCommentStart("#");
+		Collector c = new Collector();
+		assertEquals(0, follower.poll(c));
+
+		append("a,b\n# note\nc,");
+		assertEquals(1, follower.poll(c));
+		assertEquals(Arrays.asList("1:a|b"), c.take());
+
+		append("\"split");
+		assertEquals(0, follower.poll(c));
+		append(" over\nappends\",d\r");
+		assertEquals(1, follower.poll(c));
+		assertEquals(Arrays.asList("3:c|split over\nappends|d"), c.take());
+
+		append("\ne,f\n\nlast");
+		assertEquals(1, follower.poll(c));
+		assertEquals(Arrays.asList("4:e|f"), c.take());
+		assertEquals(0, follower.poll(c));
+
+		assertEquals(1, follower.drain(c));
+		assertEquals(Arrays.asList("6:last"), c.take());
+		assertEquals(f.length(), follower.getPosition());
+		follower.close();
+	}
+
+	public void testTruncate() throws IOException {
+		append("1,2\n3,4\n");
+		CSVFollower follower = new CSVFollower(f);
+		assertEquals(2, follower.poll().length);
+		new FileOutputStream(f).close();
+		append("5\n");
+		String[][] records = follower.poll();
+		assertEquals(1, records.length);
+		assertEquals("5", records[0][0]);
+		follower.close();
+	}
+
+	public void testAwait() throws Exception {
+		CSVFollower follower = new CSVFollower(f);
+		Collector c = new Collector();
+		assertEquals(0, follower.await(c, 50, TimeUnit.MILLISECONDS));
+		Thread writer = new Thread(){
+			@Override public void run(){
+				try {
+					for (int i = 0; i < 20; i++){
+						append("row" + i + ",");
+						Thread.sleep(5);
+						append("x\n");
+					}
+				} catch (Exception x){
+					throw new RuntimeException(x);
+				}
+			}
+		};
+		writer.start();
+		int count = 0;
+		while (count < 20){
+			int n = follower.await(c, 10, TimeUnit.SECONDS);
+			assertTrue(n > 0);
+			count += n;
+		}
+		writer.join();
+		List<String> records = c.take();
+		assertEquals(20, records.size());
+		for (int i = 0; i < 20; i++){
+			assertEquals((i + 1) + ":row" + i + "|x", records.get(i));
+		}
+		follower.close();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Tests guessing the format of comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Tests CSVSniffer and CSVDialect.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CSVSnifferTest extends TestCase {
+
+	private static CSVDialect sniff(String sample){
+		return CSVSniffer.sniff(sample.toCharArray(), 0, sample.length(), true);
+	}
+
+	public void testSemicolonWithHeader(){
+		CSVDialect dialect = sniff("name;age\nbob;30\nann;41\n\"Smith; Jr\";7\n");
+		assertTrue(dialect.isExcel());
+		assertEquals(';', dialect.getDelimiter());
+		assertEquals('"', dialect.getQuote());
+		assertEquals("", dialect.getCommentStart());
+		assertTrue(dialect.hasHeader());
+	}
+
+	public void testTabsWithComments(){
+		CSVDialect dialect = sniff("# exported, 2016\r\n1\t2\t3\r\n4\t5\t6\r\n# end\r\n");
+		assertEquals('\t', dialect.getDelimiter());
+		assertEquals("#", dialect.getCommentStart());
+		assertFalse(dialect.hasHeader());
+	}
+
+	public void testDataStartingWithCommentCharacter() throws IOException {
+		CSVParse parse = CSVSniffer.open(new StringReader("code,name,amount\n#1,widget,10\n#2,gadget,20\n3,thing,30\n"));
+		assertTrue(parse instanceof LabeledCSVParser);
+		assertTrue(Arrays.equals(new String[]{"#1", "widget", "10"}, parse.getLine()));
+		assertTrue(Arrays.equals(new String[]{"#2", "gadget", "20"}, parse.getLine()));
+		assertTrue(Arrays.equals(new String[]{"3", "thing", "30"}, parse.getLine()));
+		assertNull(parse.getLine());
+
+		CSVDialect dialect = sniff("discount,item\n%10,apple\n5,pear\n");
+		assertEquals(',', dialect.getDelimiter());
+		assertEquals("", dialect.getCommentStart());
+	}
+
+	public void testBackslashEscapes(){
+		CSVDialect dialect = sniff("'a'|'it\\'s'|x\n'b'|'c'|y\n'd'|'e,f'|z\n");
+		assertFalse(dialect.isExcel());
+		assertEquals('|', dialect.getDelimiter());
+		assertEquals('\'', dialect.getQuote());
+	}
+
+	public void testQuotedLineBreaks(){
+		CSVDialect dialect = sniff("id,text\n1,\"one;\ntwo;\"\n2,\"say \"\"hi\"\"; then\"\n3,plain\n");
+		assertTrue(dialect.isExcel());
+		assertEquals(',', dialect.getDelimiter());
+		assertTrue(dialect.hasHeader());
+	}
+
+	public void testOpen() throws IOException {
+		StringBuilder sb = new StringBuilder("city:population\n");
+		for (int i = 0; i < 1000; i++){
+			sb.append("town").append(i).append(':').append(i * 37).append('\n');
+		}
+		// The sample ends in the middle of a record.
+		CSVParse parse = CSVSniffer.open(new StringReader(sb.toString()), 100);
+		assertTrue(parse instanceof LabeledCSVParser);
+		LabeledCSVParser labeled = (LabeledCSVParser)parse;
+		assertTrue(Arrays.equals(new String[]{"city", "population"}, labeled.getLabels()));
+		int count = 0;
+		String[] line;
+		while ((line = parse.getLine()) != null){
+			assertEquals("town" + count, line[0]);
+			assertEquals(count * 37, Integer.parseInt(line[1]));
+			count++;
+		}
+		assertEquals(1000, count);
+	}
+
+	public void testOpenWithoutHeader() throws IOException {
+		CSVParse parse = CSVSniffer.open(new StringReader("a,b\nc,d\n"));
+		assertFalse(parse instanceof LabeledCSVParser);
+		assertTrue(Arrays.equals(new String[]{"a", "b"}, parse.getLine()));
+		assertTrue(Arrays.equals(new String[]{"c", "d"}, parse.getLine()));
+		assertNull(parse.getLine());
+	}
+}
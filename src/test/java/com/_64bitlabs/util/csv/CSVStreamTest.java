@@ -0,0 +1,132 @@
+/*
+ * Tests streams of records read from comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Tests that streams of records, sequential or parallel, have the same
+ * records in the same order as the parsers they come from.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class CSVStreamTest extends TestCase {
+
+	/**
+	 * Build CSV large enough to be split, with line breaks and
+	 * comment characters inside quoted values.
+	 */
+	private static String bigCSV(){
+		Random r = new Random(11);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++){
+			sb.append(i).append(',');
+			switch (r.nextInt(5)){
+				case 0: sb.append("\"multi\n#line\n\",x"); break;
+				case 1: sb.append("\"quote \"\" inside\""); break;
+				case 2: sb.append("\n# comment \"\n"); break;
+				default: sb.append("plain,").append(r.nextInt()); break;
+			}
+			sb.append(r.nextBoolean() ? "\n" : "\r\n");
+		}
+		return sb.toString();
+	}
+
+	private static List<List<String>> toLists(Stream<String[]> stream){
+		return stream.map(Arrays::asList).collect(Collectors.toList());
+	}
+
+	public void testReaderStreams() throws IOException {
+		String input = bigCSV();
+		String[][] expected = new ExcelCSVParser(new StringReader(input)).getAllValues();
+		List<List<String>> expectedList = toLists(Arrays.stream(expected));
+		assertEquals(expectedList, toLists(new ExcelCSVParser(new StringReader(input)).stream()));
+		assertEquals(expectedList, toLists(new ExcelCSVParser(new StringReader(input)).stream().parallel()));
+		String small = "a,b\nc,d\ne\n";
+		LabeledCSVParser labeled = new LabeledCSVParser(new CSVParser(new StringReader(small)));
+		assertEquals(Arrays.asList(Arrays.asList("c", "d"), Arrays.asList("e")), toLists(labeled.stream()));
+		assertEquals(3, new CSVParser(new StringReader(small)).stream().parallel().count());
+	}
+
+	public void testMappedStreams() throws IOException {
+		String input = bigCSV();
+		File f = File.createTempFile("stream", ".csv");
+		try {
+			OutputStream out = new FileOutputStream(f);
+			try {
+				out.write(input.getBytes(StandardCharsets.UTF_8));
+			} finally {
+				out.close();
+			}
+			MappedCSVParser parser = new MappedCSVParser(f);
+			parser.setCommentStart("#");
+			String[][] expected = parser.getAllValues();
+			parser.close();
+			List<List<String>> expectedList = toLists(Arrays.stream(expected));
+
+			parser = new MappedCSVParser(f);
+			parser.setCommentStart("#");
+			try (Stream<String[]> stream = parser.stream()){
+				assertEquals(expectedList, toLists(stream.parallel()));
+			}
+
+			parser = new MappedCSVParser(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+			parser.setCommentStart("#");
+			assertEquals(expected.length, parser.stream().parallel().count());
+
+			// Start part way through the first record.
+			parser = new MappedCSVParser(f);
+			parser.setCommentStart("#");
+			assertEquals("0", parser.nextValue());
+			List<List<String>> rest = toLists(parser.stream().parallel());
+			assertEquals(expectedList.get(0).subList(1, expectedList.get(0).size()), rest.get(0));
+			assertEquals(expectedList.subList(1, expectedList.size()), rest.subList(1, rest.size()));
+			parser.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	public void testSplitSizes() throws IOException {
+		String input = bigCSV();
+		MappedCSVParser parser = new MappedCSVParser(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+		parser.setCommentStart("#");
+		Spliterator<String[]> suffix = new MappedCSVSpliterator(parser);
+		assertFalse(suffix.hasCharacteristics(Spliterator.SIZED));
+		long estimate = suffix.estimateSize();
+		Spliterator<String[]> prefix = suffix.trySplit();
+		assertNotNull(prefix);
+		assertTrue(prefix.hasCharacteristics(Spliterator.SIZED));
+		Spliterator<String[]> prefixOfPrefix = prefix.trySplit();
+		long sizes = prefixOfPrefix.estimateSize() + prefix.estimateSize();
+		assertEquals(sizes, StreamSupport.stream(prefixOfPrefix, false).count() + StreamSupport.stream(prefix, false).count());
+		long total = sizes + StreamSupport.stream(suffix, false).count();
+		MappedCSVParser expected = new MappedCSVParser(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+		expected.setCommentStart("#");
+		assertEquals(expected.getAllValues().length, total);
+		assertTrue(estimate > total / 2 && estimate < total * 2);
+	}
+}
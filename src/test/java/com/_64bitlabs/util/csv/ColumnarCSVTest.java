@@ -0,0 +1,137 @@
+/*
+ * Tests writing and reading binary column files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests that ColumnarCSVWriter and ColumnarCSVReader return the rows that
+ * were written, with the expected column types and statistics.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ColumnarCSVTest extends TestCase {
+
+	private static final String[] CITIES = {"Ankara", "İzmir", "Zürich", "", "Paris"};
+
+	private File f;
+
+	@Override protected void setUp() throws IOException {
+		f = File.createTempFile("columns", ".col");
+		f.deleteOnExit();
+	}
+
+	@Override protected void tearDown(){
+		f.delete();
+	}
+
+	public void testRoundTrip() throws IOException {
+		Random r = new Random(13);
+		ArrayList<String[]> rows = new ArrayList<String[]>();
+		ColumnarCSVWriter writer = new ColumnarCSVWriter(new FileOutputStream(f), new String[]{"id", "price", "city", "note"}, 100);
+		for (int i = 0; i < 1000; i++){
+			String[] row = {
+				Long.toString(i * 1000000007L - 5000),
+				Double.toString(r.nextInt(100000) / 100.0),
+				CITIES[r.nextInt(CITIES.length)],
+				"note \"" + r.nextInt() + "\"\n,",
+			};
+			// Some rows are short, and one block has text in the number column.
+			if (i % 7 == 0) row = Arrays.copyOf(row, 1 + r.nextInt(3));
+			if (i == 450) row[0] = "01";
+			rows.add(row);
+			writer.writeln(row);
+		}
+		writer.close();
+		assertEquals(1000, writer.getRowCount());
+
+		ColumnarCSVReader reader = new ColumnarCSVReader(f);
+		assertEquals(1000, reader.getRowCount());
+		assertEquals(10, reader.getBlockCount());
+		assertEquals(4, reader.getColumnCount());
+		assertEquals(2, reader.getLabelIndex("city"));
+		for (int i = 0; i < rows.size(); i++){
+			assertTrue("row " + i, Arrays.equals(rows.get(i), reader.getRow(i)));
+		}
+
+		ColumnarCSVReader.Column id = reader.getColumn(3, 0);
+		assertEquals(ColumnarCSVReader.TYPE_LONG, id.getType());
+		assertEquals(300 * 1000000007L - 5000, id.getMinLong());
+		assertEquals(399 * 1000000007L - 5000, id.getMaxLong());
+		assertEquals(ColumnarCSVReader.TYPE_STRING, reader.getColumn(4, 0).getType());
+		assertEquals("01", reader.getColumn(4, 0).getString(50));
+
+		ColumnarCSVReader.Column price = reader.getColumn(0, 1);
+		assertEquals(ColumnarCSVReader.TYPE_DOUBLE, price.getType());
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < price.size(); i++){
+			if (!price.isNull(i)) min = Math.min(min, price.getDouble(i));
+		}
+		assertEquals(min, price.getMinDouble());
+
+		ColumnarCSVReader.Column city = reader.getColumn(0, 2);
+		assertEquals(ColumnarCSVReader.TYPE_DICTIONARY, city.getType());
+		assertTrue(city.getValueCount() < city.size());
+		assertEquals("", city.getMinString());
+		assertEquals("İzmir", city.getMaxString());
+		for (int i = 1; i < city.getDictionarySize(); i++){
+			assertTrue(city.getDictionaryValue(i - 1).compareTo(city.getDictionaryValue(i)) < 0);
+		}
+		for (int i = 0; i < city.size(); i++){
+			if (!city.isNull(i)) assertEquals(city.getString(i), city.getDictionaryValue(city.getCode(i)));
+		}
+		assertEquals(ColumnarCSVReader.TYPE_STRING, reader.getColumn(0, 3).getType());
+		reader.close();
+	}
+
+	public void testConvert() throws IOException {
+		String csv = "name,count,ratio\na,1,0.5\nb,-20,1.0E10\n\"c,d\",300\n";
+		LabeledCSVParser in = new LabeledCSVParser(new CSVParser(new StringReader(csv)));
+		assertEquals(3, ColumnarCSVWriter.convert(in, f));
+		ColumnarCSVReader reader = new ColumnarCSVReader(f);
+		assertTrue(Arrays.equals(new String[]{"name", "count", "ratio"}, reader.getLabels()));
+		assertTrue(Arrays.equals(new String[]{"c,d", "300"}, reader.getRow(2)));
+		ColumnarCSVReader.Column count = reader.getColumn(0, 1);
+		assertEquals(-20, count.getMinLong());
+		assertEquals(300.0, count.getMaxDouble());
+		ColumnarCSVReader.Column ratio = reader.getColumn(0, 2);
+		assertEquals(ColumnarCSVReader.TYPE_DOUBLE, ratio.getType());
+		assertTrue(ratio.isNull(2));
+		assertEquals(1.0E10, ratio.getDouble(1));
+		assertEquals(ColumnarCSVReader.TYPE_NULL, reader.getColumn(0, 5).getType());
+		reader.close();
+	}
+
+	public void testCanonicalNumbers(){
+		for (String s: new String[]{"0", "-1", "9223372036854775807", "-9223372036854775808"}){
+			assertTrue(s, ColumnarCSVWriter.isCanonicalLong(s));
+		}
+		for (String s: new String[]{"", "-", "-0", "007", "+1", "1.0", "9223372036854775808"}){
+			assertFalse(s, ColumnarCSVWriter.isCanonicalLong(s));
+		}
+		for (String s: new String[]{"0.0", "-1.5", "1.0E10", "4.9E-324"}){
+			assertTrue(s, ColumnarCSVWriter.isCanonicalDouble(s));
+		}
+		for (String s: new String[]{"1", "1.50", "NaN", "1e10", ".5"}){
+			assertFalse(s, ColumnarCSVWriter.isCanonicalDouble(s));
+		}
+	}
+}
@@ -25,6 +25,9 @@ import com._64bitlabs.util.csv.CSVParser;
 import com._64bitlabs.util.csv.LabeledCSVParser;
 import junit.framework.TestCase;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Tests reading files in comma separated value format with a fist line of labels.
@@ -118,4 +121,73 @@ public class LabeledCSVParserTest extends TestCase {
 		assertNotNull(illegalStateException);
 		assertNull(parse.getLine());
 	}
+
+	private static final String WIDE =
+		"ID,NAME,CITY,AMOUNT,NOTE\n" +
+		"1,\"Smith, J\",Boston,12.50,a\n" +
+		"2,Jones,Berlin,-3,b\n" +
+		"3,Brown,Bern,100.25,c\n" +
+		"4,Short\n" +
+		"5,Green,Boston,7e1,d\n";
+
+	private static CSVParse[] parsers(String input){
+		return new CSVParse[]{
+			new CSVParser(new StringReader(input)),
+			new ExcelCSVParser(new StringReader(input)),
+			new MappedCSVParser(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))),
+		};
+	}
+
+	private static void assertLines(LabeledCSVParser parse, String[][] expected, int[] lineNumbers) throws IOException {
+		for (int i = 0; i < expected.length; i++){
+			String[] line = parse.getLine();
+			assertTrue(Arrays.toString(line), Arrays.equals(expected[i], line));
+			assertEquals(lineNumbers[i], parse.getLastLineNumber());
+		}
+	}
+
+	public void testProjection() throws IOException {
+		for (CSVParse csv : parsers(WIDE)){
+			LabeledCSVParser parse = new LabeledCSVParser(csv);
+			parse.setProjection("CITY", "ID", "MISSING");
+			assertEquals(1, parse.getLabelIdx("ID"));
+			assertEquals(-1, parse.getLabelIdx("NAME"));
+			assertLines(parse, new String[][]{
+				{"Boston", "1", null},
+				{"Berlin", "2", null},
+			}, new int[]{1, 2});
+			parse.setProjection(4, 1);
+			assertLines(parse, new String[][]{
+				{"c", "Brown"},
+				{null, "Short"},
+				{"d", "Green"},
+			}, new int[]{3, 4, 5});
+			assertEquals("Green", parse.getValueByLabel("NAME"));
+			assertNull(parse.getValueByLabel("ID"));
+			assertNull(parse.getLine());
+		}
+	}
+
+	public void testFilters() throws IOException {
+		for (CSVParse csv : parsers(WIDE)){
+			LabeledCSVParser parse = new LabeledCSVParser(csv);
+			parse.setProjection("ID");
+			parse.addFilter("CITY", CSVPredicate.startsWith("B"));
+			parse.addFilter("AMOUNT", CSVPredicate.between(0, 100));
+			assertLines(parse, new String[][]{{"1"}, {"5"}}, new int[]{1, 5});
+			assertNull(parse.getLine());
+		}
+		for (CSVParse csv : parsers(WIDE)){
+			LabeledCSVParser parse = new LabeledCSVParser(csv);
+			parse.addFilter(2, CSVPredicate.equalTo("Boston"));
+			String[][] all = parse.getAllValues();
+			assertEquals(2, all.length);
+			assertTrue(Arrays.equals(new String[]{"1", "Smith, J", "Boston", "12.50", "a"}, all[0]));
+			assertEquals("d", parse.getValueByLabel("NOTE"));
+			parse.close();
+		}
+		LabeledCSVParser parse = new LabeledCSVParser(new CSVParser(new StringReader(WIDE)));
+		parse.addFilter("MISSING", CSVPredicate.equalTo(""));
+		assertNull(parse.getLine());
+	}
 }
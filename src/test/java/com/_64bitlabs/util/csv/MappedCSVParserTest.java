@@ -0,0 +1,196 @@
+/*
+ * Tests reading memory mapped files in comma separated value format.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tests that MappedCSVParser reads the same values and line numbers
+ * as ExcelCSVParser.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class MappedCSVParserTest extends TestCase {
+
+	private static final String[] INPUTS = {
+		"",
+		"a,b\nc",
+		"a,\"b\nc\",d\ne",
+		"\n\na,b\n\n\nc,\n",
+		"#x\na,#b\n #c\n\"#d\"\n",
+		"a,\"b\"junk,c\r\nd\re",
+		",",
+		"a,b,",
+		"\"a\"\"b\",\"\"",
+		" a , b ",
+		"a,\"unterminated\nx",
+		"\"\"\n",
+		"a\n,\nb",
+		"ab\"c,d",
+		"a, \"b\"",
+		"\"a\" ,b",
+		"a,\"x\"\"\n\"\"y\"\n\nz",
+		"\r\n\r\na",
+		"\"\"\"\"",
+		"x,\"q\nq\"\"\",\"e\"\n",
+		"café,über,\"naïve\"\"\"\n日本,語\n",
+	};
+
+	public void testSameAsExcelFromBuffer() throws IOException {
+		for (String input : INPUTS){
+			MappedCSVParser mapped = new MappedCSVParser(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+			compare(input, mapped);
+		}
+	}
+
+	public void testSameAsExcelFromDirectBuffer() throws IOException {
+		for (String input : INPUTS){
+			byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+			direct.put(bytes).flip();
+			compare(input, new MappedCSVParser(direct));
+		}
+	}
+
+	public void testSameAsExcelFromSmallWindows() throws IOException {
+		File f = File.createTempFile("mapped", ".csv");
+		try {
+			for (String input : INPUTS){
+				writeFile(f, input);
+				for (int window = 1; window <= 8; window++){
+					MappedCSVParser mapped = new MappedCSVParser(f, window);
+					compare(input + " window " + window, input, mapped);
+					mapped.close();
+				}
+			}
+		} finally {
+			f.delete();
+		}
+	}
+
+	public void testSeek() throws IOException {
+		String input = "a,b\n\"long,\nfield\",c\nd\r\n\ne,f,g\n";
+		File f = File.createTempFile("mapped", ".csv");
+		try {
+			writeFile(f, input);
+			for (int window = 1; window <= 64; window *= 4){
+				checkSeek(new MappedCSVParser(f, window));
+			}
+			checkSeek(new MappedCSVParser(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))));
+		} finally {
+			f.delete();
+		}
+	}
+
+	private static void checkSeek(MappedCSVParser parser) throws IOException {
+		long[] positions = new long[4];
+		int[] lines = new int[4];
+		String[][] rows = new String[4][];
+		for (int i = 0; i < rows.length; i++){
+			positions[i] = parser.getPosition();
+			lines[i] = parser.getPhysicalLine();
+			rows[i] = parser.getLine();
+		}
+		assertNull(parser.getLine());
+		for (int i : new int[]{3, 0, 2, 1, 1, 3}){
+			parser.seek(positions[i]);
+			parser.setPhysicalLine(lines[i]);
+			assertEquals(-1, parser.getLastLineNumber());
+			assertTrue(Arrays.equals(rows[i], parser.getLine()));
+		}
+		assertNull(parser.getLine());
+		parser.seek(parser.getEnd());
+		assertNull(parser.getLine());
+		parser.close();
+	}
+
+	public void testFieldSlices() throws IOException {
+		byte[] bytes = "id,\"x\"\"y\",z\n7,,9\n".getBytes(StandardCharsets.UTF_8);
+		MappedCSVParser parser = new MappedCSVParser(ByteBuffer.wrap(bytes));
+		assertTrue(parser.next());
+		assertEquals(0, parser.getFieldIndex());
+		assertEquals(0, parser.getFieldOffset());
+		assertEquals(2, parser.getFieldLength());
+		assertFalse(parser.isEndOfRecord());
+		assertTrue(parser.next());
+		assertEquals(1, parser.getFieldIndex());
+		assertEquals(4, parser.getFieldOffset());
+		assertEquals(4, parser.getFieldLength());
+		assertTrue(parser.isFieldEscaped());
+		assertEquals("x\"y", parser.getFieldValue());
+		assertTrue(parser.next());
+		assertTrue(parser.isEndOfRecord());
+		assertEquals(1, parser.getRecordLineNumber());
+		assertTrue(parser.next());
+		assertEquals(0, parser.getFieldIndex());
+		assertEquals(2, parser.getRecordLineNumber());
+		assertEquals(12, parser.getFieldPosition());
+		assertTrue(parser.next());
+		assertEquals(0, parser.getFieldLength());
+		assertTrue(parser.next());
+		assertEquals("9", parser.getFieldValue());
+		assertFalse(parser.next());
+	}
+
+	public void testDelimiterAndQuote() throws Exception {
+		MappedCSVParser parser = new MappedCSVParser(ByteBuffer.wrap("'a;b';c\n".getBytes(StandardCharsets.UTF_8)));
+		parser.changeDelimiter(';');
+		parser.changeQuote('\'');
+		String[] line = parser.getLine();
+		assertEquals(2, line.length);
+		assertEquals("a;b", line[0]);
+		assertEquals("c", line[1]);
+		try {
+			parser.changeDelimiter('é');
+			fail("Non-ASCII delimiter accepted");
+		} catch (com._64bitlabs.util.exception.BadDelimiterException x){
+			// expected
+		}
+	}
+
+	private static void writeFile(File f, String s) throws IOException {
+		OutputStream out = new FileOutputStream(f);
+		try {
+			out.write(s.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void compare(String input, CSVParse mapped) throws IOException {
+		compare(input, input, mapped);
+	}
+
+	private static void compare(String message, String input, CSVParse mapped) throws IOException {
+		ExcelCSVParser excel = new ExcelCSVParser(new StringReader(input));
+		excel.setCommentStart("#");
+		((MappedCSVParser)mapped).setCommentStart("#");
+		String expected;
+		do {
+			expected = excel.nextValue();
+			String actual = mapped.nextValue();
+			assertEquals(message, expected, actual);
+			assertEquals(message, excel.lastLineNumber(), mapped.lastLineNumber());
+		} while (expected != null);
+	}
+}
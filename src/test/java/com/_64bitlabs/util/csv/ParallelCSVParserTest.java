@@ -0,0 +1,148 @@
+/*
+ * Tests reading files in comma separated value format using multiple threads.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests that ParallelCSVParser reads the same records and line numbers as
+ * MappedCSVParser no matter how the file is split into chunks.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ParallelCSVParserTest extends TestCase {
+
+	private static final String[] PIECES = {
+		"a", "bb", "", " ", "\"q\"", "\"multi\nline\"", "\"with,comma\"", "\"esc\"\"aped\"", "\"\r\n\"", "ü", "12345",
+	};
+
+	/**
+	 * Build CSV with multi-line quoted values, blank lines, comments
+	 * and mixed line endings.
+	 */
+	private static String randomCSV(Random r, int records){
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < records; i++){
+			int fields = 1 + r.nextInt(5);
+			if (r.nextInt(10) == 0) sb.append("# comment, \"not quoted\n");
+			for (int j = 0; j < fields; j++){
+				if (j > 0) sb.append(',');
+				sb.append(PIECES[r.nextInt(PIECES.length)]);
+			}
+			switch (r.nextInt(4)){
+				case 0: sb.append("\r\n"); break;
+				case 1: sb.append("\n\n"); break;
+				default: sb.append('\n'); break;
+			}
+		}
+		return sb.toString();
+	}
+
+	public void testSameAsMapped() throws IOException {
+		File f = File.createTempFile("parallel", ".csv");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Random r = new Random(42);
+			for (int round = 0; round < 20; round++){
+				writeFile(f, randomCSV(r, 1 + r.nextInt(200)));
+				for (int chunkSize : new int[]{1, 3, 17, 64, 1000, 1 << 20}){
+					MappedCSVParser expected = new MappedCSVParser(f);
+					expected.setCommentStart("#");
+					ParallelCSVParser actual = new ParallelCSVParser(f, pool, chunkSize);
+					actual.setCommentStart("#");
+					String[] line;
+					while ((line = expected.getLine()) != null){
+						String message = "round " + round + " chunk " + chunkSize + " line " + expected.getLastLineNumber();
+						assertTrue(message, Arrays.equals(line, actual.getLine()));
+						assertEquals(message, expected.getLastLineNumber(), actual.getLastLineNumber());
+					}
+					assertNull(actual.getLine());
+					expected.close();
+					actual.close();
+				}
+			}
+		} finally {
+			pool.shutdown();
+			f.delete();
+		}
+	}
+
+	public void testNextValueAcrossChunks() throws IOException {
+		File f = File.createTempFile("parallel", ".csv");
+		try {
+			writeFile(f, "a,b\n\"c\nd\",e\nf\n");
+			ParallelCSVParser parser = new ParallelCSVParser(f, null, 2);
+			assertEquals("a", parser.nextValue());
+			assertEquals(1, parser.lastLineNumber());
+			String[] rest = parser.getLine();
+			assertEquals(1, rest.length);
+			assertEquals("b", rest[0]);
+			assertEquals("c\nd", parser.nextValue());
+			assertEquals(2, parser.lastLineNumber());
+			assertEquals("e", parser.nextValue());
+			assertEquals("f", parser.nextValue());
+			assertEquals(3, parser.lastLineNumber());
+			assertNull(parser.nextValue());
+			parser.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	public void testForEachRecord() throws IOException {
+		File f = File.createTempFile("parallel", ".csv");
+		try {
+			writeFile(f, randomCSV(new Random(7), 500));
+			MappedCSVParser expected = new MappedCSVParser(f);
+			final TreeMap<Integer,String[]> expectedRecords = new TreeMap<Integer,String[]>();
+			String[] line;
+			while ((line = expected.getLine()) != null){
+				expectedRecords.put(expected.getLastLineNumber(), line);
+			}
+			expected.close();
+			ParallelCSVParser parser = new ParallelCSVParser(f, null, 100);
+			final Map<Integer,String[]> records = Collections.synchronizedMap(new TreeMap<Integer,String[]>());
+			parser.forEachRecord(new CSVRecordHandler(){
+				public void record(String[] values, int lineNumber){
+					assertNull(records.put(lineNumber, values));
+				}
+			});
+			parser.close();
+			assertEquals(expectedRecords.size(), records.size());
+			for (Map.Entry<Integer,String[]> e : expectedRecords.entrySet()){
+				assertTrue(Arrays.equals(e.getValue(), records.get(e.getKey())));
+			}
+		} finally {
+			f.delete();
+		}
+	}
+
+	private static void writeFile(File f, String s) throws IOException {
+		OutputStream out = new FileOutputStream(f);
+		try {
+			out.write(s.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Tests writing files in comma separated value format using multiple threads.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests that ParallelCSVPrinter writes exactly what a single CSVPrinter or
+ * ExcelCSVPrinter would, no matter how the values are split into batches.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class ParallelCSVPrinterTest extends TestCase {
+
+	private static final String[] PIECES = {
+		"a", "", " lead", "-3", "\"q\"", "multi\nline", "with,comma", "back\\slash", "'", "ü", "12345", null,
+	};
+
+	/**
+	 * Print a random mix of values, numbers, line ends, comments and setting changes.
+	 */
+	private static void printRandom(CSVPrint printer, long seed) throws Exception {
+		Random r = new Random(seed);
+		for (int i = 0; i < 500; i++){
+			switch (r.nextInt(12)){
+				case 0: printer.writeln(); break;
+				case 1: printer.writelnComment("note\nsecond"); break;
+				case 2: printer.writeLong(r.nextInt(2001) - 1000); break;
+				case 3: printer.writeDouble(r.nextInt(2001) / 8.0 - 100); break;
+				case 4: printer.writeln(new String[]{PIECES[r.nextInt(PIECES.length)], "x"}); break;
+				case 5: if (r.nextInt(8) == 0) printer.setAlwaysQuote(r.nextBoolean()); break;
+				default: printer.write(PIECES[r.nextInt(PIECES.length)]); break;
+			}
+		}
+		printer.writeln();
+	}
+
+	public void testSameAsSinglePrinter() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (boolean excel : new boolean[]{false, true}){
+				StringWriter single = new StringWriter();
+				CSVPrint expected = excel ? new ExcelCSVPrinter(single, '"', ',', "\n", false, false) : new CSVPrinter(single, '#', '"', ',', "\n", false, false);
+				printRandom(expected, 42);
+				expected.close();
+				for (int batchSize : new int[]{1, 2, 3, 7, 64, 100000}){
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					ParallelCSVPrinter printer = new ParallelCSVPrinter(Channels.newChannel(bytes), excel, pool, batchSize);
+					printer.setLineEnding("\n");
+					printRandom(printer, 42);
+					printer.close();
+					assertFalse(printer.checkError());
+					assertEquals("excel " + excel + " batch " + batchSize, single.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * A value ending in an unpaired high surrogate at the end of a batch
+	 * must come out as '?', as it does from a single printer over the
+	 * same kind of writer.
+	 */
+	public void testUnpairedSurrogateAtBatchEnd() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			String[] values = {"a\ud800", "b", "\ud83d\ude00", "c\udbff", "\udc00d"};
+			for (boolean excel : new boolean[]{false, true}){
+				ByteArrayOutputStream single = new ByteArrayOutputStream();
+				CSVBufferedWriter writer = new CSVBufferedWriter(single);
+				CSVPrint expected = excel ? new ExcelCSVPrinter(writer, '"', ',', "\n", false, false) : new CSVPrinter(writer, '#', '"', ',', "\n", false, false);
+				for (String value : values) expected.write(value);
+				expected.writeln();
+				expected.write("e\ud800");
+				expected.close();
+				for (int batchSize : new int[]{1, 2, 3, 100}){
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					ParallelCSVPrinter printer = new ParallelCSVPrinter(Channels.newChannel(bytes), excel, pool, batchSize);
+					printer.setLineEnding("\n");
+					for (String value : values) printer.write(value);
+					printer.writeln();
+					printer.write("e\ud800");
+					printer.close();
+					assertFalse(printer.checkError());
+					assertTrue("excel " + excel + " batch " + batchSize, Arrays.equals(single.toByteArray(), bytes.toByteArray()));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testProducers() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ParallelCSVPrinter printer = new ParallelCSVPrinter(Channels.newChannel(bytes), false, null, 5);
+		final int lines = 2000;
+		Thread[] producers = new Thread[4];
+		for (int t = 0; t < producers.length; t++){
+			final String name = "producer" + t;
+			producers[t] = new Thread(){
+				@Override public void run(){
+					for (int i = 0; i < lines; i++){
+						printer.println(new String[]{name, Integer.toString(i), "a,b"});
+					}
+				}
+			};
+			producers[t].start();
+		}
+		for (Thread producer : producers){
+			producer.join();
+		}
+		printer.close();
+		assertFalse(printer.checkError());
+
+		CSVParser parser = new CSVParser(new ByteArrayInputStream(bytes.toByteArray()));
+		int[] next = new int[producers.length];
+		String[] line;
+		while ((line = parser.getLine()) != null){
+			assertEquals(3, line.length);
+			int t = line[0].charAt("producer".length()) - '0';
+			assertEquals(next[t]++, Integer.parseInt(line[1]));
+			assertEquals("a,b", line[2]);
+		}
+		for (int count : next){
+			assertEquals(lines, count);
+		}
+	}
+
+	public void testClosed() throws IOException {
+		ParallelCSVPrinter printer = new ParallelCSVPrinter(new ByteArrayOutputStream(), false);
+		printer.close();
+		try {
+			printer.write("x");
+			fail();
+		} catch (IOException x){
+		}
+		assertTrue(printer.checkError());
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Tests reading any row of comma separated value files.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.csv;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Tests that CSVRowIndex and RandomAccessCSVReader return the same rows and
+ * line numbers as reading the whole file with MappedCSVParser.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class RandomAccessCSVReaderTest extends TestCase {
+
+	private static final String[] PIECES = {
+		"a", "bb", "", "\"q\"", "\"multi\nline\"", "\"with;semi\"", "\"esc\"\"aped\"", "ü", "12345",
+	};
+
+	private File data;
+	private File indexFile;
+	private ArrayList<String[]> rows = new ArrayList<String[]>();
+	private ArrayList<Integer> lines = new ArrayList<Integer>();
+
+	@Override protected void setUp() throws Exception {
+		Random r = new Random(7);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++){
+			if (r.nextInt(10) == 0) sb.append("# comment; \"not quoted\n");
+			if (r.nextInt(10) == 0) sb.append("\r\n");
+			int fields = 1 + r.nextInt(4);
+			for (int j = 0; j < fields; j++){
+				if (j > 0) sb.append(';');
+				sb.append(PIECES[r.nextInt(PIECES.length)]);
+			}
+			sb.append(r.nextBoolean() ? "\n" : "\r\n");
+		}
+		data = File.createTempFile("random", ".csv");
+		data.deleteOnExit();
+		indexFile = new File(data.getPath() + ".idx");
+		indexFile.deleteOnExit();
+		OutputStream out = new FileOutputStream(data);
+		out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+		out.close();
+
+		MappedCSVParser parser = new MappedCSVParser(data);
+		parser.changeDelimiter(';');
+		parser.setCommentStart("#");
+		String[] line;
+		while ((line = parser.getLine()) != null){
+			rows.add(line);
+			lines.add(parser.getLastLineNumber());
+		}
+		parser.close();
+	}
+
+	@Override protected void tearDown(){
+		data.delete();
+		indexFile.delete();
+	}
+
+	private void assertRow(RandomAccessCSVReader reader, int row, String[] line){
+		assertTrue("row " + row, Arrays.equals(rows.get(row), line));
+		assertEquals("row " + row, lines.get(row).intValue(), reader.getLastLineNumber());
+	}
+
+	public void testRandomAccess() throws Exception {
+		for (int stride : new int[]{1, 3, 32, 5000}){
+			CSVRowIndex index = CSVRowIndex.build(data, ';', '"', "#", stride);
+			assertEquals(rows.size(), index.getRowCount());
+			RandomAccessCSVReader reader = new RandomAccessCSVReader(data, index);
+			Random r = new Random(stride);
+			for (int i = 0; i < 200; i++){
+				int row = r.nextInt(rows.size());
+				assertRow(reader, row, reader.getRow(row));
+				assertEquals(row + 1, reader.getRowNumber());
+			}
+			String[][] range = reader.getRows(rows.size() - 5, 10);
+			assertEquals(5, range.length);
+			assertRow(reader, rows.size() - 1, range[4]);
+			assertNull(reader.getLine());
+
+			reader.seek(rows.size());
+			assertNull(reader.nextValue());
+			reader.seek(0);
+			for (int row = 0; row < rows.size(); row++){
+				assertRow(reader, row, reader.getLine());
+			}
+			try {
+				reader.getRow(rows.size());
+				fail();
+			} catch (IndexOutOfBoundsException x){
+			}
+			reader.close();
+		}
+	}
+
+	public void testSaveAndInvalidate() throws Exception {
+		CSVRowIndex index = CSVRowIndex.open(data, indexFile, ';', '"', "#", 16);
+		assertTrue(indexFile.length() > 0);
+		CSVRowIndex loaded = CSVRowIndex.read(indexFile);
+		assertTrue(loaded.isCurrent(data));
+		assertEquals(index.getRowCount(), loaded.getRowCount());
+		RandomAccessCSVReader reader = new RandomAccessCSVReader(data, loaded);
+		assertRow(reader, 777, reader.getRow(777));
+		reader.close();
+
+		// A different stride or dialect is built again.
+		assertEquals(8, CSVRowIndex.open(data, indexFile, ';', '"', "#", 8).getStride());
+
+		Writer out = new OutputStreamWriter(new FileOutputStream(data, true), StandardCharsets.UTF_8);
+		out.write("extra;row\n");
+		out.close();
+		data.setLastModified(data.lastModified() + 2000);
+		assertFalse(loaded.isCurrent(data));
+		try {
+			new RandomAccessCSVReader(data, loaded);
+			fail();
+		} catch (IOException x){
+		}
+		CSVRowIndex rebuilt = CSVRowIndex.open(data, indexFile, ';', '"', "#", 8);
+		assertEquals(rows.size() + 1, rebuilt.getRowCount());
+		reader = new RandomAccessCSVReader(data, rebuilt);
+		assertTrue(Arrays.equals(new String[]{"extra", "row"}, reader.getRow(rows.size())));
+		reader.close();
+
+		// A damaged index is built again.
+		out = new OutputStreamWriter(new FileOutputStream(indexFile), StandardCharsets.UTF_8);
+		out.write("garbage");
+		out.close();
+		assertEquals(rows.size() + 1, CSVRowIndex.open(data, indexFile, ';', '"', "#", 8).getRowCount());
+	}
+}
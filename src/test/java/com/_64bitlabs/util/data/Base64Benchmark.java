@@ -0,0 +1,126 @@
+/*
+ * Compares the speed of Base64 with the JDK and commons-codec.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Encodes and decodes the same data with the array codec and the stream
+ * codec in Base64, with java.util.Base64 and with commons-codec, and
+ * prints the throughput of each.  Everything is encoded without line
+ * breaks so that the outputs can be compared.
+ * <p>
+ * This is not run with the tests; run it with
+ * <code>java com._64bitlabs.util.data.Base64Benchmark [megabytes] [rounds]</code>
+ * from the test classpath.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class Base64Benchmark {
+
+	private interface Codec {
+		byte[] encode(byte[] data) throws Exception;
+		byte[] decode(byte[] encoded) throws Exception;
+	}
+
+	private static final String[] NAMES = {
+		"Base64 arrays",
+		"Base64 streams",
+		"java.util.Base64",
+		"commons-codec",
+	};
+
+	private static final Codec[] CODECS = {
+		new Codec(){
+			@Override public byte[] encode(byte[] data){
+				return Base64.encode(data, false);
+			}
+			@Override public byte[] decode(byte[] encoded){
+				return Base64.decode(encoded);
+			}
+		},
+		new Codec(){
+			@Override public byte[] encode(byte[] data) throws IOException {
+				ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4 / 3 + 4);
+				Base64.encode(new ByteArrayInputStream(data), out, false);
+				return out.toByteArray();
+			}
+			@Override public byte[] decode(byte[] encoded) throws IOException {
+				ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length * 3 / 4);
+				Base64.decode(new ByteArrayInputStream(encoded), out, false);
+				return out.toByteArray();
+			}
+		},
+		new Codec(){
+			@Override public byte[] encode(byte[] data){
+				return java.util.Base64.getEncoder().encode(data);
+			}
+			@Override public byte[] decode(byte[] encoded){
+				return java.util.Base64.getDecoder().decode(encoded);
+			}
+		},
+		new Codec(){
+			@Override public byte[] encode(byte[] data){
+				return org.apache.commons.codec.binary.Base64.encodeBase64(data);
+			}
+			@Override public byte[] decode(byte[] encoded){
+				return org.apache.commons.codec.binary.Base64.decodeBase64(encoded);
+			}
+		},
+	};
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args megabytes of data to encode and number of timed rounds.
+	 * @throws Exception if a codec fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		byte[] data = new byte[megabytes << 20];
+		new Random(1).nextBytes(data);
+		byte[] expected = java.util.Base64.getEncoder().encode(data);
+
+		for (int i=0; i<CODECS.length; i++){
+			// Warm up so that the timed rounds run compiled code.
+			for (int j=0; j<3; j++){
+				if (!Arrays.equals(expected, CODECS[i].encode(data))){
+					throw new IllegalStateException(NAMES[i] + " encoded differently");
+				}
+				if (!Arrays.equals(data, CODECS[i].decode(expected))){
+					throw new IllegalStateException(NAMES[i] + " decoded differently");
+				}
+			}
+			long bestEncode = Long.MAX_VALUE;
+			long bestDecode = Long.MAX_VALUE;
+			for (int j=0; j<rounds; j++){
+				long start = System.nanoTime();
+				CODECS[i].encode(data);
+				long middle = System.nanoTime();
+				CODECS[i].decode(expected);
+				bestEncode = Math.min(bestEncode, middle - start);
+				bestDecode = Math.min(bestDecode, System.nanoTime() - middle);
+			}
+			System.out.printf("%-20s encode %8.1f MB/s  decode %8.1f MB/s%n", NAMES[i], megabytes / (bestEncode / 1e9), megabytes / (bestDecode / 1e9));
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Tests incremental Base64 encoding and decoding.
+ * Copyright (C) 2014-2016 Tolga Yilmaz
+ * info@64bitlabs.com
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * See LICENSE.txt for details.
+ */
+package com._64bitlabs.util.data;
+
+import com._64bitlabs.util.exception.Base64DecodingException;
+import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests Base64Encoder, Base64Decoder and the streams and channel built
+ * on them.
+ *
+ * @author Tolga Yilmaz info@64bitlabs.com
+ * @since 64bitlabsutils 1.09.00
+ */
+public class Base64StreamTest extends TestCase {
+
+	private static byte[] data(int length){
+		byte[] b = new byte[length];
+		new Random(length).nextBytes(b);
+		return b;
+	}
+
+	/**
+	 * Feed the input in random pieces into output buffers of random size,
+	 * some of them direct.
+	 */
+	private static byte[] code(Base64Coder coder, byte[] input, Random r) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		int fed = 0;
+		boolean done = false;
+		while (!done){
+			int n = Math.min(input.length - fed, r.nextInt(200));
+			ByteBuffer in = r.nextBoolean() ? ByteBuffer.wrap(input, fed, n) : ByteBuffer.allocateDirect(n);
+			if (in.isDirect()){
+				in.put(input, fed, n).flip();
+			}
+			boolean last = fed + n == input.length;
+			while (true){
+				ByteBuffer out = r.nextBoolean() ? ByteBuffer.allocate(r.nextInt(20)) : ByteBuffer.allocateDirect(r.nextInt(300));
+				boolean underflow = coder instanceof Base64Encoder ? ((Base64Encoder)coder).encode(in, out, last) : ((Base64Decoder)coder).decode(in, out, last);
+				out.flip();
+				byte[] b = new byte[out.remaining()];
+				out.get(b);
+				result.write(b);
+				if (underflow) break;
+			}
+			assertFalse(in.hasRemaining());
+			fed += n;
+			done = last;
+		}
+		assertTrue(coder.isFinished());
+		return result.toByteArray();
+	}
+
+	public void testCoders() throws IOException {
+		Random r = new Random(25);
+		for (int length: new int[] {0, 1, 2, 3, 56, 57, 58, 114, 1000, 10000}){
+			byte[] data = data(length);
+			for (boolean lineBreaks: new boolean[] {false, true}){
+				Base64Encoder encoder = new Base64Encoder(lineBreaks);
+				byte[] encoded = code(encoder, data, r);
+				assertTrue(Arrays.equals(Base64.encode(data, lineBreaks), encoded));
+				encoder.reset();
+				assertTrue(Arrays.equals(encoded, code(encoder, data, r)));
+				assertTrue(Arrays.equals(data, code(new Base64Decoder(true), encoded, r)));
+			}
+		}
+	}
+
+	public void testStreams() throws IOException {
+		byte[] data = data(100000);
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		Base64EncodingOutputStream out = new Base64EncodingOutputStream(encoded);
+		Random r = new Random(1);
+		for (int written = 0; written < data.length;){
+			if (r.nextInt(10) == 0){
+				out.write(data[written++]);
+			} else {
+				int n = Math.min(data.length - written, r.nextInt(3000));
+				out.write(data, written, n);
+				written += n;
+			}
+		}
+		out.close();
+		assertTrue(Arrays.equals(Base64.encode(data, true), encoded.toByteArray()));
+
+		InputStream in = new Base64DecodingInputStream(new ByteArrayInputStream(encoded.toByteArray()), true);
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		byte[] b = new byte[2000];
+		int c;
+		while ((c = in.read()) != -1){
+			decoded.write(c);
+			int n = in.read(b, 0, 1 + r.nextInt(b.length));
+			if (n == -1) break;
+			decoded.write(b, 0, n);
+		}
+		assertTrue(Arrays.equals(data, decoded.toByteArray()));
+	}
+
+	public void testUnexpectedCharacter() throws IOException {
+		InputStream in = new Base64DecodingInputStream(new ByteArrayInputStream("Y29i*Y29i".getBytes("ASCII")), true);
+		byte[] b = new byte[10];
+		assertEquals(3, in.read(b));
+		try {
+			in.read(b);
+			fail("expected exception");
+		} catch (Base64DecodingException x){
+		}
+		assertEquals(3, in.read(b));
+		assertEquals(-1, in.read(b));
+		in = new Base64DecodingInputStream(new ByteArrayInputStream("Y29i*Y29i".getBytes("ASCII")));
+		assertEquals(6, in.read(b));
+		assertEquals("cobcob", new String(b, 0, 6, "ASCII"));
+	}
+
+	/**
+	 * Read everything from the channel into buffers of random size.
+	 */
+	private static byte[] readAll(ReadableByteChannel channel, Random r) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		while (true){
+			ByteBuffer b = r.nextBoolean() ? ByteBuffer.allocate(1 + r.nextInt(10)) : ByteBuffer.allocateDirect(1 + r.nextInt(10000));
+			int n = channel.read(b);
+			if (n == -1) break;
+			assertTrue(n > 0);
+			b.flip();
+			byte[] a = new byte[n];
+			b.get(a);
+			result.write(a);
+		}
+		channel.close();
+		assertFalse(channel.isOpen());
+		return result.toByteArray();
+	}
+
+	public void testChannel() throws IOException {
+		Random r = new Random(2);
+		byte[] data = data(200000);
+		byte[] encoded = readAll(new Base64Channel(Channels.newChannel(new ByteArrayInputStream(data)), new Base64Encoder(true)), r);
+		assertTrue(Arrays.equals(Base64.encode(data, true), encoded));
+		byte[] decoded = readAll(new Base64Channel(Channels.newChannel(new ByteArrayInputStream(encoded)), new Base64Decoder(true)), r);
+		assertTrue(Arrays.equals(data, decoded));
+	}
+
+	public void testChannelUnexpectedCharacter() throws IOException {
+		byte[] expected = {-41, -120, -110};
+		for (int size : new int[]{10, 2}){
+			ReadableByteChannel channel = new Base64Channel(Channels.newChannel(new ByteArrayInputStream("14iS:O9r".getBytes("ASCII"))), new Base64Decoder(true));
+			ByteBuffer b = ByteBuffer.allocate(size);
+			byte[] decoded = new byte[3];
+			int count = 0;
+			while (count < decoded.length){
+				b.clear();
+				int n = channel.read(b);
+				assertTrue(n > 0);
+				b.flip();
+				b.get(decoded, count, n);
+				count += n;
+			}
+			assertTrue(Arrays.equals(expected, decoded));
+			try {
+				b.clear();
+				channel.read(b);
+				fail("expected exception");
+			} catch (Base64DecodingException x){
+			}
+		}
+	}
+}
@@ -12,7 +12,10 @@
 package com._64bitlabs.util.data;
 
 import com._64bitlabs.util.data.Base64;
+import com._64bitlabs.util.exception.Base64DecodingException;
 import junit.framework.TestCase;
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -44,6 +47,69 @@ public class Base64Test extends TestCase {
 		}
 	}
 
+	public void testArrayCodec() throws IOException {
+		Random rand = new Random(24);
+		for (int length = 0; length < 400; length++) {
+			byte[] data = new byte[length];
+			rand.nextBytes(data);
+			String expected = java.util.Base64.getEncoder().encodeToString(data);
+			byte[] out = new byte[Base64.encodedLength(length, false) + 5];
+			assertEquals(expected.length(), Base64.encode(data, 0, length, out, 3, false));
+			assertEquals(expected, new String(out, 3, expected.length(), "ASCII"));
+
+			ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+			Base64.encode(new ByteArrayInputStream(data), streamed, true);
+			byte[] lines = Base64.encode(data, true);
+			assertEquals(Base64.encodedLength(length, true), lines.length);
+			assertTrue(Arrays.equals(streamed.toByteArray(), lines));
+
+			byte[] decoded = new byte[length + 2];
+			assertEquals(length, Base64.decode(lines, 0, lines.length, decoded, 1, true));
+			assertTrue(Arrays.equals(data, Arrays.copyOfRange(decoded, 1, length + 1)));
+			assertTrue(Arrays.equals(data, Base64.decode(expected.getBytes("ASCII"))));
+		}
+	}
+
+	public void testByteBufferCodec() throws IOException {
+		byte[] data = new byte[10000];
+		new Random(25).nextBytes(data);
+		ByteBuffer[] sources = {ByteBuffer.wrap(data), ByteBuffer.allocateDirect(data.length)};
+		sources[1].put(data).flip();
+		for (ByteBuffer src: sources) {
+			ByteBuffer encoded = ByteBuffer.allocateDirect(Base64.encodedLength(data.length, true));
+			assertEquals(encoded.capacity(), Base64.encode(src, encoded, true));
+			assertFalse(src.hasRemaining());
+			assertFalse(encoded.hasRemaining());
+			encoded.flip();
+			ByteBuffer small = ByteBuffer.allocate(data.length - 1);
+			try {
+				Base64.decode(encoded, small, true);
+				fail("expected overflow");
+			} catch (java.nio.BufferOverflowException x) {
+			}
+			assertEquals(0, small.position());
+			ByteBuffer decoded = ByteBuffer.allocate(data.length);
+			assertEquals(data.length, Base64.decode(encoded, decoded, true));
+			assertTrue(Arrays.equals(data, decoded.array()));
+		}
+	}
+
+	public void testUnexpectedCharacters() throws IOException {
+		byte[] out = new byte[10];
+		byte[][] bad = {"Y2\u00e99i".getBytes("ISO-8859-1"), "Y2*9i".getBytes("ASCII"), "aA==aA".getBytes("ASCII")};
+		for (byte[] b: bad) {
+			try {
+				Base64.decode(b, 0, b.length, out, 0, true);
+				fail("expected exception");
+			} catch (Base64DecodingException x) {
+			}
+		}
+		assertEquals(3, Base64.decode(bad[0], 0, bad[0].length, out, 0, false));
+		assertEquals("cob", new String(out, 0, 3, "ASCII"));
+		assertEquals(3, Base64.decode(bad[2], 0, bad[2].length, out, 0, false));
+		assertEquals(3, Base64.decode(" Y2\r\n9i ".getBytes("ASCII"), 0, 8, out, 0, true));
+	}
+
 	private void encodeAndDecode(String encoded, byte[] decoded) {
 		String enc = Base64.encodeToString(decoded);
 		assertEquals(encoded, enc);